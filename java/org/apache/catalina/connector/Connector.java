@@ -104,6 +104,13 @@ public class Connector extends LifecycleMBeanBase  {
     protected long asyncTimeout = 30000;
 
 
+    /**
+     * The number of recently decoded request URIs that are cached by this
+     * Connector. A value of zero or less disables the cache.
+     */
+    protected int decodedURICacheSize = 1024;
+
+
     /**
      * The "enable DNS lookups" flag for this Connector.
      */
@@ -213,6 +220,21 @@ public class Connector extends LifecycleMBeanBase  {
         "org.apache.coyote.http11.Http11NioProtocol";
 
 
+    /**
+     * The APR protocol that was configured, if the NIO protocol is being used
+     * in its place because the APR/native library is not available.
+     */
+    private String aprFallbackProtocol = null;
+
+
+    /**
+     * The first attribute set on a connector that fell back from APR to NIO
+     * that only makes sense for the APR protocol, such as the APR SSL
+     * configuration.
+     */
+    private String aprOnlyAttribute = null;
+
+
     /**
      * Coyote protocol handler.
      */
@@ -270,7 +292,27 @@ public class Connector extends LifecycleMBeanBase  {
         if (replacements.get(name) != null) {
             repl = replacements.get(name);
         }
-        return IntrospectionUtils.setProperty(protocolHandler, repl, value);
+        boolean result =
+                IntrospectionUtils.setProperty(protocolHandler, repl, value);
+        if (aprFallbackProtocol != null && aprOnlyAttribute == null &&
+                (!result || isAprOnlyAttribute(name, value))) {
+            // Checked in initInternal()
+            aprOnlyAttribute = name;
+        }
+        return result;
+    }
+
+
+    /*
+     * The APR connector is configured for SSL with its own attributes, all of
+     * which start with "SSL". Enabling SSL on the NIO connector in their place
+     * would use the default keystore.
+     */
+    private static boolean isAprOnlyAttribute(String name, String value) {
+        if ("SSLEnabled".equals(name)) {
+            return Boolean.parseBoolean(value);
+        }
+        return name.startsWith("SSL");
     }
 
     /**
@@ -357,6 +399,26 @@ public class Connector extends LifecycleMBeanBase  {
     }
 
 
+    /**
+     * Return the number of recently decoded request URIs that are cached.
+     */
+    public int getDecodedURICacheSize() {
+        return decodedURICacheSize;
+    }
+
+
+    /**
+     * Set the number of recently decoded request URIs that are cached. A value
+     * of zero or less disables the cache. Changes only take effect when the
+     * Connector is next initialized.
+     *
+     * @param decodedURICacheSize The new cache size
+     */
+    public void setDecodedURICacheSize(int decodedURICacheSize) {
+        this.decodedURICacheSize = decodedURICacheSize;
+    }
+
+
     /**
      * Return the "enable DNS lookups" flag.
      */
@@ -581,6 +643,21 @@ public class Connector extends LifecycleMBeanBase  {
             } else if ("AJP/1.3".equals(protocol)) {
                 setProtocolHandlerClassName
                     ("org.apache.coyote.ajp.AjpNioProtocol");
+            } else if ("org.apache.coyote.http11.Http11AprProtocol".equals(
+                    protocol)) {
+                // The native library could not be loaded so use the closest
+                // Java equivalent rather than failing in initInternal()
+                log.warn(sm.getString("coyoteConnector.protocolHandlerNoAprFallback",
+                        protocol, "org.apache.coyote.http11.Http11NioProtocol"));
+                aprFallbackProtocol = protocol;
+                setProtocolHandlerClassName
+                    ("org.apache.coyote.http11.Http11NioProtocol");
+            } else if ("org.apache.coyote.ajp.AjpAprProtocol".equals(protocol)) {
+                log.warn(sm.getString("coyoteConnector.protocolHandlerNoAprFallback",
+                        protocol, "org.apache.coyote.ajp.AjpNioProtocol"));
+                aprFallbackProtocol = protocol;
+                setProtocolHandlerClassName
+                    ("org.apache.coyote.ajp.AjpNioProtocol");
             } else if (protocol != null) {
                 setProtocolHandlerClassName(protocol);
             }
@@ -955,6 +1032,13 @@ public class Connector extends LifecycleMBeanBase  {
                     sm.getString("coyoteConnector.protocolHandlerNoApr",
                             getProtocolHandlerClassName()));
         }
+        if (aprOnlyAttribute != null) {
+            // The NIO protocol can't honour the configuration so fail as the
+            // APR protocol would have done
+            throw new LifecycleException(
+                    sm.getString("coyoteConnector.protocolHandlerNoAprAttribute",
+                            aprFallbackProtocol, aprOnlyAttribute));
+        }
 
         try {
             protocolHandler.init();
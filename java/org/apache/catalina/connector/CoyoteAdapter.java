@@ -103,6 +103,8 @@ public class CoyoteAdapter implements Adapter {
 
         super();
         this.connector = connector;
+        int cacheSize = connector.getDecodedURICacheSize();
+        this.uriCache = (cacheSize > 0) ? new DecodedURICache(cacheSize) : null;
 
     }
 
@@ -116,6 +118,13 @@ public class CoyoteAdapter implements Adapter {
     private final Connector connector;
 
 
+    /**
+     * The recently decoded URIs, or <code>null</code> if the cache is
+     * disabled.
+     */
+    private final DecodedURICache uriCache;
+
+
     /**
      * The string manager for this package.
      */
@@ -748,34 +757,36 @@ public class CoyoteAdapter implements Adapter {
             //   - convert the decodedURI to bytes
             parsePathParameters(req, request);
 
-            // URI decoding
-            // %xx decoding of the URL
-            try {
-                req.getURLDecoder().convert(decodedURI, false);
-            } catch (IOException ioe) {
-                res.setStatus(400);
-                res.setMessage("Invalid URI: " + ioe.getMessage());
-                connector.getService().getContainer().logAccess(
-                        request, response, 0, true);
-                return false;
-            }
-            // Normalization
-            if (!normalize(req.decodedURI())) {
-                res.setStatus(400);
-                res.setMessage("Invalid URI");
-                connector.getService().getContainer().logAccess(
-                        request, response, 0, true);
-                return false;
-            }
-            // Character decoding
-            convertURI(decodedURI, request);
-            // Check that the URI is still normalized
-            if (!checkNormalize(req.decodedURI())) {
-                res.setStatus(400);
-                res.setMessage("Invalid URI character encoding");
-                connector.getService().getContainer().logAccess(
-                        request, response, 0, true);
-                return false;
+            if (!convertNormalizedAsciiURI(decodedURI)) {
+                // URI decoding
+                // %xx decoding of the URL
+                try {
+                    req.getURLDecoder().convert(decodedURI, false);
+                } catch (IOException ioe) {
+                    res.setStatus(400);
+                    res.setMessage("Invalid URI: " + ioe.getMessage());
+                    connector.getService().getContainer().logAccess(
+                            request, response, 0, true);
+                    return false;
+                }
+                // Normalization
+                if (!normalize(req.decodedURI())) {
+                    res.setStatus(400);
+                    res.setMessage("Invalid URI");
+                    connector.getService().getContainer().logAccess(
+                            request, response, 0, true);
+                    return false;
+                }
+                // Character decoding
+                convertURI(decodedURI, request);
+                // Check that the URI is still normalized
+                if (!checkNormalize(req.decodedURI())) {
+                    res.setStatus(400);
+                    res.setMessage("Invalid URI character encoding");
+                    connector.getService().getContainer().logAccess(
+                            request, response, 0, true);
+                    return false;
+                }
             }
         } else {
             // The URL is chars or String, and has been sent using an in-memory
@@ -1201,6 +1212,96 @@ public class CoyoteAdapter implements Adapter {
     }
 
 
+    /**
+     * Character conversion of a URI that needs neither %xx decoding nor
+     * normalization: one that only contains printable US-ASCII characters
+     * other than '%' and '\\', starts with '/' and contains no empty, "." or
+     * ".." segments. Most URIs look like this and for them the decoded URI is
+     * the same as the raw bytes in any ASCII compatible URI encoding, so the
+     * usual decoding steps can be skipped. The chars and String for recently
+     * seen URIs are shared via the connector's URI cache.
+     *
+     * @param uri   The URI, as bytes
+     * @return <code>true</code> if the URI has been converted to chars,
+     *         <code>false</code> if it has not been changed and must be
+     *         processed in full
+     */
+    protected boolean convertNormalizedAsciiURI(MessageBytes uri) {
+
+        if (!isAsciiCompatible(connector.getURIEncodingLower())) {
+            return false;
+        }
+
+        ByteChunk bc = uri.getByteChunk();
+        byte[] b = bc.getBuffer();
+        int start = bc.getStart();
+        int end = bc.getEnd();
+        if (start == end || b[start] != (byte) '/') {
+            return false;
+        }
+
+        int hash = 0;
+        int segmentStart = start + 1;
+        for (int i = start; i < end; i++) {
+            byte c = b[i];
+            // Non-ASCII bytes are negative
+            if (c <= 0x20 || c == 0x7f || c == '%' || c == '\\') {
+                return false;
+            }
+            if (c == '/' && i > start) {
+                if (i == segmentStart || isDotSegment(b, segmentStart, i)) {
+                    return false;
+                }
+                segmentStart = i + 1;
+            }
+            hash = 31 * hash + c;
+        }
+        if (isDotSegment(b, segmentStart, end)) {
+            return false;
+        }
+
+        int length = end - start;
+        CharChunk cc = uri.getCharChunk();
+        cc.allocate(length, -1);
+        char[] cbuf = cc.getBuffer();
+        DecodedURICache.Entry entry =
+                (uriCache == null) ? null : uriCache.get(b, start, end, hash);
+        if (entry != null) {
+            System.arraycopy(entry.chars, 0, cbuf, 0, length);
+            uri.setChars(cbuf, 0, length, entry.value);
+        } else {
+            for (int i = 0; i < length; i++) {
+                cbuf[i] = (char) b[i + start];
+            }
+            uri.setChars(cbuf, 0, length);
+        }
+        return true;
+    }
+
+
+    private static boolean isDotSegment(byte[] b, int start, int end) {
+        int length = end - start;
+        return (length == 1 && b[start] == '.') ||
+                (length == 2 && b[start] == '.' && b[start + 1] == '.');
+    }
+
+
+    private static boolean isAsciiCompatible(String encodingLower) {
+        if (encodingLower == null) {
+            // ISO-8859-1
+            return true;
+        }
+        switch (encodingLower) {
+            case "utf-8":
+            case "iso-8859-1":
+            case "us-ascii":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+
     /**
      * Character conversion of the a US-ASCII MessageBytes.
      */
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.connector;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cache of the decoded form of recently requested URIs, shared by all the
+ * requests processed by a connector. Only URIs for which the decoded form is
+ * the same as the raw bytes (ASCII, no %xx escapes, already normalized) are
+ * cached so an entry is just the chars and the String for those bytes.
+ * <p>
+ * The cache is two way set associative: a URI may be held in one of two
+ * slots, and a miss replaces the least recently used of the two. Entries are
+ * immutable apart from the recently used flag so no locking is required.
+ */
+final class DecodedURICache {
+
+    /**
+     * Longer URIs are not cached.
+     */
+    static final int MAX_LENGTH = 256;
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+
+
+    DecodedURICache(int size) {
+        int sets = 1;
+        while (sets * 2 < size) {
+            sets <<= 1;
+        }
+        entries = new AtomicReferenceArray<>(sets * 2);
+        mask = sets - 1;
+    }
+
+
+    /**
+     * Obtain the entry for the given URI, creating it if necessary.
+     *
+     * @param b     The buffer holding the URI
+     * @param start The start of the URI in the buffer
+     * @param end   The end of the URI in the buffer
+     * @param hash  The hash of the URI, calculated as for
+     *              {@link String#hashCode()}
+     *
+     * @return the entry for the URI or <code>null</code> if the URI is too
+     *         long to be cached
+     */
+    Entry get(byte[] b, int start, int end, int hash) {
+        if (end - start > MAX_LENGTH) {
+            return null;
+        }
+        int first = ((hash ^ (hash >>> 16)) & mask) << 1;
+        Entry e0 = entries.get(first);
+        Entry e1 = entries.get(first + 1);
+        if (e0 != null && e0.matches(b, start, end, hash)) {
+            used(e0, e1);
+            return e0;
+        }
+        if (e1 != null && e1.matches(b, start, end, hash)) {
+            used(e1, e0);
+            return e1;
+        }
+        Entry entry = new Entry(b, start, end, hash);
+        if (e0 == null || (e1 != null && !e0.recentlyUsed)) {
+            entries.set(first, entry);
+            used(entry, e1);
+        } else {
+            entries.set(first + 1, entry);
+            used(entry, e0);
+        }
+        return entry;
+    }
+
+
+    private static void used(Entry entry, Entry other) {
+        if (!entry.recentlyUsed) {
+            entry.recentlyUsed = true;
+            if (other != null) {
+                other.recentlyUsed = false;
+            }
+        }
+    }
+
+
+    static final class Entry {
+
+        private final byte[] bytes;
+        private final int hash;
+        final char[] chars;
+        final String value;
+        volatile boolean recentlyUsed = false;
+
+        Entry(byte[] b, int start, int end, int hash) {
+            int length = end - start;
+            bytes = new byte[length];
+            System.arraycopy(b, start, bytes, 0, length);
+            this.hash = hash;
+            chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (bytes[i] & 0xff);
+            }
+            value = new String(chars);
+        }
+
+        boolean matches(byte[] b, int start, int end, int hash) {
+            if (this.hash != hash || bytes.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] != b[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
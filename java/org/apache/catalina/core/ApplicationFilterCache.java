@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.DispatcherType;
+
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+
+/**
+ * The filters that apply to requests for a Context, resolved once and then
+ * shared between requests. An instance is an immutable snapshot of the filter
+ * mappings and filter configurations of the Context and is discarded by the
+ * Context whenever either of those changes.
+ * <p>
+ * The URL patterns of all the filter mappings are compiled into lookup tables
+ * so that matching a request path only needs a couple of hash lookups plus a
+ * check of each path ("/.../*") pattern. The set of filter mappings matched by
+ * the path, together with the servlet name and the dispatcher type, fully
+ * determines the filters so that is used as the key for the resolved filter
+ * arrays.
+ */
+final class ApplicationFilterCache {
+
+    /**
+     * The maximum number of resolved filter arrays that will be retained.
+     * There is one per combination of servlet, dispatcher type and set of
+     * matching URL patterns so this is only reached by unusual applications.
+     */
+    static final int MAX_ENTRIES = 1024;
+
+    private static final ApplicationFilterConfig[] NO_FILTERS =
+            new ApplicationFilterConfig[0];
+
+    private final FilterMap[] filterMaps;
+    private final ApplicationFilterConfig[] filterConfigs;
+
+    /*
+     * Filter mappings that match any request, including named dispatches.
+     */
+    private final BitSet matchAll = new BitSet();
+
+    /*
+     * Filter mappings that match any request with a path.
+     */
+    private final BitSet matchAnyPath = new BitSet();
+
+    private final Map<String,BitSet> exactMatches = new HashMap<>();
+    private final String[] pathPrefixes;
+    private final BitSet[] pathMatches;
+    private final Map<String,BitSet> extensionMatches = new HashMap<>();
+
+    private final ConcurrentHashMap<Key,ApplicationFilterConfig[]> filters =
+            new ConcurrentHashMap<>();
+
+
+    ApplicationFilterCache(StandardContext context) {
+        filterMaps = context.findFilterMaps();
+        filterConfigs = new ApplicationFilterConfig[filterMaps.length];
+
+        Map<String,BitSet> prefixes = new HashMap<>();
+        for (int i = 0; i < filterMaps.length; i++) {
+            FilterMap filterMap = filterMaps[i];
+            filterConfigs[i] = (ApplicationFilterConfig)
+                    context.findFilterConfig(filterMap.getFilterName());
+            if (filterMap.getMatchAllUrlPatterns()) {
+                matchAll.set(i);
+                continue;
+            }
+            for (String urlPattern : filterMap.getURLPatterns()) {
+                if (urlPattern == null) {
+                    continue;
+                }
+                if (urlPattern.equals("/*")) {
+                    matchAnyPath.set(i);
+                    continue;
+                }
+                add(exactMatches, urlPattern, i);
+                if (urlPattern.endsWith("/*")) {
+                    add(prefixes, urlPattern.substring(
+                            0, urlPattern.length() - 2), i);
+                } else if (urlPattern.startsWith("*.")) {
+                    add(extensionMatches, urlPattern.substring(2), i);
+                }
+            }
+        }
+
+        pathPrefixes = new String[prefixes.size()];
+        pathMatches = new BitSet[prefixes.size()];
+        int pos = 0;
+        for (Map.Entry<String,BitSet> entry : prefixes.entrySet()) {
+            pathPrefixes[pos] = entry.getKey();
+            pathMatches[pos] = entry.getValue();
+            pos++;
+        }
+    }
+
+
+    /**
+     * Obtain the filters, in the order they must be applied, for a request.
+     * The returned array is shared and must not be modified.
+     *
+     * @param servletName   The name of the servlet the request is mapped to
+     * @param dispatcher    The dispatcher type of the request
+     * @param requestPath   The context relative path of the request
+     *
+     * @return the filters for the request
+     */
+    ApplicationFilterConfig[] findFilters(String servletName,
+            DispatcherType dispatcher, String requestPath) {
+
+        if (filterMaps.length == 0) {
+            return NO_FILTERS;
+        }
+
+        Key key = new Key(servletName, dispatcher, matchURL(requestPath));
+        ApplicationFilterConfig[] result = filters.get(key);
+        if (result == null) {
+            result = resolve(key);
+            if (filters.size() < MAX_ENTRIES) {
+                filters.put(key, result);
+            }
+        }
+        return result;
+    }
+
+
+    int size() {
+        return filters.size();
+    }
+
+
+    private BitSet matchURL(String requestPath) {
+        BitSet result = (BitSet) matchAll.clone();
+        if (requestPath == null) {
+            return result;
+        }
+
+        result.or(matchAnyPath);
+
+        // Exact match
+        BitSet matches = exactMatches.get(requestPath);
+        if (matches != null) {
+            result.or(matches);
+        }
+
+        // Path match
+        for (int i = 0; i < pathPrefixes.length; i++) {
+            String prefix = pathPrefixes[i];
+            int length = prefix.length();
+            if (requestPath.startsWith(prefix) &&
+                    (requestPath.length() == length ||
+                    requestPath.charAt(length) == '/')) {
+                result.or(pathMatches[i]);
+            }
+        }
+
+        // Extension match
+        if (extensionMatches.size() > 0) {
+            int slash = requestPath.lastIndexOf('/');
+            int period = requestPath.lastIndexOf('.');
+            if (slash >= 0 && period > slash &&
+                    period != requestPath.length() - 1) {
+                matches = extensionMatches.get(
+                        requestPath.substring(period + 1));
+                if (matches != null) {
+                    result.or(matches);
+                }
+            }
+        }
+
+        return result;
+    }
+
+
+    private ApplicationFilterConfig[] resolve(Key key) {
+        List<ApplicationFilterConfig> result = new ArrayList<>();
+
+        // Add the relevant path-mapped filters first
+        for (int i = 0; i < filterMaps.length; i++) {
+            if (key.urlMatches.get(i) &&
+                    matchDispatcher(filterMaps[i], key.dispatcher)) {
+                add(result, filterConfigs[i]);
+            }
+        }
+
+        // Add filters that match on servlet name second
+        for (int i = 0; i < filterMaps.length; i++) {
+            if (matchDispatcher(filterMaps[i], key.dispatcher) &&
+                    matchFiltersServlet(filterMaps[i], key.servletName)) {
+                add(result, filterConfigs[i]);
+            }
+        }
+
+        return result.toArray(new ApplicationFilterConfig[result.size()]);
+    }
+
+
+    private static void add(List<ApplicationFilterConfig> filters,
+            ApplicationFilterConfig filterConfig) {
+        if (filterConfig == null) {
+            // FIXME - log configuration problem
+            return;
+        }
+        // Prevent the same filter being added multiple times
+        if (!filters.contains(filterConfig)) {
+            filters.add(filterConfig);
+        }
+    }
+
+
+    private static void add(Map<String,BitSet> map, String key, int index) {
+        BitSet bits = map.get(key);
+        if (bits == null) {
+            bits = new BitSet();
+            map.put(key, bits);
+        }
+        bits.set(index);
+    }
+
+
+    /**
+     * Return <code>true</code> if the specified servlet name matches
+     * the requirements of the specified filter mapping; otherwise
+     * return <code>false</code>.
+     *
+     * @param filterMap Filter mapping being checked
+     * @param servletName Servlet name being checked
+     */
+    private static boolean matchFiltersServlet(FilterMap filterMap,
+                                        String servletName) {
+
+        if (servletName == null) {
+            return (false);
+        }
+        // Check the specific "*" special servlet name
+        else if (filterMap.getMatchAllServletNames()) {
+            return (true);
+        } else {
+            String[] servletNames = filterMap.getServletNames();
+            for (int i = 0; i < servletNames.length; i++) {
+                if (servletName.equals(servletNames[i])) {
+                    return (true);
+                }
+            }
+            return false;
+        }
+
+    }
+
+
+    /**
+     * Convenience method which returns true if  the dispatcher type
+     * matches the dispatcher types specified in the FilterMap
+     */
+    private static boolean matchDispatcher(FilterMap filterMap,
+            DispatcherType type) {
+        switch (type) {
+            case FORWARD :
+                if ((filterMap.getDispatcherMapping() & FilterMap.FORWARD) > 0) {
+                        return true;
+                }
+                break;
+            case INCLUDE :
+                if ((filterMap.getDispatcherMapping() & FilterMap.INCLUDE) > 0) {
+                    return true;
+                }
+                break;
+            case REQUEST :
+                if ((filterMap.getDispatcherMapping() & FilterMap.REQUEST) > 0) {
+                    return true;
+                }
+                break;
+            case ERROR :
+                if ((filterMap.getDispatcherMapping() & FilterMap.ERROR) > 0) {
+                    return true;
+                }
+                break;
+            case ASYNC :
+                if ((filterMap.getDispatcherMapping() & FilterMap.ASYNC) > 0) {
+                    return true;
+                }
+                break;
+        }
+        return false;
+    }
+
+
+    private static final class Key {
+
+        private final String servletName;
+        private final DispatcherType dispatcher;
+        private final BitSet urlMatches;
+        private final int hashCode;
+
+        Key(String servletName, DispatcherType dispatcher, BitSet urlMatches) {
+            this.servletName = servletName;
+            this.dispatcher = dispatcher;
+            this.urlMatches = urlMatches;
+            int result = (servletName == null) ? 0 : servletName.hashCode();
+            result = 31 * result +
+                    ((dispatcher == null) ? 0 : dispatcher.hashCode());
+            hashCode = 31 * result + urlMatches.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return dispatcher == other.dispatcher &&
+                    (servletName == null ? other.servletName == null :
+                            servletName.equals(other.servletName)) &&
+                    urlMatches.equals(other.urlMatches);
+        }
+    }
+}
@@ -529,6 +529,29 @@ final class ApplicationFilterChain implements FilterChain, CometFilterChain {
     }
 
 
+    /**
+     * Set the filters that will be executed in this chain, replacing any
+     * filters that have already been added.
+     *
+     * @param filters The FilterConfigs for the filters to be executed, in
+     *                order and without duplicates
+     */
+    void setFilters(ApplicationFilterConfig[] filters) {
+
+        int count = filters.length;
+        if (count > this.filters.length) {
+            this.filters = new ApplicationFilterConfig[count + INCREMENT];
+        } else {
+            for (int i = count; i < n; i++) {
+                this.filters[i] = null;
+            }
+        }
+        System.arraycopy(filters, 0, this.filters, 0, count);
+        n = count;
+
+    }
+
+
     /**
      * Release references to the filters and wrapper executed by this chain.
      */
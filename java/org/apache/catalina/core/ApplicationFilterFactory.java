@@ -25,7 +25,6 @@ import org.apache.catalina.Wrapper;
 import org.apache.catalina.comet.CometFilter;
 import org.apache.catalina.connector.Request;
 import org.apache.tomcat.util.ExceptionUtils;
-import org.apache.tomcat.util.descriptor.web.FilterMap;
 
 /**
  * Factory for the creation and caching of Filters and creation
@@ -117,32 +116,14 @@ public final class ApplicationFilterFactory {
         filterChain.setSupport
             (((StandardWrapper)wrapper).getInstanceSupport());
 
-        // Acquire the filter mappings for this Context
+        // Acquire the filters that apply to this request
         StandardContext context = (StandardContext) wrapper.getParent();
-        FilterMap filterMaps[] = context.findFilterMaps();
+        ApplicationFilterConfig[] filters = context.getFilterCache().findFilters(
+                wrapper.getName(), dispatcher, requestPath);
 
-        // If there are no filter mappings, we are done
-        if ((filterMaps == null) || (filterMaps.length == 0))
-            return (filterChain);
-
-        // Acquire the information we will need to match filter mappings
-        String servletName = wrapper.getName();
-
-        // Add the relevant path-mapped filters to this filter chain
-        for (int i = 0; i < filterMaps.length; i++) {
-            if (!matchDispatcher(filterMaps[i] ,dispatcher)) {
-                continue;
-            }
-            if (!matchFiltersURL(filterMaps[i], requestPath))
-                continue;
-            ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
-                context.findFilterConfig(filterMaps[i].getFilterName());
-            if (filterConfig == null) {
-                // FIXME - log configuration problem
-                continue;
-            }
-            boolean isCometFilter = false;
-            if (comet) {
+        if (comet) {
+            for (ApplicationFilterConfig filterConfig : filters) {
+                boolean isCometFilter = false;
                 try {
                     isCometFilter = filterConfig.getFilter() instanceof CometFilter;
                 } catch (Exception e) {
@@ -155,196 +136,13 @@ public final class ApplicationFilterFactory {
                 if (isCometFilter) {
                     filterChain.addFilter(filterConfig);
                 }
-            } else {
-                filterChain.addFilter(filterConfig);
-            }
-        }
-
-        // Add filters that match on servlet name second
-        for (int i = 0; i < filterMaps.length; i++) {
-            if (!matchDispatcher(filterMaps[i] ,dispatcher)) {
-                continue;
-            }
-            if (!matchFiltersServlet(filterMaps[i], servletName))
-                continue;
-            ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
-                context.findFilterConfig(filterMaps[i].getFilterName());
-            if (filterConfig == null) {
-                // FIXME - log configuration problem
-                continue;
-            }
-            boolean isCometFilter = false;
-            if (comet) {
-                try {
-                    isCometFilter = filterConfig.getFilter() instanceof CometFilter;
-                } catch (Exception e) {
-                    // Note: The try catch is there because getFilter has a lot of
-                    // declared exceptions. However, the filter is allocated much
-                    // earlier
-                }
-                if (isCometFilter) {
-                    filterChain.addFilter(filterConfig);
-                }
-            } else {
-                filterChain.addFilter(filterConfig);
             }
+        } else {
+            filterChain.setFilters(filters);
         }
 
         // Return the completed filter chain
         return (filterChain);
 
     }
-
-
-    // -------------------------------------------------------- Private Methods
-
-
-    /**
-     * Return <code>true</code> if the context-relative request path
-     * matches the requirements of the specified filter mapping;
-     * otherwise, return <code>false</code>.
-     *
-     * @param filterMap Filter mapping being checked
-     * @param requestPath Context-relative request path of this request
-     */
-    private boolean matchFiltersURL(FilterMap filterMap, String requestPath) {
-
-        // Check the specific "*" special URL pattern, which also matches
-        // named dispatches
-        if (filterMap.getMatchAllUrlPatterns())
-            return (true);
-
-        if (requestPath == null)
-            return (false);
-
-        // Match on context relative request path
-        String[] testPaths = filterMap.getURLPatterns();
-
-        for (int i = 0; i < testPaths.length; i++) {
-            if (matchFiltersURL(testPaths[i], requestPath)) {
-                return (true);
-            }
-        }
-
-        // No match
-        return (false);
-
-    }
-
-
-    /**
-     * Return <code>true</code> if the context-relative request path
-     * matches the requirements of the specified filter mapping;
-     * otherwise, return <code>false</code>.
-     *
-     * @param testPath URL mapping being checked
-     * @param requestPath Context-relative request path of this request
-     */
-    private boolean matchFiltersURL(String testPath, String requestPath) {
-
-        if (testPath == null)
-            return (false);
-
-        // Case 1 - Exact Match
-        if (testPath.equals(requestPath))
-            return (true);
-
-        // Case 2 - Path Match ("/.../*")
-        if (testPath.equals("/*"))
-            return (true);
-        if (testPath.endsWith("/*")) {
-            if (testPath.regionMatches(0, requestPath, 0,
-                                       testPath.length() - 2)) {
-                if (requestPath.length() == (testPath.length() - 2)) {
-                    return (true);
-                } else if ('/' == requestPath.charAt(testPath.length() - 2)) {
-                    return (true);
-                }
-            }
-            return (false);
-        }
-
-        // Case 3 - Extension Match
-        if (testPath.startsWith("*.")) {
-            int slash = requestPath.lastIndexOf('/');
-            int period = requestPath.lastIndexOf('.');
-            if ((slash >= 0) && (period > slash)
-                && (period != requestPath.length() - 1)
-                && ((requestPath.length() - period)
-                    == (testPath.length() - 1))) {
-                return (testPath.regionMatches(2, requestPath, period + 1,
-                                               testPath.length() - 2));
-            }
-        }
-
-        // Case 4 - "Default" Match
-        return (false); // NOTE - Not relevant for selecting filters
-
-    }
-
-
-    /**
-     * Return <code>true</code> if the specified servlet name matches
-     * the requirements of the specified filter mapping; otherwise
-     * return <code>false</code>.
-     *
-     * @param filterMap Filter mapping being checked
-     * @param servletName Servlet name being checked
-     */
-    private boolean matchFiltersServlet(FilterMap filterMap,
-                                        String servletName) {
-
-        if (servletName == null) {
-            return (false);
-        }
-        // Check the specific "*" special servlet name
-        else if (filterMap.getMatchAllServletNames()) {
-            return (true);
-        } else {
-            String[] servletNames = filterMap.getServletNames();
-            for (int i = 0; i < servletNames.length; i++) {
-                if (servletName.equals(servletNames[i])) {
-                    return (true);
-                }
-            }
-            return false;
-        }
-
-    }
-
-
-    /**
-     * Convenience method which returns true if  the dispatcher type
-     * matches the dispatcher types specified in the FilterMap
-     */
-    private boolean matchDispatcher(FilterMap filterMap, DispatcherType type) {
-        switch (type) {
-            case FORWARD :
-                if ((filterMap.getDispatcherMapping() & FilterMap.FORWARD) > 0) {
-                        return true;
-                }
-                break;
-            case INCLUDE :
-                if ((filterMap.getDispatcherMapping() & FilterMap.INCLUDE) > 0) {
-                    return true;
-                }
-                break;
-            case REQUEST :
-                if ((filterMap.getDispatcherMapping() & FilterMap.REQUEST) > 0) {
-                    return true;
-                }
-                break;
-            case ERROR :
-                if ((filterMap.getDispatcherMapping() & FilterMap.ERROR) > 0) {
-                    return true;
-                }
-                break;
-            case ASYNC :
-                if ((filterMap.getDispatcherMapping() & FilterMap.ASYNC) > 0) {
-                    return true;
-                }
-                break;
-        }
-        return false;
-    }
 }
@@ -408,6 +408,16 @@ public class StandardContext extends ContainerBase
      */
     private final ContextFilterMaps filterMaps = new ContextFilterMaps();
 
+
+    /**
+     * The filters that apply to requests, resolved from the current filter
+     * mappings and filter configurations. Created on first use and discarded
+     * whenever either of those changes.
+     */
+    private volatile ApplicationFilterCache filterCache = null;
+    private final Object filterCacheLock = new Object();
+
+
     /**
      * Ignore annotations.
      */
@@ -654,6 +664,12 @@ public class StandardContext extends ContainerBase
     private long startTime;
     private long tldScanTime;
 
+    /**
+     * The time (in milliseconds) spent in each phase of the most recent start
+     * of this context, in the order the phases started.
+     */
+    private final Map<String,Long> startupPhases = new LinkedHashMap<>();
+
     /**
      * Name of the engine. If null, the domain is used.
      */
@@ -779,6 +795,18 @@ public class StandardContext extends ContainerBase
      */
     private boolean logEffectiveWebXml = false;
 
+    /**
+     * The number of threads used to scan the JARs of the web application for
+     * annotations.
+     */
+    private int annotationScanThreads = 1;
+
+    /**
+     * Should the results of scanning the JARs of the web application for
+     * annotations be saved in the work directory for use on the next start?
+     */
+    private boolean annotationScanIndex = false;
+
     private int effectiveMajorVersion = 3;
 
     private int effectiveMinorVersion = 0;
@@ -979,6 +1007,29 @@ public class StandardContext extends ContainerBase
         return logEffectiveWebXml;
     }
 
+    /**
+     * Set the number of threads used to scan the JARs of the web application
+     * for annotations. Zero means the number of available processors and
+     * negative values are added to the number of available processors.
+     *
+     * @param annotationScanThreads The new number of threads
+     */
+    public void setAnnotationScanThreads(int annotationScanThreads) {
+        this.annotationScanThreads = annotationScanThreads;
+    }
+
+    public int getAnnotationScanThreads() {
+        return annotationScanThreads;
+    }
+
+    public void setAnnotationScanIndex(boolean annotationScanIndex) {
+        this.annotationScanIndex = annotationScanIndex;
+    }
+
+    public boolean getAnnotationScanIndex() {
+        return annotationScanIndex;
+    }
+
     @Override
     public Authenticator getAuthenticator() {
         if (this instanceof Authenticator)
@@ -1577,6 +1628,53 @@ public class StandardContext extends ContainerBase
         this.tldScanTime = tldScanTime;
     }
 
+    /**
+     * Record the time spent in a phase of starting this context. Time recorded
+     * for a phase that has already been recorded is added to it.
+     *
+     * @param phase The name of the phase
+     * @param time  The time (in milliseconds) spent in the phase
+     */
+    public void addStartupPhase(String phase, long time) {
+        synchronized (startupPhases) {
+            Long previous = startupPhases.get(phase);
+            if (previous != null) {
+                time += previous.longValue();
+            }
+            startupPhases.put(phase, Long.valueOf(time));
+        }
+    }
+
+    /**
+     * @return the time (in milliseconds) spent in each phase of the most
+     *         recent start of this context, in the order the phases started
+     */
+    public Map<String,Long> getStartupPhases() {
+        synchronized (startupPhases) {
+            return new LinkedHashMap<>(startupPhases);
+        }
+    }
+
+    /**
+     * @return the time spent in each phase of the most recent start of this
+     *         context, and the total, in a form suitable for logging
+     */
+    public String getStartupTimeline() {
+        StringBuilder sb = new StringBuilder();
+        long total = 0;
+        for (Map.Entry<String,Long> phase : getStartupPhases().entrySet()) {
+            sb.append(phase.getKey());
+            sb.append('=');
+            sb.append(phase.getValue());
+            sb.append("ms ");
+            total += phase.getValue().longValue();
+        }
+        sb.append("total=");
+        sb.append(total);
+        sb.append("ms");
+        return sb.toString();
+    }
+
 
     @Override
     public boolean getDenyUncoveredHttpMethods() {
@@ -2867,6 +2965,7 @@ public class StandardContext extends ContainerBase
         validateFilterMap(filterMap);
         // Add this filter mapping to our registered set
         filterMaps.add(filterMap);
+        resetFilterCache();
         fireContainerEvent("addFilterMap", filterMap);
     }
 
@@ -2886,6 +2985,7 @@ public class StandardContext extends ContainerBase
         validateFilterMap(filterMap);
         // Add this filter mapping to our registered set
         filterMaps.addBefore(filterMap);
+        resetFilterCache();
         fireContainerEvent("addFilterMap", filterMap);
     }
 
@@ -3991,6 +4091,7 @@ public class StandardContext extends ContainerBase
     @Override
     public void removeFilterMap(FilterMap filterMap) {
         filterMaps.remove(filterMap);
+        resetFilterCache();
         // Inform interested listeners
         fireContainerEvent("removeFilterMap", filterMap);
     }
@@ -4621,6 +4722,7 @@ public class StandardContext extends ContainerBase
                 }
             }
         }
+        resetFilterCache();
 
         return ok;
     }
@@ -4648,6 +4750,7 @@ public class StandardContext extends ContainerBase
             }
             filterConfigs.clear();
         }
+        resetFilterCache();
         return (true);
 
     }
@@ -4666,6 +4769,34 @@ public class StandardContext extends ContainerBase
     }
 
 
+    /**
+     * Obtain the filters that apply to requests for this Context, based on the
+     * current filter mappings and filter configurations.
+     */
+    ApplicationFilterCache getFilterCache() {
+        ApplicationFilterCache result = filterCache;
+        if (result == null) {
+            // Build under the lock so that a reset made while the filter
+            // mappings are being read cannot be lost
+            synchronized (filterCacheLock) {
+                result = filterCache;
+                if (result == null) {
+                    result = new ApplicationFilterCache(this);
+                    filterCache = result;
+                }
+            }
+        }
+        return result;
+    }
+
+
+    private void resetFilterCache() {
+        synchronized (filterCacheLock) {
+            filterCache = null;
+        }
+    }
+
+
     /**
      * Configure the set of instantiated application event listeners
      * for this Context.  Return <code>true</code> if all listeners wre
@@ -4985,6 +5116,7 @@ public class StandardContext extends ContainerBase
 
         setConfigured(false);
         boolean ok = true;
+        long phaseStart = System.nanoTime();
 
         // Currently this is effectively a NO-OP but needs to be called to
         // ensure the NamingResources follows the correct lifecycle
@@ -5051,6 +5183,7 @@ public class StandardContext extends ContainerBase
                 setNamingContextListener(ncl);
             }
         }
+        phaseStart = recordStartupPhase("resources", phaseStart);
 
         // Standard container startup
         if (log.isDebugEnabled())
@@ -5094,9 +5227,11 @@ public class StandardContext extends ContainerBase
                 Realm realm = getRealmInternal();
                 if ((realm != null) && (realm instanceof Lifecycle))
                     ((Lifecycle) realm).start();
+                phaseStart = recordStartupPhase("loader", phaseStart);
 
                 // Notify our interested LifecycleListeners
                 fireLifecycleEvent(Lifecycle.CONFIGURE_START_EVENT, null);
+                phaseStart = recordStartupPhase("configure", phaseStart);
 
                 // Start our child containers, if not already started
                 for (Container child : findChildren()) {
@@ -5146,6 +5281,7 @@ public class StandardContext extends ContainerBase
                     //and that it has its own manager
                     getCluster().registerManager(manager);
                 }
+                phaseStart = recordStartupPhase("children", phaseStart);
             }
 
             if (!getConfigured()) {
@@ -5194,6 +5330,7 @@ public class StandardContext extends ContainerBase
                     break;
                 }
             }
+            phaseStart = recordStartupPhase("initializers", phaseStart);
 
             // Configure and call application event listeners
             if (ok) {
@@ -5209,6 +5346,7 @@ public class StandardContext extends ContainerBase
             if (ok) {
                 checkConstraintsForUncoveredMethods(findConstraints());
             }
+            phaseStart = recordStartupPhase("listeners", phaseStart);
 
             try {
                 // Start manager
@@ -5220,6 +5358,7 @@ public class StandardContext extends ContainerBase
                 log.error("Error manager.start()", e);
                 ok = false;
             }
+            phaseStart = recordStartupPhase("manager", phaseStart);
 
             // Configure and call application filters
             if (ok) {
@@ -5228,6 +5367,7 @@ public class StandardContext extends ContainerBase
                     ok = false;
                 }
             }
+            phaseStart = recordStartupPhase("filters", phaseStart);
 
             // Load and initialize all "load on startup" servlets
             if (ok) {
@@ -5236,6 +5376,7 @@ public class StandardContext extends ContainerBase
                     ok = false;
                 }
             }
+            recordStartupPhase("servlets", phaseStart);
 
             // Start ContainerBackgroundProcessor thread
             super.threadStart();
@@ -5582,6 +5723,22 @@ public class StandardContext extends ContainerBase
     }
 
 
+    /**
+     * Record the time since the given start as a phase of starting this
+     * context.
+     *
+     * @param phase The name of the phase
+     * @param start The value of {@link System#nanoTime()} when the phase
+     *              started
+     * @return the value of {@link System#nanoTime()} when the phase ended
+     */
+    private long recordStartupPhase(String phase, long start) {
+        long now = System.nanoTime();
+        addStartupPhase(phase, (now - start) / 1000000);
+        return now;
+    }
+
+
     private void resetContext() throws Exception {
         // Restore the original state ( pre reading web.xml in start )
         // If you extend this - override this method and make sure to clean up
@@ -5595,6 +5752,9 @@ public class StandardContext extends ContainerBase
         startupTime = 0;
         startTime = 0;
         tldScanTime = 0;
+        synchronized (startupPhases) {
+            startupPhases.clear();
+        }
 
         // Bugzilla 32867
         distributable = false;
@@ -24,14 +24,24 @@ import org.apache.catalina.Executor;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.util.LifecycleMBeanBase;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
 import org.apache.tomcat.util.threads.ResizableExecutor;
 import org.apache.tomcat.util.threads.TaskQueue;
 import org.apache.tomcat.util.threads.TaskThreadFactory;
 import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
 
 public class StandardThreadExecutor extends LifecycleMBeanBase
         implements Executor, ResizableExecutor {
 
+    private static final Log log =
+        LogFactory.getLog(StandardThreadExecutor.class);
+
+    private static final StringManager sm =
+        StringManager.getManager(Constants.Package);
+
     // ---------------------------------------------- Properties
     /**
      * Default thread priority
@@ -91,6 +101,18 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
     protected long threadRenewalDelay =
         org.apache.tomcat.util.threads.Constants.DEFAULT_THREAD_RENEWAL_DELAY;
 
+    /**
+     * Run the tasks on virtual threads, if the JVM supports them, rather than
+     * on a pool of platform threads.
+     */
+    protected boolean useVirtualThreads = false;
+
+    /**
+     * The executor used instead of {@link #executor} when running on virtual
+     * threads
+     */
+    protected VirtualThreadExecutor virtualThreadExecutor = null;
+
     private TaskQueue taskqueue = null;
     // ---------------------------------------------- Constructors
     public StandardThreadExecutor() {
@@ -116,6 +138,18 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
     @Override
     protected void startInternal() throws LifecycleException {
 
+        if (useVirtualThreads) {
+            if (VirtualThreadExecutor.isSupported()) {
+                virtualThreadExecutor =
+                        new VirtualThreadExecutor(namePrefix, getMaxThreads());
+                setState(LifecycleState.STARTING);
+                return;
+            }
+            log.warn(sm.getString(
+                    "standardThreadExecutor.virtualThreadsUnavailable",
+                    getName()));
+        }
+
         taskqueue = new TaskQueue(maxQueueSize);
         TaskThreadFactory tf = new TaskThreadFactory(namePrefix,daemon,getThreadPriority());
         executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), maxIdleTime, TimeUnit.MILLISECONDS,taskqueue, tf);
@@ -142,6 +176,10 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         setState(LifecycleState.STOPPING);
         if ( executor != null ) executor.shutdownNow();
         executor = null;
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdownNow();
+        }
+        virtualThreadExecutor = null;
         taskqueue = null;
     }
 
@@ -154,7 +192,10 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
 
     @Override
     public void execute(Runnable command, long timeout, TimeUnit unit) {
-        if ( executor != null ) {
+        if (virtualThreadExecutor != null) {
+            // Never queued so there is nothing to time out
+            virtualThreadExecutor.execute(command);
+        } else if ( executor != null ) {
             executor.execute(command,timeout,unit);
         } else {
             throw new IllegalStateException("StandardThreadExecutor not started.");
@@ -164,7 +205,9 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
 
     @Override
     public void execute(Runnable command) {
-        if ( executor != null ) {
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.execute(command);
+        } else if ( executor != null ) {
             try {
                 executor.execute(command);
             } catch (RejectedExecutionException rx) {
@@ -239,6 +282,9 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         if (executor != null) {
             executor.setMaximumPoolSize(maxThreads);
         }
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.resizePool(minSpareThreads, maxThreads);
+        }
     }
 
     public void setMinSpareThreads(int minSpareThreads) {
@@ -264,6 +310,14 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         return maxQueueSize;
     }
 
+    public boolean getUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
     public long getThreadRenewalDelay() {
         return threadRenewalDelay;
     }
@@ -278,10 +332,16 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
     // Statistics from the thread pool
     @Override
     public int getActiveCount() {
+        if (virtualThreadExecutor != null) {
+            return virtualThreadExecutor.getActiveCount();
+        }
         return (executor != null) ? executor.getActiveCount() : 0;
     }
 
     public long getCompletedTaskCount() {
+        if (virtualThreadExecutor != null) {
+            return virtualThreadExecutor.getCompletedTaskCount();
+        }
         return (executor != null) ? executor.getCompletedTaskCount() : 0;
     }
 
@@ -295,16 +355,26 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
 
     @Override
     public int getPoolSize() {
+        if (virtualThreadExecutor != null) {
+            return virtualThreadExecutor.getPoolSize();
+        }
         return (executor != null) ? executor.getPoolSize() : 0;
     }
 
     public int getQueueSize() {
+        if (virtualThreadExecutor != null) {
+            return 0;
+        }
         return (executor != null) ? executor.getQueue().size() : -1;
     }
 
 
     @Override
     public boolean resizePool(int corePoolSize, int maximumPoolSize) {
+        if (virtualThreadExecutor != null) {
+            return virtualThreadExecutor.resizePool(corePoolSize,
+                    maximumPoolSize);
+        }
         if (executor == null)
             return false;
 
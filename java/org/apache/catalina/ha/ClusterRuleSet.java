@@ -91,6 +91,13 @@ public class ClusterRuleSet extends RuleSetBase {
         digester.addSetNext(prefix + "Manager",
                             "setManagerTemplate",
                             "org.apache.catalina.ha.ClusterManager");
+        digester.addObjectCreate(prefix + "Manager/SessionSerializer",
+                                 null, // MUST be specified in the element
+                                 "className");
+        digester.addSetProperties(prefix + "Manager/SessionSerializer");
+        digester.addSetNext(prefix + "Manager/SessionSerializer",
+                            "setSessionSerializer",
+                            "org.apache.catalina.session.SessionSerializer");
 
 
         digester.addObjectCreate(prefix + "Channel",
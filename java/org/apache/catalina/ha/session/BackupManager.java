@@ -152,6 +152,15 @@ public class BackupManager extends ClusterManagerBase
         setState(LifecycleState.STARTING);
     }
 
+    /**
+     * Sessions that this node becomes the primary node for are added to the
+     * replicated map directly, so every session is checked for expiration.
+     */
+    @Override
+    protected Session[] findExpirationCandidates(long timeNow) {
+        return findSessions();
+    }
+
     public String getMapName() {
         String name = cluster.getManagerName(getName(),this)+"-"+"map";
         if ( log.isDebugEnabled() ) log.debug("Backup manager, Setting map name to:"+name);
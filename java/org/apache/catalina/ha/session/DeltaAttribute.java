@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.ha.session;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * A session attribute value that tracks its own changes so that only the
+ * changes are replicated when it is modified, rather than the whole value.
+ * <p>
+ * At the end of each request, {@link DeltaSession} asks every attribute value
+ * that implements this interface whether it is dirty. If it is, the diff is
+ * sent to the other nodes, where it is applied to their copy of the value,
+ * and the diff is reset. The value does not have to be set on the session
+ * again after it has been modified, and setting the same instance again does
+ * not cause the whole value to be replicated. A new instance that is set on
+ * the session is replicated in full.
+ * <p>
+ * Application threads may modify the value while its diff is being captured.
+ * {@link DeltaSession} holds the monitor of the value while it calls
+ * {@link #isDirty()}, {@link #getDiff()} and {@link #resetDiff()}, and while
+ * a diff is applied, so implementations must synchronize on the value itself
+ * in every method that modifies it. Otherwise a change made between
+ * {@link #getDiff()} and {@link #resetDiff()} is never replicated.
+ */
+public interface DeltaAttribute extends Serializable {
+
+    /**
+     * Has the value changed since {@link #resetDiff()} was last called?
+     *
+     * @return <code>true</code> if there are changes to replicate
+     */
+    public boolean isDirty();
+
+    /**
+     * Return the changes made since {@link #resetDiff()} was last called.
+     *
+     * @return the changes, in a form that {@link #applyDiff(byte[], int, int)}
+     *         understands
+     * @throws IOException if the changes can't be written
+     */
+    public byte[] getDiff() throws IOException;
+
+    /**
+     * Apply the changes that were returned by {@link #getDiff()} on another
+     * node to this copy of the value.
+     *
+     * @param diff   The buffer holding the changes
+     * @param offset The offset of the changes in the buffer
+     * @param length The length of the changes
+     * @throws IOException if the changes can't be read
+     * @throws ClassNotFoundException if a class used by the changes can't be
+     *         found
+     */
+    public void applyDiff(byte[] diff, int offset, int length)
+            throws IOException, ClassNotFoundException;
+
+    /**
+     * Forget the changes made so far, because they have been replicated.
+     */
+    public void resetDiff();
+}
@@ -991,6 +991,7 @@ public class DeltaManager extends ClusterManagerBase{
             }
             DeltaRequest deltaRequest = session.getDeltaRequest();
             session.lock();
+            session.addAttributeDiffs();
             SessionMessage msg = null;
             boolean isDeltaRequest = false ;
             synchronized(deltaRequest) {
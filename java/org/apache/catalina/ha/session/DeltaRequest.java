@@ -54,6 +54,7 @@ public class DeltaRequest implements Externalizable {
 
     public static final int ACTION_SET = 0;
     public static final int ACTION_REMOVE = 1;
+    public static final int ACTION_DIFF = 2;
 
     public static final String NAME_PRINCIPAL = "__SET__PRINCIPAL__";
     public static final String NAME_MAXINTERVAL = "__SET__MAXINTERVAL__";
@@ -87,6 +88,32 @@ public class DeltaRequest implements Externalizable {
         addAction(TYPE_ATTRIBUTE,action,name,null);
     }
 
+    /**
+     * Record the changes made to an attribute value that implements
+     * {@link DeltaAttribute}.
+     * @param name Attribute name
+     * @param diff The changes returned by {@link DeltaAttribute#getDiff()}
+     */
+    public void setAttributeDiff(String name, byte[] diff) {
+        addAction(TYPE_ATTRIBUTE,ACTION_DIFF,name,diff);
+    }
+
+    /**
+     * Return the action most recently recorded for an attribute.
+     * @param name Attribute name
+     * @return {@link #ACTION_SET}, {@link #ACTION_REMOVE},
+     *         {@link #ACTION_DIFF} or -1 if no action has been recorded
+     */
+    public int getAttributeAction(String name) {
+        for (int i = actions.size() - 1; i >= 0; i--) {
+            AttributeInfo info = actions.get(i);
+            if (info.getType() == TYPE_ATTRIBUTE && info.getName().equals(name)) {
+                return info.getAction();
+            }
+        }
+        return -1;
+    }
+
     public void setMaxInactiveInterval(int interval) {
         int action = ACTION_SET;
         addAction(TYPE_MAXINTERVAL,action,NAME_MAXINTERVAL,Integer.valueOf(interval));
@@ -162,7 +189,10 @@ public class DeltaRequest implements Externalizable {
                     if ( info.getAction() == ACTION_SET ) {
                         if ( log.isTraceEnabled() ) log.trace("Session.setAttribute('"+info.getName()+"', '"+info.getValue()+"')");
                         session.setAttribute(info.getName(), info.getValue(),notifyListeners,false);
-                    }  else {
+                    } else if ( info.getAction() == ACTION_DIFF ) {
+                        if ( log.isTraceEnabled() ) log.trace("Session.applyDiff('"+info.getName()+"')");
+                        applyDiff(session, info.getName(), (byte[])info.getValue());
+                    } else {
                         if ( log.isTraceEnabled() ) log.trace("Session.removeAttribute('"+info.getName()+"')");
                         session.removeAttribute(info.getName(),notifyListeners,false);
                     }
@@ -199,6 +229,23 @@ public class DeltaRequest implements Externalizable {
         reset();
     }
 
+    protected void applyDiff(DeltaSession session, String name, byte[] diff) {
+        Object value = session.getAttribute(name);
+        if (!(value instanceof DeltaAttribute)) {
+            log.warn(sm.getString("deltaRequest.diffNoAttribute", name, getSessionId()));
+            return;
+        }
+        try {
+            synchronized (value) {
+                ((DeltaAttribute) value).applyDiff(diff, 0, diff.length);
+                // Changes made by replication are not replicated again
+                ((DeltaAttribute) value).resetDiff();
+            }
+        } catch (IOException | ClassNotFoundException x) {
+            log.error(sm.getString("deltaRequest.diffFailed", name, getSessionId()), x);
+        }
+    }
+
     public void reset() {
         while ( actions.size() > 0 ) {
             try {
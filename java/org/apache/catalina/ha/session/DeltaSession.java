@@ -27,6 +27,7 @@ import java.io.Serializable;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -40,6 +41,7 @@ import org.apache.catalina.ha.ClusterMessage;
 import org.apache.catalina.ha.ClusterSession;
 import org.apache.catalina.realm.GenericPrincipal;
 import org.apache.catalina.session.ManagerBase;
+import org.apache.catalina.session.SessionSerializer;
 import org.apache.catalina.session.StandardSession;
 import org.apache.catalina.tribes.io.ReplicationStream;
 import org.apache.catalina.tribes.tipis.ReplicatedMapEntry;
@@ -112,6 +114,7 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
      */
     @Override
     public boolean isDirty() {
+        addAttributeDiffs();
         return getDeltaRequest().getSize()>0;
     }
 
@@ -290,7 +293,7 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
 
 
     public void setMaxInactiveInterval(int interval, boolean addDeltaRequest) {
-        super.maxInactiveInterval = interval;
+        super.setMaxInactiveInterval(interval);
         if (addDeltaRequest && (deltaRequest != null)) {
             lock();
             try {
@@ -577,6 +580,58 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
         return deltaRequest;
     }
 
+    /**
+     * Record the changes made to attribute values that implement
+     * {@link DeltaAttribute} since they were last replicated. A value that
+     * is about to be replicated in full only has its changes reset. A value
+     * whose earlier changes have been recorded but not yet replicated is
+     * replicated in full.
+     */
+    public void addAttributeDiffs() {
+        lock();
+        try {
+            if (deltaRequest == null) {
+                return;
+            }
+            for (Map.Entry<String,Object> entry : attributes.entrySet()) {
+                String name = entry.getKey();
+                Object value = entry.getValue();
+                if (!(value instanceof DeltaAttribute) || exclude(name)) {
+                    continue;
+                }
+                DeltaAttribute attribute = (DeltaAttribute) value;
+                int action = deltaRequest.getAttributeAction(name);
+                // Changes made by other threads while the diff is captured
+                // must not be lost when it is reset
+                synchronized (attribute) {
+                    if (action != DeltaRequest.ACTION_SET) {
+                        if (!attribute.isDirty()) {
+                            continue;
+                        }
+                        byte[] diff = null;
+                        if (action == -1) {
+                            try {
+                                diff = attribute.getDiff();
+                            } catch (IOException e) {
+                                log.warn(sm.getString(
+                                        "deltaSession.diffFailed",
+                                        name, getIdInternal()), e);
+                            }
+                        }
+                        if (diff != null) {
+                            deltaRequest.setAttributeDiff(name, diff);
+                        } else {
+                            deltaRequest.setAttribute(name, value);
+                        }
+                    }
+                    attribute.resetDiff();
+                }
+            }
+        } finally {
+            unlock();
+        }
+    }
+
     // ------------------------------------------------- HttpSession Properties
 
     // ----------------------------------------------HttpSession Public Methods
@@ -679,8 +734,10 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
 
         lock();
         try {
+            Object oldValue = attributes.get(name);
             super.setAttribute(name,value, notify);
-            if (addDeltaRequest && deltaRequest != null && !exclude(name)) {
+            if (addDeltaRequest && deltaRequest != null && !exclude(name) &&
+                    !isUnchanged(oldValue, value)) {
                 deltaRequest.setAttribute(name, value);
             }
         } finally {
@@ -688,6 +745,30 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
         }
     }
 
+    /**
+     * Can replacing an attribute value be left out of the replicated changes?
+     * That is the case when the same {@link DeltaAttribute} is set again,
+     * since it tracks its own changes, and when an immutable value is replaced
+     * by an equal one. Other values may have been modified in place, so they
+     * are always replicated.
+     */
+    private static boolean isUnchanged(Object oldValue, Object value) {
+        if (oldValue == null) {
+            return false;
+        }
+        if (value instanceof DeltaAttribute) {
+            return oldValue == value;
+        }
+        if (value instanceof String || value instanceof Boolean ||
+                value instanceof Character || value instanceof Byte ||
+                value instanceof Short || value instanceof Integer ||
+                value instanceof Long || value instanceof Float ||
+                value instanceof Double || value instanceof Enum) {
+            return value.equals(oldValue);
+        }
+        return false;
+    }
+
     // -------------------------------------------- HttpSession Private Methods
 
 
@@ -715,13 +796,27 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
 
         // Deserialize the scalar instance variables (except Manager)
         authType = null; // Transient only
-        creationTime = ( (Long) stream.readObject()).longValue();
-        lastAccessedTime = ( (Long) stream.readObject()).longValue();
-        maxInactiveInterval = ( (Integer) stream.readObject()).intValue();
-        isNew = ( (Boolean) stream.readObject()).booleanValue();
-        isValid = ( (Boolean) stream.readObject()).booleanValue();
-        thisAccessedTime = ( (Long) stream.readObject()).longValue();
-        version = ( (Long) stream.readObject()).longValue();
+        SessionSerializer serializer = null;
+        Object header = stream.readObject();
+        if (header instanceof String) {
+            // Written with a SessionSerializer
+            serializer = getSessionSerializer((String) header);
+            creationTime = stream.readLong();
+            lastAccessedTime = stream.readLong();
+            maxInactiveInterval = stream.readInt();
+            isNew = stream.readBoolean();
+            isValid = stream.readBoolean();
+            thisAccessedTime = stream.readLong();
+            version = stream.readLong();
+        } else {
+            creationTime = ( (Long) header).longValue();
+            lastAccessedTime = ( (Long) stream.readObject()).longValue();
+            maxInactiveInterval = ( (Integer) stream.readObject()).intValue();
+            isNew = ( (Boolean) stream.readObject()).booleanValue();
+            isValid = ( (Boolean) stream.readObject()).booleanValue();
+            thisAccessedTime = ( (Long) stream.readObject()).longValue();
+            version = ( (Long) stream.readObject()).longValue();
+        }
         boolean hasPrincipal = stream.readBoolean();
         principal = null;
         if (hasPrincipal) {
@@ -734,15 +829,19 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
 
         // Deserialize the attribute count and attribute values
         if (attributes == null) attributes = new ConcurrentHashMap<>();
-        int n = ( (Integer) stream.readObject()).intValue();
         boolean isValidSave = isValid;
         isValid = true;
-        for (int i = 0; i < n; i++) {
-            String name = (String) stream.readObject();
-            Object value = stream.readObject();
-            if ( (value instanceof String) && (value.equals(NOT_SERIALIZED)))
-                continue;
-            attributes.put(name, value);
+        if (serializer != null) {
+            serializer.readAttributes(this, stream, attributes);
+        } else {
+            int n = ( (Integer) stream.readObject()).intValue();
+            for (int i = 0; i < n; i++) {
+                String name = (String) stream.readObject();
+                Object value = stream.readObject();
+                if ( (value instanceof String) && (value.equals(NOT_SERIALIZED)))
+                    continue;
+                attributes.put(name, value);
+            }
         }
         isValid = isValidSave;
 
@@ -796,13 +895,25 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
 
     private void doWriteObject(ObjectOutput stream) throws IOException {
         // Write the scalar instance variables (except Manager)
-        stream.writeObject(Long.valueOf(creationTime));
-        stream.writeObject(Long.valueOf(lastAccessedTime));
-        stream.writeObject(Integer.valueOf(maxInactiveInterval));
-        stream.writeObject(Boolean.valueOf(isNew));
-        stream.writeObject(Boolean.valueOf(isValid));
-        stream.writeObject(Long.valueOf(thisAccessedTime));
-        stream.writeObject(Long.valueOf(version));
+        SessionSerializer serializer = getSessionSerializer();
+        if (serializer != null) {
+            stream.writeObject(serializer.getClass().getName());
+            stream.writeLong(creationTime);
+            stream.writeLong(lastAccessedTime);
+            stream.writeInt(maxInactiveInterval);
+            stream.writeBoolean(isNew);
+            stream.writeBoolean(isValid);
+            stream.writeLong(thisAccessedTime);
+            stream.writeLong(version);
+        } else {
+            stream.writeObject(Long.valueOf(creationTime));
+            stream.writeObject(Long.valueOf(lastAccessedTime));
+            stream.writeObject(Integer.valueOf(maxInactiveInterval));
+            stream.writeObject(Boolean.valueOf(isNew));
+            stream.writeObject(Boolean.valueOf(isValid));
+            stream.writeObject(Long.valueOf(thisAccessedTime));
+            stream.writeObject(Long.valueOf(version));
+        }
         stream.writeBoolean(getPrincipal() != null);
         if (getPrincipal() != null) {
             SerializablePrincipal.writePrincipal((GenericPrincipal) principal,stream);
@@ -826,6 +937,11 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
             }
         }
 
+        if (serializer != null) {
+            serializer.writeAttributes(this, stream, saveNames, saveValues);
+            return;
+        }
+
         // Serialize the attribute count and the Serializable attributes
         int n = saveNames.size();
         stream.writeObject(Integer.valueOf(n));
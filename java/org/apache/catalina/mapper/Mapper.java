@@ -207,10 +207,6 @@ public final class Mapper {
             int slashCount = slashCount(path);
             synchronized (mappedHost) {
                 MappedContext[] contexts = mappedHost.contextList.contexts;
-                // Update nesting
-                if (slashCount > mappedHost.contextList.nesting) {
-                    mappedHost.contextList.nesting = slashCount;
-                }
                 int pos2 = find(contexts, path);
                 if (pos2 < 0 || !path.equals(contexts[pos2].name)) {
                     MappedContext newContext = new MappedContext();
@@ -218,6 +214,8 @@ public final class Mapper {
                     MappedContext[] newContexts = new MappedContext[contexts.length + 1];
                     if (insertMap(contexts, newContexts, newContext)) {
                         mappedHost.contextList.contexts = newContexts;
+                        mappedHost.contextList.trie =
+                                new ContextTrie(newContexts);
                     }
                     pos2 = find(newContexts, path);
                 }
@@ -288,14 +286,8 @@ public final class Mapper {
                         MappedContext[] newContexts = new MappedContext[contexts.length -1];
                         if (removeMap(contexts, newContexts, path)) {
                             host.contextList.contexts = newContexts;
-                            // Recalculate nesting
-                            host.contextList.nesting = 0;
-                            for (int i = 0; i < newContexts.length; i++) {
-                                int slashCount = slashCount(newContexts[i].name);
-                                if (slashCount > host.contextList.nesting) {
-                                    host.contextList.nesting = slashCount;
-                                }
-                            }
+                            host.contextList.trie =
+                                    new ContextTrie(newContexts);
                         }
                     }
                 }
@@ -703,20 +695,17 @@ public final class Mapper {
 
         uri.setLimit(-1);
 
-        MappedContext[] contexts = null;
+        ContextTrie contexts = null;
         MappedContext context = null;
         ContextVersion contextVersion = null;
 
-        int nesting = 0;
-
         // Virtual host mapping
         if (mappingData.host == null) {
             MappedHost[] hosts = this.hosts;
             int pos = findIgnoreCase(hosts, host);
             if ((pos != -1) && (host.equalsIgnoreCase(hosts[pos].name))) {
                 mappingData.host = hosts[pos].object;
-                contexts = hosts[pos].contextList.contexts;
-                nesting = hosts[pos].contextList.nesting;
+                contexts = hosts[pos].contextList.trie;
             } else {
                 if (defaultHostName == null) {
                     return;
@@ -724,8 +713,7 @@ public final class Mapper {
                 pos = find(hosts, defaultHostName);
                 if ((pos != -1) && (defaultHostName.equals(hosts[pos].name))) {
                     mappingData.host = hosts[pos].object;
-                    contexts = hosts[pos].contextList.contexts;
-                    nesting = hosts[pos].contextList.nesting;
+                    contexts = hosts[pos].contextList.trie;
                 } else {
                     return;
                 }
@@ -734,43 +722,7 @@ public final class Mapper {
 
         // Context mapping
         if (mappingData.context == null && contexts != null) {
-            int pos = find(contexts, uri);
-            if (pos == -1) {
-                return;
-            }
-
-            int lastSlash = -1;
-            int uriEnd = uri.getEnd();
-            int length = -1;
-            boolean found = false;
-            while (pos >= 0) {
-                if (uri.startsWith(contexts[pos].name)) {
-                    length = contexts[pos].name.length();
-                    if (uri.getLength() == length) {
-                        found = true;
-                        break;
-                    } else if (uri.startsWithIgnoreCase("/", length)) {
-                        found = true;
-                        break;
-                    }
-                }
-                if (lastSlash == -1) {
-                    lastSlash = nthSlash(uri, nesting + 1);
-                } else {
-                    lastSlash = lastSlash(uri);
-                }
-                uri.setEnd(lastSlash);
-                pos = find(contexts, uri);
-            }
-            uri.setEnd(uriEnd);
-
-            if (!found) {
-                if (contexts[0].name.equals("")) {
-                    context = contexts[0];
-                }
-            } else {
-                context = contexts[pos];
-            }
+            context = contexts.find(uri);
             if (context != null) {
                 mappingData.contextPath.setString(context.name);
             }
@@ -1467,8 +1419,146 @@ public final class Mapper {
     protected static final class ContextList {
 
         public MappedContext[] contexts = new MappedContext[0];
-        public int nesting = 0;
+        public ContextTrie trie = new ContextTrie(contexts);
+
+    }
+
+
+    // ------------------------------------------------ ContextTrie Inner Class
+
+
+    /**
+     * Radix trie of the context paths of a host, used to find the context for
+     * a URI in a single pass over the URI. A trie is immutable: a new one is
+     * built from the (sorted) contexts of the host whenever they change.
+     */
+    protected static final class ContextTrie {
+
+        private static final ContextTrie[] NO_CHILDREN = new ContextTrie[0];
 
+        private final char[] label;
+        private final MappedContext context;
+        private final char[] keys;
+        private final ContextTrie[] children;
+
+        public ContextTrie(MappedContext[] contexts) {
+            this(contexts, 0, contexts.length, 0);
+        }
+
+        /*
+         * Builds the node for contexts[from] to contexts[to - 1], all of which
+         * share the first start characters of their path.
+         */
+        private ContextTrie(MappedContext[] contexts, int from, int to,
+                int start) {
+            if (from == to) {
+                label = new char[0];
+                context = null;
+                keys = new char[0];
+                children = NO_CHILDREN;
+                return;
+            }
+
+            // The node covers the longest prefix shared by all the paths
+            String first = contexts[from].name;
+            int end = first.length();
+            for (int i = from + 1; i < to; i++) {
+                String name = contexts[i].name;
+                int max = Math.min(end, name.length());
+                int j = start;
+                while (j < max && name.charAt(j) == first.charAt(j)) {
+                    j++;
+                }
+                end = j;
+            }
+            label = first.substring(start, end).toCharArray();
+
+            // As the contexts are sorted, a context for the prefix itself can
+            // only be first and the others are grouped by their next char
+            int pos = from;
+            if (first.length() == end) {
+                context = contexts[pos++];
+            } else {
+                context = null;
+            }
+            int count = 0;
+            for (int i = pos; i < to; i++) {
+                if (i == pos || contexts[i].name.charAt(end) !=
+                        contexts[i - 1].name.charAt(end)) {
+                    count++;
+                }
+            }
+            keys = new char[count];
+            children = new ContextTrie[count];
+            int child = 0;
+            int groupStart = pos;
+            for (int i = pos + 1; i <= to; i++) {
+                char key = contexts[groupStart].name.charAt(end);
+                if (i == to || contexts[i].name.charAt(end) != key) {
+                    keys[child] = key;
+                    children[child++] =
+                            new ContextTrie(contexts, groupStart, i, end);
+                    groupStart = i;
+                }
+            }
+        }
+
+        /**
+         * Find the context with the longest path that matches the start of
+         * the URI, where the path must be followed by a '/' or the end of the
+         * URI. The ROOT context, if any, matches every URI.
+         *
+         * @param uri   The URI to map
+         * @return the context or <code>null</code> if no context matches
+         */
+        public MappedContext find(CharChunk uri) {
+            char[] buf = uri.getBuffer();
+            int pos = uri.getStart();
+            int end = uri.getEnd();
+
+            // Only the root can have an empty label
+            MappedContext result = (label.length == 0) ? context : null;
+            ContextTrie node = this;
+            while (node != null) {
+                char[] nodeLabel = node.label;
+                int length = nodeLabel.length;
+                if (end - pos < length) {
+                    break;
+                }
+                for (int i = 0; i < length; i++) {
+                    if (buf[pos + i] != nodeLabel[i]) {
+                        return result;
+                    }
+                }
+                pos += length;
+                if (node.context != null && (pos == end || buf[pos] == '/')) {
+                    result = node.context;
+                }
+                if (pos == end) {
+                    break;
+                }
+                node = node.child(buf[pos]);
+            }
+            return result;
+        }
+
+        private ContextTrie child(char c) {
+            char[] keys = this.keys;
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char key = keys[mid];
+                if (key < c) {
+                    low = mid + 1;
+                } else if (key > c) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
     }
 
 
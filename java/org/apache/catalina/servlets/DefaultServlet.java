@@ -19,6 +19,7 @@ package org.apache.catalina.servlets;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -31,10 +32,16 @@ import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.security.AccessController;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.StringTokenizer;
 
@@ -68,6 +75,7 @@ import org.apache.catalina.connector.ResponseFacade;
 import org.apache.catalina.util.RequestUtil;
 import org.apache.catalina.util.ServerInfo;
 import org.apache.catalina.util.URLEncoder;
+import org.apache.catalina.webresources.CachedResource;
 import org.apache.tomcat.util.res.StringManager;
 import org.apache.tomcat.util.security.PrivilegedGetTccl;
 import org.apache.tomcat.util.security.PrivilegedSetTccl;
@@ -147,6 +155,13 @@ public class DefaultServlet extends HttpServlet {
      */
     protected static final String mimeSeparation = "CATALINA_MIME_BOUNDARY";
 
+    /**
+     * The end of a multipart/byteranges response.
+     */
+    private static final byte[] MULTIPART_TRAILER =
+            ("\r\n--" + mimeSeparation + "--").getBytes(
+                    StandardCharsets.ISO_8859_1);
+
     /**
      * JNDI resources name.
      */
@@ -207,6 +222,31 @@ public class DefaultServlet extends HttpServlet {
      */
     protected boolean gzip = false;
 
+    /**
+     * The precompressed versions of files that may be served, in order of
+     * preference. By default, none are served.
+     */
+    protected CompressionFormat[] precompressedFormats =
+            new CompressionFormat[0];
+
+    /**
+     * Should resources be compressed once and the compressed content kept in
+     * the resources cache? By default, it's set to false.
+     */
+    protected boolean compressStatic = false;
+
+    /**
+     * The mime types of the resources that may be compressed.
+     */
+    protected String[] compressableMimeTypes = { "text/html", "text/xml",
+            "text/plain", "text/css", "text/javascript",
+            "application/javascript" };
+
+    /**
+     * Minimum size in bytes of the resources that may be compressed.
+     */
+    protected int compressionMinSize = 2048;
+
     /**
      * The output buffer size to use when serving resources.
      */
@@ -293,6 +333,33 @@ public class DefaultServlet extends HttpServlet {
         if (getServletConfig().getInitParameter("gzip") != null)
             gzip = Boolean.parseBoolean(getServletConfig().getInitParameter("gzip"));
 
+        if (getServletConfig().getInitParameter("precompressed") != null) {
+            precompressedFormats = parseCompressionFormats(
+                    getServletConfig().getInitParameter("precompressed"));
+        } else if (gzip) {
+            precompressedFormats = new CompressionFormat[] {
+                    new CompressionFormat(".gz", "gzip") };
+        }
+
+        if (getServletConfig().getInitParameter("compressStatic") != null)
+            compressStatic = Boolean.parseBoolean(getServletConfig().getInitParameter("compressStatic"));
+
+        if (getServletConfig().getInitParameter("compressableMimeType") != null) {
+            StringTokenizer tokens = new StringTokenizer(
+                    getServletConfig().getInitParameter("compressableMimeType"), ",");
+            ArrayList<String> mimeTypes = new ArrayList<>();
+            while (tokens.hasMoreTokens()) {
+                String mimeType = tokens.nextToken().trim();
+                if (mimeType.length() > 0) {
+                    mimeTypes.add(mimeType);
+                }
+            }
+            compressableMimeTypes = mimeTypes.toArray(new String[mimeTypes.size()]);
+        }
+
+        if (getServletConfig().getInitParameter("compressionMinSize") != null)
+            compressionMinSize = Integer.parseInt(getServletConfig().getInitParameter("compressionMinSize"));
+
         if (getServletConfig().getInitParameter("sendfileSize") != null)
             sendfileSize =
                 Integer.parseInt(getServletConfig().getInitParameter("sendfileSize")) * 1024;
@@ -787,8 +854,8 @@ public class DefaultServlet extends HttpServlet {
         }
 
         // These need to reflect the original resource, not the potentially
-        // gzip'd version of the resource so get them now if they are going to
-        // be needed later
+        // compressed version of the resource so get them now if they are going
+        // to be needed later
         String eTag = null;
         String lastModifiedHttp = null;
         if (resource.isFile() && !isError) {
@@ -797,18 +864,15 @@ public class DefaultServlet extends HttpServlet {
         }
 
 
-        // Serve a gzipped version of the file if present
-        boolean usingGzippedVersion = false;
-        if (gzip &&
-                resource.isFile() &&
-                !included &&
-                !path.endsWith(".gz") &&
-                checkIfGzip(request)) {
-            WebResource gzipResource = resources.getResource(path + ".gz");
-            if (gzipResource.exists() && gzipResource.isFile()) {
-                response.addHeader("Content-Encoding", "gzip");
-                resource = gzipResource;
-                usingGzippedVersion = true;
+        // Serve a compressed version of the file if one is available and is
+        // acceptable to the user agent
+        boolean usingCompressedVersion = false;
+        if (resource.isFile() && !included) {
+            WebResource compressedResource = getCompressedResource(
+                    request, response, path, resource, contentType);
+            if (compressedResource != null) {
+                resource = compressedResource;
+                usingCompressedVersion = true;
             }
         }
 
@@ -860,7 +924,7 @@ public class DefaultServlet extends HttpServlet {
             } catch (IllegalStateException e) {
                 // If it fails, we try to get a Writer instead if we're
                 // trying to serve a text file
-                if (!usingGzippedVersion &&
+                if (!usingCompressedVersion &&
                         ((contentType == null) ||
                                 (contentType.startsWith("text")) ||
                                 (contentType.endsWith("xml")) ||
@@ -1004,6 +1068,9 @@ public class DefaultServlet extends HttpServlet {
             } else {
                 response.setContentType("multipart/byteranges; boundary="
                                         + mimeSeparation);
+                byte[][] partHeaders = getPartHeaders(ranges, contentType);
+                response.setContentLengthLong(
+                        getMultipartLength(ranges, partHeaders));
                 if (serveContent) {
                     try {
                         response.setBufferSize(output);
@@ -1011,7 +1078,7 @@ public class DefaultServlet extends HttpServlet {
                         // Silent catch
                     }
                     if (ostream != null) {
-                        copy(resource, ostream, ranges.iterator(), contentType);
+                        copyRanges(resource, ostream, ranges, partHeaders);
                     } else {
                         // we should not get here
                         throw new IllegalStateException();
@@ -1726,24 +1793,13 @@ public class DefaultServlet extends HttpServlet {
             HttpServletResponse response, WebResource resource)
             throws IOException {
 
-        String eTag = resource.getETag();
         String headerValue = request.getHeader("If-Match");
         if (headerValue != null) {
             if (headerValue.indexOf('*') == -1) {
 
-                StringTokenizer commaTokenizer = new StringTokenizer
-                    (headerValue, ",");
-                boolean conditionSatisfied = false;
-
-                while (!conditionSatisfied && commaTokenizer.hasMoreTokens()) {
-                    String currentToken = commaTokenizer.nextToken();
-                    if (currentToken.trim().equals(eTag))
-                        conditionSatisfied = true;
-                }
-
                 // If none of the given ETags match, 412 Precodition failed is
                 // sent back
-                if (!conditionSatisfied) {
+                if (!matchETag(headerValue, resource.getETag())) {
                     response.sendError
                         (HttpServletResponse.SC_PRECONDITION_FAILED);
                     return false;
@@ -1805,23 +1861,14 @@ public class DefaultServlet extends HttpServlet {
             HttpServletResponse response, WebResource resource)
             throws IOException {
 
-        String eTag = resource.getETag();
         String headerValue = request.getHeader("If-None-Match");
         if (headerValue != null) {
 
-            boolean conditionSatisfied = false;
+            String eTag = resource.getETag();
+            boolean conditionSatisfied;
 
             if (!headerValue.equals("*")) {
-
-                StringTokenizer commaTokenizer =
-                    new StringTokenizer(headerValue, ",");
-
-                while (!conditionSatisfied && commaTokenizer.hasMoreTokens()) {
-                    String currentToken = commaTokenizer.nextToken();
-                    if (currentToken.trim().equals(eTag))
-                        conditionSatisfied = true;
-                }
-
+                conditionSatisfied = matchETag(headerValue, eTag);
             } else {
                 conditionSatisfied = true;
             }
@@ -1846,13 +1893,203 @@ public class DefaultServlet extends HttpServlet {
         return true;
     }
 
+    /**
+     * Does the list of entity tags from an If-Match or If-None-Match header
+     * include the entity tag of the resource? Most clients send a single
+     * entity tag so that case is checked without tokenizing the header.
+     */
+    private static boolean matchETag(String headerValue, String eTag) {
+        if (headerValue.indexOf(',') == -1) {
+            return headerValue.trim().equals(eTag);
+        }
+        StringTokenizer commaTokenizer = new StringTokenizer(headerValue, ",");
+        while (commaTokenizer.hasMoreTokens()) {
+            if (commaTokenizer.nextToken().trim().equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Find the compressed version of a resource, if any, to serve to the user
+     * agent. This is the most preferred of the precompressed files present
+     * alongside the resource and accepted by the user agent or, if there are
+     * none and compressStatic is enabled, the resource compressed with gzip by
+     * the resources cache. If a compressed version is returned, the
+     * Content-Encoding header is set. A Vary header is added if a compressed
+     * version is available, whether or not it is used.
+     *
+     * @param request       The servlet request we are processing
+     * @param response      The servlet response we are creating
+     * @param path          The path of the resource
+     * @param resource      The resource
+     * @param contentType   The content type of the resource
+     * @return the compressed version of the resource or <code>null</code> if
+     *         the resource should be served as is
+     */
+    protected WebResource getCompressedResource(HttpServletRequest request,
+            HttpServletResponse response, String path, WebResource resource,
+            String contentType) {
+
+        boolean available = false;
+        WebResource result = null;
+        String resultEncoding = null;
+        double resultQuality = 0;
+
+        if (precompressedFormats.length > 0 && !isPrecompressedPath(path)) {
+            for (CompressionFormat format : precompressedFormats) {
+                WebResource precompressed =
+                        resources.getResource(path + format.extension);
+                if (!precompressed.exists() || !precompressed.isFile()) {
+                    continue;
+                }
+                available = true;
+                double quality = getAcceptEncodingQuality(request, format.encoding);
+                if (quality > resultQuality) {
+                    result = precompressed;
+                    resultEncoding = format.encoding;
+                    resultQuality = quality;
+                }
+            }
+        }
+
+        if (!available && compressStatic &&
+                resource instanceof CachedResource &&
+                resource.getContentLength() >= compressionMinSize &&
+                isCompressable(contentType)) {
+            WebResource compressed =
+                    ((CachedResource) resource).getGzippedResource();
+            if (compressed != null) {
+                available = true;
+                if (getAcceptEncodingQuality(request, "gzip") > 0) {
+                    result = compressed;
+                    resultEncoding = "gzip";
+                }
+            }
+        }
+
+        if (available) {
+            response.addHeader("Vary", "accept-encoding");
+        }
+        if (result != null) {
+            response.addHeader("Content-Encoding", resultEncoding);
+        }
+        return result;
+    }
+
+
+    private boolean isPrecompressedPath(String path) {
+        for (CompressionFormat format : precompressedFormats) {
+            if (path.endsWith(format.extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private boolean isCompressable(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int semicolon = contentType.indexOf(';');
+        String mimeType = (semicolon == -1) ?
+                contentType : contentType.substring(0, semicolon);
+        mimeType = mimeType.trim();
+        for (String compressableMimeType : compressableMimeTypes) {
+            if (compressableMimeType.equalsIgnoreCase(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Parse the value of the precompressed initialisation parameter. This is
+     * either a boolean, where <code>true</code> enables br and gzip, or a
+     * comma separated list of encoding=extension pairs in order of preference.
+     */
+    private static CompressionFormat[] parseCompressionFormats(String value) {
+        if ("false".equalsIgnoreCase(value)) {
+            return new CompressionFormat[0];
+        }
+        if ("true".equalsIgnoreCase(value)) {
+            return new CompressionFormat[] {
+                    new CompressionFormat(".br", "br"),
+                    new CompressionFormat(".gz", "gzip") };
+        }
+        ArrayList<CompressionFormat> formats = new ArrayList<>();
+        for (String pair : value.split(",")) {
+            int equals = pair.indexOf('=');
+            if (equals < 1 || equals == pair.length() - 1) {
+                throw new IllegalArgumentException(
+                        sm.getString("defaultServlet.invalidPrecompressed", value));
+            }
+            formats.add(new CompressionFormat(
+                    pair.substring(equals + 1).trim(),
+                    pair.substring(0, equals).trim()));
+        }
+        return formats.toArray(new CompressionFormat[formats.size()]);
+    }
+
+
+    /**
+     * The quality value of the content coding in the Accept-Encoding headers
+     * of the request, which is zero if the coding is not acceptable.
+     */
+    private static double getAcceptEncodingQuality(HttpServletRequest request,
+            String encoding) {
+        double wildcardQuality = 0;
+        Enumeration<String> headers = request.getHeaders("Accept-Encoding");
+        while (headers.hasMoreElements()) {
+            String header = headers.nextElement();
+            for (String element : header.split(",")) {
+                String[] parts = element.split(";");
+                String coding = parts[0].trim();
+                double quality = 1;
+                // The quality is not necessarily the first parameter
+                for (int i = 1; i < parts.length; i++) {
+                    int equals = parts[i].indexOf('=');
+                    if (equals == -1 || !"q".equalsIgnoreCase(
+                            parts[i].substring(0, equals).trim())) {
+                        continue;
+                    }
+                    try {
+                        quality = Double.parseDouble(
+                                parts[i].substring(equals + 1).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                    break;
+                }
+                if (coding.equalsIgnoreCase(encoding)) {
+                    return quality;
+                }
+                if ("*".equals(coding)) {
+                    wildcardQuality = quality;
+                }
+            }
+        }
+        return wildcardQuality;
+    }
+
+
     /**
      * Check if the user agent supports gzip encoding.
      *
      * @param request   The servlet request we are processing
      * @return boolean true if the user agent supports gzip encoding,
      * and false if the user agent does not support gzip encoding
+     *
+     * @deprecated  Unused. Replaced by
+     *              {@link #getCompressedResource(HttpServletRequest,
+     *              HttpServletResponse, String, WebResource, String)}.
+     *              Will be removed in Tomcat 9.
      */
+    @Deprecated
     protected boolean checkIfGzip(HttpServletRequest request) {
         Enumeration<String> headers = request.getHeaders("Accept-Encoding");
         while (headers.hasMoreElements()) {
@@ -1983,19 +2220,7 @@ public class DefaultServlet extends HttpServlet {
                       Range range)
         throws IOException {
 
-        IOException exception = null;
-
-        InputStream resourceInputStream = resource.getInputStream();
-        InputStream istream =
-            new BufferedInputStream(resourceInputStream, input);
-        exception = copyRange(istream, ostream, range.start, range.end);
-
-        // Clean up the input stream
-        istream.close();
-
-        // Rethrow any exception that has occurred
-        if (exception != null)
-            throw exception;
+        copyRanges(resource, ostream, Collections.singletonList(range), null);
 
     }
 
@@ -2016,41 +2241,173 @@ public class DefaultServlet extends HttpServlet {
                       Iterator<Range> ranges, String contentType)
         throws IOException {
 
-        IOException exception = null;
+        List<Range> rangeList = new ArrayList<>();
+        while (ranges.hasNext()) {
+            rangeList.add(ranges.next());
+        }
+        copyRanges(resource, ostream, rangeList,
+                getPartHeaders(rangeList, contentType));
 
-        while ( (exception == null) && (ranges.hasNext()) ) {
+    }
 
-            InputStream resourceInputStream = resource.getInputStream();
-            InputStream istream =
-                new BufferedInputStream(resourceInputStream, input);
 
-            Range currentRange = ranges.next();
+    /**
+     * Copy ranges of the resource to the output stream. The content of the
+     * resource is only opened once, however many ranges there are. It is
+     * taken from the resources cache if it is held there, else read with
+     * positioned reads from the file if there is one, else read from a single
+     * input stream unless the ranges are out of order.
+     *
+     * @param resource      The source resource
+     * @param ostream       The output stream to write to
+     * @param ranges        The ranges the client wanted to retrieve
+     * @param partHeaders   The headers to write before each range of a
+     *                      multipart response or <code>null</code> for a
+     *                      single range
+     * @exception IOException if an input/output error occurs
+     */
+    protected void copyRanges(WebResource resource,
+            ServletOutputStream ostream, List<Range> ranges,
+            byte[][] partHeaders) throws IOException {
 
-            // Writing MIME header.
-            ostream.println();
-            ostream.println("--" + mimeSeparation);
-            if (contentType != null)
-                ostream.println("Content-Type: " + contentType);
-            ostream.println("Content-Range: bytes " + currentRange.start
-                           + "-" + currentRange.end + "/"
-                           + currentRange.length);
-            ostream.println();
+        byte[] content = null;
+        if (resource instanceof CachedResource) {
+            content = resource.getContent();
+        }
+        String canonicalPath = null;
+        if (content == null) {
+            canonicalPath = resource.getCanonicalPath();
+        }
 
-            // Printing content
-            exception = copyRange(istream, ostream, currentRange.start,
-                                  currentRange.end);
+        byte[] buffer = null;
+        if (content == null) {
+            buffer = new byte[input];
+        }
 
-            istream.close();
+        if (content != null) {
+            for (int i = 0; i < ranges.size(); i++) {
+                Range range = ranges.get(i);
+                writePartHeader(ostream, partHeaders, i);
+                ostream.write(content, (int) range.start,
+                        (int) (range.end - range.start + 1));
+            }
+        } else if (canonicalPath != null) {
+            try (FileChannel channel = FileChannel.open(
+                    new File(canonicalPath).toPath(), StandardOpenOption.READ)) {
+                ByteBuffer bb = ByteBuffer.wrap(buffer);
+                for (int i = 0; i < ranges.size(); i++) {
+                    Range range = ranges.get(i);
+                    writePartHeader(ostream, partHeaders, i);
+                    long position = range.start;
+                    long remaining = range.end - range.start + 1;
+                    while (remaining > 0) {
+                        bb.clear();
+                        bb.limit((int) Math.min(buffer.length, remaining));
+                        int len = channel.read(bb, position);
+                        if (len < 0) {
+                            throw new EOFException();
+                        }
+                        ostream.write(buffer, 0, len);
+                        position += len;
+                        remaining -= len;
+                    }
+                }
+            }
+        } else {
+            InputStream istream = null;
+            long position = 0;
+            try {
+                for (int i = 0; i < ranges.size(); i++) {
+                    Range range = ranges.get(i);
+                    if (istream == null || range.start < position) {
+                        if (istream != null) {
+                            istream.close();
+                        }
+                        istream = resource.getInputStream();
+                        position = 0;
+                    }
+                    writePartHeader(ostream, partHeaders, i);
+                    while (position < range.start) {
+                        long skipped = istream.skip(range.start - position);
+                        if (skipped <= 0) {
+                            if (istream.read() == -1) {
+                                throw new IOException(sm.getString(
+                                        "defaultservlet.skipfail",
+                                        Long.valueOf(position),
+                                        Long.valueOf(range.start)));
+                            }
+                            skipped = 1;
+                        }
+                        position += skipped;
+                    }
+                    long remaining = range.end - range.start + 1;
+                    while (remaining > 0) {
+                        int len = istream.read(buffer, 0,
+                                (int) Math.min(buffer.length, remaining));
+                        if (len < 0) {
+                            throw new EOFException();
+                        }
+                        ostream.write(buffer, 0, len);
+                        position += len;
+                        remaining -= len;
+                    }
+                }
+            } finally {
+                if (istream != null) {
+                    istream.close();
+                }
+            }
+        }
 
+        if (partHeaders != null) {
+            ostream.write(MULTIPART_TRAILER);
         }
+    }
 
-        ostream.println();
-        ostream.print("--" + mimeSeparation + "--");
 
-        // Rethrow any exception that has occurred
-        if (exception != null)
-            throw exception;
+    private static void writePartHeader(ServletOutputStream ostream,
+            byte[][] partHeaders, int index) throws IOException {
+        if (partHeaders != null) {
+            ostream.write(partHeaders[index]);
+        }
+    }
+
 
+    /**
+     * Generate the headers that precede each range of a multipart/byteranges
+     * response.
+     *
+     * @param ranges        The ranges the client wanted to retrieve
+     * @param contentType   Content type of the resource
+     * @return the bytes to write before each range
+     */
+    protected byte[][] getPartHeaders(List<Range> ranges, String contentType) {
+        byte[][] result = new byte[ranges.size()][];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < result.length; i++) {
+            Range range = ranges.get(i);
+            sb.setLength(0);
+            sb.append("\r\n--").append(mimeSeparation).append("\r\n");
+            if (contentType != null) {
+                sb.append("Content-Type: ").append(contentType).append("\r\n");
+            }
+            sb.append("Content-Range: bytes ").append(range.start).append('-');
+            sb.append(range.end).append('/').append(range.length);
+            sb.append("\r\n\r\n");
+            result[i] = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return result;
+    }
+
+
+    private static long getMultipartLength(List<Range> ranges,
+            byte[][] partHeaders) {
+        long result = MULTIPART_TRAILER.length;
+        for (int i = 0; i < partHeaders.length; i++) {
+            Range range = ranges.get(i);
+            result += partHeaders[i].length + range.end - range.start + 1;
+        }
+        return result;
     }
 
 
@@ -2176,6 +2533,18 @@ public class DefaultServlet extends HttpServlet {
     }
 
 
+    protected static class CompressionFormat {
+
+        public final String extension;
+        public final String encoding;
+
+        public CompressionFormat(String extension, String encoding) {
+            this.extension = extension;
+            this.encoding = encoding;
+        }
+    }
+
+
     protected static class Range {
 
         public long start;
@@ -0,0 +1,405 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpSessionActivationListener;
+import javax.servlet.http.HttpSessionBindingListener;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Loader;
+import org.apache.catalina.Manager;
+import org.apache.catalina.util.CustomObjectInputStream;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * A {@link SessionSerializer} that writes String, Boolean, Character and
+ * primitive wrapper attribute values in binary form and every other value with
+ * Java serialization.
+ * <p>
+ * By default all the values that are not written in binary form are
+ * serialized through a single object stream after the other attributes, so the
+ * description of each class is written once per session and an object that is
+ * referenced from more than one attribute is restored as one object.
+ * <p>
+ * When <code>lazy</code> is set, each such value is serialized on its own so
+ * that it can be deserialized on its own, and the class names are written once
+ * per session in a dictionary. This costs space as class descriptions are
+ * repeated and an object referenced from more than one attribute is restored
+ * as separate copies. The values are not deserialized until they are used,
+ * unless they are session activation or binding listeners. A value that has
+ * not been used by the time the session is next serialized is written out
+ * again without being deserialized.
+ */
+public class CompactSessionSerializer implements SessionSerializer {
+
+    private static final StringManager sm =
+            StringManager.getManager(Constants.Package);
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_BYTE = 3;
+    private static final byte TYPE_CHARACTER = 4;
+    private static final byte TYPE_SHORT = 5;
+    private static final byte TYPE_INTEGER = 6;
+    private static final byte TYPE_LONG = 7;
+    private static final byte TYPE_FLOAT = 8;
+    private static final byte TYPE_DOUBLE = 9;
+    private static final byte TYPE_OBJECT = 10;
+
+    // Longer Strings might not fit in the modified UTF-8 used by writeUTF()
+    private static final int MAX_UTF_LENGTH = 65535 / 3;
+
+
+    /**
+     * Should values that are serialized with Java serialization be
+     * deserialized when they are first used rather than when the session is
+     * read?
+     */
+    private boolean lazy = false;
+
+    public boolean getLazy() {
+        return lazy;
+    }
+
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+
+    @Override
+    public void writeAttributes(StandardSession session, ObjectOutput stream,
+            List<String> names, List<Object> values) throws IOException {
+
+        // Serialize the values that need it first, so that any that can't be
+        // serialized can be left out
+        int n = names.size();
+        Object[] encoded = values.toArray(new Object[n]);
+        byte[] objects = null;
+        if (lazy) {
+            for (int i = 0; i < n; i++) {
+                Object value = encoded[i];
+                if (getType(value) == TYPE_OBJECT &&
+                        !(value instanceof SerializedAttribute)) {
+                    try {
+                        encoded[i] = new SerializedAttribute(
+                                value.getClass().getName(), serialize(value),
+                                null);
+                    } catch (NotSerializableException e) {
+                        logNotSerializable(session, names.get(i), e);
+                        encoded[i] = null;
+                    }
+                }
+            }
+        } else {
+            objects = serializeObjects(session, names, encoded);
+        }
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (encoded[i] != null) {
+                count++;
+            }
+        }
+        stream.writeInt(count);
+        stream.writeBoolean(lazy);
+        Map<String,Integer> classNames = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Object value = encoded[i];
+            if (value == null) {
+                continue;
+            }
+            stream.writeUTF(names.get(i));
+            byte type = getType(value);
+            stream.writeByte(type);
+            switch (type) {
+                case TYPE_STRING:
+                    stream.writeUTF((String) value);
+                    break;
+                case TYPE_BOOLEAN:
+                    stream.writeBoolean(((Boolean) value).booleanValue());
+                    break;
+                case TYPE_BYTE:
+                    stream.writeByte(((Byte) value).byteValue());
+                    break;
+                case TYPE_CHARACTER:
+                    stream.writeChar(((Character) value).charValue());
+                    break;
+                case TYPE_SHORT:
+                    stream.writeShort(((Short) value).shortValue());
+                    break;
+                case TYPE_INTEGER:
+                    stream.writeInt(((Integer) value).intValue());
+                    break;
+                case TYPE_LONG:
+                    stream.writeLong(((Long) value).longValue());
+                    break;
+                case TYPE_FLOAT:
+                    stream.writeFloat(((Float) value).floatValue());
+                    break;
+                case TYPE_DOUBLE:
+                    stream.writeDouble(((Double) value).doubleValue());
+                    break;
+                default:
+                    if (!lazy) {
+                        // The value is in the objects written below
+                        break;
+                    }
+                    SerializedAttribute attribute = (SerializedAttribute) value;
+                    String className = attribute.getClassName();
+                    Integer index = classNames.get(className);
+                    if (index == null) {
+                        stream.writeInt(classNames.size());
+                        stream.writeUTF(className);
+                        classNames.put(className,
+                                Integer.valueOf(classNames.size()));
+                    } else {
+                        stream.writeInt(index.intValue());
+                    }
+                    byte[] data = attribute.getData();
+                    stream.writeInt(data.length);
+                    stream.write(data);
+            }
+        }
+        if (objects != null) {
+            stream.writeInt(objects.length);
+            stream.write(objects);
+        }
+    }
+
+
+    @Override
+    public void readAttributes(StandardSession session, ObjectInput stream,
+            Map<String,Object> attributes)
+            throws ClassNotFoundException, IOException {
+
+        ClassLoader classLoader = getClassLoader(session);
+        List<String> classNames = new ArrayList<>();
+        List<String> objectNames = new ArrayList<>();
+        int n = stream.readInt();
+        boolean separate = stream.readBoolean();
+        for (int i = 0; i < n; i++) {
+            String name = stream.readUTF();
+            Object value;
+            byte type = stream.readByte();
+            switch (type) {
+                case TYPE_STRING:
+                    value = stream.readUTF();
+                    break;
+                case TYPE_BOOLEAN:
+                    value = Boolean.valueOf(stream.readBoolean());
+                    break;
+                case TYPE_BYTE:
+                    value = Byte.valueOf(stream.readByte());
+                    break;
+                case TYPE_CHARACTER:
+                    value = Character.valueOf(stream.readChar());
+                    break;
+                case TYPE_SHORT:
+                    value = Short.valueOf(stream.readShort());
+                    break;
+                case TYPE_INTEGER:
+                    value = Integer.valueOf(stream.readInt());
+                    break;
+                case TYPE_LONG:
+                    value = Long.valueOf(stream.readLong());
+                    break;
+                case TYPE_FLOAT:
+                    value = Float.valueOf(stream.readFloat());
+                    break;
+                case TYPE_DOUBLE:
+                    value = Double.valueOf(stream.readDouble());
+                    break;
+                case TYPE_OBJECT:
+                    if (!separate) {
+                        // Read once all the names have been read
+                        objectNames.add(name);
+                        continue;
+                    }
+                    int index = stream.readInt();
+                    if (index == classNames.size()) {
+                        classNames.add(stream.readUTF());
+                    } else if (index < 0 || index > classNames.size()) {
+                        throw new IOException(sm.getString(
+                                "compactSessionSerializer.invalidClassIndex",
+                                Integer.valueOf(index)));
+                    }
+                    String className = classNames.get(index);
+                    byte[] data = new byte[stream.readInt()];
+                    stream.readFully(data);
+                    SerializedAttribute attribute = new SerializedAttribute(
+                            className, data, classLoader);
+                    if (lazy && !isListener(className, classLoader)) {
+                        value = attribute;
+                    } else {
+                        value = attribute.deserialize();
+                    }
+                    break;
+                default:
+                    throw new IOException(sm.getString(
+                            "compactSessionSerializer.invalidType",
+                            Byte.valueOf(type)));
+            }
+            attributes.put(name, value);
+        }
+
+        if (!objectNames.isEmpty()) {
+            byte[] data = new byte[stream.readInt()];
+            stream.readFully(data);
+            try (ObjectInputStream ois = new CustomObjectInputStream(
+                    new ByteArrayInputStream(data), classLoader)) {
+                for (String name : objectNames) {
+                    attributes.put(name, ois.readObject());
+                }
+            }
+        }
+    }
+
+
+    private static byte getType(Object value) {
+        if (value instanceof String) {
+            if (((String) value).length() <= MAX_UTF_LENGTH) {
+                return TYPE_STRING;
+            }
+            return TYPE_OBJECT;
+        }
+        if (value instanceof Boolean) {
+            return TYPE_BOOLEAN;
+        }
+        if (value instanceof Byte) {
+            return TYPE_BYTE;
+        }
+        if (value instanceof Character) {
+            return TYPE_CHARACTER;
+        }
+        if (value instanceof Short) {
+            return TYPE_SHORT;
+        }
+        if (value instanceof Integer) {
+            return TYPE_INTEGER;
+        }
+        if (value instanceof Long) {
+            return TYPE_LONG;
+        }
+        if (value instanceof Float) {
+            return TYPE_FLOAT;
+        }
+        if (value instanceof Double) {
+            return TYPE_DOUBLE;
+        }
+        return TYPE_OBJECT;
+    }
+
+
+    /*
+     * Write all the values that are not written in binary form through one
+     * stream, so that each class description is written once and an object
+     * that is referenced from more than one attribute is restored as a single
+     * object. A value that can't be serialized is removed from encoded and the
+     * remaining values are written again.
+     *
+     * Returns null if there are no such values.
+     */
+    private static byte[] serializeObjects(StandardSession session,
+            List<String> names, Object[] encoded) throws IOException {
+        while (true) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            int current = -1;
+            int written = 0;
+            try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                for (int i = 0; i < encoded.length; i++) {
+                    if (encoded[i] != null &&
+                            getType(encoded[i]) == TYPE_OBJECT) {
+                        current = i;
+                        oos.writeObject(encoded[i]);
+                        written++;
+                    }
+                }
+                current = -1;
+            } catch (NotSerializableException e) {
+                if (current < 0) {
+                    throw e;
+                }
+                logNotSerializable(session, names.get(current), e);
+                encoded[current] = null;
+                continue;
+            }
+            return written == 0 ? null : bos.toByteArray();
+        }
+    }
+
+
+    private static void logNotSerializable(StandardSession session,
+            String name, NotSerializableException e) {
+        session.getManager().getContext().getLogger().warn(
+                sm.getString("standardSession.notSerializable", name,
+                        session.getIdInternal()), e);
+    }
+
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(value);
+        }
+        return bos.toByteArray();
+    }
+
+
+    /*
+     * Listeners have to be deserialized when the session is read so that they
+     * are notified when the session is activated, passivated or expired.
+     */
+    private static boolean isListener(String className,
+            ClassLoader classLoader) {
+        try {
+            Class<?> clazz = Class.forName(className, false, classLoader);
+            return HttpSessionActivationListener.class.isAssignableFrom(clazz)
+                    || HttpSessionBindingListener.class.isAssignableFrom(clazz);
+        } catch (ClassNotFoundException e) {
+            // Report it if the value is used
+            return false;
+        }
+    }
+
+
+    private static ClassLoader getClassLoader(StandardSession session) {
+        Manager manager = session.getManager();
+        if (manager != null) {
+            Context context = manager.getContext();
+            if (context != null) {
+                Loader loader = context.getLoader();
+                if (loader != null && loader.getClassLoader() != null) {
+                    return loader.getClassLoader();
+                }
+            }
+        }
+        return Thread.currentThread().getContextClassLoader();
+    }
+}
@@ -31,7 +31,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -110,6 +114,56 @@ public class JDBCStore extends StoreBase {
      */
     protected DataSource dataSource = null;
 
+    // ------------------------------------------------------------- Write-behind
+
+    /**
+     * The maximum time in milliseconds that a session saved to or removed
+     * from this Store waits before it is written to the database. If zero or
+     * less, sessions are written as they are saved and removed.
+     */
+    protected int writeBehindDelay = 0;
+
+    /**
+     * The maximum number of sessions written to the database in one batch.
+     */
+    protected int batchSize = 100;
+
+    /**
+     * The sessions that have been saved or removed and are waiting to be
+     * written, keyed by session id.
+     */
+    private final ConcurrentMap<String,PendingWrite> pendingWrites =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The sessions that are being written by the current flush.
+     */
+    private final ConcurrentMap<String,PendingWrite> flushingWrites =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Serializes flushes so that writes of the same session are made in the
+     * order in which it was saved.
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * Serializes the saves of a session when a DataSource is used, so that
+     * concurrent saves of the same session do not interleave their statements.
+     * Sessions are spread over a fixed number of locks.
+     */
+    private final Object[] saveLocks = createLocks(64);
+
+    /**
+     * The background thread that flushes the queued writes.
+     */
+    private Thread writeBehindThread = null;
+
+    /**
+     * Signals the background thread to stop.
+     */
+    private volatile boolean writeBehindDone = false;
+
     // ------------------------------------------------------------- Table & cols
 
     /**
@@ -457,6 +511,51 @@ public class JDBCStore extends StoreBase {
         return this.dataSourceName;
     }
 
+    /**
+     * Set the maximum time in milliseconds that saved and removed sessions
+     * wait before they are written to the database.
+     *
+     * @param writeBehindDelay The delay, or zero to write sessions as they
+     *                         are saved and removed
+     */
+    public void setWriteBehindDelay(int writeBehindDelay) {
+        int oldWriteBehindDelay = this.writeBehindDelay;
+        this.writeBehindDelay = writeBehindDelay;
+        support.firePropertyChange("writeBehindDelay",
+                Integer.valueOf(oldWriteBehindDelay),
+                Integer.valueOf(this.writeBehindDelay));
+    }
+
+    /**
+     * Return the maximum time in milliseconds that saved and removed sessions
+     * wait before they are written to the database.
+     */
+    public int getWriteBehindDelay() {
+        return this.writeBehindDelay;
+    }
+
+    /**
+     * Set the maximum number of sessions written to the database in one
+     * batch.
+     *
+     * @param batchSize The number of sessions
+     */
+    public void setBatchSize(int batchSize) {
+        int oldBatchSize = this.batchSize;
+        this.batchSize = batchSize;
+        support.firePropertyChange("batchSize",
+                Integer.valueOf(oldBatchSize),
+                Integer.valueOf(this.batchSize));
+    }
+
+    /**
+     * Return the maximum number of sessions written to the database in one
+     * batch.
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
     // --------------------------------------------------------- Public Methods
 
     /**
@@ -468,6 +567,29 @@ public class JDBCStore extends StoreBase {
      */
     @Override
     public String[] keys() throws IOException {
+        flush();
+
+        if (dataSourceName != null) {
+            try (Connection _conn = getConnection()) {
+                if (_conn == null) {
+                    return (new String[0]);
+                }
+                try (PreparedStatement stmt = _conn.prepareStatement(getKeysSql())) {
+                    stmt.setString(1, getName());
+                    try (ResultSet rst = stmt.executeQuery()) {
+                        ArrayList<String> tmpkeys = new ArrayList<>();
+                        while (rst.next()) {
+                            tmpkeys.add(rst.getString(1));
+                        }
+                        return tmpkeys.toArray(new String[tmpkeys.size()]);
+                    }
+                }
+            } catch (SQLException e) {
+                manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+                return (new String[0]);
+            }
+        }
+
         String keys[] = null;
         synchronized (this) {
             int numberOfTries = 2;
@@ -479,10 +601,7 @@ public class JDBCStore extends StoreBase {
                 }
                 try {
                     if (preparedKeysSql == null) {
-                        String keysSql = "SELECT " + sessionIdCol + " FROM "
-                                + sessionTable + " WHERE " + sessionAppCol
-                                + " = ?";
-                        preparedKeysSql = _conn.prepareStatement(keysSql);
+                        preparedKeysSql = _conn.prepareStatement(getKeysSql());
                     }
 
                     preparedKeysSql.setString(1, getName());
@@ -523,6 +642,27 @@ public class JDBCStore extends StoreBase {
     public int getSize() throws IOException {
         int size = 0;
 
+        flush();
+
+        if (dataSourceName != null) {
+            try (Connection _conn = getConnection()) {
+                if (_conn == null) {
+                    return (size);
+                }
+                try (PreparedStatement stmt = _conn.prepareStatement(getSizeSql())) {
+                    stmt.setString(1, getName());
+                    try (ResultSet rst = stmt.executeQuery()) {
+                        if (rst.next()) {
+                            size = rst.getInt(1);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+            }
+            return size;
+        }
+
         synchronized (this) {
             int numberOfTries = 2;
             while (numberOfTries > 0) {
@@ -534,10 +674,7 @@ public class JDBCStore extends StoreBase {
 
                 try {
                     if (preparedSizeSql == null) {
-                        String sizeSql = "SELECT COUNT(" + sessionIdCol
-                                + ") FROM " + sessionTable + " WHERE "
-                                + sessionAppCol + " = ?";
-                        preparedSizeSql = _conn.prepareStatement(sizeSql);
+                        preparedSizeSql = _conn.prepareStatement(getSizeSql());
                     }
 
                     preparedSizeSql.setString(1, getName());
@@ -573,11 +710,40 @@ public class JDBCStore extends StoreBase {
     @Override
     public Session load(String id) throws ClassNotFoundException, IOException {
         StandardSession _session = null;
-        Loader loader = null;
-        ClassLoader classLoader = null;
-        ObjectInputStream ois = null;
-        BufferedInputStream bis = null;
-        org.apache.catalina.Context context = manager.getContext();
+
+        // Sessions that have not been written yet are loaded from the queue
+        PendingWrite write = pendingWrites.get(id);
+        if (write == null) {
+            write = flushingWrites.get(id);
+        }
+        if (write != null) {
+            if (write.data == null) {
+                return (null);
+            }
+            return readSession(id, new ByteArrayInputStream(write.data));
+        }
+
+        if (dataSourceName != null) {
+            try (Connection _conn = getConnection()) {
+                if (_conn == null) {
+                    return (null);
+                }
+                try (PreparedStatement stmt = _conn.prepareStatement(getLoadSql())) {
+                    stmt.setString(1, id);
+                    stmt.setString(2, getName());
+                    try (ResultSet rst = stmt.executeQuery()) {
+                        if (rst.next()) {
+                            _session = readSession(id, rst.getBinaryStream(2));
+                        } else if (manager.getContext().getLogger().isDebugEnabled()) {
+                            manager.getContext().getLogger().debug(getStoreName() + ": No persisted data object found");
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+            }
+            return (_session);
+        }
 
         synchronized (this) {
             int numberOfTries = 2;
@@ -587,45 +753,17 @@ public class JDBCStore extends StoreBase {
                     return (null);
                 }
 
-                ClassLoader oldThreadContextCL = Thread.currentThread().getContextClassLoader();
                 try {
                     if (preparedLoadSql == null) {
-                        String loadSql = "SELECT " + sessionIdCol + ", "
-                                + sessionDataCol + " FROM " + sessionTable
-                                + " WHERE " + sessionIdCol + " = ? AND "
-                                + sessionAppCol + " = ?";
-                        preparedLoadSql = _conn.prepareStatement(loadSql);
+                        preparedLoadSql = _conn.prepareStatement(getLoadSql());
                     }
 
                     preparedLoadSql.setString(1, id);
                     preparedLoadSql.setString(2, getName());
                     try (ResultSet rst = preparedLoadSql.executeQuery()) {
                         if (rst.next()) {
-                            bis = new BufferedInputStream(rst.getBinaryStream(2));
-
-                            if (context != null) {
-                                loader = context.getLoader();
-                            }
-                            if (loader != null) {
-                                classLoader = loader.getClassLoader();
-                            }
-                            if (classLoader != null) {
-                                Thread.currentThread().setContextClassLoader(classLoader);
-                                ois = new CustomObjectInputStream(bis,
-                                        classLoader);
-                            } else {
-                                ois = new ObjectInputStream(bis);
-                            }
-
-                            if (manager.getContext().getLogger().isDebugEnabled()) {
-                                manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".loading",
-                                        id, sessionTable));
-                            }
-
-                            _session = (StandardSession) manager.createEmptySession();
-                            _session.readObjectData(ois);
-                            _session.setManager(manager);
-                          } else if (manager.getContext().getLogger().isDebugEnabled()) {
+                            _session = readSession(id, rst.getBinaryStream(2));
+                        } else if (manager.getContext().getLogger().isDebugEnabled()) {
                             manager.getContext().getLogger().debug(getStoreName() + ": No persisted data object found");
                         }
                         // Break out after the finally block
@@ -636,14 +774,6 @@ public class JDBCStore extends StoreBase {
                     if (dbConnection != null)
                         close(dbConnection);
                 } finally {
-                    if (ois != null) {
-                        try {
-                            ois.close();
-                        } catch (IOException e) {
-                            // Ignore
-                        }
-                    }
-                    Thread.currentThread().setContextClassLoader(oldThreadContextCL);
                     release(_conn);
                 }
                 numberOfTries--;
@@ -665,27 +795,44 @@ public class JDBCStore extends StoreBase {
     @Override
     public void remove(String id) throws IOException {
 
-        synchronized (this) {
-            int numberOfTries = 2;
-            while (numberOfTries > 0) {
-                Connection _conn = getConnection();
-
+        if (writeBehindDelay > 0) {
+            pendingWrites.put(id, PendingWrite.REMOVED);
+        } else if (dataSourceName != null) {
+            try (Connection _conn = getConnection()) {
                 if (_conn == null) {
                     return;
                 }
+                try (PreparedStatement stmt = _conn.prepareStatement(getRemoveSql())) {
+                    stmt.setString(1, id);
+                    stmt.setString(2, getName());
+                    stmt.execute();
+                }
+            } catch (SQLException e) {
+                manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+            }
+        } else {
+            synchronized (this) {
+                int numberOfTries = 2;
+                while (numberOfTries > 0) {
+                    Connection _conn = getConnection();
+
+                    if (_conn == null) {
+                        return;
+                    }
 
-                try {
-                    remove(id, _conn);
-                    // Break out after the finally block
-                    numberOfTries = 0;
-                } catch (SQLException e) {
-                    manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
-                    if (dbConnection != null)
-                        close(dbConnection);
-                } finally {
-                    release(_conn);
+                    try {
+                        remove(id, _conn);
+                        // Break out after the finally block
+                        numberOfTries = 0;
+                    } catch (SQLException e) {
+                        manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+                        if (dbConnection != null)
+                            close(dbConnection);
+                    } finally {
+                        release(_conn);
+                    }
+                    numberOfTries--;
                 }
-                numberOfTries--;
             }
         }
 
@@ -705,10 +852,7 @@ public class JDBCStore extends StoreBase {
      */
     private void remove(String id, Connection _conn) throws SQLException {
         if (preparedRemoveSql == null) {
-            String removeSql = "DELETE FROM " + sessionTable
-                    + " WHERE " + sessionIdCol + " = ?  AND "
-                    + sessionAppCol + " = ?";
-            preparedRemoveSql = _conn.prepareStatement(removeSql);
+            preparedRemoveSql = _conn.prepareStatement(getRemoveSql());
         }
 
         preparedRemoveSql.setString(1, id);
@@ -724,6 +868,26 @@ public class JDBCStore extends StoreBase {
     @Override
     public void clear() throws IOException {
 
+        // Waiting for a flush in progress stops it writing after the delete
+        synchronized (flushLock) {
+            pendingWrites.clear();
+        }
+
+        if (dataSourceName != null) {
+            try (Connection _conn = getConnection()) {
+                if (_conn == null) {
+                    return;
+                }
+                try (PreparedStatement stmt = _conn.prepareStatement(getClearSql())) {
+                    stmt.setString(1, getName());
+                    stmt.execute();
+                }
+            } catch (SQLException e) {
+                manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+            }
+            return;
+        }
+
         synchronized (this) {
             int numberOfTries = 2;
             while (numberOfTries > 0) {
@@ -734,9 +898,7 @@ public class JDBCStore extends StoreBase {
 
                 try {
                     if (preparedClearSql == null) {
-                        String clearSql = "DELETE FROM " + sessionTable
-                             + " WHERE " + sessionAppCol + " = ?";
-                        preparedClearSql = _conn.prepareStatement(clearSql);
+                        preparedClearSql = _conn.prepareStatement(getClearSql());
                     }
 
                     preparedClearSql.setString(1, getName());
@@ -763,61 +925,98 @@ public class JDBCStore extends StoreBase {
      */
     @Override
     public void save(Session session) throws IOException {
-        ByteArrayOutputStream bos = null;
 
-        synchronized (this) {
-            int numberOfTries = 2;
-            while (numberOfTries > 0) {
-                Connection _conn = getConnection();
-                if (_conn == null) {
-                    return;
-                }
-
-                try {
-                    // If sessions already exist in DB, remove and insert again.
-                    // TODO:
-                    // * Check if ID exists in database and if so use UPDATE.
-                    remove(session.getIdInternal(), _conn);
-
-                    bos = new ByteArrayOutputStream();
-                    try (ObjectOutputStream oos =
-                            new ObjectOutputStream(new BufferedOutputStream(bos))) {
-                        ((StandardSession) session).writeObjectData(oos);
+        if (writeBehindDelay > 0) {
+            // Later saves of the same session replace this one in the queue
+            pendingWrites.put(session.getIdInternal(), new PendingWrite(
+                    serialize(session), session.isValid(),
+                    session.getMaxInactiveInterval(),
+                    session.getLastAccessedTime()));
+        } else if (dataSourceName != null) {
+            byte[] obs = serialize(session);
+            String id = session.getIdInternal();
+            synchronized (saveLocks[(id.hashCode() & 0x7FFFFFFF) % saveLocks.length]) {
+                try (Connection _conn = getConnection()) {
+                    if (_conn == null) {
+                        return;
                     }
-                    byte[] obs = bos.toByteArray();
-                    int size = obs.length;
-                    try (ByteArrayInputStream bis = new ByteArrayInputStream(obs, 0, size);
-                            InputStream in = new BufferedInputStream(bis, size)) {
-                        if (preparedSaveSql == null) {
-                            String saveSql = "INSERT INTO " + sessionTable + " ("
-                               + sessionIdCol + ", " + sessionAppCol + ", "
-                               + sessionDataCol + ", " + sessionValidCol
-                               + ", " + sessionMaxInactiveCol + ", "
-                               + sessionLastAccessedCol
-                               + ") VALUES (?, ?, ?, ?, ?, ?)";
-                           preparedSaveSql = _conn.prepareStatement(saveSql);
+                    // If sessions already exist in DB, remove and insert again
+                    // in the same transaction so that other connections never
+                    // see the session missing or saved twice.
+                    _conn.setAutoCommit(false);
+                    try (PreparedStatement removeStmt = _conn.prepareStatement(getRemoveSql());
+                            PreparedStatement saveStmt = _conn.prepareStatement(getSaveSql())) {
+                        removeStmt.setString(1, id);
+                        removeStmt.setString(2, getName());
+                        removeStmt.execute();
+
+                        saveStmt.setString(1, id);
+                        saveStmt.setString(2, getName());
+                        saveStmt.setBinaryStream(3, new ByteArrayInputStream(obs), obs.length);
+                        saveStmt.setString(4, session.isValid() ? "1" : "0");
+                        saveStmt.setInt(5, session.getMaxInactiveInterval());
+                        saveStmt.setLong(6, session.getLastAccessedTime());
+                        saveStmt.execute();
+                        _conn.commit();
+                    } catch (SQLException e) {
+                        try {
+                            _conn.rollback();
+                        } catch (SQLException e2) {
+                            // Ignore
                         }
-
-                        preparedSaveSql.setString(1, session.getIdInternal());
-                        preparedSaveSql.setString(2, getName());
-                        preparedSaveSql.setBinaryStream(3, in, size);
-                        preparedSaveSql.setString(4, session.isValid() ? "1" : "0");
-                        preparedSaveSql.setInt(5, session.getMaxInactiveInterval());
-                        preparedSaveSql.setLong(6, session.getLastAccessedTime());
-                        preparedSaveSql.execute();
-                        // Break out after the finally block
-                        numberOfTries = 0;
+                        throw e;
+                    } finally {
+                        // The connection goes back to the pool
+                        _conn.setAutoCommit(true);
                     }
                 } catch (SQLException e) {
                     manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
-                    if (dbConnection != null)
-                        close(dbConnection);
-                } catch (IOException e) {
-                    // Ignore
-                } finally {
-                    release(_conn);
                 }
-                numberOfTries--;
+            }
+        } else {
+            synchronized (this) {
+                int numberOfTries = 2;
+                while (numberOfTries > 0) {
+                    Connection _conn = getConnection();
+                    if (_conn == null) {
+                        return;
+                    }
+
+                    try {
+                        // If sessions already exist in DB, remove and insert again.
+                        // TODO:
+                        // * Check if ID exists in database and if so use UPDATE.
+                        remove(session.getIdInternal(), _conn);
+
+                        byte[] obs = serialize(session);
+                        int size = obs.length;
+                        try (ByteArrayInputStream bis = new ByteArrayInputStream(obs, 0, size);
+                                InputStream in = new BufferedInputStream(bis, size)) {
+                            if (preparedSaveSql == null) {
+                               preparedSaveSql = _conn.prepareStatement(getSaveSql());
+                            }
+
+                            preparedSaveSql.setString(1, session.getIdInternal());
+                            preparedSaveSql.setString(2, getName());
+                            preparedSaveSql.setBinaryStream(3, in, size);
+                            preparedSaveSql.setString(4, session.isValid() ? "1" : "0");
+                            preparedSaveSql.setInt(5, session.getMaxInactiveInterval());
+                            preparedSaveSql.setLong(6, session.getLastAccessedTime());
+                            preparedSaveSql.execute();
+                            // Break out after the finally block
+                            numberOfTries = 0;
+                        }
+                    } catch (SQLException e) {
+                        manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+                        if (dbConnection != null)
+                            close(dbConnection);
+                    } catch (IOException e) {
+                        // Ignore
+                    } finally {
+                        release(_conn);
+                    }
+                    numberOfTries--;
+                }
             }
         }
 
@@ -827,6 +1026,52 @@ public class JDBCStore extends StoreBase {
         }
     }
 
+    /**
+     * Write the sessions that have been saved to or removed from this Store
+     * since the last flush to the database, in batches of at most
+     * <code>batchSize</code> sessions. Each batch is written in a single
+     * transaction. The sessions in a batch that fails are queued again to be
+     * written by the next flush unless they have been saved or removed again
+     * in the meantime. This method does nothing unless
+     * <code>writeBehindDelay</code> is greater than zero.
+     */
+    public void flush() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+
+        synchronized (flushLock) {
+            List<String> ids = new ArrayList<>();
+            List<PendingWrite> writes = new ArrayList<>();
+            for (Map.Entry<String,PendingWrite> entry : pendingWrites.entrySet()) {
+                String id = entry.getKey();
+                PendingWrite write = entry.getValue();
+                // Keep the write visible to load() until it has been committed
+                flushingWrites.put(id, write);
+                if (pendingWrites.remove(id, write)) {
+                    ids.add(id);
+                    writes.add(write);
+                } else {
+                    flushingWrites.remove(id, write);
+                }
+            }
+
+            int size = batchSize > 0 ? batchSize : Integer.MAX_VALUE;
+            for (int start = 0; start < ids.size(); start += size) {
+                int end = Math.min(start + size, ids.size());
+                List<String> batchIds = ids.subList(start, end);
+                List<PendingWrite> batchWrites = writes.subList(start, end);
+                boolean written = writeBatch(batchIds, batchWrites);
+                for (int i = 0; i < batchIds.size(); i++) {
+                    if (!written) {
+                        pendingWrites.putIfAbsent(batchIds.get(i), batchWrites.get(i));
+                    }
+                    flushingWrites.remove(batchIds.get(i), batchWrites.get(i));
+                }
+            }
+        }
+    }
+
     // --------------------------------------------------------- Protected Methods
 
     /**
@@ -1013,6 +1258,14 @@ public class JDBCStore extends StoreBase {
             this.dbConnection = getConnection();
         }
 
+        if (writeBehindDelay > 0) {
+            writeBehindDone = false;
+            writeBehindThread = new Thread(new WriteBehindProcessor(),
+                    threadName + "-WriteBehind[" + getName() + "]");
+            writeBehindThread.setDaemon(true);
+            writeBehindThread.start();
+        }
+
         super.startInternal();
     }
 
@@ -1028,6 +1281,19 @@ public class JDBCStore extends StoreBase {
 
         super.stopInternal();
 
+        if (writeBehindThread != null) {
+            writeBehindDone = true;
+            writeBehindThread.interrupt();
+            try {
+                writeBehindThread.join();
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+            writeBehindThread = null;
+        }
+        // Write any sessions that are still queued
+        flush();
+
         // Close and release everything associated with our db.
         if (dbConnection != null) {
             try {
@@ -1038,4 +1304,222 @@ public class JDBCStore extends StoreBase {
             close(dbConnection);
         }
     }
+
+    // --------------------------------------------------------- Private Methods
+
+    private String getKeysSql() {
+        return "SELECT " + sessionIdCol + " FROM " + sessionTable
+                + " WHERE " + sessionAppCol + " = ?";
+    }
+
+    private String getSizeSql() {
+        return "SELECT COUNT(" + sessionIdCol + ") FROM " + sessionTable
+                + " WHERE " + sessionAppCol + " = ?";
+    }
+
+    private String getLoadSql() {
+        return "SELECT " + sessionIdCol + ", " + sessionDataCol + " FROM "
+                + sessionTable + " WHERE " + sessionIdCol + " = ? AND "
+                + sessionAppCol + " = ?";
+    }
+
+    private String getRemoveSql() {
+        return "DELETE FROM " + sessionTable + " WHERE " + sessionIdCol
+                + " = ?  AND " + sessionAppCol + " = ?";
+    }
+
+    private String getClearSql() {
+        return "DELETE FROM " + sessionTable + " WHERE " + sessionAppCol
+                + " = ?";
+    }
+
+    private String getSaveSql() {
+        return "INSERT INTO " + sessionTable + " (" + sessionIdCol + ", "
+                + sessionAppCol + ", " + sessionDataCol + ", "
+                + sessionValidCol + ", " + sessionMaxInactiveCol + ", "
+                + sessionLastAccessedCol + ") VALUES (?, ?, ?, ?, ?, ?)";
+    }
+
+    private byte[] serialize(Session session) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos =
+                new ObjectOutputStream(new BufferedOutputStream(bos))) {
+            ((StandardSession) session).writeObjectData(oos);
+        }
+        return bos.toByteArray();
+    }
+
+    private StandardSession readSession(String id, InputStream is)
+            throws ClassNotFoundException, IOException {
+        ClassLoader classLoader = null;
+        org.apache.catalina.Context context = manager.getContext();
+        if (context != null) {
+            Loader loader = context.getLoader();
+            if (loader != null) {
+                classLoader = loader.getClassLoader();
+            }
+        }
+
+        ClassLoader oldThreadContextCL = Thread.currentThread().getContextClassLoader();
+        BufferedInputStream bis = new BufferedInputStream(is);
+        try (ObjectInputStream ois = classLoader != null ?
+                new CustomObjectInputStream(bis, classLoader) :
+                new ObjectInputStream(bis)) {
+            if (classLoader != null) {
+                Thread.currentThread().setContextClassLoader(classLoader);
+            }
+
+            if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".loading",
+                        id, sessionTable));
+            }
+
+            StandardSession _session = (StandardSession) manager.createEmptySession();
+            _session.readObjectData(ois);
+            _session.setManager(manager);
+            return _session;
+        } finally {
+            Thread.currentThread().setContextClassLoader(oldThreadContextCL);
+        }
+    }
+
+    private boolean writeBatch(List<String> ids, List<PendingWrite> writes) {
+        if (dataSourceName != null) {
+            try (Connection _conn = getConnection()) {
+                return _conn != null && writeBatch(_conn, ids, writes);
+            } catch (SQLException e) {
+                manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+                return false;
+            }
+        }
+
+        synchronized (this) {
+            Connection _conn = getConnection();
+            if (_conn == null) {
+                return false;
+            }
+            try {
+                return writeBatch(_conn, ids, writes);
+            } finally {
+                release(_conn);
+            }
+        }
+    }
+
+    private boolean writeBatch(Connection _conn, List<String> ids,
+            List<PendingWrite> writes) {
+        try {
+            _conn.setAutoCommit(false);
+            try (PreparedStatement removeStmt = _conn.prepareStatement(getRemoveSql());
+                    PreparedStatement saveStmt = _conn.prepareStatement(getSaveSql())) {
+                boolean saves = false;
+                for (int i = 0; i < ids.size(); i++) {
+                    String id = ids.get(i);
+                    PendingWrite write = writes.get(i);
+                    removeStmt.setString(1, id);
+                    removeStmt.setString(2, getName());
+                    removeStmt.addBatch();
+                    if (write.data != null) {
+                        saveStmt.setString(1, id);
+                        saveStmt.setString(2, getName());
+                        saveStmt.setBinaryStream(3, new ByteArrayInputStream(write.data), write.data.length);
+                        saveStmt.setString(4, write.valid ? "1" : "0");
+                        saveStmt.setInt(5, write.maxInactive);
+                        saveStmt.setLong(6, write.lastAccessed);
+                        saveStmt.addBatch();
+                        saves = true;
+                    }
+                }
+                removeStmt.executeBatch();
+                if (saves) {
+                    saveStmt.executeBatch();
+                }
+                _conn.commit();
+            }
+            if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".writeBehind",
+                        Integer.valueOf(ids.size()), sessionTable));
+            }
+            return true;
+        } catch (SQLException e) {
+            manager.getContext().getLogger().error(sm.getString(getStoreName() + ".writeBehindFail",
+                    Integer.valueOf(ids.size())), e);
+            try {
+                _conn.rollback();
+            } catch (SQLException e2) {
+                // Ignore
+            }
+            return false;
+        } finally {
+            try {
+                _conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static Object[] createLocks(int count) {
+        Object[] locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    // --------------------------------------------------------- Inner classes
+
+    /**
+     * A session that has been saved to or removed from the Store but not yet
+     * written to the database.
+     */
+    private static final class PendingWrite {
+
+        static final PendingWrite REMOVED = new PendingWrite(null, false, 0, 0);
+
+        /**
+         * The serialized session, or <code>null</code> if the session has
+         * been removed.
+         */
+        final byte[] data;
+        final boolean valid;
+        final int maxInactive;
+        final long lastAccessed;
+
+        PendingWrite(byte[] data, boolean valid, int maxInactive,
+                long lastAccessed) {
+            this.data = data;
+            this.valid = valid;
+            this.maxInactive = maxInactive;
+            this.lastAccessed = lastAccessed;
+        }
+    }
+
+    /**
+     * Flushes the queued writes every <code>writeBehindDelay</code>
+     * milliseconds until the Store is stopped.
+     */
+    private class WriteBehindProcessor implements Runnable {
+
+        @Override
+        public void run() {
+            while (!writeBehindDone) {
+                try {
+                    Thread.sleep(writeBehindDelay);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                if (!writeBehindDone) {
+                    try {
+                        flush();
+                    } catch (Throwable t) {
+                        ExceptionUtils.handleThrowable(t);
+                        manager.getContext().getLogger().error(
+                                sm.getString(getStoreName() + ".writeBehindFail",
+                                        Integer.valueOf(pendingWrites.size())), t);
+                    }
+                }
+            }
+        }
+    }
 }
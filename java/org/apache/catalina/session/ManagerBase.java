@@ -125,6 +125,12 @@ public abstract class ManagerBase extends LifecycleMBeanBase
 
     protected SessionIdGenerator sessionIdGenerator = null;
 
+    /**
+     * The serializer used for session attributes when sessions are persisted
+     * or replicated. If <code>null</code>, Java serialization is used.
+     */
+    protected SessionSerializer sessionSerializer = null;
+
     /**
      * The longest time (in seconds) that an expired session had been alive.
      */
@@ -152,6 +158,13 @@ public abstract class ManagerBase extends LifecycleMBeanBase
      */
     protected Map<String, Session> sessions = new ConcurrentHashMap<>();
 
+    /**
+     * The sessions added to this Manager, indexed by the earliest time at
+     * which each of them could expire.
+     */
+    final SessionExpirationWheel expirationWheel =
+            new SessionExpirationWheel(System.currentTimeMillis());
+
     // Number of sessions created by this manager
     protected long sessionCounter=0;
 
@@ -424,6 +437,27 @@ public abstract class ManagerBase extends LifecycleMBeanBase
     }
 
 
+    /**
+     * @return the serializer used for session attributes or
+     *         <code>null</code> if Java serialization is used
+     */
+    public SessionSerializer getSessionSerializer() {
+        return sessionSerializer;
+    }
+
+
+    /**
+     * Set the serializer used for session attributes when sessions are
+     * persisted or replicated.
+     *
+     * @param sessionSerializer The serializer or <code>null</code> to use
+     *                          Java serialization
+     */
+    public void setSessionSerializer(SessionSerializer sessionSerializer) {
+        this.sessionSerializer = sessionSerializer;
+    }
+
+
     /**
      * Number of session creations that failed due to maxActiveSessions
      *
@@ -510,14 +544,18 @@ public abstract class ManagerBase extends LifecycleMBeanBase
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session sessions[] = findSessions();
+        Session sessions[] = findExpirationCandidates(timeNow);
         int expireHere = 0 ;
 
         if(log.isDebugEnabled())
             log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
         for (int i = 0; i < sessions.length; i++) {
-            if (sessions[i]!=null && !sessions[i].isValid()) {
-                expireHere++;
+            if (sessions[i]!=null) {
+                if (sessions[i].isValid()) {
+                    rescheduleExpiration(sessions[i]);
+                } else {
+                    expireHere++;
+                }
             }
         }
         long timeEnd = System.currentTimeMillis();
@@ -527,6 +565,34 @@ public abstract class ManagerBase extends LifecycleMBeanBase
 
     }
 
+
+    /**
+     * Find the sessions that need to be checked for expiration. Rather than
+     * every session, only the sessions whose maximum inactive interval could
+     * have elapsed since they were last accessed are returned. The sessions
+     * that are still valid must be passed to
+     * {@link #rescheduleExpiration(Session)}. Sub-classes that add sessions
+     * other than via {@link #add(Session)} should override this method to
+     * return {@link #findSessions()}.
+     *
+     * @param timeNow The current time
+     * @return the sessions that may have expired
+     */
+    protected Session[] findExpirationCandidates(long timeNow) {
+        return expirationWheel.poll(timeNow);
+    }
+
+
+    /**
+     * Re-index a session that has been found to be still valid when checked
+     * for expiration, or whose maximum inactive interval has changed.
+     *
+     * @param session The session
+     */
+    protected void rescheduleExpiration(Session session) {
+        expirationWheel.reschedule(session);
+    }
+
     @Override
     protected void initInternal() throws LifecycleException {
 
@@ -577,6 +643,7 @@ public abstract class ManagerBase extends LifecycleMBeanBase
     public void add(Session session) {
 
         sessions.put(session.getIdInternal(), session);
+        expirationWheel.schedule(session);
         int size = getActiveSessions();
         if( size > maxActive ) {
             synchronized(maxActiveUpdateLock) {
@@ -731,6 +798,7 @@ public abstract class ManagerBase extends LifecycleMBeanBase
         if (session.getIdInternal() != null) {
             sessions.remove(session.getIdInternal());
         }
+        expirationWheel.remove(session);
     }
 
 
@@ -407,12 +407,14 @@ public abstract class PersistentManagerBase extends ManagerBase
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session sessions[] = findSessions();
+        Session sessions[] = findExpirationCandidates(timeNow);
         int expireHere = 0 ;
         if(log.isDebugEnabled())
              log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
         for (int i = 0; i < sessions.length; i++) {
-            if (!sessions[i].isValid()) {
+            if (sessions[i].isValid()) {
+                rescheduleExpiration(sessions[i]);
+            } else {
                 expiredSessions.incrementAndGet();
                 expireHere++;
             }
@@ -512,6 +514,7 @@ public abstract class PersistentManagerBase extends ManagerBase
 
         // Initialize our internal data structures
         sessions.clear();
+        expirationWheel.clear();
 
         if (store == null)
             return;
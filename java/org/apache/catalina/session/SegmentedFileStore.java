@@ -0,0 +1,1040 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import javax.servlet.ServletContext;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Loader;
+import org.apache.catalina.Session;
+import org.apache.catalina.util.CustomObjectInputStream;
+
+
+/**
+ * Concrete implementation of the <b>Store</b> interface that appends saved
+ * Sessions to a small number of memory-mapped segment files in a configured
+ * directory. An in-memory index maps each session identifier to the location
+ * of the latest copy of the session, so listing, counting and removing
+ * sessions does not touch the file system.
+ * <p>
+ * Saving or removing a session marks the previous copy as dead in place.
+ * Segments in which the live data falls below
+ * <code>compactionThreshold</code> are compacted by the background thread of
+ * the Manager, which copies the live sessions to the current segment and
+ * deletes the old segment. The index is rebuilt from the segments when the
+ * Store is first used after a restart.
+ */
+public final class SegmentedFileStore extends StoreBase {
+
+
+    // ----------------------------------------------------- Constants
+
+
+    /**
+     * The extension to use for segment filenames.
+     */
+    private static final String FILE_EXT = ".segment";
+
+    /**
+     * Written at the start of every segment, followed by the format version.
+     */
+    private static final int MAGIC = 0x54435347;
+    private static final int VERSION = 2;
+    private static final int SEGMENT_HEADER = 8;
+
+    /**
+     * Each record starts with its total length, a state, a CRC-32 of the rest
+     * of the record, the time the session was last accessed, its maximum
+     * inactive interval and the length of its identifier. A length of zero
+     * marks the end of the records in a segment. The state is not covered by
+     * the checksum as it changes when the record is killed.
+     */
+    private static final int STATE = 4;
+    private static final int CRC = 5;
+    private static final int THIS_ACCESSED = 9;
+    private static final int MAX_INACTIVE = 17;
+    private static final int ID_LENGTH = 21;
+    private static final int RECORD_HEADER = 23;
+    private static final byte STATE_LIVE = 1;
+    private static final byte STATE_DEAD = 2;
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The pathname of the directory in which segments are stored.
+     * This may be an absolute pathname, or a relative path that is
+     * resolved against the temporary work directory for this application.
+     */
+    private String directory = ".";
+
+
+    /**
+     * A File representing the directory in which segments are stored.
+     */
+    private File directoryFile = null;
+
+
+    /**
+     * The size in bytes of new segments.
+     */
+    private int segmentSize = 16 * 1024 * 1024;
+
+
+    /**
+     * The fraction of a segment that must hold live sessions for the segment
+     * not to be compacted.
+     */
+    private double compactionThreshold = 0.5;
+
+
+    /**
+     * The segments, in the order in which they were created.
+     */
+    private final TreeMap<Long,Segment> segments = new TreeMap<>();
+
+
+    /**
+     * The segment that sessions are appended to.
+     */
+    private Segment active = null;
+
+
+    /**
+     * The location of the latest copy of each session.
+     */
+    private final Map<String,Location> index = new HashMap<>();
+
+
+    /**
+     * Copies of sessions found by {@link #open()} that have been replaced by
+     * a later copy but are still marked as live in their segment.
+     */
+    private final List<Location> superseded = new ArrayList<>();
+
+
+    /**
+     * Segment files that could not be deleted, typically because they were
+     * still mapped, and that will be deleted again later.
+     */
+    private final List<File> undeleted = new ArrayList<>();
+
+
+    /**
+     * Have the segments been read since the Store was started?
+     */
+    private boolean opened = false;
+
+
+    /**
+     * Name to register for this Store, used for logging.
+     */
+    private static final String storeName = "segmentedFileStore";
+
+
+    /**
+     * Name to register for the background thread.
+     */
+    private static final String threadName = "SegmentedFileStore";
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the directory path for this Store.
+     */
+    public String getDirectory() {
+
+        return (directory);
+
+    }
+
+
+    /**
+     * Set the directory path for this Store.
+     *
+     * @param path The new directory path
+     */
+    public void setDirectory(String path) {
+
+        String oldDirectory = this.directory;
+        this.directory = path;
+        this.directoryFile = null;
+        support.firePropertyChange("directory", oldDirectory,
+                                   this.directory);
+
+    }
+
+
+    /**
+     * Return the size in bytes of new segments.
+     */
+    public int getSegmentSize() {
+
+        return (segmentSize);
+
+    }
+
+
+    /**
+     * Set the size in bytes of new segments. A session that does not fit in
+     * a segment of this size is written to a segment of its own.
+     *
+     * @param segmentSize The new segment size
+     */
+    public void setSegmentSize(int segmentSize) {
+
+        int oldSegmentSize = this.segmentSize;
+        this.segmentSize = segmentSize;
+        support.firePropertyChange("segmentSize",
+                                   Integer.valueOf(oldSegmentSize),
+                                   Integer.valueOf(this.segmentSize));
+
+    }
+
+
+    /**
+     * Return the fraction of a segment that must hold live sessions for the
+     * segment not to be compacted.
+     */
+    public double getCompactionThreshold() {
+
+        return (compactionThreshold);
+
+    }
+
+
+    /**
+     * Set the fraction of a segment that must hold live sessions for the
+     * segment not to be compacted.
+     *
+     * @param compactionThreshold The new threshold, between 0 and 1
+     */
+    public void setCompactionThreshold(double compactionThreshold) {
+
+        double oldCompactionThreshold = this.compactionThreshold;
+        this.compactionThreshold = compactionThreshold;
+        support.firePropertyChange("compactionThreshold",
+                                   Double.valueOf(oldCompactionThreshold),
+                                   Double.valueOf(this.compactionThreshold));
+
+    }
+
+
+    /**
+     * Return the thread name for this Store.
+     */
+    public String getThreadName() {
+        return(threadName);
+    }
+
+
+    /**
+     * Return the name for this Store, used for logging.
+     */
+    @Override
+    public String getStoreName() {
+        return(storeName);
+    }
+
+
+    /**
+     * Return the number of Sessions present in this Store.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public synchronized int getSize() throws IOException {
+
+        open();
+        return (index.size());
+
+    }
+
+
+    /**
+     * Return the number of segments currently used by this Store.
+     */
+    public synchronized int getSegmentCount() {
+
+        return (segments.size());
+
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Remove all of the Sessions in this Store.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public synchronized void clear() throws IOException {
+
+        open();
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            delete(segment);
+        }
+        index.clear();
+        active = null;
+
+    }
+
+
+    /**
+     * Return an array containing the session identifiers of all Sessions
+     * currently saved in this Store.  If there are no such Sessions, a
+     * zero-length array is returned.
+     *
+     * @exception IOException if an input/output error occurred
+     */
+    @Override
+    public synchronized String[] keys() throws IOException {
+
+        open();
+        return index.keySet().toArray(new String[index.size()]);
+
+    }
+
+
+    /**
+     * Load and return the Session associated with the specified session
+     * identifier from this Store, without removing it.  If there is no
+     * such stored Session, return <code>null</code>.
+     *
+     * @param id Session identifier of the session to load
+     *
+     * @exception ClassNotFoundException if a deserialization error occurs
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public Session load(String id)
+        throws ClassNotFoundException, IOException {
+
+        byte[] data;
+        synchronized (this) {
+            open();
+            Location location = index.get(id);
+            if (location == null) {
+                if (manager.getContext().getLogger().isDebugEnabled())
+                    manager.getContext().getLogger().debug("No persisted data found");
+                return (null);
+            }
+            if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(sm.getString(getStoreName()+".loading",
+                                 id, location.segment.file.getAbsolutePath()));
+            }
+            data = location.getData();
+        }
+
+        // Deserialize outside the lock
+        ObjectInputStream ois = null;
+        Loader loader = null;
+        ClassLoader classLoader = null;
+        ClassLoader oldThreadContextCL = Thread.currentThread().getContextClassLoader();
+        try (ByteArrayInputStream bis = new ByteArrayInputStream(data)) {
+            Context context = manager.getContext();
+            if (context != null)
+                loader = context.getLoader();
+            if (loader != null)
+                classLoader = loader.getClassLoader();
+            if (classLoader != null) {
+                Thread.currentThread().setContextClassLoader(classLoader);
+                ois = new CustomObjectInputStream(bis, classLoader);
+            } else {
+                ois = new ObjectInputStream(bis);
+            }
+
+            StandardSession session =
+                    (StandardSession) manager.createEmptySession();
+            session.readObjectData(ois);
+            session.setManager(manager);
+            return (session);
+        } finally {
+            if (ois != null) {
+                // Close the input stream
+                try {
+                    ois.close();
+                } catch (IOException f) {
+                    // Ignore
+                }
+            }
+            Thread.currentThread().setContextClassLoader(oldThreadContextCL);
+        }
+    }
+
+
+    /**
+     * Remove the Session with the specified session identifier from
+     * this Store, if present.  If no such Session is present, this method
+     * takes no action.
+     *
+     * @param id Session identifier of the Session to be removed
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public synchronized void remove(String id) throws IOException {
+
+        open();
+        Location location = index.remove(id);
+        if (location == null) {
+            return;
+        }
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(getStoreName()+".removing",
+                             id, location.segment.file.getAbsolutePath()));
+        }
+        kill(location);
+
+    }
+
+
+    /**
+     * Save the specified Session into this Store.  Any previously saved
+     * information for the associated session identifier is replaced.
+     *
+     * @param session Session to be saved
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public void save(Session session) throws IOException {
+
+        // Serialize outside the lock
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos =
+                new ObjectOutputStream(new BufferedOutputStream(bos))) {
+            ((StandardSession)session).writeObjectData(oos);
+        }
+        byte[] data = bos.toByteArray();
+        String id = session.getIdInternal();
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+
+        synchronized (this) {
+            open();
+            int length = RECORD_HEADER + idBytes.length + data.length;
+            Segment segment = allocate(length);
+            ByteBuffer buffer = segment.buffer;
+            int offset = segment.limit;
+            buffer.position(offset + THIS_ACCESSED);
+            buffer.putLong(session.getThisAccessedTimeInternal());
+            buffer.putInt(session.getMaxInactiveInterval());
+            buffer.putShort((short) idBytes.length);
+            buffer.put(idBytes);
+            buffer.put(data);
+            buffer.putInt(offset + CRC, checksum(buffer, offset, length));
+            buffer.put(offset + STATE, STATE_LIVE);
+            // The length is written last and the checksum detects records
+            // that only partly reached the disk
+            buffer.putInt(offset, length);
+            Location location = add(id, segment, offset, length,
+                    session.getThisAccessedTimeInternal(),
+                    session.getMaxInactiveInterval());
+            if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(sm.getString(getStoreName()+".saving",
+                                 id, location.segment.file.getAbsolutePath()));
+            }
+        }
+    }
+
+
+    /**
+     * Expire the sessions in this Store that are due and then compact the
+     * segments that contain too few live sessions.
+     */
+    @Override
+    public void processExpires() {
+
+        super.processExpires();
+
+        if (!getState().isAvailable()) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            manager.getContext().getLogger().error(
+                    sm.getString(getStoreName()+".compactFail"), e);
+        }
+        synchronized (this) {
+            retryDeletes(false);
+        }
+
+    }
+
+
+    /**
+     * Copy the live sessions out of every segment, other than the one that
+     * sessions are being appended to, in which the fraction of live data has
+     * fallen below <code>compactionThreshold</code> and delete the segment.
+     * Each segment is compacted while holding the lock on this Store so that
+     * loads and saves are only held up for one segment at a time.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void compact() throws IOException {
+
+        List<Long> ids;
+        synchronized (this) {
+            open();
+            ids = new ArrayList<>(segments.keySet());
+        }
+        for (Long id : ids) {
+            synchronized (this) {
+                Segment segment = segments.get(id);
+                if (segment == null || segment == active) {
+                    continue;
+                }
+                long used = segment.limit - SEGMENT_HEADER;
+                if (segment.live >= used * compactionThreshold) {
+                    continue;
+                }
+                if (manager.getContext().getLogger().isDebugEnabled()) {
+                    manager.getContext().getLogger().debug(sm.getString(getStoreName()+".compacting",
+                                     segment.file.getAbsolutePath(),
+                                     Long.valueOf(segment.live), Long.valueOf(used)));
+                }
+                compact(segment);
+            }
+        }
+
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+
+    /**
+     * Return the identifiers of the sessions that are due to expire according
+     * to the access time and maximum inactive interval saved with them.
+     */
+    @Override
+    protected synchronized String[] expiredKeys() throws IOException {
+
+        open();
+        long timeNow = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+        for (Map.Entry<String,Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            if (location.maxInactive > 0 &&
+                    timeNow - location.thisAccessed >= location.maxInactive * 1000L) {
+                expired.add(entry.getKey());
+            }
+        }
+        return expired.toArray(new String[expired.size()]);
+
+    }
+
+
+    /**
+     * Stop this component and implement the requirements
+     * of {@link org.apache.catalina.util.LifecycleBase#stopInternal()}.
+     *
+     * @exception LifecycleException if this component detects a fatal error
+     *  that prevents this component from being used
+     */
+    @Override
+    protected synchronized void stopInternal() throws LifecycleException {
+
+        super.stopInternal();
+
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+        }
+        segments.clear();
+        index.clear();
+        active = null;
+        opened = false;
+        // Any file that still can't be deleted has been marked as invalid
+        // and will be deleted when the segments are next read
+        retryDeletes(true);
+
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Read the segments in the directory and rebuild the index, if that has
+     * not been done since the Store was started. Segments are read in the
+     * order in which they were created so that the latest copy of a session
+     * wins if more than one copy is live.
+     */
+    private void open() throws IOException {
+
+        if (opened) {
+            return;
+        }
+        File dir = directory();
+        if (dir == null) {
+            return;
+        }
+        String[] files = dir.list();
+        if (files != null) {
+            TreeMap<Long,File> found = new TreeMap<>();
+            int n = FILE_EXT.length();
+            for (String name : files) {
+                if (!name.endsWith(FILE_EXT)) {
+                    continue;
+                }
+                try {
+                    found.put(Long.valueOf(name.substring(0, name.length() - n)),
+                            new File(dir, name));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+            try {
+                for (Map.Entry<Long,File> entry : found.entrySet()) {
+                    read(entry.getKey().longValue(), entry.getValue());
+                }
+            } catch (IOException | RuntimeException e) {
+                // Start again from the files on the next attempt
+                segments.clear();
+                index.clear();
+                superseded.clear();
+                active = null;
+                throw e;
+            }
+        }
+        // Every segment has been read so the replaced copies can now be
+        // marked as dead, otherwise they would be found again after a
+        // restart once the latest copy has been removed
+        for (Location location : superseded) {
+            location.segment.buffer.put(location.offset + STATE, STATE_DEAD);
+        }
+        superseded.clear();
+        if (!segments.isEmpty()) {
+            active = segments.lastEntry().getValue();
+        }
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment.live == 0 && segment != active) {
+                delete(segment);
+            }
+        }
+        opened = true;
+
+    }
+
+
+    /**
+     * Map an existing segment and add its live sessions to the index. Older
+     * copies of those sessions are only recorded in {@link #superseded}, so
+     * that nothing is written to the segments until they have all been read.
+     */
+    private void read(long id, File file) throws IOException {
+
+        // Check the header before mapping the file so that segments that are
+        // not valid, including those that were deleted while mapped, can be
+        // deleted now
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // Read the rest of the header
+            }
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC ||
+                header.getInt(4) != VERSION) {
+            if (header.hasRemaining() || header.getInt(0) != 0) {
+                manager.getContext().getLogger().warn(
+                        sm.getString(getStoreName()+".invalidSegment", file));
+            }
+            if (!file.delete()) {
+                manager.getContext().getLogger().warn(
+                        sm.getString(getStoreName()+".deleteFailed", file));
+            }
+            return;
+        }
+
+        MappedByteBuffer buffer = map(file, 0);
+        Segment segment = new Segment(id, file, buffer);
+        segments.put(Long.valueOf(id), segment);
+        int offset = SEGMENT_HEADER;
+        while (offset + RECORD_HEADER <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            int idLength = buffer.getShort(offset + ID_LENGTH) & 0xFFFF;
+            if (length < RECORD_HEADER + idLength ||
+                    length > buffer.capacity() - offset ||
+                    buffer.getInt(offset + CRC) !=
+                            checksum(buffer, offset, length)) {
+                // The rest of the segment was not written completely or has
+                // been corrupted
+                manager.getContext().getLogger().warn(
+                        sm.getString(getStoreName()+".truncatedSegment",
+                                file, Integer.valueOf(offset)));
+                break;
+            }
+            if (buffer.get(offset + STATE) == STATE_LIVE) {
+                byte[] idBytes = new byte[idLength];
+                ByteBuffer dup = buffer.duplicate();
+                dup.position(offset + RECORD_HEADER);
+                dup.get(idBytes);
+                Location location = new Location(segment, offset, length,
+                        buffer.getLong(offset + THIS_ACCESSED),
+                        buffer.getInt(offset + MAX_INACTIVE));
+                segment.live += length;
+                Location previous = index.put(
+                        new String(idBytes, StandardCharsets.UTF_8), location);
+                if (previous != null) {
+                    previous.segment.live -= previous.length;
+                    superseded.add(previous);
+                }
+            }
+            offset += length;
+        }
+        segment.limit = offset;
+
+    }
+
+
+    /**
+     * Record a newly written copy of a session in the index and mark any
+     * previous copy as dead.
+     */
+    private Location add(String id, Segment segment, int offset, int length,
+            long thisAccessed, int maxInactive) throws IOException {
+
+        Location location = new Location(segment, offset, length,
+                thisAccessed, maxInactive);
+        segment.limit = Math.max(segment.limit, offset + length);
+        segment.live += length;
+        Location previous = index.put(id, location);
+        if (previous != null) {
+            kill(previous);
+        }
+        return location;
+
+    }
+
+
+    /**
+     * Mark a copy of a session as dead and delete its segment if that leaves
+     * the segment without any live sessions.
+     */
+    private void kill(Location location) throws IOException {
+
+        Segment segment = location.segment;
+        segment.buffer.put(location.offset + STATE, STATE_DEAD);
+        segment.live -= location.length;
+        if (segment.live == 0 && segment != active) {
+            delete(segment);
+        }
+
+    }
+
+
+    /**
+     * Return the segment to append a record of the given length to, creating
+     * a new segment if the current one does not have enough space left.
+     */
+    private Segment allocate(int length) throws IOException {
+
+        if (active != null && active.buffer.capacity() - active.limit >= length) {
+            return active;
+        }
+        long id = segments.isEmpty() ? 1 : segments.lastKey().longValue() + 1;
+        File file = new File(directory(), id + FILE_EXT);
+        while (file.exists()) {
+            // A deleted segment that is still waiting to be removed
+            id++;
+            file = new File(directory(), id + FILE_EXT);
+        }
+        MappedByteBuffer buffer = map(file,
+                Math.max(segmentSize, SEGMENT_HEADER + length));
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        Segment segment = new Segment(id, file, buffer);
+        segment.limit = SEGMENT_HEADER;
+        segments.put(Long.valueOf(id), segment);
+
+        Segment previous = active;
+        active = segment;
+        if (previous != null && previous.live == 0) {
+            delete(previous);
+        }
+        return segment;
+
+    }
+
+
+    /**
+     * Copy the live sessions in a segment to the active segment and delete
+     * the segment.
+     */
+    private void compact(Segment segment) throws IOException {
+
+        ByteBuffer source = segment.buffer.duplicate();
+        int offset = SEGMENT_HEADER;
+        while (offset < segment.limit) {
+            int length = source.getInt(offset);
+            if (source.get(offset + STATE) == STATE_LIVE) {
+                int idLength = source.getShort(offset + ID_LENGTH) & 0xFFFF;
+                byte[] idBytes = new byte[idLength];
+                source.position(offset + RECORD_HEADER);
+                source.get(idBytes);
+                String id = new String(idBytes, StandardCharsets.UTF_8);
+                Location location = index.get(id);
+                if (location == null || location.segment != segment ||
+                        location.offset != offset) {
+                    offset += length;
+                    continue;
+                }
+
+                Segment target = allocate(length);
+                int targetOffset = target.limit;
+                source.limit(offset + length);
+                source.position(offset);
+                target.buffer.position(targetOffset);
+                target.buffer.put(source);
+                source.limit(source.capacity());
+                add(id, target, targetOffset, length,
+                        location.thisAccessed, location.maxInactive);
+                if (segments.get(Long.valueOf(segment.id)) == null) {
+                    // The last live session has been moved
+                    return;
+                }
+            }
+            offset += length;
+        }
+        delete(segment);
+
+    }
+
+
+    /**
+     * Delete a segment. The segment is first marked as invalid so that it is
+     * ignored after a restart if the file can't be deleted while it is still
+     * mapped, which is the case on some platforms until the mapping has been
+     * garbage collected. Such files are deleted again later.
+     */
+    private void delete(Segment segment) {
+
+        segment.buffer.putInt(0, 0);
+        segments.remove(Long.valueOf(segment.id));
+        if (segment == active) {
+            active = null;
+        }
+        if (!segment.file.delete()) {
+            if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(sm.getString(
+                        getStoreName()+".deleteFailed", segment.file));
+            }
+            undeleted.add(segment.file);
+        }
+
+    }
+
+
+    /**
+     * Try again to delete the segment files that could not be deleted
+     * earlier.
+     *
+     * @param last  Is this the last attempt before the Store stops?
+     */
+    private void retryDeletes(boolean last) {
+
+        Iterator<File> iter = undeleted.iterator();
+        while (iter.hasNext()) {
+            File file = iter.next();
+            if (file.delete() || !file.exists()) {
+                iter.remove();
+            } else if (last) {
+                manager.getContext().getLogger().warn(
+                        sm.getString(getStoreName()+".deleteFailed", file));
+            }
+        }
+        if (last) {
+            undeleted.clear();
+        }
+
+    }
+
+
+    /**
+     * Compute the checksum of a record, which covers everything after the
+     * checksum itself.
+     */
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+
+        byte[] bytes = new byte[length - THIS_ACCESSED];
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(offset + THIS_ACCESSED);
+        dup.get(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+
+    }
+
+
+    /**
+     * Map a segment file into memory, creating it with the given size if it
+     * does not exist.
+     */
+    private static MappedByteBuffer map(File file, int size)
+            throws IOException {
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                FileChannel channel = raf.getChannel()) {
+            if (size > 0) {
+                raf.setLength(size);
+            }
+            // The mapping remains valid after the channel has been closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    channel.size());
+        }
+
+    }
+
+
+    /**
+     * Return a File object representing the pathname to our
+     * segment directory, if any.  The directory will be
+     * created if it does not already exist.
+     */
+    private File directory() throws IOException {
+
+        if (this.directory == null) {
+            return (null);
+        }
+        if (this.directoryFile != null) {
+            // NOTE:  Race condition is harmless, so do not synchronize
+            return (this.directoryFile);
+        }
+        File file = new File(this.directory);
+        if (!file.isAbsolute()) {
+            Context context = manager.getContext();
+            if (context != null) {
+                ServletContext servletContext = context.getServletContext();
+                File work = (File)
+                    servletContext.getAttribute(ServletContext.TEMPDIR);
+                file = new File(work, this.directory);
+            } else {
+                throw new IllegalArgumentException
+                    ("Parent Container is not a Context");
+            }
+        }
+        if (!file.exists() || !file.isDirectory()) {
+            if (!file.delete() && file.exists()) {
+                throw new IOException(
+                        sm.getString("fileStore.deleteFailed", file));
+            }
+            if (!file.mkdirs() && !file.isDirectory()) {
+                throw new IOException(
+                        sm.getString("fileStore.createFailed", file));
+            }
+        }
+        this.directoryFile = file;
+        return (file);
+
+    }
+
+
+    // -------------------------------------------------------- Private Classes
+
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static final class Segment {
+
+        final long id;
+        final File file;
+        final MappedByteBuffer buffer;
+
+        /**
+         * The offset of the end of the records written to this segment.
+         */
+        int limit;
+
+        /**
+         * The number of bytes used by live sessions.
+         */
+        long live;
+
+        Segment(long id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+
+    /**
+     * The location of a saved session, together with the values needed to
+     * decide whether it has expired without reading it.
+     */
+    private static final class Location {
+
+        final Segment segment;
+        final int offset;
+        final int length;
+        final long thisAccessed;
+        final int maxInactive;
+
+        Location(Segment segment, int offset, int length, long thisAccessed,
+                int maxInactive) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.thisAccessed = thisAccessed;
+            this.maxInactive = maxInactive;
+        }
+
+        byte[] getData() {
+            ByteBuffer dup = segment.buffer.duplicate();
+            int idLength = dup.getShort(offset + ID_LENGTH) & 0xFFFF;
+            int start = offset + RECORD_HEADER + idLength;
+            byte[] data = new byte[offset + length - start];
+            dup.position(start);
+            dup.get(data);
+            return data;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+import org.apache.catalina.util.CustomObjectInputStream;
+
+/**
+ * The serialized form of a session attribute value that has been read by a
+ * {@link CompactSessionSerializer} but not yet deserialized. The value is
+ * deserialized when it is first used and written out again as it is if it is
+ * not used before the session is next serialized. If the session is written
+ * with Java serialization instead, the deserialized value is written.
+ */
+final class SerializedAttribute implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String className;
+    private final byte[] data;
+    private final transient ClassLoader classLoader;
+
+
+    SerializedAttribute(String className, byte[] data,
+            ClassLoader classLoader) {
+        this.className = className;
+        this.data = data;
+        this.classLoader = classLoader;
+    }
+
+
+    String getClassName() {
+        return className;
+    }
+
+
+    byte[] getData() {
+        return data;
+    }
+
+
+    Object deserialize() throws ClassNotFoundException, IOException {
+        try (ObjectInputStream ois = new CustomObjectInputStream(
+                new ByteArrayInputStream(data), classLoader)) {
+            return ois.readObject();
+        }
+    }
+
+
+    private Object writeReplace() throws ObjectStreamException {
+        try {
+            return deserialize();
+        } catch (ClassNotFoundException | IOException e) {
+            NotSerializableException nse =
+                    new NotSerializableException(className);
+            nse.initCause(e);
+            throw nse;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.catalina.Session;
+
+/**
+ * A hierarchical timing wheel that holds the sessions of a manager, indexed by
+ * the earliest time at which each session could expire. Polling the wheel only
+ * returns the sessions that are due, rather than every session.
+ * <p>
+ * Sessions are not moved when they are accessed. A session that is returned by
+ * {@link #poll(long)} but is still valid is expected to be passed to
+ * {@link #reschedule(Session)}, which places it according to its current last
+ * accessed time.
+ * <p>
+ * There are four levels of 64 slots. With a tick of one second the levels span
+ * about a minute, an hour, three days and six months. Sessions that are due
+ * further in the future than the wheel spans, including those that never time
+ * out, are returned at the end of the span and rescheduled.
+ */
+class SessionExpirationWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    static final long DEFAULT_TICK = 1000;
+
+    private final long tick;
+    private final Entry[][] slots = new Entry[LEVELS][SLOTS];
+    private final Map<Session,Entry> entries = new IdentityHashMap<>();
+    private long currentTick;
+
+
+    SessionExpirationWheel(long timeNow) {
+        this(timeNow, DEFAULT_TICK);
+    }
+
+
+    SessionExpirationWheel(long timeNow, long tick) {
+        this.tick = tick;
+        currentTick = timeNow / tick;
+    }
+
+
+    /**
+     * Add a session to the wheel, or move it if it is already in the wheel.
+     *
+     * @param session   The session
+     */
+    synchronized void schedule(Session session) {
+        Entry entry = entries.get(session);
+        if (entry == null) {
+            entry = new Entry(session);
+            entries.put(session, entry);
+        } else {
+            unlink(entry);
+        }
+        entry.deadline = getDeadline(session);
+        insert(entry, 1);
+    }
+
+
+    /**
+     * Move a session that is in the wheel according to its current last
+     * accessed time and maximum inactive interval. Sessions that are not in
+     * the wheel, usually because they have been removed from the manager since
+     * they were polled, are ignored.
+     *
+     * @param session   The session
+     */
+    synchronized void reschedule(Session session) {
+        Entry entry = entries.get(session);
+        if (entry == null) {
+            return;
+        }
+        unlink(entry);
+        entry.deadline = getDeadline(session);
+        insert(entry, 1);
+    }
+
+
+    synchronized void remove(Session session) {
+        Entry entry = entries.remove(session);
+        if (entry != null) {
+            unlink(entry);
+        }
+    }
+
+
+    synchronized void clear() {
+        for (Entry[] level : slots) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = null;
+            }
+        }
+        entries.clear();
+    }
+
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+
+    /**
+     * Advance the wheel to the given time.
+     *
+     * @param timeNow   The current time
+     * @return the sessions that may have expired by the given time. They stay
+     *         in the wheel but will not be returned again until they have been
+     *         rescheduled.
+     */
+    synchronized Session[] poll(long timeNow) {
+        long targetTick = timeNow / tick;
+        List<Session> result = new ArrayList<>();
+        if (targetTick - currentTick > MAX_TICKS) {
+            // The clock has jumped forward further than the wheel spans
+            for (int level = 0; level < LEVELS; level++) {
+                for (int slot = 0; slot < SLOTS; slot++) {
+                    drain(level, slot, result);
+                }
+            }
+            currentTick = targetTick;
+        }
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int shift = SLOT_BITS * level;
+                if ((currentTick & ((1L << shift) - 1)) == 0) {
+                    cascade(level, (int) (currentTick >>> shift) & SLOT_MASK);
+                }
+            }
+            drain(0, (int) currentTick & SLOT_MASK, result);
+        }
+        return result.toArray(new Session[result.size()]);
+    }
+
+
+    private long getDeadline(Session session) {
+        int maxInactiveInterval = session.getMaxInactiveInterval();
+        if (maxInactiveInterval <= 0) {
+            return Long.MAX_VALUE;
+        }
+        // Whichever access time the session uses, it can't expire before the
+        // earlier of the two
+        long lastAccessed = Math.min(session.getLastAccessedTimeInternal(),
+                session.getThisAccessedTimeInternal());
+        long expiry = lastAccessed + maxInactiveInterval * 1000L;
+        return (expiry + tick - 1) / tick;
+    }
+
+
+    /*
+     * The level 0 slot for the current tick has already been drained unless
+     * the entry is being cascaded, so entries that are due are placed in the
+     * slot for the next tick.
+     */
+    private void insert(Entry entry, long minDelta) {
+        long delta = entry.deadline - currentTick;
+        if (delta < minDelta) {
+            delta = minDelta;
+        } else if (delta > MAX_TICKS) {
+            delta = MAX_TICKS;
+        }
+        long deadline = currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 &&
+                delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) (deadline >>> (SLOT_BITS * level)) & SLOT_MASK;
+        entry.deadline = deadline;
+        entry.level = level;
+        entry.slot = slot;
+        entry.prev = null;
+        entry.next = slots[level][slot];
+        if (entry.next != null) {
+            entry.next.prev = entry;
+        }
+        slots[level][slot] = entry;
+    }
+
+
+    private void unlink(Entry entry) {
+        if (entry.level < 0) {
+            return;
+        }
+        if (entry.prev == null) {
+            slots[entry.level][entry.slot] = entry.next;
+        } else {
+            entry.prev.next = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+        entry.level = -1;
+    }
+
+
+    private void cascade(int level, int slot) {
+        Entry entry = slots[level][slot];
+        slots[level][slot] = null;
+        while (entry != null) {
+            Entry next = entry.next;
+            insert(entry, 0);
+            entry = next;
+        }
+    }
+
+
+    private void drain(int level, int slot, List<Session> result) {
+        Entry entry = slots[level][slot];
+        slots[level][slot] = null;
+        while (entry != null) {
+            Entry next = entry.next;
+            entry.prev = null;
+            entry.next = null;
+            entry.level = -1;
+            result.add(entry.session);
+            entry = next;
+        }
+    }
+
+
+    private static class Entry {
+
+        private final Session session;
+        private long deadline;
+        private int level = -1;
+        private int slot;
+        private Entry prev;
+        private Entry next;
+
+        Entry(Session session) {
+            this.session = session;
+        }
+    }
+}
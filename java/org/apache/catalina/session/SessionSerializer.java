@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes and reads the attributes of a {@link StandardSession} when the
+ * session is persisted, swapped out or replicated. A Manager that has no
+ * SessionSerializer uses Java serialization for every attribute.
+ * <p>
+ * When a SessionSerializer is used, the name of its class is written ahead of
+ * the session data so that the data can be read whichever SessionSerializer,
+ * if any, is configured when it is read. Implementations must therefore have
+ * a public no-argument constructor.
+ */
+public interface SessionSerializer {
+
+    /**
+     * Write the attributes of a session.
+     *
+     * @param session   The session
+     * @param stream    The stream to write to
+     * @param names     The names of the attributes to write
+     * @param values    The values of the attributes to write
+     *
+     * @throws IOException if an error occurs writing to the stream
+     */
+    public void writeAttributes(StandardSession session, ObjectOutput stream,
+            List<String> names, List<Object> values) throws IOException;
+
+
+    /**
+     * Read the attributes of a session that were written by
+     * {@link #writeAttributes(StandardSession, ObjectOutput, List, List)}.
+     *
+     * @param session       The session
+     * @param stream        The stream to read from
+     * @param attributes    The map to add the attributes to
+     *
+     * @throws ClassNotFoundException if the class of an attribute value can't
+     *         be found
+     * @throws IOException if an error occurs reading from the stream
+     */
+    public void readAttributes(StandardSession session, ObjectInput stream,
+            Map<String,Object> attributes)
+            throws ClassNotFoundException, IOException;
+}
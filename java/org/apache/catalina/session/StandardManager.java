@@ -197,6 +197,7 @@ public class StandardManager extends ManagerBase {
 
         // Initialize our internal data structures
         sessions.clear();
+        expirationWheel.clear();
 
         // Open an input stream to the specified pathname, if any
         File file = file();
@@ -261,6 +262,7 @@ public class StandardManager extends ManagerBase {
                     session.readObjectData(ois);
                     session.setManager(this);
                     sessions.put(session.getIdInternal(), session);
+                    expirationWheel.schedule(session);
                     session.activate();
                     if (!session.isValidInternal()) {
                         // If session is already invalid,
@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletContext;
@@ -604,7 +605,11 @@ public class StandardSession implements HttpSession, Session, Serializable {
      */
     @Override
     public void setMaxInactiveInterval(int interval) {
+        int oldInterval = this.maxInactiveInterval;
         this.maxInactiveInterval = interval;
+        if (interval != oldInterval && manager instanceof ManagerBase) {
+            ((ManagerBase) manager).rescheduleExpiration(this);
+        }
     }
 
 
@@ -1206,7 +1211,7 @@ public class StandardSession implements HttpSession, Session, Serializable {
 
         if (name == null) return null;
 
-        return (attributes.get(name));
+        return resolveAttribute(name, attributes.get(name));
 
     }
 
@@ -1520,6 +1525,7 @@ public class StandardSession implements HttpSession, Session, Serializable {
         Object listeners[] = context.getApplicationEventListeners();
         if (listeners == null)
             return;
+        unbound = resolveAttribute(name, unbound);
         for (int i = 0; i < listeners.length; i++) {
             if (!(listeners[i] instanceof HttpSessionAttributeListener))
                 continue;
@@ -1610,12 +1616,25 @@ public class StandardSession implements HttpSession, Session, Serializable {
 
         // Deserialize the scalar instance variables (except Manager)
         authType = null;        // Transient only
-        creationTime = ((Long) stream.readObject()).longValue();
-        lastAccessedTime = ((Long) stream.readObject()).longValue();
-        maxInactiveInterval = ((Integer) stream.readObject()).intValue();
-        isNew = ((Boolean) stream.readObject()).booleanValue();
-        isValid = ((Boolean) stream.readObject()).booleanValue();
-        thisAccessedTime = ((Long) stream.readObject()).longValue();
+        SessionSerializer serializer = null;
+        Object header = stream.readObject();
+        if (header instanceof String) {
+            // Written with a SessionSerializer
+            serializer = getSessionSerializer((String) header);
+            creationTime = stream.readLong();
+            lastAccessedTime = stream.readLong();
+            maxInactiveInterval = stream.readInt();
+            isNew = stream.readBoolean();
+            isValid = stream.readBoolean();
+            thisAccessedTime = stream.readLong();
+        } else {
+            creationTime = ((Long) header).longValue();
+            lastAccessedTime = ((Long) stream.readObject()).longValue();
+            maxInactiveInterval = ((Integer) stream.readObject()).intValue();
+            isNew = ((Boolean) stream.readObject()).booleanValue();
+            isValid = ((Boolean) stream.readObject()).booleanValue();
+            thisAccessedTime = ((Long) stream.readObject()).longValue();
+        }
         principal = null;        // Transient only
         //        setId((String) stream.readObject());
         id = (String) stream.readObject();
@@ -1626,18 +1645,22 @@ public class StandardSession implements HttpSession, Session, Serializable {
         // Deserialize the attribute count and attribute values
         if (attributes == null)
             attributes = new ConcurrentHashMap<>();
-        int n = ((Integer) stream.readObject()).intValue();
         boolean isValidSave = isValid;
         isValid = true;
-        for (int i = 0; i < n; i++) {
-            String name = (String) stream.readObject();
-            Object value = stream.readObject();
-            if ((value instanceof String) && (value.equals(NOT_SERIALIZED)))
-                continue;
-            if (manager.getContext().getLogger().isDebugEnabled())
-                manager.getContext().getLogger().debug("  loading attribute '" + name +
-                    "' with value '" + value + "'");
-            attributes.put(name, value);
+        if (serializer != null) {
+            serializer.readAttributes(this, stream, attributes);
+        } else {
+            int n = ((Integer) stream.readObject()).intValue();
+            for (int i = 0; i < n; i++) {
+                String name = (String) stream.readObject();
+                Object value = stream.readObject();
+                if ((value instanceof String) && (value.equals(NOT_SERIALIZED)))
+                    continue;
+                if (manager.getContext().getLogger().isDebugEnabled())
+                    manager.getContext().getLogger().debug("  loading attribute '" + name +
+                        "' with value '" + value + "'");
+                attributes.put(name, value);
+            }
         }
         isValid = isValidSave;
 
@@ -1673,12 +1696,23 @@ public class StandardSession implements HttpSession, Session, Serializable {
     protected void doWriteObject(ObjectOutputStream stream) throws IOException {
 
         // Write the scalar instance variables (except Manager)
-        stream.writeObject(Long.valueOf(creationTime));
-        stream.writeObject(Long.valueOf(lastAccessedTime));
-        stream.writeObject(Integer.valueOf(maxInactiveInterval));
-        stream.writeObject(Boolean.valueOf(isNew));
-        stream.writeObject(Boolean.valueOf(isValid));
-        stream.writeObject(Long.valueOf(thisAccessedTime));
+        SessionSerializer serializer = getSessionSerializer();
+        if (serializer != null) {
+            stream.writeObject(serializer.getClass().getName());
+            stream.writeLong(creationTime);
+            stream.writeLong(lastAccessedTime);
+            stream.writeInt(maxInactiveInterval);
+            stream.writeBoolean(isNew);
+            stream.writeBoolean(isValid);
+            stream.writeLong(thisAccessedTime);
+        } else {
+            stream.writeObject(Long.valueOf(creationTime));
+            stream.writeObject(Long.valueOf(lastAccessedTime));
+            stream.writeObject(Integer.valueOf(maxInactiveInterval));
+            stream.writeObject(Boolean.valueOf(isNew));
+            stream.writeObject(Boolean.valueOf(isValid));
+            stream.writeObject(Long.valueOf(thisAccessedTime));
+        }
         stream.writeObject(id);
         if (manager.getContext().getLogger().isDebugEnabled())
             manager.getContext().getLogger().debug
@@ -1701,6 +1735,11 @@ public class StandardSession implements HttpSession, Session, Serializable {
             }
         }
 
+        if (serializer != null) {
+            serializer.writeAttributes(this, stream, saveNames, saveValues);
+            return;
+        }
+
         // Serialize the attribute count and the Serializable attributes
         int n = saveNames.size();
         stream.writeObject(Integer.valueOf(n));
@@ -1727,6 +1766,88 @@ public class StandardSession implements HttpSession, Session, Serializable {
     }
 
 
+    /**
+     * @return the serializer to use for the attributes of this session or
+     *         <code>null</code> to use Java serialization
+     */
+    protected SessionSerializer getSessionSerializer() {
+        if (manager instanceof ManagerBase) {
+            return ((ManagerBase) manager).getSessionSerializer();
+        }
+        return null;
+    }
+
+
+    /**
+     * Obtain the serializer to read session data that was written by a
+     * serializer of the given class.
+     *
+     * @param className The name of the serializer class
+     * @return the serializer of this session if it is of the given class, a
+     *         new instance of the given class otherwise
+     * @exception IOException if the serializer can't be created
+     */
+    protected SessionSerializer getSessionSerializer(String className)
+            throws IOException {
+        SessionSerializer serializer = getSessionSerializer();
+        if (serializer != null &&
+                serializer.getClass().getName().equals(className)) {
+            return serializer;
+        }
+        try {
+            // Don't initialise or create anything that isn't a serializer
+            Class<?> clazz = Class.forName(className, false,
+                    StandardSession.class.getClassLoader());
+            if (!SessionSerializer.class.isAssignableFrom(clazz)) {
+                throw new IOException(sm.getString(
+                        "standardSession.sessionSerializerFail", className));
+            }
+            return (SessionSerializer) clazz.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(sm.getString(
+                    "standardSession.sessionSerializerFail", className), e);
+        }
+    }
+
+
+    /**
+     * Deserialize an attribute value that was read by a
+     * {@link CompactSessionSerializer} but has not been used since. The
+     * deserialized value replaces the serialized one in the session. If the
+     * value can't be deserialized, the attribute is removed.
+     *
+     * @param name  The name of the attribute
+     * @param value The value of the attribute
+     * @return the deserialized value, or the value if it did not need to be
+     *         deserialized
+     */
+    protected Object resolveAttribute(String name, Object value) {
+        if (!(value instanceof SerializedAttribute)) {
+            return value;
+        }
+        Object result;
+        try {
+            result = ((SerializedAttribute) value).deserialize();
+        } catch (ClassNotFoundException | IOException e) {
+            manager.getContext().getLogger().warn(sm.getString(
+                    "standardSession.deserializeFail", name, id), e);
+            if (attributes instanceof ConcurrentMap) {
+                ((ConcurrentMap<String,Object>) attributes).remove(name, value);
+            } else if (attributes.get(name) == value) {
+                attributes.remove(name);
+            }
+            return null;
+        }
+        if (attributes instanceof ConcurrentMap) {
+            ((ConcurrentMap<String,Object>) attributes).replace(
+                    name, value, result);
+        } else if (attributes.get(name) == value) {
+            attributes.put(name, result);
+        }
+        return result;
+    }
+
+
     /**
      * Exclude standard attributes that cannot be serialized.
      * @param name the attribute's name
@@ -1818,6 +1939,7 @@ public class StandardSession implements HttpSession, Session, Serializable {
         Object listeners[] = context.getApplicationEventListeners();
         if (listeners == null)
             return;
+        value = resolveAttribute(name, value);
         for (int i = 0; i < listeners.length; i++) {
             if (!(listeners[i] instanceof HttpSessionAttributeListener))
                 continue;
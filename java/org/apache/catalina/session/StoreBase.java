@@ -128,7 +128,7 @@ public abstract class StoreBase extends LifecycleBase implements Store {
         }
 
         try {
-            keys = keys();
+            keys = expiredKeys();
         } catch (IOException e) {
             manager.getContext().getLogger().error("Error getting keys", e);
             return;
@@ -184,6 +184,19 @@ public abstract class StoreBase extends LifecycleBase implements Store {
     }
 
 
+    /**
+     * Return the identifiers of the Sessions in this Store that may have
+     * expired. Each of them is loaded to check whether it has expired before
+     * it is removed. This implementation returns the identifiers of all of
+     * the Sessions in this Store.
+     *
+     * @exception IOException if an input/output error occurred
+     */
+    protected String[] expiredKeys() throws IOException {
+        return keys();
+    }
+
+
     @Override
     protected void initInternal() {
         // NOOP
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.startup;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.tomcat.util.bcel.classfile.AnnotationEntry;
+import org.apache.tomcat.util.bcel.classfile.JavaClass;
+import org.apache.tomcat.util.scan.JarScanCache;
+
+/**
+ * The results of scanning the classes in the JARs of a web application for
+ * annotations, retained between starts of the web application so that JARs
+ * that have not changed do not need to be scanned again. For each class, the
+ * index holds what is needed to check the class against the
+ * {@link javax.servlet.annotation.HandlesTypes} of the
+ * ServletContainerInitializers, which may differ from one start to the next,
+ * along with the types of its annotations. Only the classes with a Servlet
+ * annotation then need to be read again.
+ * <p>
+ * The index is written to the work directory of the web application.
+ */
+class AnnotationScanIndex extends JarScanCache<AnnotationScanIndex.ClassInfo[]> {
+
+    static final String FILE_NAME = "annotationScanIndex.dat";
+
+    private static final int VERSION = 2;
+
+
+    AnnotationScanIndex() {
+        super(VERSION, 0);
+    }
+
+
+    @Override
+    protected ClassInfo[] readResult(DataInputStream in) throws IOException {
+        ClassInfo[] classes = new ClassInfo[in.readInt()];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = ClassInfo.read(in);
+        }
+        return classes;
+    }
+
+
+    @Override
+    protected void writeResult(DataOutputStream out, ClassInfo[] classes)
+            throws IOException {
+        out.writeInt(classes.length);
+        for (ClassInfo classInfo : classes) {
+            classInfo.write(out);
+        }
+    }
+
+
+    /**
+     * What the annotation scan needs to know about a class, other than the
+     * values of its Servlet annotations.
+     */
+    static final class ClassInfo {
+
+        private static final String[] NO_NAMES = new String[0];
+
+        final String entryName;
+        final String className;
+        final String superclassName;
+        final String[] interfaceNames;
+        final String[] annotationTypes;
+        final boolean annotation;
+
+        ClassInfo(String entryName, JavaClass javaClass) {
+            this.entryName = entryName;
+            className = javaClass.getClassName();
+            superclassName = javaClass.getSuperclassName();
+            interfaceNames = javaClass.getInterfaceNames();
+            AnnotationEntry[] annotationEntries =
+                    javaClass.getAnnotationEntries();
+            annotationTypes = new String[annotationEntries.length];
+            for (int i = 0; i < annotationEntries.length; i++) {
+                annotationTypes[i] = annotationEntries[i].getAnnotationType();
+            }
+            annotation = (javaClass.getAccessFlags() &
+                    org.apache.tomcat.util.bcel.Constants.ACC_ANNOTATION) > 0;
+        }
+
+        private ClassInfo(String entryName, String className,
+                String superclassName, String[] interfaceNames,
+                String[] annotationTypes, boolean annotation) {
+            this.entryName = entryName;
+            this.className = className;
+            this.superclassName = superclassName;
+            this.interfaceNames = interfaceNames;
+            this.annotationTypes = annotationTypes;
+            this.annotation = annotation;
+        }
+
+        private static ClassInfo read(DataInputStream in) throws IOException {
+            String entryName = in.readUTF();
+            String className = in.readUTF();
+            String superclassName = in.readBoolean() ? in.readUTF() : null;
+            String[] interfaceNames = readNames(in);
+            String[] annotationTypes = readNames(in);
+            boolean annotation = in.readBoolean();
+            return new ClassInfo(entryName, className, superclassName,
+                    interfaceNames, annotationTypes, annotation);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(entryName);
+            out.writeUTF(className);
+            out.writeBoolean(superclassName != null);
+            if (superclassName != null) {
+                out.writeUTF(superclassName);
+            }
+            writeNames(out, interfaceNames);
+            writeNames(out, annotationTypes);
+            out.writeBoolean(annotation);
+        }
+
+        private static String[] readNames(DataInputStream in)
+                throws IOException {
+            int count = in.readInt();
+            if (count == 0) {
+                return NO_NAMES;
+            }
+            String[] result = new String[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = in.readUTF();
+            }
+            return result;
+        }
+
+        private static void writeNames(DataOutputStream out, String[] names)
+                throws IOException {
+            out.writeInt(names.length);
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+        }
+    }
+}
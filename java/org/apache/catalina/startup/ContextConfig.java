@@ -37,7 +37,11 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import javax.servlet.MultipartConfigElement;
 import javax.servlet.ServletContainerInitializer;
@@ -63,6 +67,7 @@ import org.apache.catalina.WebResourceRoot;
 import org.apache.catalina.Wrapper;
 import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.startup.AnnotationScanIndex.ClassInfo;
 import org.apache.catalina.util.ContextName;
 import org.apache.catalina.util.Introspection;
 import org.apache.juli.logging.Log;
@@ -105,6 +110,7 @@ import org.apache.tomcat.util.digester.RuleSet;
 import org.apache.tomcat.util.res.StringManager;
 import org.apache.tomcat.util.scan.Jar;
 import org.apache.tomcat.util.scan.JarFactory;
+import org.apache.tomcat.util.scan.JarScanCache;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXParseException;
 
@@ -239,6 +245,15 @@ public class ContextConfig implements LifecycleListener {
      */
     protected boolean handlesTypesNonAnnotations = false;
 
+    /**
+     * The results of the previous annotation scan of the web application's
+     * JARs and the results of the current scan. Only set while the JARs are
+     * being scanned and the index is enabled for the context.
+     */
+    private AnnotationScanIndex annotationScanIndex = null;
+    private AnnotationScanIndex newAnnotationScanIndex = null;
+    private volatile boolean annotationScanIndexChanged = false;
+
     private WebXmlParser webXmlParser;
 
     // ------------------------------------------------------------- Properties
@@ -737,6 +752,8 @@ public class ContextConfig implements LifecycleListener {
      */
     protected synchronized void beforeStart() {
 
+        long t1 = System.currentTimeMillis();
+
         try {
             fixDocBase();
         } catch (IOException e) {
@@ -745,6 +762,12 @@ public class ContextConfig implements LifecycleListener {
         }
 
         antiLocking();
+
+        // Includes the expansion of the WAR, if required
+        if (context instanceof StandardContext) {
+            ((StandardContext) context).addStartupPhase("docBase",
+                    System.currentTimeMillis() - t1);
+        }
     }
 
 
@@ -1861,26 +1884,160 @@ public class ContextConfig implements LifecycleListener {
 
     protected void processAnnotations(Set<WebXml> fragments,
             boolean handlesTypesOnly) {
-        for(WebXml fragment : fragments) {
-            // Only need to scan for @HandlesTypes matches if any of the
-            // following are true:
-            // - it has already been determined only @HandlesTypes is required
-            //   (e.g. main web.xml has metadata-complete="true"
-            // - this fragment is for a container JAR (Servlet 3.1 section 8.1)
-            // - this fragment has metadata-complete="true"
-            boolean htOnly = handlesTypesOnly || !fragment.getWebappJar() ||
-                    fragment.isMetadataComplete();
-
-            WebXml annotations = new WebXml();
-            // no impact on distributable
-            annotations.setDistributable(true);
-            URL url = fragment.getURL();
-            processAnnotationsUrl(url, annotations, htOnly);
-            Set<WebXml> set = new HashSet<>();
-            set.add(annotations);
-            // Merge annotations into fragment - fragment takes priority
-            fragment.merge(set);
+
+        File indexFile = getAnnotationScanIndexFile();
+        if (indexFile != null) {
+            annotationScanIndex = new AnnotationScanIndex();
+            annotationScanIndex.load(indexFile);
+            newAnnotationScanIndex = new AnnotationScanIndex();
+            annotationScanIndexChanged = false;
+        }
+
+        try {
+            int threads = getAnnotationScanThreads();
+            if (threads > 1 && fragments.size() > 1) {
+                processAnnotationsParallel(fragments, handlesTypesOnly, threads);
+            } else {
+                for (WebXml fragment : fragments) {
+                    mergeAnnotations(fragment,
+                            scanAnnotations(fragment, handlesTypesOnly));
+                }
+            }
+        } finally {
+            if (indexFile != null) {
+                // The new index only holds the JARs in this web application
+                // now. It needs to be written if a JAR was scanned rather than
+                // taken from the index, or if a JAR has been removed.
+                if (annotationScanIndexChanged ||
+                        !newAnnotationScanIndex.hasSameJars(
+                                annotationScanIndex)) {
+                    try {
+                        newAnnotationScanIndex.save(indexFile);
+                    } catch (IOException e) {
+                        log.warn(sm.getString(
+                                "contextConfig.annotationScanIndexSaveFail",
+                                indexFile.getAbsolutePath()), e);
+                    }
+                }
+                annotationScanIndex = null;
+                newAnnotationScanIndex = null;
+            }
+        }
+    }
+
+
+    /**
+     * Scan the fragments using a pool of threads. Each fragment is scanned by
+     * a single thread. The results are merged into the fragments by the
+     * calling thread, in the same order as a sequential scan would have done.
+     */
+    private void processAnnotationsParallel(Set<WebXml> fragments,
+            final boolean handlesTypesOnly, int threads) {
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<WebXml> scanned = new ArrayList<>(fragments.size());
+            List<Future<WebXml>> results = new ArrayList<>(fragments.size());
+            for (final WebXml fragment : fragments) {
+                scanned.add(fragment);
+                results.add(pool.submit(new Callable<WebXml>() {
+                    @Override
+                    public WebXml call() {
+                        return scanAnnotations(fragment, handlesTypesOnly);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < scanned.size(); i++) {
+                WebXml annotations;
+                try {
+                    annotations = results.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(sm.getString(
+                            "contextConfig.annotationScanFail",
+                            context.getName()), e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(sm.getString(
+                            "contextConfig.annotationScanFail",
+                            context.getName()), cause);
+                }
+                mergeAnnotations(scanned.get(i), annotations);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    private WebXml scanAnnotations(WebXml fragment, boolean handlesTypesOnly) {
+        // Only need to scan for @HandlesTypes matches if any of the
+        // following are true:
+        // - it has already been determined only @HandlesTypes is required
+        //   (e.g. main web.xml has metadata-complete="true"
+        // - this fragment is for a container JAR (Servlet 3.1 section 8.1)
+        // - this fragment has metadata-complete="true"
+        boolean htOnly = handlesTypesOnly || !fragment.getWebappJar() ||
+                fragment.isMetadataComplete();
+
+        WebXml annotations = new WebXml();
+        // no impact on distributable
+        annotations.setDistributable(true);
+        URL url = fragment.getURL();
+        processAnnotationsUrl(url, annotations, htOnly);
+        return annotations;
+    }
+
+
+    private static void mergeAnnotations(WebXml fragment, WebXml annotations) {
+        Set<WebXml> set = new HashSet<>();
+        set.add(annotations);
+        // Merge annotations into fragment - fragment takes priority
+        fragment.merge(set);
+    }
+
+
+    private int getAnnotationScanThreads() {
+        if (!(context instanceof StandardContext)) {
+            return 1;
+        }
+        int result = ((StandardContext) context).getAnnotationScanThreads();
+
+        // Positive values are unchanged
+        if (result > 0) {
+            return result;
+        }
+
+        // Zero == Runtime.getRuntime().availableProcessors()
+        // -ve  == Runtime.getRuntime().availableProcessors() + value
+        result = Runtime.getRuntime().availableProcessors() + result;
+        if (result < 1) {
+            result = 1;
+        }
+        return result;
+    }
+
+
+    private File getAnnotationScanIndexFile() {
+        if (!(context instanceof StandardContext) ||
+                !((StandardContext) context).getAnnotationScanIndex()) {
+            return null;
+        }
+        String workPath = ((StandardContext) context).getWorkPath();
+        if (workPath == null) {
+            return null;
         }
+        File workDir = new File(workPath);
+        if (!workDir.isDirectory() && !workDir.mkdirs()) {
+            return null;
+        }
+        return new File(workDir, AnnotationScanIndex.FILE_NAME);
     }
 
     protected void processAnnotationsWebResource(WebResource webResource,
@@ -1933,14 +2090,41 @@ public class ContextConfig implements LifecycleListener {
     protected void processAnnotationsJar(URL url, WebXml fragment,
             boolean handlesTypesOnly) {
 
+        File jarFile = null;
+        List<ClassInfo> classes = null;
+        if (annotationScanIndex != null) {
+            jarFile = JarScanCache.getJarFile(url);
+            if (jarFile != null) {
+                ClassInfo[] indexed = annotationScanIndex.get(jarFile);
+                if (indexed != null) {
+                    processAnnotationsIndex(
+                            url, indexed, fragment, handlesTypesOnly);
+                    newAnnotationScanIndex.put(jarFile, indexed);
+                    return;
+                }
+                classes = new ArrayList<>();
+            }
+        }
+
         try (Jar jar = JarFactory.newInstance(url)) {
             jar.nextEntry();
             String entryName = jar.getEntryName();
             while (entryName != null) {
                 if (entryName.endsWith(".class")) {
                     try (InputStream is = jar.getEntryInputStream()) {
-                        processAnnotationsStream(
-                                is, fragment, handlesTypesOnly);
+                        if (classes == null) {
+                            processAnnotationsStream(
+                                    is, fragment, handlesTypesOnly);
+                        } else {
+                            ClassParser parser = new ClassParser(is, null);
+                            JavaClass clazz = parser.parse();
+                            ClassInfo classInfo = new ClassInfo(entryName, clazz);
+                            classes.add(classInfo);
+                            checkHandlesTypes(classInfo);
+                            if (!handlesTypesOnly) {
+                                processClassAnnotations(clazz, fragment);
+                            }
+                        }
                     } catch (IOException e) {
                         log.error(sm.getString("contextConfig.inputStreamJar",
                                 entryName, url),e);
@@ -1954,6 +2138,55 @@ public class ContextConfig implements LifecycleListener {
             }
         } catch (IOException e) {
             log.error(sm.getString("contextConfig.jarFile", url), e);
+            return;
+        }
+
+        if (classes != null) {
+            newAnnotationScanIndex.put(
+                    jarFile, classes.toArray(new ClassInfo[classes.size()]));
+            annotationScanIndexChanged = true;
+        }
+    }
+
+
+    /**
+     * Process a JAR that has not changed since it was last scanned. The
+     * {@link HandlesTypes} checks only need what is in the index. The only
+     * classes read from the JAR are those with a Servlet annotation.
+     */
+    private void processAnnotationsIndex(URL url, ClassInfo[] classes,
+            WebXml fragment, boolean handlesTypesOnly) {
+
+        Jar jar = null;
+        try {
+            for (ClassInfo classInfo : classes) {
+                checkHandlesTypes(classInfo);
+                if (handlesTypesOnly || !hasWebAnnotation(classInfo)) {
+                    continue;
+                }
+                try {
+                    if (jar == null) {
+                        jar = JarFactory.newInstance(url);
+                    }
+                    try (InputStream is =
+                            jar.getInputStream(classInfo.entryName)) {
+                        if (is != null) {
+                            ClassParser parser = new ClassParser(is, null);
+                            processClassAnnotations(parser.parse(), fragment);
+                        }
+                    }
+                } catch (IOException e) {
+                    log.error(sm.getString("contextConfig.inputStreamJar",
+                            classInfo.entryName, url),e);
+                } catch (ClassFormatException e) {
+                    log.error(sm.getString("contextConfig.inputStreamJar",
+                            classInfo.entryName, url),e);
+                }
+            }
+        } finally {
+            if (jar != null) {
+                jar.close();
+            }
         }
     }
 
@@ -1993,6 +2226,11 @@ public class ContextConfig implements LifecycleListener {
             return;
         }
 
+        processClassAnnotations(clazz, fragment);
+    }
+
+
+    private void processClassAnnotations(JavaClass clazz, WebXml fragment) {
         String className = clazz.getClassName();
 
         AnnotationEntry[] annotationsEntries = clazz.getAnnotationEntries();
@@ -2011,6 +2249,18 @@ public class ContextConfig implements LifecycleListener {
         }
     }
 
+
+    private static boolean hasWebAnnotation(ClassInfo classInfo) {
+        for (String type : classInfo.annotationTypes) {
+            if ("Ljavax/servlet/annotation/WebServlet;".equals(type) ||
+                    "Ljavax/servlet/annotation/WebFilter;".equals(type) ||
+                    "Ljavax/servlet/annotation/WebListener;".equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * For classes packaged with the web application, the class and each
      * super class needs to be checked for a match with {@link HandlesTypes} or
@@ -2018,24 +2268,43 @@ public class ContextConfig implements LifecycleListener {
      * @param javaClass
      */
     protected void checkHandlesTypes(JavaClass javaClass) {
+        // Skip this if we can
+        if (typeInitializerMap.size() == 0) {
+            return;
+        }
+        checkHandlesTypes(new ClassInfo(null, javaClass));
+    }
+
+
+    private void checkHandlesTypes(ClassInfo classInfo) {
 
         // Skip this if we can
         if (typeInitializerMap.size() == 0) {
             return;
         }
 
-        if ((javaClass.getAccessFlags() &
-                org.apache.tomcat.util.bcel.Constants.ACC_ANNOTATION) > 0) {
+        if (classInfo.annotation) {
             // Skip annotations.
             return;
         }
 
-        String className = javaClass.getClassName();
+        // The cache and the maps of matches are shared by all the threads
+        // scanning JARs
+        synchronized (javaClassCache) {
+            checkHandlesTypesInternal(classInfo);
+        }
+    }
+
+
+    private void checkHandlesTypesInternal(ClassInfo classInfo) {
+
+        String className = classInfo.className;
 
         Class<?> clazz = null;
         if (handlesTypesNonAnnotations) {
             // This *might* be match for a HandlesType.
-            populateJavaClassCache(className, javaClass);
+            populateJavaClassCache(className, classInfo.superclassName,
+                    classInfo.interfaceNames);
             JavaClassCacheEntry entry = javaClassCache.get(className);
             if (entry.getSciSet() == null) {
                 try {
@@ -2071,11 +2340,9 @@ public class ContextConfig implements LifecycleListener {
             for (Map.Entry<Class<?>, Set<ServletContainerInitializer>> entry :
                     typeInitializerMap.entrySet()) {
                 if (entry.getKey().isAnnotation()) {
-                    AnnotationEntry[] annotationEntries =
-                            javaClass.getAnnotationEntries();
-                    for (AnnotationEntry annotationEntry : annotationEntries) {
+                    for (String annotationType : classInfo.annotationTypes) {
                         if (entry.getKey().getName().equals(
-                                getClassName(annotationEntry.getAnnotationType()))) {
+                                getClassName(annotationType))) {
                             if (clazz == null) {
                                 clazz = Introspection.loadClass(
                                         context, className);
@@ -2121,17 +2388,19 @@ public class ContextConfig implements LifecycleListener {
         return msg.toString();
     }
 
-    private void populateJavaClassCache(String className, JavaClass javaClass) {
+    private void populateJavaClassCache(String className,
+            String superclassName, String[] interfaceNames) {
         if (javaClassCache.containsKey(className)) {
             return;
         }
 
         // Add this class to the cache
-        javaClassCache.put(className, new JavaClassCacheEntry(javaClass));
+        javaClassCache.put(className,
+                new JavaClassCacheEntry(superclassName, interfaceNames));
 
-        populateJavaClassCache(javaClass.getSuperclassName());
+        populateJavaClassCache(superclassName);
 
-        for (String iterface : javaClass.getInterfaceNames()) {
+        for (String iterface : interfaceNames) {
             populateJavaClassCache(iterface);
         }
     }
@@ -2145,7 +2414,8 @@ public class ContextConfig implements LifecycleListener {
                 }
                 ClassParser parser = new ClassParser(is, null);
                 JavaClass clazz = parser.parse();
-                populateJavaClassCache(clazz.getClassName(), clazz);
+                populateJavaClassCache(clazz.getClassName(),
+                        clazz.getSuperclassName(), clazz.getInterfaceNames());
             } catch (ClassFormatException e) {
                 log.debug(sm.getString("contextConfig.invalidSciHandlesTypes",
                         className), e);
@@ -2546,9 +2816,10 @@ public class ContextConfig implements LifecycleListener {
 
         private Set<ServletContainerInitializer> sciSet = null;
 
-        public JavaClassCacheEntry(JavaClass javaClass) {
-            superclassName = javaClass.getSuperclassName();
-            interfaceNames = javaClass.getInterfaceNames();
+        public JavaClassCacheEntry(String superclassName,
+                String[] interfaceNames) {
+            this.superclassName = superclassName;
+            this.interfaceNames = interfaceNames;
         }
 
         public String getSuperclassName() {
@@ -151,6 +151,13 @@ public class ContextRuleSet extends RuleSetBase {
         digester.addSetNext(prefix + "Context/Manager/Store",
                             "setStore",
                             "org.apache.catalina.Store");
+        digester.addObjectCreate(prefix + "Context/Manager/SessionSerializer",
+                                 null, // MUST be specified in the element
+                                 "className");
+        digester.addSetProperties(prefix + "Context/Manager/SessionSerializer");
+        digester.addSetNext(prefix + "Context/Manager/SessionSerializer",
+                            "setSessionSerializer",
+                            "org.apache.catalina.session.SessionSerializer");
 
         digester.addObjectCreate(prefix + "Context/Parameter",
                                  "org.apache.tomcat.util.descriptor.web.ApplicationParameter");
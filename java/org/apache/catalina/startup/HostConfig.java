@@ -25,6 +25,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -153,6 +155,12 @@ public class HostConfig
      */
     protected final Set<String> invalidWars = new HashSet<>();
 
+    /**
+     * The report of the time taken to start each web application when the
+     * Host was last started.
+     */
+    private volatile String startupTimeline = null;
+
     // ------------------------------------------------------------- Properties
 
 
@@ -250,6 +258,15 @@ public class HostConfig
     }
 
 
+    /**
+     * Return the time spent in each phase of starting each web application
+     * when the Host was last started, slowest web application first.
+     */
+    public String getStartupTimeline() {
+        return startupTimeline;
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -1435,9 +1452,51 @@ public class HostConfig
             host.setAutoDeploy(false);
         }
 
+        long t1 = System.currentTimeMillis();
         if (host.getDeployOnStartup())
             deployApps();
+        reportStartupTimeline(System.currentTimeMillis() - t1);
+
+    }
 
+
+    /**
+     * Log the time spent starting each web application of the Host, including
+     * those that were started before the automatic deployment.
+     *
+     * @param deployTime The time (in milliseconds) automatic deployment took
+     */
+    protected void reportStartupTimeline(long deployTime) {
+        List<StandardContext> contexts = new ArrayList<>();
+        final Map<StandardContext,Long> totals = new HashMap<>();
+        for (Container child : host.findChildren()) {
+            if (child instanceof StandardContext) {
+                StandardContext context = (StandardContext) child;
+                long total = 0;
+                for (Long time : context.getStartupPhases().values()) {
+                    total += time.longValue();
+                }
+                contexts.add(context);
+                totals.put(context, Long.valueOf(total));
+            }
+        }
+        Collections.sort(contexts, new Comparator<StandardContext>() {
+            @Override
+            public int compare(StandardContext c1, StandardContext c2) {
+                return totals.get(c2).compareTo(totals.get(c1));
+            }
+        });
+
+        StringBuilder report = new StringBuilder(sm.getString(
+                "hostConfig.startupTimeline", host.getName(),
+                Integer.valueOf(contexts.size()), Long.valueOf(deployTime)));
+        for (StandardContext context : contexts) {
+            report.append(System.lineSeparator());
+            report.append(sm.getString("hostConfig.startupTimeline.context",
+                    context.getName(), context.getStartupTimeline()));
+        }
+        startupTimeline = report.toString();
+        log.info(startupTimeline);
     }
 
 
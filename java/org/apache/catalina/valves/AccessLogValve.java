@@ -31,6 +31,8 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.catalina.LifecycleException;
 import org.apache.juli.logging.Log;
@@ -64,6 +66,11 @@ public class AccessLogValve extends AbstractAccessLogValve {
 
     private static final Log log = LogFactory.getLog(AccessLogValve.class);
 
+    /**
+     * Guards the writer and the current log file.
+     */
+    private final Lock writerLock = new ReentrantLock();
+
     //------------------------------------------------------ Constructor
     public AccessLogValve() {
         super();
@@ -309,9 +316,12 @@ public class AccessLogValve extends AbstractAccessLogValve {
         }
         this.fileDateFormat = newFormat;
 
-        synchronized (this) {
+        writerLock.lock();
+        try {
             fileDateFormatter = new SimpleDateFormat(newFormat, Locale.US);
             fileDateFormatter.setTimeZone(TimeZone.getDefault());
+        } finally {
+            writerLock.unlock();
         }
     }
 
@@ -346,10 +356,15 @@ public class AccessLogValve extends AbstractAccessLogValve {
      * throwables will be caught and logged.
      */
     @Override
-    public synchronized void backgroundProcess() {
-        if (getState().isAvailable() && getEnabled() && writer != null &&
-                buffered) {
-            writer.flush();
+    public void backgroundProcess() {
+        writerLock.lock();
+        try {
+            if (getState().isAvailable() && getEnabled() && writer != null &&
+                    buffered) {
+                writer.flush();
+            }
+        } finally {
+            writerLock.unlock();
         }
     }
 
@@ -361,7 +376,8 @@ public class AccessLogValve extends AbstractAccessLogValve {
             // Only do a logfile switch check once a second, max.
             long systime = System.currentTimeMillis();
             if ((systime - rotationLastChecked) > 1000) {
-                synchronized(this) {
+                writerLock.lock();
+                try {
                     if ((systime - rotationLastChecked) > 1000) {
                         rotationLastChecked = systime;
 
@@ -376,6 +392,8 @@ public class AccessLogValve extends AbstractAccessLogValve {
                             open();
                         }
                     }
+                } finally {
+                    writerLock.unlock();
                 }
             }
         }
@@ -390,28 +408,31 @@ public class AccessLogValve extends AbstractAccessLogValve {
      * @param newFileName The file name to move the log file entry to
      * @return true if a file was rotated with no error
      */
-    public synchronized boolean rotate(String newFileName) {
-
-        if (currentLogFile != null) {
-            File holder = currentLogFile;
-            close(false);
-            try {
-                holder.renameTo(new File(newFileName));
-            } catch (Throwable e) {
-                ExceptionUtils.handleThrowable(e);
-                log.error(sm.getString("accessLogValve.rotateFail"), e);
-            }
+    public boolean rotate(String newFileName) {
+        writerLock.lock();
+        try {
+            if (currentLogFile != null) {
+                File holder = currentLogFile;
+                close(false);
+                try {
+                    holder.renameTo(new File(newFileName));
+                } catch (Throwable e) {
+                    ExceptionUtils.handleThrowable(e);
+                    log.error(sm.getString("accessLogValve.rotateFail"), e);
+                }
 
-            /* Make sure date is correct */
-            dateStamp = fileDateFormatter.format(
-                    new Date(System.currentTimeMillis()));
+                /* Make sure date is correct */
+                dateStamp = fileDateFormatter.format(
+                        new Date(System.currentTimeMillis()));
 
-            open();
-            return true;
-        } else {
-            return false;
+                open();
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            writerLock.unlock();
         }
-
     }
 
     // -------------------------------------------------------- Private Methods
@@ -478,30 +499,35 @@ public class AccessLogValve extends AbstractAccessLogValve {
      *
      * @param rename Rename file to final name after closing
      */
-    private synchronized void close(boolean rename) {
-        if (writer == null) {
-            return;
-        }
-        writer.flush();
-        writer.close();
-        if (rename && renameOnRotate) {
-            File newLogFile = getLogFile(true);
-            if (!newLogFile.exists()) {
-                try {
-                    if (!currentLogFile.renameTo(newLogFile)) {
-                        log.error(sm.getString("accessLogValve.renameFail", currentLogFile, newLogFile));
+    private void close(boolean rename) {
+        writerLock.lock();
+        try {
+            if (writer == null) {
+                return;
+            }
+            writer.flush();
+            writer.close();
+            if (rename && renameOnRotate) {
+                File newLogFile = getLogFile(true);
+                if (!newLogFile.exists()) {
+                    try {
+                        if (!currentLogFile.renameTo(newLogFile)) {
+                            log.error(sm.getString("accessLogValve.renameFail", currentLogFile, newLogFile));
+                        }
+                    } catch (Throwable e) {
+                        ExceptionUtils.handleThrowable(e);
+                        log.error(sm.getString("accessLogValve.renameFail", currentLogFile, newLogFile), e);
                     }
-                } catch (Throwable e) {
-                    ExceptionUtils.handleThrowable(e);
-                    log.error(sm.getString("accessLogValve.renameFail", currentLogFile, newLogFile), e);
+                } else {
+                    log.error(sm.getString("accessLogValve.alreadyExists", currentLogFile, newLogFile));
                 }
-            } else {
-                log.error(sm.getString("accessLogValve.alreadyExists", currentLogFile, newLogFile));
             }
+            writer = null;
+            dateStamp = "";
+            currentLogFile = null;
+        } finally {
+            writerLock.unlock();
         }
-        writer = null;
-        dateStamp = "";
-        currentLogFile = null;
     }
 
 
@@ -518,7 +544,8 @@ public class AccessLogValve extends AbstractAccessLogValve {
 
         /* In case something external rotated the file instead */
         if (checkExists) {
-            synchronized (this) {
+            writerLock.lock();
+            try {
                 if (currentLogFile != null && !currentLogFile.exists()) {
                     try {
                         close(false);
@@ -533,12 +560,15 @@ public class AccessLogValve extends AbstractAccessLogValve {
 
                     open();
                 }
+            } finally {
+                writerLock.unlock();
             }
         }
 
         // Log this message
         try {
-            synchronized(this) {
+            writerLock.lock();
+            try {
                 if (writer != null) {
                     message.writeTo(writer);
                     writer.println("");
@@ -546,6 +576,8 @@ public class AccessLogValve extends AbstractAccessLogValve {
                         writer.flush();
                     }
                 }
+            } finally {
+                writerLock.unlock();
             }
         } catch (IOException ioe) {
             log.warn(sm.getString(
@@ -557,35 +589,52 @@ public class AccessLogValve extends AbstractAccessLogValve {
     /**
      * Open the new log file for the date specified by <code>dateStamp</code>.
      */
-    protected synchronized void open() {
-        // Open the current log file
-        // If no rotate - no need for dateStamp in fileName
-        File pathname = getLogFile(rotatable && !renameOnRotate);
+    protected void open() {
+        writerLock.lock();
+        try {
+            // Open the current log file
+            // If no rotate - no need for dateStamp in fileName
+            File pathname = getLogFile(rotatable && !renameOnRotate);
+
+            Charset charset = null;
+            if (encoding != null) {
+                try {
+                    charset = B2CConverter.getCharset(encoding);
+                } catch (UnsupportedEncodingException ex) {
+                    log.error(sm.getString(
+                            "accessLogValve.unsupportedEncoding", encoding), ex);
+                }
+            }
+            if (charset == null) {
+                charset = StandardCharsets.ISO_8859_1;
+            }
 
-        Charset charset = null;
-        if (encoding != null) {
             try {
-                charset = B2CConverter.getCharset(encoding);
-            } catch (UnsupportedEncodingException ex) {
-                log.error(sm.getString(
-                        "accessLogValve.unsupportedEncoding", encoding), ex);
+                writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(pathname, true), charset), 128000),
+                        false);
+
+                currentLogFile = pathname;
+                writeHeader();
+            } catch (IOException e) {
+                writer = null;
+                currentLogFile = null;
+                log.error(sm.getString("accessLogValve.openFail", pathname), e);
             }
+        } finally {
+            writerLock.unlock();
         }
-        if (charset == null) {
-            charset = StandardCharsets.ISO_8859_1;
-        }
-
-        try {
-            writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
-                    new FileOutputStream(pathname, true), charset), 128000),
-                    false);
+    }
 
-            currentLogFile = pathname;
-        } catch (IOException e) {
-            writer = null;
-            currentLogFile = null;
-            log.error(sm.getString("accessLogValve.openFail", pathname), e);
-        }
+    /**
+     * Hook for sub-classes that need to write to a newly opened log file
+     * before any entry is logged to it. Called by {@link #open()} with the
+     * writer lock held, once <code>writer</code> and
+     * <code>currentLogFile</code> have been set. The default implementation
+     * does nothing.
+     */
+    protected void writeHeader() {
+        // NOOP
     }
 
     /**
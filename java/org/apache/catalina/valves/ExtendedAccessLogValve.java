@@ -189,11 +189,11 @@ public class ExtendedAccessLogValve extends AccessLogValve {
     }
 
     /**
-     * Open the new log file for the date specified by <code>dateStamp</code>.
+     * Write the W3C header to a new, empty log file. Called with the writer
+     * lock held so that no entry can be written before the header.
      */
     @Override
-    protected synchronized void open() {
-        super.open();
+    protected void writeHeader() {
         if (currentLogFile.length()==0) {
             writer.println("#Fields: " + pattern);
             writer.println("#Version: 2.0");
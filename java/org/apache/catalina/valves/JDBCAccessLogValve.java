@@ -24,6 +24,8 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Properties;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.servlet.ServletException;
 
@@ -204,6 +206,11 @@ public final class JDBCAccessLogValve extends ValveBase implements AccessLog {
     private Connection conn;
     private PreparedStatement ps;
 
+    /**
+     * Guards the database connection and the prepared statement.
+     */
+    private final Lock dbLock = new ReentrantLock();
+
 
     private long currentTimeMillis;
 
@@ -504,7 +511,8 @@ public final class JDBCAccessLogValve extends ValveBase implements AccessLog {
             referer = request.getHeader("referer");
             userAgent = request.getHeader("user-agent");
         }
-        synchronized (this) {
+        dbLock.lock();
+        try {
           int numberOfTries = 2;
           while (numberOfTries>0) {
             try {
@@ -543,6 +551,8 @@ public final class JDBCAccessLogValve extends ValveBase implements AccessLog {
               }
               numberOfTries--;
            }
+        } finally {
+            dbLock.unlock();
         }
 
     }
@@ -644,10 +654,13 @@ public final class JDBCAccessLogValve extends ValveBase implements AccessLog {
     @Override
     protected synchronized void startInternal() throws LifecycleException {
 
+        dbLock.lock();
         try {
             open() ;
         } catch (SQLException e) {
             throw new LifecycleException(e);
+        } finally {
+            dbLock.unlock();
         }
 
         setState(LifecycleState.STARTING);
@@ -666,7 +679,12 @@ public final class JDBCAccessLogValve extends ValveBase implements AccessLog {
 
         setState(LifecycleState.STOPPING);
 
-        close() ;
+        dbLock.lock();
+        try {
+            close() ;
+        } finally {
+            dbLock.unlock();
+        }
     }
 
 
@@ -16,18 +16,34 @@
  */
 package org.apache.catalina.webresources;
 
-import java.util.Comparator;
 import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.LinkedHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.catalina.WebResource;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.res.StringManager;
 
+/**
+ * Cache of the resources of a web application.
+ * <p>
+ * Entries are evicted using a segmented LRU policy. New entries start in the
+ * probation segment and are promoted to the protected segment, which may use
+ * up to 80% of the cache, when they are used again. Entries that drop out of
+ * the protected segment go back to probation, and victims are always taken
+ * from probation first. When the cache is full, a new entry is only admitted
+ * if it has been requested more often recently than the first victim, as
+ * estimated by a {@link FrequencySketch}, so that a burst of requests for
+ * resources that are only used once cannot flush the frequently used ones.
+ * <p>
+ * Recording a hit must not make request threads wait for each other, so hits
+ * that occur while the policy is being updated by another thread are not
+ * recorded.
+ */
 public class Cache {
 
     private static final Log log = LogFactory.getLog(Cache.class);
@@ -36,6 +52,10 @@ public class Cache {
 
     private static final long TARGET_FREE_PERCENT_GET = 5;
     private static final long TARGET_FREE_PERCENT_BACKGROUND = 10;
+    private static final long PROTECTED_PERCENT = 80;
+
+    // Used to size the frequency sketch
+    private static final long ESTIMATED_ENTRY_SIZE = 4 * 1024;
 
     // objectMaxSize must be < maxSize/20
     private static final int OBJECT_MAX_SIZE_FACTOR = 20;
@@ -46,13 +66,27 @@ public class Cache {
     private long ttl = 5000;
     private long maxSize = 10 * 1024 * 1024;
     private int objectMaxSize = (int) maxSize/OBJECT_MAX_SIZE_FACTOR;
+    private boolean offHeap = false;
 
     private AtomicLong lookupCount = new AtomicLong(0);
     private AtomicLong hitCount = new AtomicLong(0);
+    private AtomicLong evictionCount = new AtomicLong(0);
+    private AtomicLong rejectionCount = new AtomicLong(0);
 
     private final ConcurrentMap<String,CachedResource> resourceCache =
             new ConcurrentHashMap<>();
 
+    /*
+     * The eviction policy. Everything below is guarded by evictionLock.
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LinkedHashMap<String,CachedResource> probation =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String,CachedResource> protectedSegment =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long protectedSize = 0;
+    private FrequencySketch sketch = createSketch(maxSize);
+
     public Cache(StandardRoot root) {
         this.root = root;
     }
@@ -68,15 +102,15 @@ public class Cache {
         CachedResource cacheEntry = resourceCache.get(path);
 
         if (cacheEntry != null && !cacheEntry.validate(useClassLoaderResources)) {
-            removeCacheEntry(path, true);
+            removeCacheEntry(cacheEntry);
             cacheEntry = null;
         }
 
         if (cacheEntry == null) {
             // Local copy to ensure consistency
             int objectMaxSizeBytes = getObjectMaxSizeBytes();
-            CachedResource newCacheEntry =
-                    new CachedResource(root, path, getTtl(), objectMaxSizeBytes);
+            CachedResource newCacheEntry = new CachedResource(
+                    root, path, getTtl(), objectMaxSizeBytes, isOffHeap());
 
             // Concurrent callers will end up with the same CachedResource
             // instance
@@ -93,22 +127,7 @@ public class Cache {
                 long delta = cacheEntry.getSize();
                 size.addAndGet(delta);
 
-                if (size.get() > maxSize) {
-                    // Process resources unordered for speed. Trades cache
-                    // efficiency (younger entries may be evicted before older
-                    // ones) for speed since this is on the critical path for
-                    // request processing
-                    long targetSize =
-                            maxSize * (100 - TARGET_FREE_PERCENT_GET) / 100;
-                    long newSize = evict(
-                            targetSize, resourceCache.values().iterator());
-                    if (newSize > maxSize) {
-                        // Unable to create sufficient space for this resource
-                        // Remove it from the cache
-                        removeCacheEntry(path, true);
-                        log.warn(sm.getString("cache.addFail", path));
-                    }
-                }
+                add(cacheEntry);
             } else {
                 // Another thread added the entry to the cache
                 // Make sure it is validated
@@ -116,24 +135,22 @@ public class Cache {
             }
         } else {
             hitCount.incrementAndGet();
+            recordHit(cacheEntry);
         }
 
         return cacheEntry;
     }
 
     protected void backgroundProcess() {
-        // Create an ordered set of all cached resources with the least recently
-        // used first. This is a background process so we can afford to take the
-        // time to order the elements first
-        TreeSet<CachedResource> orderedResources =
-                new TreeSet<>(new EvictionOrder());
-        orderedResources.addAll(resourceCache.values());
-
-        Iterator<CachedResource> iter = orderedResources.iterator();
-
         long targetSize =
                 maxSize * (100 - TARGET_FREE_PERCENT_BACKGROUND) / 100;
-        long newSize = evict(targetSize, iter);
+        long newSize;
+        evictionLock.lock();
+        try {
+            newSize = evict(targetSize);
+        } finally {
+            evictionLock.unlock();
+        }
 
         if (newSize > targetSize) {
             log.info(sm.getString("cache.backgroundEvictFail",
@@ -145,6 +162,7 @@ public class Cache {
 
     private boolean noCache(String path) {
         // Don't cache resources used by the class loader (it has its own cache)
+        // This also means that class files are never held off-heap
         if (path.startsWith("/WEB-INF/classes") ||
                 path.startsWith("/WEB-INF/lib")) {
             return true;
@@ -152,37 +170,141 @@ public class Cache {
         return false;
     }
 
-    private long evict(long targetSize, Iterator<CachedResource> iter) {
+    /*
+     * Add a new entry to the eviction policy, making space for it if necessary.
+     */
+    private void add(CachedResource entry) {
+        String path = entry.getWebappPath();
+        int hash = path.hashCode();
+        evictionLock.lock();
+        try {
+            sketch.increment(hash);
+            if (resourceCache.get(path) != entry) {
+                // Already removed by another thread
+                return;
+            }
+            probation.put(path, entry);
+
+            if (size.get() > maxSize) {
+                CachedResource victim = nextVictim(entry);
+                if (victim != null && sketch.frequency(hash) <=
+                        sketch.frequency(victim.getWebappPath().hashCode())) {
+                    // The new entry is not popular enough to displace the
+                    // existing ones
+                    removeCacheEntry(entry);
+                    rejectionCount.incrementAndGet();
+                }
+                if (size.get() > maxSize) {
+                    long targetSize =
+                            maxSize * (100 - TARGET_FREE_PERCENT_GET) / 100;
+                    long newSize = evict(targetSize);
+                    if (newSize > maxSize) {
+                        // Unable to create sufficient space for this resource
+                        // Remove it from the cache
+                        removeCacheEntry(entry);
+                        log.warn(sm.getString("cache.addFail", path));
+                    }
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
 
-        long now = System.currentTimeMillis();
+    private void recordHit(CachedResource entry) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            String path = entry.getWebappPath();
+            sketch.increment(path.hashCode());
+            if (protectedSegment.get(path) == entry) {
+                // Moved to the end of the protected segment by get()
+                return;
+            }
+            if (probation.get(path) != entry) {
+                // Not added to the policy yet or already removed
+                return;
+            }
+            // Promote to the protected segment
+            probation.remove(path);
+            protectedSegment.put(path, entry);
+            protectedSize += entry.getSize();
+            long protectedMaxSize = maxSize * PROTECTED_PERCENT / 100;
+            Iterator<CachedResource> iter =
+                    protectedSegment.values().iterator();
+            while (protectedSize > protectedMaxSize && iter.hasNext()) {
+                // Demote the least recently used back to probation
+                CachedResource demoted = iter.next();
+                iter.remove();
+                protectedSize -= demoted.getSize();
+                probation.put(demoted.getWebappPath(), demoted);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
 
+    /*
+     * Must be called with evictionLock held.
+     */
+    private long evict(long targetSize) {
         long newSize = size.get();
-
-        while (newSize > targetSize && iter.hasNext()) {
-            CachedResource resource = iter.next();
-
-            // Don't expire anything that has been checked within the TTL
-            if (resource.getNextCheck() > now) {
-                continue;
+        while (newSize > targetSize) {
+            CachedResource victim = nextVictim(null);
+            if (victim == null) {
+                break;
             }
-
-            // Remove the entry from the cache
-            removeCacheEntry(resource.getWebappPath(), true);
-
+            removeCacheEntry(victim);
+            evictionCount.incrementAndGet();
             newSize = size.get();
         }
-
         return newSize;
     }
 
-    private void removeCacheEntry(String path, boolean updateSize) {
-        // With concurrent calls for the same path, the entry is only removed
-        // once and the cache size is only updated (if required) once.
-        CachedResource cachedResource = resourceCache.remove(path);
-        if (cachedResource != null && updateSize) {
+    /*
+     * Must be called with evictionLock held. The least recently used entry
+     * in probation, other than the one excluded, else the least recently used
+     * protected entry.
+     */
+    private CachedResource nextVictim(CachedResource excluded) {
+        for (CachedResource resource : probation.values()) {
+            if (resource != excluded) {
+                return resource;
+            }
+        }
+        Iterator<CachedResource> iter = protectedSegment.values().iterator();
+        if (iter.hasNext()) {
+            return iter.next();
+        }
+        return null;
+    }
+
+    private void removeCacheEntry(CachedResource cachedResource) {
+        String path = cachedResource.getWebappPath();
+        // With concurrent calls for the same entry, the entry is only removed
+        // once and the cache size is only updated once.
+        if (resourceCache.remove(path, cachedResource)) {
             long delta = cachedResource.getSize();
             size.addAndGet(-delta);
         }
+        evictionLock.lock();
+        try {
+            if (probation.get(path) == cachedResource) {
+                probation.remove(path);
+            } else if (protectedSegment.get(path) == cachedResource) {
+                protectedSegment.remove(path);
+                protectedSize -= cachedResource.getSize();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static FrequencySketch createSketch(long maxSize) {
+        long keys = maxSize / ESTIMATED_ENTRY_SIZE;
+        return new FrequencySketch((int) Math.min(Integer.MAX_VALUE,
+                Math.max(keys, 256)));
     }
 
     public long getTtl() {
@@ -201,6 +323,12 @@ public class Cache {
     public void setMaxSize(long maxSize) {
         // Internally bytes, externally kilobytes
         this.maxSize = maxSize * 1024;
+        evictionLock.lock();
+        try {
+            sketch = createSketch(this.maxSize);
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
     public long getLookupCount() {
@@ -211,6 +339,22 @@ public class Cache {
         return hitCount.get();
     }
 
+    public double getHitRatio() {
+        long lookups = lookupCount.get();
+        if (lookups == 0) {
+            return 0;
+        }
+        return (double) hitCount.get() / lookups;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public long getRejectionCount() {
+        return rejectionCount.get();
+    }
+
     public void setObjectMaxSize(int objectMaxSize) {
         if (objectMaxSize * 1024L > Integer.MAX_VALUE) {
             log.warn(sm.getString("cache.objectMaxSizeTooBigBytes", Integer.valueOf(objectMaxSize)));
@@ -229,6 +373,14 @@ public class Cache {
         return objectMaxSize;
     }
 
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
     void enforceObjectMaxSizeLimit() {
         long limit = maxSize / OBJECT_MAX_SIZE_FACTOR;
         if (limit > Integer.MAX_VALUE) {
@@ -243,28 +395,17 @@ public class Cache {
 
     public void clear() {
         resourceCache.clear();
+        evictionLock.lock();
+        try {
+            probation.clear();
+            protectedSegment.clear();
+            protectedSize = 0;
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
     public long getSize() {
         return size.get() / 1024;
     }
-
-    private static class EvictionOrder implements Comparator<CachedResource> {
-
-        @Override
-        public int compare(CachedResource cr1, CachedResource cr2) {
-            long nc1 = cr1.getNextCheck();
-            long nc2 = cr2.getNextCheck();
-
-            // Oldest resource should be first (so iterator goes from oldest to
-            // youngest.
-            if (nc1 == nc2) {
-                return 0;
-            } else if (nc1 > nc2) {
-                return -1;
-            } else {
-                return 1;
-            }
-        }
-    }
 }
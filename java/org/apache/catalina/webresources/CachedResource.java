@@ -17,10 +17,14 @@
 package org.apache.catalina.webresources;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.security.cert.Certificate;
 import java.util.jar.Manifest;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
@@ -36,17 +40,24 @@ public class CachedResource implements WebResource {
     // based on profiler data.
     private static final long CACHE_ENTRY_SIZE = 500;
 
+    // Marks content that is not made any smaller by compression
+    private static final byte[] NOT_COMPRESSIBLE = new byte[0];
+
     private final StandardRoot root;
     private final String webAppPath;
     private final long ttl;
     private final int objectMaxSizeBytes;
+    private final boolean offHeap;
 
     private volatile WebResource webResource;
     private volatile long nextCheck;
 
     private volatile Long cachedLastModified = null;
     private volatile String cachedLastModifiedHttp = null;
+    private volatile String cachedETag = null;
     private volatile byte[] cachedContent = null;
+    private volatile ByteBuffer cachedContentBuffer = null;
+    private volatile byte[] cachedGzippedContent = null;
     private volatile Boolean cachedIsFile = null;
     private volatile Boolean cachedIsDirectory = null;
     private volatile Boolean cachedExists = null;
@@ -55,11 +66,12 @@ public class CachedResource implements WebResource {
 
 
     public CachedResource(StandardRoot root, String path, long ttl,
-            int objectMaxSizeBytes) {
+            int objectMaxSizeBytes, boolean offHeap) {
         this.root = root;
         this.webAppPath = path;
         this.ttl = ttl;
         this.objectMaxSizeBytes = objectMaxSizeBytes;
+        this.offHeap = offHeap;
     }
 
     protected boolean validate(boolean useClassLoaderResources) {
@@ -220,7 +232,12 @@ public class CachedResource implements WebResource {
 
     @Override
     public String getETag() {
-        return webResource.getETag();
+        String cachedETag = this.cachedETag;
+        if (cachedETag == null) {
+            cachedETag = webResource.getETag();
+            this.cachedETag = cachedETag;
+        }
+        return cachedETag;
     }
 
     @Override
@@ -235,6 +252,12 @@ public class CachedResource implements WebResource {
 
     @Override
     public InputStream getInputStream() {
+        if (offHeap) {
+            ByteBuffer contentBuffer = getContentBuffer();
+            if (contentBuffer != null) {
+                return new ByteBufferInputStream(contentBuffer.duplicate());
+            }
+        }
         byte[] content = cachedContent;
         if (content == null) {
             // Can't cache InputStreams
@@ -243,8 +266,24 @@ public class CachedResource implements WebResource {
         return new ByteArrayInputStream(content);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If the content is cached outside of the Java heap, a new copy of it is
+     * returned for each call. Callers that only need to read the content, such
+     * as the DefaultServlet, should use {@link #getInputStream()} instead.
+     */
     @Override
     public byte[] getContent() {
+        if (offHeap) {
+            ByteBuffer contentBuffer = getContentBuffer();
+            if (contentBuffer == null) {
+                return null;
+            }
+            byte[] content = new byte[contentBuffer.remaining()];
+            contentBuffer.duplicate().get(content);
+            return content;
+        }
         byte[] cachedContent = this.cachedContent;
         if (cachedContent == null) {
             if (getContentLength() > objectMaxSizeBytes) {
@@ -256,6 +295,91 @@ public class CachedResource implements WebResource {
         return cachedContent;
     }
 
+    /*
+     * Content cached in a direct buffer. The content is streamed into the
+     * buffer so that it is never held on the heap as a whole. Concurrent
+     * callers may both read the content but only one buffer will be retained.
+     *
+     * The buffer is only freed when it is garbage collected after the entry
+     * has been evicted. The content of the entries in the cache is bounded by
+     * the cache size but buffers of evicted entries may be waiting to be
+     * collected. When the JVM runs out of direct memory it triggers a garbage
+     * collection before it fails, which is what reclaims those buffers.
+     */
+    private ByteBuffer getContentBuffer() {
+        ByteBuffer contentBuffer = this.cachedContentBuffer;
+        if (contentBuffer == null) {
+            long contentLength = getContentLength();
+            if (contentLength < 0 || contentLength > objectMaxSizeBytes) {
+                return null;
+            }
+            contentBuffer = ByteBuffer.allocateDirect((int) contentLength);
+            try (InputStream is = webResource.getInputStream()) {
+                if (is == null) {
+                    return null;
+                }
+                byte[] buf = new byte[Math.min(8192,
+                        Math.max(1, (int) contentLength))];
+                int n;
+                while ((n = is.read(buf)) > 0) {
+                    if (n > contentBuffer.remaining()) {
+                        // The resource has changed since it was validated
+                        return null;
+                    }
+                    contentBuffer.put(buf, 0, n);
+                }
+            } catch (IOException ioe) {
+                return null;
+            }
+            if (contentBuffer.hasRemaining()) {
+                // The resource has changed since it was validated
+                return null;
+            }
+            contentBuffer.flip();
+            this.cachedContentBuffer = contentBuffer;
+        }
+        return contentBuffer;
+    }
+
+    /**
+     * Obtain this resource with the content compressed using gzip. The
+     * content is compressed the first time this method is called and the
+     * result is then retained for as long as this entry remains in the cache.
+     *
+     * @return the compressed resource or <code>null</code> if the content is
+     *         too large to be cached or is not made smaller by compression
+     */
+    public WebResource getGzippedResource() {
+        byte[] gzippedContent = this.cachedGzippedContent;
+        if (gzippedContent == null) {
+            if (getContentLength() > objectMaxSizeBytes) {
+                return null;
+            }
+            byte[] content = getContent();
+            if (content == null) {
+                return null;
+            }
+            ByteArrayOutputStream baos =
+                    new ByteArrayOutputStream(content.length / 2);
+            try (GZIPOutputStream gzos = new GZIPOutputStream(baos)) {
+                gzos.write(content);
+            } catch (IOException e) {
+                // Not possible with a ByteArrayOutputStream
+                return null;
+            }
+            if (baos.size() < content.length) {
+                gzippedContent = baos.toByteArray();
+            } else {
+                gzippedContent = NOT_COMPRESSIBLE;
+            }
+            this.cachedGzippedContent = gzippedContent;
+        }
+        if (gzippedContent == NOT_COMPRESSIBLE) {
+            return null;
+        }
+        return new CompressedResource(this, gzippedContent);
+    }
+
     @Override
     public long getCreation() {
         return webResource.getCreation();
@@ -287,7 +411,9 @@ public class CachedResource implements WebResource {
 
     // Assume that the cache entry will always include the content unless the
     // resource content is larger than objectMaxSizeBytes. This isn't always the
-    // case but it makes tracking the current cache size easier.
+    // case but it makes tracking the current cache size easier. Compressed
+    // content, which is only created on request and is usually much smaller,
+    // is not included.
     long getSize() {
         long result = CACHE_ENTRY_SIZE;
         if (getContentLength() <= objectMaxSizeBytes) {
@@ -295,4 +421,55 @@ public class CachedResource implements WebResource {
         }
         return result;
     }
+
+
+    /*
+     * Reads from a buffer that is not shared with any other stream. Closing
+     * the stream is not required.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int remaining = buffer.remaining();
+            if (remaining == 0) {
+                return -1;
+            }
+            int n = Math.min(len, remaining);
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            if (n <= 0) {
+                return 0;
+            }
+            int skipped = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.cert.Certificate;
+import java.util.jar.Manifest;
+
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+
+/**
+ * The content of a cached resource, compressed with a content coding such as
+ * gzip. Everything other than the content is obtained from the resource the
+ * content was compressed from. There is no file for the compressed content so
+ * it can't be served with sendfile.
+ */
+class CompressedResource implements WebResource {
+
+    private final WebResource resource;
+    private final byte[] content;
+
+
+    CompressedResource(WebResource resource, byte[] content) {
+        this.resource = resource;
+        this.content = content;
+    }
+
+
+    @Override
+    public long getLastModified() {
+        return resource.getLastModified();
+    }
+
+    @Override
+    public String getLastModifiedHttp() {
+        return resource.getLastModifiedHttp();
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return false;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return false;
+    }
+
+    @Override
+    public boolean isFile() {
+        return true;
+    }
+
+    @Override
+    public boolean delete() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return resource.getName();
+    }
+
+    @Override
+    public long getContentLength() {
+        return content.length;
+    }
+
+    @Override
+    public String getCanonicalPath() {
+        return null;
+    }
+
+    @Override
+    public boolean canRead() {
+        return true;
+    }
+
+    @Override
+    public String getWebappPath() {
+        return resource.getWebappPath();
+    }
+
+    @Override
+    public String getETag() {
+        return resource.getETag();
+    }
+
+    @Override
+    public void setMimeType(String mimeType) {
+        resource.setMimeType(mimeType);
+    }
+
+    @Override
+    public String getMimeType() {
+        return resource.getMimeType();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public byte[] getContent() {
+        return content;
+    }
+
+    @Override
+    public long getCreation() {
+        return resource.getCreation();
+    }
+
+    @Override
+    public URL getURL() {
+        return null;
+    }
+
+    @Override
+    public WebResourceRoot getWebResourceRoot() {
+        return resource.getWebResourceRoot();
+    }
+
+    @Override
+    public Certificate[] getCertificates() {
+        return null;
+    }
+
+    @Override
+    public Manifest getManifest() {
+        return null;
+    }
+}
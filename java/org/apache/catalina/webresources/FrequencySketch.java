@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+/**
+ * Approximate record of how often each resource has been requested recently,
+ * used by the {@link Cache} to decide whether a new resource is worth caching
+ * at the expense of an existing one.
+ * <p>
+ * This is a count-min sketch: {@link #DEPTH} rows of small saturating
+ * counters, each row indexed by a different hash of the key. The estimate for
+ * a key is the smallest of its counters, so hash collisions can only make a
+ * key look more popular than it is. Only the counters that hold that smallest
+ * value are incremented (conservative update), which limits the effect of
+ * collisions further. Once the number of increments reaches ten times the
+ * width of the rows, every counter is halved so that the counts reflect
+ * recent requests.
+ * <p>
+ * This class is not thread safe.
+ */
+final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+
+    private final byte[][] rows;
+    private final int mask;
+    private final int sampleSize;
+    private int additions = 0;
+
+
+    /**
+     * @param maximumKeys The number of keys to size the sketch for
+     */
+    FrequencySketch(int maximumKeys) {
+        int width = 16;
+        while (width < maximumKeys && width < (1 << 24)) {
+            width <<= 1;
+        }
+        rows = new byte[DEPTH][width];
+        mask = width - 1;
+        sampleSize = 10 * width;
+    }
+
+
+    /**
+     * @param hash  The hash code of the key
+     * @return the estimated number of times the key has been recorded,
+     *         at most 15
+     */
+    int frequency(int hash) {
+        int h1 = mix(hash);
+        int h2 = mix(h1) | 1;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, rows[i][(h1 + i * h2) & mask]);
+        }
+        return frequency;
+    }
+
+
+    /**
+     * Record an occurrence of a key.
+     *
+     * @param hash  The hash code of the key
+     */
+    void increment(int hash) {
+        int h1 = mix(hash);
+        int h2 = mix(h1) | 1;
+        int frequency = frequency(hash);
+        if (frequency == MAX_COUNT) {
+            return;
+        }
+        for (int i = 0; i < DEPTH; i++) {
+            int index = (h1 + i * h2) & mask;
+            if (rows[i][index] == frequency) {
+                rows[i][index]++;
+            }
+        }
+        if (++additions == sampleSize) {
+            age();
+        }
+    }
+
+
+    private void age() {
+        for (byte[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (byte) (row[i] >> 1);
+            }
+        }
+        additions = additions >> 1;
+    }
+
+
+    /**
+     * Scramble the bits of a hash so that keys with similar hash codes, such
+     * as paths that differ only in their last character, use unrelated
+     * counters.
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9e3779b9;
+        h ^= h >>> 15;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+}
@@ -493,6 +493,26 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
         return cache.getObjectMaxSize();
     }
 
+    /**
+     * Should the content of cached resources be held in direct buffers,
+     * outside of the Java heap, rather than in byte arrays? Off-heap content
+     * is served via {@link WebResource#getInputStream()} and
+     * {@link WebResource#getContent()} returns a copy of it.
+     * Cached content never exceeds the cache size but the buffers of evicted
+     * resources are only freed once they have been garbage collected, so the
+     * direct memory limit of the JVM should allow for more than the cache
+     * size.
+     *
+     * @param cacheOffHeap  <code>true</code> to hold content off-heap
+     */
+    public void setCacheOffHeap(boolean cacheOffHeap) {
+        cache.setOffHeap(cacheOffHeap);
+    }
+
+    public boolean getCacheOffHeap() {
+        return cache.isOffHeap();
+    }
+
     @Override
     public void setTrackLockedFiles(boolean trackLockedFiles) {
         this.trackLockedFiles = trackLockedFiles;
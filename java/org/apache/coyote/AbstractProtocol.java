@@ -191,6 +191,15 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler,
         endpoint.setMaxThreads(maxThreads);
     }
 
+
+    public boolean getUseVirtualThreads() {
+        return endpoint.getUseVirtualThreads();
+    }
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        endpoint.setUseVirtualThreads(useVirtualThreads);
+    }
+
+
     public int getMaxConnections() { return endpoint.getMaxConnections(); }
     public void setMaxConnections(int maxConnections) {
         endpoint.setMaxConnections(maxConnections);
@@ -165,6 +165,8 @@ public class AjpNioProtocol extends AbstractAjpProtocol<NioChannel> {
             processor.recycle(isSocketClosing);
             recycledProcessors.push(processor);
             if (addToPoller) {
+                // The connection is now idle until the next request arrives
+                socket.getSocket().releaseBuffers();
                 socket.getSocket().getPoller().add(socket.getSocket());
             }
         }
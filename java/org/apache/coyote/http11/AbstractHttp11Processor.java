@@ -1498,7 +1498,8 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
 
         int size = headers.size();
         for (int i = 0; i < size; i++) {
-            getOutputBuffer().sendHeader(headers.getName(i), headers.getValue(i));
+            getOutputBuffer().sendHeader(headers.getId(i),
+                    headers.getName(i), headers.getValue(i));
         }
         getOutputBuffer().endHeaders();
 
@@ -20,7 +20,9 @@ import java.io.IOException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.coyote.ActionCode;
 import org.apache.coyote.ByteBufferHolder;
@@ -30,6 +32,7 @@ import org.apache.coyote.http11.filters.GzipOutputFilter;
 import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.CharChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.http.HeaderNames;
 import org.apache.tomcat.util.http.HttpMessages;
 import org.apache.tomcat.util.net.AbstractEndpoint;
 import org.apache.tomcat.util.net.SocketWrapper;
@@ -37,6 +40,33 @@ import org.apache.tomcat.util.res.StringManager;
 
 public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
 
+    /**
+     * Complete, encoded status lines (including the trailing CRLF) for the
+     * status codes 100 to 599, for each set of status messages. The lines are
+     * created on first use and shared by all buffers.
+     */
+    private static final ConcurrentHashMap<HttpMessages,AtomicReferenceArray<byte[]>>
+            statusLines = new ConcurrentHashMap<>();
+
+
+    /**
+     * Ids of the well-known headers that usually have the same value on every
+     * response, or at least on many consecutive responses, so that it is worth
+     * keeping the encoded value.
+     */
+    private static final boolean[] REPEATED_VALUE = new boolean[HeaderNames.size()];
+
+    static {
+        String[] names = { "accept-ranges", "cache-control", "connection",
+                "content-encoding", "content-language", "content-type", "date",
+                "expires", "keep-alive", "pragma", "server", "transfer-encoding",
+                "vary" };
+        for (String name : names) {
+            REPEATED_VALUE[HeaderNames.getId(name)] = true;
+        }
+    }
+
+
     // ----------------------------------------------------- Instance Variables
 
 
@@ -118,6 +148,18 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
     protected int bufferedWriteSize = 64*1024; //64k default write buffer
 
 
+    /**
+     * The most recently written header names and values for each well-known
+     * header id, with their encoded form. A processor tends to send the same
+     * headers response after response so, when the String is unchanged, the
+     * bytes are copied rather than encoded again.
+     */
+    private final String[] headerNames = new String[HeaderNames.size()];
+    private final byte[][] headerNameBytes = new byte[HeaderNames.size()][];
+    private final String[] headerValues = new String[HeaderNames.size()];
+    private final byte[][] headerValueBytes = new byte[HeaderNames.size()][];
+
+
     protected AbstractOutputBuffer(Response response, int headerBufferSize) {
 
         this.response = response;
@@ -395,12 +437,26 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
      */
     public void sendStatus() {
 
+        int status = response.getStatus();
+
+        // Write message
+        String message = null;
+        if (org.apache.coyote.Constants.USE_CUSTOM_STATUS_MSG_IN_HEADER &&
+                HttpMessages.isSafeInHttpHeader(response.getMessage())) {
+            message = response.getMessage();
+        }
+
+        if (message == null && status >= 100 && status < 600) {
+            write(getStatusLine(
+                    HttpMessages.getInstance(response.getLocale()), status));
+            return;
+        }
+
         // Write protocol name
         write(Constants.HTTP_11_BYTES);
         headerBuffer[pos++] = Constants.SP;
 
         // Write status code
-        int status = response.getStatus();
         switch (status) {
         case 200:
             write(Constants._200_BYTES);
@@ -417,12 +473,6 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
 
         headerBuffer[pos++] = Constants.SP;
 
-        // Write message
-        String message = null;
-        if (org.apache.coyote.Constants.USE_CUSTOM_STATUS_MSG_IN_HEADER &&
-                HttpMessages.isSafeInHttpHeader(response.getMessage())) {
-            message = response.getMessage();
-        }
         if (message == null) {
             write(HttpMessages.getInstance(
                     response.getLocale()).getMessage(status));
@@ -450,6 +500,31 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
     }
 
 
+    private static byte[] getStatusLine(HttpMessages messages, int status) {
+        AtomicReferenceArray<byte[]> lines = statusLines.get(messages);
+        if (lines == null) {
+            lines = new AtomicReferenceArray<>(500);
+            AtomicReferenceArray<byte[]> existing =
+                    statusLines.putIfAbsent(messages, lines);
+            if (existing != null) {
+                lines = existing;
+            }
+        }
+        byte[] line = lines.get(status - 100);
+        if (line == null) {
+            String message = messages.getMessage(status);
+            byte[] text = toBytes(Constants.HTTP_11 + " " + status + " " +
+                    (message == null ? "" : message));
+            line = new byte[text.length + 2];
+            System.arraycopy(text, 0, line, 0, text.length);
+            line[text.length] = Constants.CR;
+            line[text.length + 1] = Constants.LF;
+            lines.set(status - 100, line);
+        }
+        return line;
+    }
+
+
     /**
      * Send a header.
      *
@@ -468,6 +543,50 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
     }
 
 
+    /**
+     * Send a header, re-using the bytes written for the previous response if
+     * a well-known header has the same name (and, for headers that usually
+     * have a constant value, the same value) as then.
+     *
+     * @param id Id of the header name as defined by {@link HeaderNames}
+     * @param name Header name
+     * @param value Header value
+     */
+    public void sendHeader(int id, MessageBytes name, MessageBytes value) {
+
+        if (id == HeaderNames.UNKNOWN) {
+            sendHeader(name, value);
+            return;
+        }
+
+        if (name.getType() == MessageBytes.T_STR) {
+            String s = name.getString();
+            if (!s.equals(headerNames[id])) {
+                headerNames[id] = s;
+                headerNameBytes[id] = toBytes(s);
+            }
+            write(headerNameBytes[id]);
+        } else {
+            write(name);
+        }
+        headerBuffer[pos++] = Constants.COLON;
+        headerBuffer[pos++] = Constants.SP;
+        if (REPEATED_VALUE[id] && value.getType() == MessageBytes.T_STR) {
+            String s = value.getString();
+            if (!s.equals(headerValues[id])) {
+                headerValues[id] = s;
+                headerValueBytes[id] = toBytes(s);
+            }
+            write(headerValueBytes[id]);
+        } else {
+            write(value);
+        }
+        headerBuffer[pos++] = Constants.CR;
+        headerBuffer[pos++] = Constants.LF;
+
+    }
+
+
     /**
      * End the header block.
      */
@@ -594,6 +713,23 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
     }
 
 
+    /**
+     * Encode a String in the same way as {@link #write(String)}.
+     */
+    private static byte[] toBytes(String s) {
+        int len = s.length();
+        byte[] result = new byte[len];
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (((c <= 31) && (c != 9)) || c == 127 || c > 255) {
+                c = ' ';
+            }
+            result[i] = (byte) c;
+        }
+        return result;
+    }
+
+
     /**
      * This method will print the specified integer to the output stream,
      * without filtering. This method is meant to be used to write the
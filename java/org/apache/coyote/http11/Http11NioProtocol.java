@@ -97,6 +97,14 @@ public class Http11NioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
         return ((NioEndpoint)endpoint).getPollerThreadCount();
     }
 
+    public void setReusePortShards(int shards) {
+        ((NioEndpoint)endpoint).setReusePortShards(shards);
+    }
+
+    public int getReusePortShards() {
+        return ((NioEndpoint)endpoint).getReusePortShards();
+    }
+
     public void setSelectorTimeout(long timeout) {
         ((NioEndpoint)endpoint).setSelectorTimeout(timeout);
     }
@@ -239,6 +247,8 @@ public class Http11NioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
             processor.recycle(isSocketClosing);
             recycledProcessors.push(processor);
             if (addToPoller) {
+                // The connection is now idle until the next request arrives
+                socket.getSocket().releaseBuffers();
                 socket.getSocket().getPoller().add(socket.getSocket());
             }
         }
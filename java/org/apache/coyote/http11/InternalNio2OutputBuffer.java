@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
 import java.util.ArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Semaphore;
@@ -101,6 +102,12 @@ public class InternalNio2OutputBuffer extends AbstractOutputBuffer<Nio2Channel>
      */
     protected IOException e = null;
 
+    /**
+     * Completion handler for blocking gathering writes.
+     */
+    private final BlockingGatherHandler blockingGatherHandler =
+            new BlockingGatherHandler();
+
     // --------------------------------------------------------- Public Methods
 
     @Override
@@ -297,6 +304,14 @@ public class InternalNio2OutputBuffer extends AbstractOutputBuffer<Nio2Channel>
         socket.access();
 
         if (isBlocking()) {
+            if (!flipped && bufferedWrites.size() == 0 &&
+                    length > writeByteBuffer.remaining()) {
+                // Write what has been collected so far along with the new data
+                // in a single gathering write, rather than copying the new
+                // data into the buffer in several pieces
+                writeGathered(writeByteBuffer, buf, offset, length);
+                return;
+            }
             while (length > 0) {
                 int thisTime = transfer(buf, offset, length, writeByteBuffer);
                 length = length - thisTime;
@@ -336,6 +351,25 @@ public class InternalNio2OutputBuffer extends AbstractOutputBuffer<Nio2Channel>
     }
 
 
+    private void writeGathered(ByteBuffer writeByteBuffer, byte[] buf,
+            int offset, int length) throws IOException {
+        writeByteBuffer.flip();
+        flipped = true;
+        ByteBuffer[] array = new ByteBuffer[] { writeByteBuffer,
+                ByteBuffer.wrap(buf, offset, length) };
+        while (arrayHasData(array)) {
+            socket.getSocket().write(array, 0, array.length,
+                    socket.getTimeout(), TimeUnit.MILLISECONDS, array,
+                    blockingGatherHandler);
+            if (blockingGatherHandler.await() < 0) {
+                throw new EOFException(sm.getString("iob.failedwrite"));
+            }
+        }
+        writeByteBuffer.clear();
+        flipped = false;
+    }
+
+
     private void addToBuffers(byte[] buf, int offset, int length) {
         ByteBuffer buffer = ByteBuffer.allocate(Math.max(bufferedWriteSize, length));
         buffer.put(buf, offset, length);
@@ -516,4 +550,50 @@ public class InternalNio2OutputBuffer extends AbstractOutputBuffer<Nio2Channel>
             return byteCount;
         }
     }
+
+
+    /**
+     * AsynchronousSocketChannel only offers gathering writes with a
+     * completion handler. This handler allows them to be used for blocking
+     * writes. Only one write may use it at a time.
+     */
+    private static class BlockingGatherHandler
+            implements CompletionHandler<Long, ByteBuffer[]> {
+
+        private final Semaphore done = new Semaphore(0);
+        private volatile long result;
+        private volatile Throwable failure;
+
+        @Override
+        public void completed(Long nBytes, ByteBuffer[] attachment) {
+            result = nBytes.longValue();
+            done.release();
+        }
+
+        @Override
+        public void failed(Throwable exc, ByteBuffer[] attachment) {
+            failure = exc;
+            done.release();
+        }
+
+        long await() throws IOException {
+            try {
+                done.acquire();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            Throwable exc = failure;
+            if (exc != null) {
+                failure = null;
+                if (exc instanceof InterruptedByTimeoutException) {
+                    throw new SocketTimeoutException();
+                } else if (exc instanceof IOException) {
+                    throw (IOException) exc;
+                } else {
+                    throw new IOException(exc);
+                }
+            }
+            return result;
+        }
+    }
 }
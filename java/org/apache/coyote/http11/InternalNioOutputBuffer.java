@@ -31,6 +31,7 @@ import org.apache.tomcat.util.net.AbstractEndpoint;
 import org.apache.tomcat.util.net.NioChannel;
 import org.apache.tomcat.util.net.NioEndpoint;
 import org.apache.tomcat.util.net.NioSelectorPool;
+import org.apache.tomcat.util.net.SecureNioChannel;
 import org.apache.tomcat.util.net.SocketWrapper;
 
 /**
@@ -68,6 +69,26 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
      */
     protected volatile boolean flipped = false;
 
+    /**
+     * Can data be written to the socket with a gathering write? This is not
+     * possible for TLS as everything has to pass through the write buffer of
+     * the channel.
+     */
+    private boolean gatheringWrite = false;
+
+    /**
+     * Buffers for gathering writes: the write buffer of the channel and the
+     * data passed to {@link #addToBB(byte[], int, int)}.
+     */
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+
+    /**
+     * ByteBuffer wrapping the array most recently passed to a gathering write.
+     * Response data is nearly always written from the same array so this is
+     * normally re-used.
+     */
+    private ByteBuffer wrapped = null;
+
 
     // --------------------------------------------------------- Public Methods
 
@@ -77,6 +98,7 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
 
         socket = socketWrapper.getSocket();
         pool = ((NioEndpoint)endpoint).getSelectorPool();
+        gatheringWrite = !(socket instanceof SecureNioChannel);
     }
 
 
@@ -92,6 +114,7 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
             socket = null;
         }
         flipped = false;
+        wrapped = null;
     }
 
 
@@ -185,6 +208,24 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
 
         if (length == 0) return;
 
+        if (gatheringWrite && isBlocking() && !flipped) {
+            // Small writes, such as the response headers and the chunk
+            // headers, are collected in the write buffer and only written out
+            // with the next write that does not fit or when the response is
+            // flushed. Larger writes go out in a single gathering write along
+            // with whatever has been collected, without being copied into the
+            // write buffer first.
+            ByteBuffer writeBuffer = socket.getBufHandler().getWriteBuffer();
+            if (length <= writeBuffer.remaining()) {
+                writeBuffer.put(buf, offset, length);
+            } else {
+                writeGathered(buf, offset, length);
+            }
+            NioEndpoint.KeyAttachment ka = (NioEndpoint.KeyAttachment)socket.getAttachment(false);
+            if (ka != null) ka.access();//prevent timeouts for just doing client writes
+            return;
+        }
+
         // Try to flush any data in the socket's write buffer first
         boolean dataLeft = flushBuffer(isBlocking());
 
@@ -213,6 +254,46 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
     }
 
 
+    /**
+     * Blocking write of the contents of the write buffer followed by the
+     * given data.
+     */
+    private synchronized void writeGathered(byte[] buf, int offset, int length)
+            throws IOException {
+
+        NioEndpoint.KeyAttachment att = (NioEndpoint.KeyAttachment)socket.getAttachment(false);
+        if ( att == null ) throw new IOException("Key must be cancelled");
+
+        ByteBuffer writeBuffer = socket.getBufHandler().getWriteBuffer();
+        writeBuffer.flip();
+        flipped = true;
+        if (wrapped == null || wrapped.array() != buf) {
+            wrapped = ByteBuffer.wrap(buf);
+        }
+        wrapped.limit(offset + length);
+        wrapped.position(offset);
+        gather[0] = writeBuffer;
+        gather[1] = wrapped;
+
+        Selector selector = null;
+        try {
+            selector = pool.get();
+        } catch ( IOException x ) {
+            //ignore
+        }
+        try {
+            pool.write(gather, 0, 2, socket, selector, att.getWriteTimeout(),
+                    true);
+        } finally {
+            if ( selector != null ) pool.put(selector);
+            gather[0] = null;
+            gather[1] = null;
+        }
+        writeBuffer.clear();
+        flipped = false;
+    }
+
+
     private void addToBuffers(byte[] buf, int offset, int length) {
         ByteBufferHolder holder = bufferedWrites.peekLast();
         if (holder==null || holder.isFlipped() || holder.getBuf().remaining()<length) {
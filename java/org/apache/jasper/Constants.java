@@ -169,4 +169,18 @@ public class Constants {
      */
     public static final String XML_BLOCK_EXTERNAL_INIT_PARAM =
             "org.apache.jasper.XML_BLOCK_EXTERNAL";
+
+    /**
+     * Name of the ServletContext init-param that determines if the TLDs found
+     * in JARs will be retained in the work directory so that unchanged JARs
+     * do not need to be scanned for TLDs when the application next starts.
+     */
+    public static final String TLD_JAR_CACHE_INIT_PARAM =
+            "org.apache.jasper.TLD_JAR_CACHE";
+
+    /**
+     * Name of the file in the work directory the TLDs found in JARs are
+     * retained in.
+     */
+    public static final String TLD_JAR_CACHE_FILE = "tldJarCache.dat";
 }
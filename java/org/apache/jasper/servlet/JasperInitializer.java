@@ -16,6 +16,7 @@
  */
 package org.apache.jasper.servlet;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Set;
 
@@ -99,6 +100,11 @@ public class JasperInitializer implements ServletContainerInitializer {
 
         // scan the application for TLDs
         TldScanner scanner = newTldScanner(context, true, validate, blockExternal);
+        File tempDir = (File) context.getAttribute(ServletContext.TEMPDIR);
+        if (tempDir != null && !"false".equalsIgnoreCase(
+                context.getInitParameter(Constants.TLD_JAR_CACHE_INIT_PARAM))) {
+            scanner.setCacheFile(new File(tempDir, Constants.TLD_JAR_CACHE_FILE));
+        }
         try {
             scanner.scan();
         } catch (IOException | SAXException e) {
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jasper.servlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.jsp.tagext.FunctionInfo;
+import javax.servlet.jsp.tagext.TagAttributeInfo;
+import javax.servlet.jsp.tagext.TagVariableInfo;
+
+import org.apache.tomcat.util.descriptor.tld.TagFileXml;
+import org.apache.tomcat.util.descriptor.tld.TagXml;
+import org.apache.tomcat.util.descriptor.tld.TaglibXml;
+import org.apache.tomcat.util.descriptor.tld.ValidatorXml;
+import org.apache.tomcat.util.scan.JarScanCache;
+
+/**
+ * The TLDs found in JARs by a previous {@link TldScanner} scan, retained
+ * between starts of the web application so that the TLDs in a JAR that has not
+ * changed are neither located nor parsed again. JARs without TLDs are also
+ * recorded so that they are not opened again.
+ * <p>
+ * The cache is only valid for the parser settings it was created with.
+ */
+class TldJarCache extends JarScanCache<Map<String,TaglibXml>> {
+
+    private static final int VERSION = 2;
+
+
+    TldJarCache(boolean namespaceAware, boolean validation,
+            boolean blockExternal) {
+        super(VERSION, (namespaceAware ? 1 : 0) | (validation ? 2 : 0) |
+                (blockExternal ? 4 : 0));
+    }
+
+
+    @Override
+    protected Map<String,TaglibXml> readResult(DataInputStream in)
+            throws IOException {
+        int tldCount = in.readInt();
+        Map<String,TaglibXml> tlds = new LinkedHashMap<>();
+        for (int i = 0; i < tldCount; i++) {
+            String entryName = readString(in);
+            tlds.put(entryName, readTaglib(in));
+        }
+        return tlds;
+    }
+
+
+    @Override
+    protected void writeResult(DataOutputStream out,
+            Map<String,TaglibXml> tlds) throws IOException {
+        out.writeInt(tlds.size());
+        for (Map.Entry<String,TaglibXml> tld : tlds.entrySet()) {
+            writeString(out, tld.getKey());
+            writeTaglib(out, tld.getValue());
+        }
+    }
+
+
+    private static void writeTaglib(DataOutputStream out, TaglibXml taglib)
+            throws IOException {
+        writeString(out, taglib.getTlibVersion());
+        writeString(out, taglib.getJspVersion());
+        writeString(out, taglib.getShortName());
+        writeString(out, taglib.getUri());
+        writeString(out, taglib.getInfo());
+
+        ValidatorXml validator = taglib.getValidator();
+        out.writeBoolean(validator != null);
+        if (validator != null) {
+            writeString(out, validator.getValidatorClass());
+            out.writeInt(validator.getInitParams().size());
+            for (Map.Entry<String,String> param :
+                    validator.getInitParams().entrySet()) {
+                writeString(out, param.getKey());
+                writeString(out, param.getValue());
+            }
+        }
+
+        List<TagXml> tags = taglib.getTags();
+        out.writeInt(tags.size());
+        for (TagXml tag : tags) {
+            writeString(out, tag.getName());
+            writeString(out, tag.getTagClass());
+            writeString(out, tag.getTeiClass());
+            writeString(out, tag.getBodyContent());
+            writeString(out, tag.getDisplayName());
+            writeString(out, tag.getSmallIcon());
+            writeString(out, tag.getLargeIcon());
+            writeString(out, tag.getInfo());
+            out.writeBoolean(tag.hasDynamicAttributes());
+            out.writeInt(tag.getAttributes().size());
+            for (TagAttributeInfo attribute : tag.getAttributes()) {
+                writeString(out, attribute.getName());
+                out.writeBoolean(attribute.isRequired());
+                writeString(out, attribute.getTypeName());
+                out.writeBoolean(attribute.canBeRequestTime());
+                out.writeBoolean(attribute.isFragment());
+                writeString(out, attribute.getDescription());
+                out.writeBoolean(attribute.isDeferredValue());
+                out.writeBoolean(attribute.isDeferredMethod());
+                writeString(out, attribute.getExpectedTypeName());
+                writeString(out, attribute.getMethodSignature());
+            }
+            out.writeInt(tag.getVariables().size());
+            for (TagVariableInfo variable : tag.getVariables()) {
+                writeString(out, variable.getNameGiven());
+                writeString(out, variable.getNameFromAttribute());
+                writeString(out, variable.getClassName());
+                out.writeBoolean(variable.getDeclare());
+                out.writeInt(variable.getScope());
+            }
+        }
+
+        List<TagFileXml> tagFiles = taglib.getTagFiles();
+        out.writeInt(tagFiles.size());
+        for (TagFileXml tagFile : tagFiles) {
+            writeString(out, tagFile.getName());
+            writeString(out, tagFile.getPath());
+            writeString(out, tagFile.getDisplayName());
+            writeString(out, tagFile.getSmallIcon());
+            writeString(out, tagFile.getLargeIcon());
+            writeString(out, tagFile.getInfo());
+        }
+
+        List<String> listeners = taglib.getListeners();
+        out.writeInt(listeners.size());
+        for (String listener : listeners) {
+            writeString(out, listener);
+        }
+
+        List<FunctionInfo> functions = taglib.getFunctions();
+        out.writeInt(functions.size());
+        for (FunctionInfo function : functions) {
+            writeString(out, function.getName());
+            writeString(out, function.getFunctionClass());
+            writeString(out, function.getFunctionSignature());
+        }
+    }
+
+
+    private static TaglibXml readTaglib(DataInputStream in)
+            throws IOException {
+        TaglibXml taglib = new TaglibXml();
+        taglib.setTlibVersion(readString(in));
+        taglib.setJspVersion(readString(in));
+        taglib.setShortName(readString(in));
+        taglib.setUri(readString(in));
+        taglib.setInfo(readString(in));
+
+        if (in.readBoolean()) {
+            ValidatorXml validator = new ValidatorXml();
+            validator.setValidatorClass(readString(in));
+            int paramCount = in.readInt();
+            for (int i = 0; i < paramCount; i++) {
+                validator.addInitParam(readString(in), readString(in));
+            }
+            taglib.setValidator(validator);
+        }
+
+        int tagCount = in.readInt();
+        for (int i = 0; i < tagCount; i++) {
+            TagXml tag = new TagXml();
+            tag.setName(readString(in));
+            tag.setTagClass(readString(in));
+            tag.setTeiClass(readString(in));
+            tag.setBodyContent(readString(in));
+            tag.setDisplayName(readString(in));
+            tag.setSmallIcon(readString(in));
+            tag.setLargeIcon(readString(in));
+            tag.setInfo(readString(in));
+            tag.setDynamicAttributes(in.readBoolean());
+            int attributeCount = in.readInt();
+            for (int j = 0; j < attributeCount; j++) {
+                String name = readString(in);
+                boolean required = in.readBoolean();
+                String type = readString(in);
+                boolean reqTime = in.readBoolean();
+                boolean fragment = in.readBoolean();
+                String description = readString(in);
+                boolean deferredValue = in.readBoolean();
+                boolean deferredMethod = in.readBoolean();
+                String expectedTypeName = readString(in);
+                String methodSignature = readString(in);
+                tag.getAttributes().add(new TagAttributeInfo(name, required,
+                        type, reqTime, fragment, description, deferredValue,
+                        deferredMethod, expectedTypeName, methodSignature));
+            }
+            int variableCount = in.readInt();
+            for (int j = 0; j < variableCount; j++) {
+                String nameGiven = readString(in);
+                String nameFromAttribute = readString(in);
+                String className = readString(in);
+                boolean declare = in.readBoolean();
+                int scope = in.readInt();
+                tag.getVariables().add(new TagVariableInfo(nameGiven,
+                        nameFromAttribute, className, declare, scope));
+            }
+            taglib.addTag(tag);
+        }
+
+        int tagFileCount = in.readInt();
+        for (int i = 0; i < tagFileCount; i++) {
+            TagFileXml tagFile = new TagFileXml();
+            tagFile.setName(readString(in));
+            tagFile.setPath(readString(in));
+            tagFile.setDisplayName(readString(in));
+            tagFile.setSmallIcon(readString(in));
+            tagFile.setLargeIcon(readString(in));
+            tagFile.setInfo(readString(in));
+            taglib.addTagFile(tagFile);
+        }
+
+        int listenerCount = in.readInt();
+        for (int i = 0; i < listenerCount; i++) {
+            taglib.addListener(readString(in));
+        }
+
+        int functionCount = in.readInt();
+        for (int i = 0; i < functionCount; i++) {
+            String name = readString(in);
+            String klass = readString(in);
+            String signature = readString(in);
+            taglib.addFunction(name, klass, signature);
+        }
+
+        return taglib;
+    }
+
+
+    /*
+     * Not DataOutput.writeUTF() as that is limited to 64k and descriptions
+     * can, in theory at least, be longer than that.
+     */
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -28,6 +28,7 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -49,6 +50,7 @@ import org.apache.tomcat.util.descriptor.tld.TldParser;
 import org.apache.tomcat.util.descriptor.tld.TldResourcePath;
 import org.apache.tomcat.util.scan.Jar;
 import org.apache.tomcat.util.scan.JarFactory;
+import org.apache.tomcat.util.scan.JarScanCache;
 import org.xml.sax.SAXException;
 
 /**
@@ -64,6 +66,13 @@ public class TldScanner {
     private final Map<String, TldResourcePath> uriTldResourcePathMap = new HashMap<>();
     private final Map<TldResourcePath, TaglibXml> tldResourcePathTaglibXmlMap = new HashMap<>();
     private final List<String> listeners = new ArrayList<>();
+    private final boolean namespaceAware;
+    private final boolean validation;
+    private final boolean blockExternal;
+    private File cacheFile = null;
+    private TldJarCache jarCache = null;
+    private TldJarCache newJarCache = null;
+    private boolean jarCacheChanged = false;
 
     /**
      * Initialize with the application's ServletContext.
@@ -75,6 +84,9 @@ public class TldScanner {
                       boolean validation,
                       boolean blockExternal) {
         this.context = context;
+        this.namespaceAware = namespaceAware;
+        this.validation = validation;
+        this.blockExternal = blockExternal;
 
         this.tldParser = new TldParser(namespaceAware, validation, blockExternal);
     }
@@ -135,6 +147,18 @@ public class TldScanner {
         tldParser.setClassLoader(classLoader);
     }
 
+    /**
+     * Set the file used to retain the TLDs found in JARs between scans. JARs
+     * that have not changed since the previous scan are not scanned again and
+     * their TLDs are not parsed again. The default is not to retain the TLDs.
+     *
+     * @param cacheFile the file to read the TLDs from at the start of the scan
+     *                  and to write them to at the end
+     */
+    public void setCacheFile(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
     /**
      * Scan for TLDs required by the platform specification.
      */
@@ -235,11 +259,34 @@ public class TldScanner {
      * Scan for TLDs in JARs in /WEB-INF/lib.
      */
     public void scanJars() {
-        JarScanner scanner = JarScannerFactory.getJarScanner(context);
-        TldScannerCallback callback = new TldScannerCallback();
-        scanner.scan(JarScanType.TLD, context, callback);
-        if (callback.scanFoundNoTLDs()) {
-            log.info(Localizer.getMessage("jsp.tldCache.noTldSummary"));
+        if (cacheFile != null) {
+            jarCache = new TldJarCache(namespaceAware, validation, blockExternal);
+            jarCache.load(cacheFile);
+            newJarCache = new TldJarCache(namespaceAware, validation, blockExternal);
+            jarCacheChanged = false;
+        }
+        try {
+            JarScanner scanner = JarScannerFactory.getJarScanner(context);
+            TldScannerCallback callback = new TldScannerCallback();
+            scanner.scan(JarScanType.TLD, context, callback);
+            if (callback.scanFoundNoTLDs()) {
+                log.info(Localizer.getMessage("jsp.tldCache.noTldSummary"));
+            }
+        } finally {
+            if (cacheFile != null) {
+                // The new cache only records the JARs seen by this scan. Rewrite
+                // it if any JAR had to be opened or if a JAR has gone away.
+                if (jarCacheChanged || !newJarCache.hasSameJars(jarCache)) {
+                    try {
+                        newJarCache.save(cacheFile);
+                    } catch (IOException e) {
+                        log.warn(Localizer.getMessage(MSG + ".cacheSaveFail",
+                                cacheFile.getAbsolutePath()), e);
+                    }
+                }
+                jarCache = null;
+                newJarCache = null;
+            }
         }
     }
 
@@ -254,7 +301,14 @@ public class TldScanner {
             // TLD has already been parsed as a result of processing web.xml
             return;
         }
-        TaglibXml tld = tldParser.parse(path);
+        addTld(path, tldParser.parse(path));
+    }
+
+    private void addTld(TldResourcePath path, TaglibXml tld) {
+        if (tldResourcePathTaglibXmlMap.containsKey(path)) {
+            // TLD has already been parsed as a result of processing web.xml
+            return;
+        }
         String uri = tld.getUri();
         if (uri != null) {
             if (!uriTldResourcePathMap.containsKey(uri)) {
@@ -277,6 +331,20 @@ public class TldScanner {
             if (!jarFound) {
                 jarFound = true;
             }
+            File jarFile = null;
+            Map<String,TaglibXml> tlds = null;
+            if (newJarCache != null) {
+                jarFile = JarScanCache.getJarFile(urlConn.getURL());
+                if (jarFile != null) {
+                    tlds = jarCache.get(jarFile);
+                    if (tlds != null) {
+                        addCachedTlds(urlConn.getJarFileURL(), webappPath, tlds);
+                        newJarCache.put(jarFile, tlds);
+                        return;
+                    }
+                    tlds = new LinkedHashMap<>();
+                }
+            }
             boolean found = false;
             URL jarURL = null;
             try (Jar jar = JarFactory.newInstance(urlConn.getURL())) {
@@ -297,8 +365,16 @@ public class TldScanner {
                     } catch (SAXException e) {
                         throw new IOException(e);
                     }
+                    if (tlds != null) {
+                        tlds.put(entryName,
+                                tldResourcePathTaglibXmlMap.get(tldResourcePath));
+                    }
                 }
             }
+            if (tlds != null) {
+                newJarCache.put(jarFile, tlds);
+                jarCacheChanged = true;
+            }
             if (found) {
                 tldFound = true;
             } else {
@@ -309,6 +385,22 @@ public class TldScanner {
             }
         }
 
+        private void addCachedTlds(URL jarURL, String webappPath,
+                Map<String,TaglibXml> tlds) {
+            for (Map.Entry<String,TaglibXml> entry : tlds.entrySet()) {
+                addTld(new TldResourcePath(jarURL, webappPath, entry.getKey()),
+                        entry.getValue());
+            }
+            if (tlds.size() > 0) {
+                tldFound = true;
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug(Localizer.getMessage("jsp.tldCache.noTldInJar",
+                            jarURL.toString()));
+                }
+            }
+        }
+
         @Override
         public void scan(File file, final String webappPath, boolean isWebapp)
                 throws IOException {
@@ -130,6 +130,22 @@ public final class MessageBytes implements Cloneable, Serializable {
         hasLongValue=false;
     }
 
+    /**
+     * Sets the content to be a char[] which has the same value as the given
+     * String. {@link #toString()} will return the String rather than create a
+     * new one.
+     *
+     * @param c the chars
+     * @param off the start offset of the chars
+     * @param len the length of the chars
+     * @param s the String value of the chars
+     */
+    public void setChars(char[] c, int off, int len, String s) {
+        setChars(c, off, len);
+        strValue = s;
+        hasStrValue = true;
+    }
+
     /**
      * Set the content to be a string
      */
@@ -0,0 +1,127 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free alternative to {@link SynchronizedQueue} for the case where any
+ * number of threads add to the queue but only a single thread ever removes
+ * from it, such as the event queue of a poller thread.
+ * <p>
+ * Objects are held in a fixed size ring. Producers claim a slot with a single
+ * CAS and the consumer needs no atomic read-modify-write operation at all, so
+ * no garbage is created in the normal case. If the ring is full, objects are
+ * added to an overflow {@link ConcurrentLinkedQueue} instead, and keep being
+ * added there until the consumer has drained it, so that the queue remains
+ * unbounded and objects offered by a given thread are polled in the order
+ * they were offered.
+ * <p>
+ * {@link #poll()} and {@link #clear()} must only ever be called by the
+ * consumer thread.
+ */
+public class SingleConsumerQueue<T> {
+
+    private final AtomicReferenceArray<Object> ring;
+    private final int mask;
+    private final int capacity;
+
+    /*
+     * Next slot to be claimed by a producer
+     */
+    private final AtomicLong producerIndex = new AtomicLong(0);
+
+    /*
+     * Next slot to be read by the consumer. Only written by the consumer.
+     */
+    private final AtomicLong consumerIndex = new AtomicLong(0);
+
+    private final ConcurrentLinkedQueue<T> overflow =
+            new ConcurrentLinkedQueue<>();
+
+
+    public SingleConsumerQueue() {
+        this(SynchronizedQueue.DEFAULT_SIZE);
+    }
+
+    public SingleConsumerQueue(int initialSize) {
+        int size = 1;
+        while (size < initialSize) {
+            size <<= 1;
+        }
+        ring = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        capacity = size;
+    }
+
+
+    public boolean offer(T t) {
+        if (!overflow.isEmpty()) {
+            return overflow.offer(t);
+        }
+        long index;
+        do {
+            index = producerIndex.get();
+            if (index - consumerIndex.get() >= capacity) {
+                return overflow.offer(t);
+            }
+        } while (!producerIndex.compareAndSet(index, index + 1));
+        ring.lazySet((int) index & mask, t);
+        return true;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long index = consumerIndex.get();
+        int slot = (int) index & mask;
+        Object result = ring.get(slot);
+        if (result == null) {
+            if (index == producerIndex.get()) {
+                // The ring is empty
+                return overflow.poll();
+            }
+            // A producer has claimed the slot but not filled it yet. This is
+            // only ever a couple of instructions away unless the producer has
+            // been descheduled in between, so give it a chance to run.
+            result = ring.get(slot);
+            while (result == null) {
+                Thread.yield();
+                result = ring.get(slot);
+            }
+        }
+        ring.lazySet(slot, null);
+        consumerIndex.lazySet(index + 1);
+        return (T) result;
+    }
+
+
+    public int size() {
+        // The consumer may move past the value read for the producer
+        long result = Math.max(0, producerIndex.get() - consumerIndex.get());
+        return (int) result + overflow.size();
+    }
+
+
+    public void clear() {
+        while (poll() != null) {
+            // NO-OP
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A non-blocking alternative to {@link SynchronizedStack} for pools of
+ * re-usable objects that are accessed by many threads at once.
+ * <p>
+ * The stack is split into stripes, each one a small array based stack. A
+ * thread starts with the stripe selected by its id and only ever tries to
+ * acquire a stripe: if the stripe is busy the next one is tried rather than
+ * waiting for it. When every stripe is busy (or empty / full) {@link #pop()}
+ * returns <code>null</code> and {@link #push(Object)} returns
+ * <code>false</code>, exactly as if the stack was empty or full, which is what
+ * an object cache wants under contention. It is not a general purpose stack:
+ * the order of the objects is only LIFO within a stripe.
+ * <p>
+ * As with {@link SynchronizedStack}, the stack grows as required up to the
+ * limit and never shrinks. The limit is shared between the stripes.
+ */
+public class StripedStack<T> {
+
+    private static final int MAX_STRIPES = 64;
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+
+    public StripedStack() {
+        this(SynchronizedStack.DEFAULT_SIZE, -1);
+    }
+
+    public StripedStack(int size, int limit) {
+        int count = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (count < processors && count < MAX_STRIPES) {
+            count <<= 1;
+        }
+        // Every stripe must be able to hold at least one object
+        while (limit != -1 && count > 1 && count > limit) {
+            count >>= 1;
+        }
+        stripes = new Stripe[count];
+        mask = count - 1;
+        for (int i = 0; i < count; i++) {
+            int stripeLimit = -1;
+            if (limit != -1) {
+                stripeLimit = limit / count + (i < limit % count ? 1 : 0);
+            }
+            int stripeSize = Math.max(1, size / count);
+            if (stripeLimit != -1 && stripeSize > stripeLimit) {
+                stripeSize = stripeLimit;
+            }
+            stripes[i] = new Stripe(stripeSize, stripeLimit);
+        }
+    }
+
+
+    public boolean push(T obj) {
+        int start = home();
+        for (int i = 0; i <= mask; i++) {
+            Stripe stripe = stripes[(start + i) & mask];
+            if (!stripe.isFull() && stripe.tryLock()) {
+                try {
+                    if (stripe.push(obj)) {
+                        return true;
+                    }
+                } finally {
+                    stripe.unlock();
+                }
+            }
+        }
+        return false;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public T pop() {
+        int start = home();
+        for (int i = 0; i <= mask; i++) {
+            Stripe stripe = stripes[(start + i) & mask];
+            if (!stripe.isEmpty() && stripe.tryLock()) {
+                try {
+                    Object result = stripe.pop();
+                    if (result != null) {
+                        return (T) result;
+                    }
+                } finally {
+                    stripe.unlock();
+                }
+            }
+        }
+        return null;
+    }
+
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            while (!stripe.tryLock()) {
+                Thread.yield();
+            }
+            try {
+                stripe.clear();
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+
+    private int home() {
+        return (int) Thread.currentThread().getId() & mask;
+    }
+
+
+    /*
+     * The stripe is its own lock: 0 is unlocked and 1 is locked.
+     */
+    private static class Stripe extends AtomicInteger {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int limit;
+        private int size;
+        private Object[] stack;
+        /*
+         * Points to the next available object in the stack. Volatile so that
+         * empty and full stripes can be skipped without acquiring them.
+         */
+        private volatile int index = -1;
+
+        Stripe(int size, int limit) {
+            this.size = size;
+            this.limit = limit;
+            stack = new Object[size];
+        }
+
+        boolean tryLock() {
+            return compareAndSet(0, 1);
+        }
+
+        void unlock() {
+            set(0);
+        }
+
+        boolean isEmpty() {
+            return index == -1;
+        }
+
+        boolean isFull() {
+            return limit != -1 && index == limit - 1;
+        }
+
+        boolean push(Object obj) {
+            int next = index + 1;
+            if (next == size) {
+                if (limit == -1 || size < limit) {
+                    expand();
+                } else {
+                    return false;
+                }
+            }
+            stack[next] = obj;
+            index = next;
+            return true;
+        }
+
+        Object pop() {
+            int current = index;
+            if (current == -1) {
+                return null;
+            }
+            Object result = stack[current];
+            stack[current] = null;
+            index = current - 1;
+            return result;
+        }
+
+        void clear() {
+            for (int i = 0; i <= index; i++) {
+                stack[i] = null;
+            }
+            index = -1;
+        }
+
+        private void expand() {
+            int newSize = size * 2;
+            if (limit != -1 && newSize > limit) {
+                newSize = limit;
+            }
+            Object[] newStack = new Object[newSize];
+            System.arraycopy(stack, 0, newStack, 0, size);
+            stack = newStack;
+            size = newSize;
+        }
+    }
+}
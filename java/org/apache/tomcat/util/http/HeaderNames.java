@@ -0,0 +1,181 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Table of well-known HTTP header names. Each name is given an integer id so
+ * that {@link MimeHeaders} can compare header names with a single integer
+ * comparison rather than a case insensitive comparison of the bytes.
+ * <p>
+ * Names are located with a perfect hash: the multiplier used to spread the
+ * hash of the names over the table is chosen when the class is loaded so that
+ * no two well-known names share a slot. A lookup therefore hashes the name,
+ * reads one slot and compares the name with the single candidate found there.
+ * Lookups are case insensitive and work directly on the bytes read from the
+ * network.
+ */
+public final class HeaderNames {
+
+    /**
+     * Id returned for names that are not in the table.
+     */
+    public static final int UNKNOWN = -1;
+
+    private static final String[] NAMES = {
+        "accept", "accept-charset", "accept-encoding", "accept-language",
+        "accept-ranges", "age", "allow", "authorization", "cache-control",
+        "connection", "content-disposition", "content-encoding",
+        "content-language", "content-length", "content-location",
+        "content-md5", "content-range", "content-type", "cookie", "date",
+        "dnt", "etag", "expect", "expires", "forwarded", "host", "if-match",
+        "if-modified-since", "if-none-match", "if-range",
+        "if-unmodified-since", "keep-alive", "last-modified", "location",
+        "max-forwards", "origin", "pragma", "proxy-authorization",
+        "proxy-connection", "range", "referer", "retry-after",
+        "sec-websocket-accept", "sec-websocket-extensions",
+        "sec-websocket-key", "sec-websocket-protocol",
+        "sec-websocket-version", "server", "set-cookie", "te", "trailer",
+        "transfer-encoding", "upgrade", "user-agent", "vary", "via",
+        "www-authenticate", "x-forwarded-for", "x-forwarded-host",
+        "x-forwarded-proto", "x-requested-with"
+    };
+
+    private static final byte[][] NAME_BYTES = new byte[NAMES.length][];
+
+    private static final int TABLE_BITS = 8;
+    private static final int[] TABLE = new int[1 << TABLE_BITS];
+    private static final int MULTIPLIER;
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            NAME_BYTES[i] = NAMES[i].getBytes(StandardCharsets.ISO_8859_1);
+        }
+        int multiplier = 0x9E3779B1;
+        while (!fill(multiplier)) {
+            multiplier += 2;
+        }
+        MULTIPLIER = multiplier;
+    }
+
+
+    private HeaderNames() {
+        // Utility class
+    }
+
+
+    /**
+     * @return the number of well-known header names
+     */
+    public static int size() {
+        return NAMES.length;
+    }
+
+
+    /**
+     * @return the lower case name for the given id
+     */
+    public static String getName(int id) {
+        return NAMES[id];
+    }
+
+
+    /**
+     * Obtain the id of a header name held in a byte array.
+     *
+     * @return the id of the name or {@link #UNKNOWN}
+     */
+    public static int getId(byte[] b, int off, int len) {
+        int h = 0;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + (b[i] | 0x20);
+        }
+        int id = TABLE[slot(h, MULTIPLIER)] - 1;
+        if (id < 0) {
+            return UNKNOWN;
+        }
+        byte[] name = NAME_BYTES[id];
+        if (name.length != len) {
+            return UNKNOWN;
+        }
+        for (int i = 0; i < len; i++) {
+            int c = b[off + i];
+            int n = name[i];
+            if (c != n && !(n >= 'a' && n <= 'z' && (c | 0x20) == n)) {
+                return UNKNOWN;
+            }
+        }
+        return id;
+    }
+
+
+    /**
+     * Obtain the id of a header name.
+     *
+     * @return the id of the name or {@link #UNKNOWN}
+     */
+    public static int getId(String name) {
+        if (name == null) {
+            return UNKNOWN;
+        }
+        int len = name.length();
+        int h = 0;
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + (name.charAt(i) | 0x20);
+        }
+        int id = TABLE[slot(h, MULTIPLIER)] - 1;
+        if (id < 0) {
+            return UNKNOWN;
+        }
+        byte[] known = NAME_BYTES[id];
+        if (known.length != len) {
+            return UNKNOWN;
+        }
+        for (int i = 0; i < len; i++) {
+            int c = name.charAt(i);
+            int n = known[i];
+            if (c != n && !(n >= 'a' && n <= 'z' && (c | 0x20) == n)) {
+                return UNKNOWN;
+            }
+        }
+        return id;
+    }
+
+
+    private static int slot(int hash, int multiplier) {
+        return (hash * multiplier) >>> (32 - TABLE_BITS);
+    }
+
+
+    private static boolean fill(int multiplier) {
+        Arrays.fill(TABLE, 0);
+        for (int i = 0; i < NAMES.length; i++) {
+            int h = 0;
+            for (byte c : NAME_BYTES[i]) {
+                h = 31 * h + (c | 0x20);
+            }
+            int slot = slot(h, multiplier);
+            if (TABLE[slot] != 0) {
+                return false;
+            }
+            TABLE[slot] = i + 1;
+        }
+        return true;
+    }
+}
@@ -199,18 +199,27 @@ public class MimeHeaders {
         return n >= 0 && n < count ? headers[n].getValue() : null;
     }
 
+    /**
+     * Returns the {@link HeaderNames} id of the Nth header name, or
+     * {@link HeaderNames#UNKNOWN} if the name is not a well-known one or there
+     * is no such header.
+     */
+    public int getId(int n) {
+        return n >= 0 && n < count ? headers[n].getId() : HeaderNames.UNKNOWN;
+    }
+
+    boolean matches(int n, int id, String name) {
+        return headers[n].matches(id, name);
+    }
+
     /** Find the index of a header with the given name.
      */
     public int findHeader( String name, int starting ) {
-        // We can use a hash - but it's not clear how much
-        // benefit you can get - there is an  overhead
-        // and the number of headers is small (4-5 ?)
-        // Another problem is that we'll pay the overhead
-        // of constructing the hashtable
-
-        // A custom search tree may be better
+        // Well-known names are compared using their id from HeaderNames.
+        // Other names can only match headers that do not have an id.
+        int id = HeaderNames.getId(name);
         for (int i = starting; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
+            if (headers[i].matches(id, name)) {
                 return i;
             }
         }
@@ -269,6 +278,7 @@ public class MimeHeaders {
     public MessageBytes addValue( String name ) {
          MimeHeaderField mh = createHeader();
         mh.getName().setString(name);
+        mh.setId(HeaderNames.getId(name));
         return mh.getValue();
     }
 
@@ -280,6 +290,7 @@ public class MimeHeaders {
     {
         MimeHeaderField mhf=createHeader();
         mhf.getName().setBytes(b, startN, len);
+        mhf.setId(HeaderNames.getId(b, startN, len));
         return mhf.getValue();
     }
 
@@ -289,10 +300,11 @@ public class MimeHeaders {
         if this .
     */
     public MessageBytes setValue( String name ) {
+        int id = HeaderNames.getId(name);
         for ( int i = 0; i < count; i++ ) {
-            if(headers[i].getName().equalsIgnoreCase(name)) {
+            if(headers[i].matches(id, name)) {
                 for ( int j=i+1; j < count; j++ ) {
-                    if(headers[j].getName().equalsIgnoreCase(name)) {
+                    if(headers[j].matches(id, name)) {
                         removeHeader(j--);
                     }
                 }
@@ -301,6 +313,7 @@ public class MimeHeaders {
         }
         MimeHeaderField mh = createHeader();
         mh.getName().setString(name);
+        mh.setId(id);
         return mh.getValue();
     }
 
@@ -311,8 +324,9 @@ public class MimeHeaders {
      * in the header, an arbitrary one is returned.
      */
     public MessageBytes getValue(String name) {
+        int id = HeaderNames.getId(name);
         for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
+            if (headers[i].matches(id, name)) {
                 return headers[i].getValue();
             }
         }
@@ -326,8 +340,9 @@ public class MimeHeaders {
      */
     public MessageBytes getUniqueValue(String name) {
         MessageBytes result = null;
+        int id = HeaderNames.getId(name);
         for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
+            if (headers[i].matches(id, name)) {
                 if (result == null) {
                     result = headers[i].getValue();
                 } else {
@@ -355,8 +370,9 @@ public class MimeHeaders {
         // XXX
         // warning: rather sticky code; heavily tuned
 
+        int id = HeaderNames.getId(name);
         for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
+            if (headers[i].matches(id, name)) {
                 removeHeader(i--);
             }
         }
@@ -440,9 +456,11 @@ class ValuesEnumerator implements Enumeration<String> {
     private MessageBytes next;
     private final MimeHeaders headers;
     private final String name;
+    private final int id;
 
     ValuesEnumerator(MimeHeaders headers, String name) {
         this.name=name;
+        this.id=HeaderNames.getId(name);
         this.headers=headers;
         pos=0;
         size = headers.size();
@@ -452,8 +470,7 @@ class ValuesEnumerator implements Enumeration<String> {
     private void findNext() {
         next=null;
         for(; pos< size; pos++ ) {
-            MessageBytes n1=headers.getName( pos );
-            if( n1.equalsIgnoreCase( name )) {
+            if( headers.matches( pos, id, name )) {
                 next=headers.getValue( pos );
                 break;
             }
@@ -478,6 +495,7 @@ class MimeHeaderField {
 
     private final MessageBytes nameB = MessageBytes.newInstance();
     private final MessageBytes valueB = MessageBytes.newInstance();
+    private int id = HeaderNames.UNKNOWN;
 
     /**
      * Creates a new, uninitialized header field.
@@ -489,6 +507,27 @@ class MimeHeaderField {
     public void recycle() {
         nameB.recycle();
         valueB.recycle();
+        id = HeaderNames.UNKNOWN;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Does this field have the given name? The id of the name must have been
+     * obtained from {@link HeaderNames}. A name without an id can never match
+     * a field with an id.
+     */
+    public boolean matches(int id, String name) {
+        if (id != HeaderNames.UNKNOWN) {
+            return this.id == id;
+        }
+        return this.id == HeaderNames.UNKNOWN && nameB.equalsIgnoreCase(name);
     }
 
     public MessageBytes getName() {
@@ -26,6 +26,7 @@ import java.util.Iterator;
 import java.util.StringTokenizer;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 import javax.net.ssl.KeyManagerFactory;
 
@@ -38,6 +39,7 @@ import org.apache.tomcat.util.threads.ResizableExecutor;
 import org.apache.tomcat.util.threads.TaskQueue;
 import org.apache.tomcat.util.threads.TaskThreadFactory;
 import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
 /**
  *
  * @author Mladen Turk
@@ -227,6 +229,18 @@ public abstract class AbstractEndpoint<S> {
     public Executor getExecutor() { return executor; }
 
 
+    /**
+     * Should the internal executor run the tasks on virtual threads rather
+     * than on a pool of platform threads? Ignored, with a warning, when the
+     * JVM does not support virtual threads.
+     */
+    private boolean useVirtualThreads = false;
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+    public boolean getUseVirtualThreads() { return useVirtualThreads; }
+
+
     /**
      * Server socket port.
      */
@@ -508,6 +522,15 @@ public abstract class AbstractEndpoint<S> {
 
     public void createExecutor() {
         internalExecutor = true;
+        if (getUseVirtualThreads()) {
+            if (VirtualThreadExecutor.isSupported()) {
+                executor = new VirtualThreadExecutor(getName() + "-virt-",
+                        getMaxThreads());
+                return;
+            }
+            getLog().warn(sm.getString("endpoint.virtualThreadsUnavailable",
+                    getName()));
+        }
         TaskQueue taskqueue = new TaskQueue();
         TaskThreadFactory tf = new TaskThreadFactory(getName() + "-exec-", daemon, getThreadPriority());
         executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), 60, TimeUnit.SECONDS,taskqueue, tf);
@@ -533,6 +556,20 @@ public abstract class AbstractEndpoint<S> {
                 }
                 TaskQueue queue = (TaskQueue) tpe.getQueue();
                 queue.setParent(null);
+            } else if (executor instanceof VirtualThreadExecutor) {
+                VirtualThreadExecutor vte = (VirtualThreadExecutor) executor;
+                vte.shutdownNow();
+                long timeout = getExecutorTerminationTimeoutMillis();
+                if (timeout > 0) {
+                    try {
+                        vte.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                    if (!vte.isTerminated()) {
+                        getLog().warn(sm.getString("endpoint.warn.executorShutdown", getName()));
+                    }
+                }
             }
             executor = null;
         }
@@ -646,13 +683,17 @@ public abstract class AbstractEndpoint<S> {
          * lock on socketWrapper before processing the dispatches, we can be
          * sure that the socket has been added to the waitingRequests queue.
          */
-        synchronized (socketWrapper) {
+        Lock lock = socketWrapper.getLock();
+        lock.lock();
+        try {
             Iterator<DispatchType> dispatches = socketWrapper.getIteratorAndClearDispatches();
 
             while (dispatches != null && dispatches.hasNext()) {
                 DispatchType dispatchType = dispatches.next();
                 processSocket(socketWrapper, dispatchType.getSocketStatus(), false);
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -26,6 +26,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
@@ -885,7 +886,9 @@ public class AprEndpoint extends AbstractEndpoint<Long> {
             // Synchronisation is required here as this code may be called as a
             // result of calling AsyncContext.dispatch() from a non-container
             // thread
-            synchronized (socket) {
+            Lock lock = socket.getLock();
+            lock.lock();
+            try {
                 if (waitingRequests.remove(socket)) {
                     SocketProcessor proc = new SocketProcessor(socket, status);
                     Executor executor = getExecutor();
@@ -895,6 +898,8 @@ public class AprEndpoint extends AbstractEndpoint<Long> {
                         proc.run();
                     }
                 }
+            } finally {
+                lock.unlock();
             }
         } catch (RejectedExecutionException ree) {
             log.warn(sm.getString("endpoint.executor.fail", socket) , ree);
@@ -2366,7 +2371,9 @@ public class AprEndpoint extends AbstractEndpoint<Long> {
         @Override
         public void run() {
 
-            synchronized (socket) {
+            Lock lock = socket.getLock();
+            lock.lock();
+            try {
                 if (!deferAccept) {
                     if (setSocketOptions(socket.getSocket().longValue())) {
                         getPoller().add(socket.getSocket().longValue(),
@@ -2398,6 +2405,8 @@ public class AprEndpoint extends AbstractEndpoint<Long> {
                         }
                     }
                 }
+            } finally {
+                lock.unlock();
             }
         }
     }
@@ -2432,12 +2441,20 @@ public class AprEndpoint extends AbstractEndpoint<Long> {
             // connection at the same time to enable blocking IO to be used when
             // Servlet 3.1 NIO has been configured
             if (socket.isUpgraded() && SocketStatus.OPEN_WRITE == status) {
-                synchronized (socket.getWriteThreadLock()) {
+                Lock lock = socket.getWriteThreadLock();
+                lock.lock();
+                try {
                     doRun();
+                } finally {
+                    lock.unlock();
                 }
             } else {
-                synchronized (socket) {
+                Lock lock = socket.getLock();
+                lock.lock();
+                try {
                     doRun();
+                } finally {
+                    lock.unlock();
                 }
             }
         }
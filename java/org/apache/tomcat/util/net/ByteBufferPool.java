@@ -0,0 +1,195 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tomcat.util.collections.StripedStack;
+import org.apache.tomcat.util.collections.SynchronizedStack;
+
+/**
+ * A pool of {@link ByteBuffer}s shared by all the connections of an endpoint.
+ * Connections borrow their application buffers from the pool while a read or
+ * a write is in progress and return them when they become idle, so that idle
+ * keep-alive connections do not pin any buffer memory.
+ * <p>
+ * Buffers are grouped in power of two size classes from 1kB to 1MB. When a
+ * size class runs out of buffers, a slab holding several buffers of that
+ * class is allocated at once and sliced, which keeps the number of (expensive)
+ * direct allocations low. Requests larger than the largest size class are not
+ * pooled. Each size class is held in a {@link StripedStack} to reduce
+ * contention between the threads that share the pool. All the buffers held by
+ * the pool are in those stacks, so a buffer released by a thread that then
+ * ends is still available to the other threads.
+ */
+public class ByteBufferPool {
+
+    private static final int MIN_SHIFT = 10;
+    private static final int MAX_SHIFT = 20;
+    private static final int SLAB_SIZE = 1 << MAX_SHIFT;
+
+    private final boolean direct;
+    private final long maxPooledBytes;
+
+    private final StripedStack<ByteBuffer>[] pools;
+
+    private final AtomicLong pooledBytes = new AtomicLong(0);
+    private final AtomicLong allocatedBytes = new AtomicLong(0);
+
+
+    /**
+     * Create a new pool.
+     *
+     * @param direct            Should the pool hand out direct buffers
+     * @param maxPooledBytes    Maximum number of bytes held by the pool. -1
+     *                          means unlimited.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public ByteBufferPool(boolean direct, long maxPooledBytes) {
+        this.direct = direct;
+        this.maxPooledBytes = maxPooledBytes;
+        pools = new StripedStack[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new StripedStack<>(SynchronizedStack.DEFAULT_SIZE, -1);
+        }
+    }
+
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+
+    /**
+     * @return the number of bytes currently held by the pool
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+
+    /**
+     * @return the total number of bytes allocated by this pool so far
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+
+    /**
+     * Obtain a cleared buffer with at least the given capacity. The capacity
+     * of the returned buffer is rounded up to the size class of the request.
+     */
+    public ByteBuffer allocate(int capacity) {
+        int index = sizeClass(capacity);
+        if (index < 0) {
+            return newBuffer(capacity);
+        }
+        ByteBuffer result = pools[index].pop();
+        if (result == null) {
+            result = allocateSlab(index);
+        } else {
+            pooledBytes.addAndGet(-result.capacity());
+        }
+        result.clear();
+        return result;
+    }
+
+
+    /**
+     * Return a buffer previously obtained from {@link #allocate(int)}. The
+     * caller must not use the buffer after calling this method.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isDirect() != direct) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        int index = sizeClass(capacity);
+        if (index < 0 || (1 << (index + MIN_SHIFT)) != capacity) {
+            // Not one of ours, let GC take care of it
+            return;
+        }
+        buffer.clear();
+        offer(index, buffer);
+    }
+
+
+    /**
+     * Discard all the buffers held by the pool.
+     */
+    public void clear() {
+        for (StripedStack<ByteBuffer> pool : pools) {
+            pool.clear();
+        }
+        pooledBytes.set(0);
+    }
+
+
+    private void offer(int index, ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        long pooled = pooledBytes.addAndGet(capacity);
+        if (maxPooledBytes >= 0 && pooled > maxPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+        if (!pools[index].push(buffer)) {
+            pooledBytes.addAndGet(-capacity);
+        }
+    }
+
+
+    private ByteBuffer allocateSlab(int index) {
+        int size = 1 << (index + MIN_SHIFT);
+        int count = SLAB_SIZE / size;
+        if (count < 2) {
+            return newBuffer(size);
+        }
+        ByteBuffer slab = newBuffer(SLAB_SIZE);
+        ByteBuffer result = null;
+        for (int i = 0; i < count; i++) {
+            slab.limit((i + 1) * size).position(i * size);
+            ByteBuffer slice = slab.slice();
+            if (result == null) {
+                result = slice;
+            } else {
+                offer(index, slice);
+            }
+        }
+        return result;
+    }
+
+
+    private ByteBuffer newBuffer(int capacity) {
+        allocatedBytes.addAndGet(capacity);
+        if (direct) {
+            return ByteBuffer.allocateDirect(capacity);
+        } else {
+            return ByteBuffer.allocate(capacity);
+        }
+    }
+
+
+    private static int sizeClass(int capacity) {
+        if (capacity <= 0 || capacity > (1 << MAX_SHIFT)) {
+            return -1;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return Math.max(shift, MIN_SHIFT) - MIN_SHIFT;
+    }
+}
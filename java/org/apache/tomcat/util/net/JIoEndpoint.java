@@ -26,6 +26,7 @@ import java.util.Iterator;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
@@ -303,7 +304,9 @@ public class JIoEndpoint extends AbstractEndpoint<Socket> {
         @Override
         public void run() {
             boolean launch = false;
-            synchronized (socket) {
+            Lock lock = socket.getLock();
+            lock.lock();
+            try {
                 try {
                     SocketState state = SocketState.OPEN;
                     handler.beforeHandshake(socket);
@@ -369,6 +372,8 @@ public class JIoEndpoint extends AbstractEndpoint<Socket> {
                         }
                     }
                 }
+            } finally {
+                lock.unlock();
             }
             socket = null;
             // Finish up this request
@@ -559,7 +564,9 @@ public class JIoEndpoint extends AbstractEndpoint<Socket> {
             // Synchronisation is required here as this code may be called as a
             // result of calling AsyncContext.dispatch() from a non-container
             // thread
-            synchronized (socket) {
+            Lock lock = socket.getLock();
+            lock.lock();
+            try {
                 if (waitingRequests.remove(socket)) {
                     SocketProcessor proc = new SocketProcessor(socket,status);
                     Executor executor = getExecutor();
@@ -573,6 +580,8 @@ public class JIoEndpoint extends AbstractEndpoint<Socket> {
                         proc.run();
                     }
                 }
+            } finally {
+                lock.unlock();
             }
         } catch (RejectedExecutionException ree) {
             log.warn(sm.getString("endpoint.executor.fail", socket) , ree);
@@ -54,8 +54,35 @@ public class Nio2Channel implements AsynchronousByteChannel {
             throws IOException {
         this.sc = channel;
         this.socket = socket;
-        bufHandler.getReadBuffer().clear();
-        bufHandler.getWriteBuffer().clear();
+        if (bufHandler instanceof Nio2Endpoint.NioBufferHandler) {
+            ((Nio2Endpoint.NioBufferHandler) bufHandler).reset();
+        } else {
+            bufHandler.getReadBuffer().clear();
+            bufHandler.getWriteBuffer().clear();
+        }
+    }
+
+    /**
+     * Return the application buffers to the endpoint's buffer pool if they are
+     * pooled. As NIO2 keeps a read pending while a connection waits for the
+     * next request, this is only called once the channel has been closed.
+     */
+    public void releaseBuffers() {
+        if (bufHandler instanceof Nio2Endpoint.NioBufferHandler) {
+            ((Nio2Endpoint.NioBufferHandler) bufHandler).release();
+        }
+    }
+
+    /**
+     * Return all the application buffers to the endpoint's buffer pool if
+     * they are pooled, discarding any data that has not been written. This
+     * should only be called once the channel has been closed.
+     */
+    public void discardBuffers() {
+        if (bufHandler instanceof Nio2Endpoint.NioBufferHandler &&
+                ((Nio2Endpoint.NioBufferHandler) bufHandler).isPooled()) {
+            ((Nio2Endpoint.NioBufferHandler) bufHandler).reset();
+        }
     }
 
     public SocketWrapper<Nio2Channel> getSocket() {
@@ -64,6 +91,9 @@ public class Nio2Channel implements AsynchronousByteChannel {
 
     public int getBufferSize() {
         if ( bufHandler == null ) return 0;
+        if (bufHandler instanceof Nio2Endpoint.NioBufferHandler) {
+            return ((Nio2Endpoint.NioBufferHandler) bufHandler).getBufferSize();
+        }
         int size = 0;
         size += bufHandler.getReadBuffer()!=null?bufHandler.getReadBuffer().capacity():0;
         size += bufHandler.getWriteBuffer()!=null?bufHandler.getWriteBuffer().capacity():0;
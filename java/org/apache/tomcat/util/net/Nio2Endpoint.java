@@ -36,6 +36,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
@@ -46,6 +47,7 @@ import javax.net.ssl.X509KeyManager;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.collections.StripedStack;
 import org.apache.tomcat.util.collections.SynchronizedStack;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
 import org.apache.tomcat.util.net.SecureNio2Channel.ApplicationBufferHandler;
@@ -113,24 +115,37 @@ public class Nio2Endpoint extends AbstractEndpoint<Nio2Channel> {
     /**
      * Cache for SocketProcessor objects
      */
-    private final SynchronizedStack<SocketProcessor> processorCache =
-            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
+    private final StripedStack<SocketProcessor> processorCache =
+            new StripedStack<>(SynchronizedStack.DEFAULT_SIZE,
                     socketProperties.getProcessorCache());
 
     /**
      * Cache for key attachment objects
      */
-    private final SynchronizedStack<Nio2SocketWrapper> socketWrapperCache =
-            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
+    private final StripedStack<Nio2SocketWrapper> socketWrapperCache =
+            new StripedStack<>(SynchronizedStack.DEFAULT_SIZE,
                     socketProperties.getSocketWrapperCache());
 
     /**
      * Bytebuffer cache, each channel holds a set of buffers (two, except for SSL holds four)
      */
-    private final SynchronizedStack<Nio2Channel> nioChannels =
-            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
+    private final StripedStack<Nio2Channel> nioChannels =
+            new StripedStack<>(SynchronizedStack.DEFAULT_SIZE,
                     socketProperties.getBufferPoolSize());
 
+    /**
+     * Cache of direct buffers used to copy files to the network for sendfile
+     */
+    private final SynchronizedStack<ByteBuffer> sendfileBuffers =
+            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
+                    socketProperties.getBufferPool());
+
+    /**
+     * Pool of application buffers for non-SSL connections, if enabled with
+     * socket.appBufferPool.
+     */
+    private ByteBufferPool appBufferPool = null;
+
 
     // ------------------------------------------------------------- Properties
 
@@ -259,7 +274,9 @@ public class Nio2Endpoint extends AbstractEndpoint<Nio2Channel> {
             this.socketWrapperCache.clear();
             this.nioChannels.clear();
             this.processorCache.clear();
+            this.sendfileBuffers.clear();
         }
+        if (appBufferPool != null) appBufferPool.clear();
         if ( handler != null ) handler.recycle();
 
     }
@@ -325,6 +342,11 @@ public class Nio2Endpoint extends AbstractEndpoint<Nio2Channel> {
             enabledProtocols = sslUtil.getEnableableProtocols(sslContext);
         }
 
+        if (socketProperties.getAppBufferPool()) {
+            appBufferPool = new ByteBufferPool(socketProperties.getDirectBuffer(),
+                    socketProperties.getAppBufferPoolSize());
+        }
+
         if (oomParachute>0) reclaimParachute(true);
     }
 
@@ -410,6 +432,7 @@ public class Nio2Endpoint extends AbstractEndpoint<Nio2Channel> {
             socketWrapperCache.clear();
             nioChannels.clear();
             processorCache.clear();
+            sendfileBuffers.clear();
         }
     }
 
@@ -429,6 +452,7 @@ public class Nio2Endpoint extends AbstractEndpoint<Nio2Channel> {
         // Unlike other connectors, the thread pool is tied to the server socket
         shutdownExecutor();
         releaseCaches();
+        appBufferPool = null;
     }
 
 
@@ -510,6 +534,12 @@ public class Nio2Endpoint extends AbstractEndpoint<Nio2Channel> {
                             Math.max(appBufferSize, socketProperties.getAppWriteBufSize()),
                             socketProperties.getDirectBuffer());
                     channel = new SecureNio2Channel(engine, bufhandler, this);
+                } else if (appBufferPool != null) {
+                    NioBufferHandler bufhandler = new NioBufferHandler(
+                            socketProperties.getAppReadBufSize(),
+                            socketProperties.getAppWriteBufSize(),
+                            appBufferPool);
+                    channel = new Nio2Channel(bufhandler);
                 } else {
                     NioBufferHandler bufhandler = new NioBufferHandler(
                             socketProperties.getAppReadBufSize(),
@@ -632,6 +662,7 @@ public class Nio2Endpoint extends AbstractEndpoint<Nio2Channel> {
             try {
                 if (socket.getSocket() != null) {
                     socket.getSocket().close(true);
+                    socket.getSocket().discardBuffers();
                 }
             } catch (Exception e){
                 if (log.isDebugEnabled()) {
@@ -840,8 +871,14 @@ public class Nio2Endpoint extends AbstractEndpoint<Nio2Channel> {
     public static class NioBufferHandler implements ApplicationBufferHandler {
         private ByteBuffer readbuf = null;
         private ByteBuffer writebuf = null;
+        private final ByteBufferPool pool;
+        private final int readsize;
+        private final int writesize;
 
         public NioBufferHandler(int readsize, int writesize, boolean direct) {
+            this.pool = null;
+            this.readsize = readsize;
+            this.writesize = writesize;
             if ( direct ) {
                 readbuf = ByteBuffer.allocateDirect(readsize);
                 writebuf = ByteBuffer.allocateDirect(writesize);
@@ -851,10 +888,70 @@ public class Nio2Endpoint extends AbstractEndpoint<Nio2Channel> {
             }
         }
 
+        /**
+         * Create a handler that borrows its buffers from the given pool the
+         * first time they are used and returns them on {@link #release()}.
+         */
+        public NioBufferHandler(int readsize, int writesize, ByteBufferPool pool) {
+            this.pool = pool;
+            this.readsize = readsize;
+            this.writesize = writesize;
+        }
+
         @Override
-        public ByteBuffer getReadBuffer() {return readbuf;}
+        public ByteBuffer getReadBuffer() {
+            if (readbuf == null) readbuf = pool.allocate(readsize);
+            return readbuf;
+        }
         @Override
-        public ByteBuffer getWriteBuffer() {return writebuf;}
+        public ByteBuffer getWriteBuffer() {
+            if (writebuf == null) writebuf = pool.allocate(writesize);
+            return writebuf;
+        }
+
+        public boolean isPooled() { return pool != null; }
+
+        /**
+         * Number of bytes currently held by this handler.
+         */
+        public int getBufferSize() {
+            int size = 0;
+            size += readbuf!=null?readbuf.capacity():0;
+            size += writebuf!=null?writebuf.capacity():0;
+            return size;
+        }
+
+        /**
+         * Return the buffers to the pool. The read buffer never carries data
+         * between reads but the write buffer is only returned if it has been
+         * fully written.
+         */
+        public void release() {
+            if (pool == null) return;
+            if (readbuf != null) {
+                pool.release(readbuf);
+                readbuf = null;
+            }
+            if (writebuf != null && writebuf.position() == 0 &&
+                    writebuf.limit() == writebuf.capacity()) {
+                pool.release(writebuf);
+                writebuf = null;
+            }
+        }
+
+        /**
+         * Clear the buffers ready for a new connection, returning them to the
+         * pool if they are pooled.
+         */
+        public void reset() {
+            if (pool == null) {
+                readbuf.clear();
+                writebuf.clear();
+            } else {
+                if (writebuf != null) writebuf.clear();
+                release();
+            }
+        }
 
     }
 
@@ -937,132 +1034,150 @@ public class Nio2Endpoint extends AbstractEndpoint<Nio2Channel> {
     public boolean processSendfile(final Nio2SocketWrapper socket) {
 
         // Configure the send file data
-        SendfileData data = socket.getSendfileData();
+        final SendfileData data = socket.getSendfileData();
         if (data.fchannel == null || !data.fchannel.isOpen()) {
             java.nio.file.Path path = new File(data.fileName).toPath();
             try {
                 data.fchannel = java.nio.channels.FileChannel
-                        .open(path, StandardOpenOption.READ).position(data.pos);
+                        .open(path, StandardOpenOption.READ);
             } catch (IOException e) {
                 closeSocket(socket, SocketStatus.ERROR);
                 return false;
             }
         }
 
+        // An AsynchronousSocketChannel can't be the target of
+        // FileChannel.transferTo() so the file is copied through a buffer.
+        // If not using SSL, use a direct buffer so the JVM does not need to
+        // make an additional copy.
         final ByteBuffer buffer;
-        if (!socketProperties.getDirectBuffer() && sslContext == null) {
-            // If not using SSL and direct buffers are not used, the
-            // idea of sendfile is to avoid memory copies, so allocate a
-            // direct buffer
-            int bufferSize;
-            try {
-                Integer bufferSizeInteger = socket.getSocket().getIOChannel().getOption(StandardSocketOptions.SO_SNDBUF);
-                if (bufferSizeInteger != null) {
-                    bufferSize = bufferSizeInteger.intValue();
-                } else {
-                    bufferSize = 8192;
-                }
-            } catch (IOException e) {
-                bufferSize = 8192;
-            }
-            buffer = ByteBuffer.allocateDirect(bufferSize);
+        final boolean sendfileBuffer =
+                !socketProperties.getDirectBuffer() && sslContext == null;
+        if (sendfileBuffer) {
+            buffer = getSendfileBuffer(socket);
         } else {
             buffer = socket.getSocket().getBufHandler().getWriteBuffer();
         }
-        int nr = -1;
+        boolean ok;
         try {
-            nr = data.fchannel.read(buffer);
-        } catch (IOException e1) {
+            ok = fillSendfileBuffer(data, buffer);
+        } catch (IOException e) {
+            ok = false;
+        }
+        if (!ok) {
+            endSendfile(data, sendfileBuffer ? buffer : null);
             closeSocket(socket, SocketStatus.ERROR);
             return false;
         }
 
-        if (nr >= 0) {
-            buffer.flip();
-            socket.getSocket().write(buffer, data, new CompletionHandler<Integer, SendfileData>() {
+        socket.getSocket().write(buffer, data, new CompletionHandler<Integer, SendfileData>() {
 
-                @Override
-                public void completed(Integer nw, SendfileData attachment) {
-                    if (nw.intValue() < 0) { // Reach the end of stream
-                        closeSocket(socket, SocketStatus.DISCONNECT);
-                        try {
-                            attachment.fchannel.close();
-                        } catch (IOException e) {
-                            // Ignore
-                        }
-                        return;
-                    }
+            @Override
+            public void completed(Integer nw, SendfileData attachment) {
+                if (nw.intValue() < 0) { // Reach the end of stream
+                    endSendfile(attachment, sendfileBuffer ? buffer : null);
+                    closeSocket(socket, SocketStatus.DISCONNECT);
+                    return;
+                }
 
-                    attachment.pos += nw.intValue();
-                    attachment.length -= nw.intValue();
+                attachment.pos += nw.intValue();
+                attachment.length -= nw.intValue();
 
-                    if (attachment.length <= 0) {
-                        socket.setSendfileData(null);
-                        try {
-                            attachment.fchannel.close();
-                        } catch (IOException e) {
-                            // Ignore
-                        }
-                        if (attachment.keepAlive) {
-                            awaitBytes(socket);
-                        } else {
-                            closeSocket(socket, SocketStatus.DISCONNECT);
-                        }
-                        return;
+                if (attachment.length <= 0) {
+                    socket.setSendfileData(null);
+                    endSendfile(attachment, sendfileBuffer ? buffer : null);
+                    if (attachment.keepAlive) {
+                        awaitBytes(socket);
+                    } else {
+                        closeSocket(socket, SocketStatus.DISCONNECT);
                     }
+                    return;
+                }
 
-                    boolean ok = true;
-
-                    if (!buffer.hasRemaining()) {
-                        // This means that all data in the buffer has
-                        // been
-                        // written => Empty the buffer and read again
-                        buffer.clear();
-                        try {
-                            if (attachment.fchannel.read(buffer) >= 0) {
-                                buffer.flip();
-                                if (attachment.length < buffer.remaining()) {
-                                    buffer.limit(buffer.limit() - buffer.remaining() + (int) attachment.length);
-                                }
-                            } else {
-                                // Reach the EOF
-                                ok = false;
-                            }
-                        } catch (Throwable th) {
-                            ExceptionUtils.handleThrowable(th);
-                            if (log.isDebugEnabled()) {
-                                log.debug(sm.getString("endpoint.sendfile.error"), th);
-                            }
-                            ok = false;
-                        }
-                    }
+                boolean ok = true;
 
-                    if (ok) {
-                        socket.getSocket().write(buffer, attachment, this);
-                    } else {
-                        try {
-                            attachment.fchannel.close();
-                        } catch (IOException e) {
-                            // Ignore
+                if (!buffer.hasRemaining()) {
+                    // All the data in the buffer has been written so read
+                    // the next part of the file
+                    try {
+                        ok = fillSendfileBuffer(attachment, buffer);
+                    } catch (Throwable th) {
+                        ExceptionUtils.handleThrowable(th);
+                        if (log.isDebugEnabled()) {
+                            log.debug(sm.getString("endpoint.sendfile.error"), th);
                         }
-                        closeSocket(socket, SocketStatus.ERROR);
+                        ok = false;
                     }
                 }
 
-                @Override
-                public void failed(Throwable exc, SendfileData attachment) {
-                    // Closing channels
+                if (ok) {
+                    socket.getSocket().write(buffer, attachment, this);
+                } else {
+                    endSendfile(attachment, sendfileBuffer ? buffer : null);
                     closeSocket(socket, SocketStatus.ERROR);
-                    try {
-                        attachment.fchannel.close();
-                    } catch (IOException e) {
-                        // Ignore
-                    }
                 }
-            });
-            return true;
-        } else {
-            return false;
+            }
+
+            @Override
+            public void failed(Throwable exc, SendfileData attachment) {
+                // Closing channels
+                closeSocket(socket, SocketStatus.ERROR);
+                endSendfile(attachment, sendfileBuffer ? buffer : null);
+            }
+        });
+        return true;
+    }
+
+
+    /**
+     * Read the next part of the file into the buffer, reading no more than
+     * remains to be sent. The file is read at {@link SendfileData#pos} which,
+     * since the buffer is only refilled once it has been completely written,
+     * is also the position of the first byte of the file not yet written.
+     *
+     * @return <code>false</code> if the end of the file was reached before
+     *         all the data was sent
+     */
+    private static boolean fillSendfileBuffer(SendfileData data,
+            ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        if (data.length < buffer.capacity()) {
+            buffer.limit((int) data.length);
+        }
+        int nr = data.fchannel.read(buffer, data.pos);
+        buffer.flip();
+        return nr > 0;
+    }
+
+
+    private ByteBuffer getSendfileBuffer(Nio2SocketWrapper socket) {
+        int bufferSize;
+        try {
+            Integer bufferSizeInteger = socket.getSocket().getIOChannel().getOption(StandardSocketOptions.SO_SNDBUF);
+            if (bufferSizeInteger != null) {
+                bufferSize = bufferSizeInteger.intValue();
+            } else {
+                bufferSize = 8192;
+            }
+        } catch (IOException e) {
+            bufferSize = 8192;
+        }
+        ByteBuffer buffer = sendfileBuffers.pop();
+        if (buffer == null || buffer.capacity() < bufferSize) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buffer;
+    }
+
+
+    private void endSendfile(SendfileData data, ByteBuffer buffer) {
+        try {
+            data.fchannel.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+        if (buffer != null && useCaches) {
+            sendfileBuffers.push(buffer);
         }
     }
 
@@ -1092,12 +1207,20 @@ public class Nio2Endpoint extends AbstractEndpoint<Nio2Channel> {
             // NIO has been configured
             if (socket.isUpgraded() &&
                     SocketStatus.OPEN_WRITE == status) {
-                synchronized (socket.getWriteThreadLock()) {
+                Lock lock = socket.getWriteThreadLock();
+                lock.lock();
+                try {
                     doRun();
+                } finally {
+                    lock.unlock();
                 }
             } else {
-                synchronized (socket) {
+                Lock lock = socket.getLock();
+                lock.lock();
+                try {
                     doRun();
+                } finally {
+                    lock.unlock();
                 }
             }
         }
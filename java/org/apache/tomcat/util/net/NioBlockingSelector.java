@@ -33,8 +33,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
-import org.apache.tomcat.util.collections.SynchronizedQueue;
-import org.apache.tomcat.util.collections.SynchronizedStack;
+import org.apache.tomcat.util.collections.SingleConsumerQueue;
+import org.apache.tomcat.util.collections.StripedStack;
 import org.apache.tomcat.util.net.NioEndpoint.KeyAttachment;
 
 public class NioBlockingSelector {
@@ -43,8 +43,8 @@ public class NioBlockingSelector {
 
     private static int threadCounter = 0;
 
-    private final SynchronizedStack<KeyReference> keyReferenceStack =
-            new SynchronizedStack<>();
+    private final StripedStack<KeyReference> keyReferenceStack =
+            new StripedStack<>();
 
     protected Selector sharedSelector;
 
@@ -84,6 +84,25 @@ public class NioBlockingSelector {
      */
     public int write(ByteBuffer buf, NioChannel socket, long writeTimeout)
             throws IOException {
+        return (int) write(new ByteBuffer[] {buf}, 0, 1, socket, writeTimeout);
+    }
+
+    /**
+     * Performs a blocking gathering write of a sequence of buffers. The
+     * buffers are written with as few calls to the socket as possible, which
+     * is usually a single call.
+     * @param bufs ByteBuffer[] - the buffers containing the data, we will write as long as any of them has remaining data
+     * @param offset int - the index of the first buffer to write
+     * @param length int - the number of buffers to write
+     * @param socket SocketChannel - the socket to write data to
+     * @param writeTimeout long - the timeout for this write operation in milliseconds, -1 means no timeout
+     * @return long - returns the number of bytes written
+     * @throws EOFException if write returns -1
+     * @throws SocketTimeoutException if the write times out
+     * @throws IOException if an IO Exception occurs in the underlying socket logic
+     */
+    public long write(ByteBuffer[] bufs, int offset, int length,
+            NioChannel socket, long writeTimeout) throws IOException {
         SelectionKey key = socket.getIOChannel().keyFor(socket.getPoller().getSelector());
         if ( key == null ) throw new IOException("Key no longer registered");
         KeyReference reference = keyReferenceStack.pop();
@@ -91,14 +110,16 @@ public class NioBlockingSelector {
             reference = new KeyReference();
         }
         KeyAttachment att = (KeyAttachment) key.attachment();
-        int written = 0;
+        long written = 0;
         boolean timedout = false;
         int keycount = 1; //assume we can write
         long time = System.currentTimeMillis(); //start the timeout timer
         try {
-            while ( (!timedout) && buf.hasRemaining()) {
+            while ( (!timedout) && NioSelectorPool.hasRemaining(bufs, offset, length)) {
                 if (keycount > 0) { //only write if we were registered for a write
-                    int cnt = socket.write(buf); //write the data
+                    //write the data
+                    long cnt = (length == 1) ? socket.write(bufs[offset]) :
+                            socket.write(bufs, offset, length);
                     if (cnt == -1)
                         throw new EOFException();
                     written += cnt;
@@ -215,8 +236,8 @@ public class NioBlockingSelector {
     protected static class BlockPoller extends Thread {
         protected volatile boolean run = true;
         protected Selector selector = null;
-        protected final SynchronizedQueue<Runnable> events =
-                new SynchronizedQueue<>();
+        protected final SingleConsumerQueue<Runnable> events =
+                new SingleConsumerQueue<>();
         public void disable() { run = false; selector.wakeup();}
         protected final AtomicInteger wakeupCounter = new AtomicInteger(0);
         public void cancelKey(final SelectionKey key) {
@@ -57,13 +57,43 @@ public class NioChannel implements ByteChannel {
      * @throws IOException If a problem was encountered resetting the channel
      */
     public void reset() throws IOException {
-        bufHandler.getReadBuffer().clear();
-        bufHandler.getWriteBuffer().clear();
+        if (bufHandler instanceof NioEndpoint.NioBufferHandler) {
+            ((NioEndpoint.NioBufferHandler) bufHandler).reset();
+        } else {
+            bufHandler.getReadBuffer().clear();
+            bufHandler.getWriteBuffer().clear();
+        }
         this.sendFile = false;
     }
 
+    /**
+     * Return the application buffers to the endpoint's buffer pool if they are
+     * pooled. They will be borrowed again by the next read or write. This
+     * should only be called when no read or write is in progress.
+     */
+    public void releaseBuffers() {
+        if (bufHandler instanceof NioEndpoint.NioBufferHandler) {
+            ((NioEndpoint.NioBufferHandler) bufHandler).release();
+        }
+    }
+
+    /**
+     * Return all the application buffers to the endpoint's buffer pool if
+     * they are pooled, discarding any data that has not been written. This
+     * should only be called once the channel has been closed.
+     */
+    public void discardBuffers() {
+        if (bufHandler instanceof NioEndpoint.NioBufferHandler &&
+                ((NioEndpoint.NioBufferHandler) bufHandler).isPooled()) {
+            ((NioEndpoint.NioBufferHandler) bufHandler).reset();
+        }
+    }
+
     public int getBufferSize() {
         if ( bufHandler == null ) return 0;
+        if (bufHandler instanceof NioEndpoint.NioBufferHandler) {
+            return ((NioEndpoint.NioBufferHandler) bufHandler).getBufferSize();
+        }
         int size = 0;
         size += bufHandler.getReadBuffer()!=null?bufHandler.getReadBuffer().capacity():0;
         size += bufHandler.getWriteBuffer()!=null?bufHandler.getWriteBuffer().capacity():0;
@@ -122,6 +152,21 @@ public class NioChannel implements ByteChannel {
         return sc.write(src);
     }
 
+    /**
+     * Writes a sequence of bytes to this channel from a subsequence of the
+     * given buffers, using a single gathering write on the socket.
+     *
+     * @param srcs   The buffers from which bytes are to be retrieved
+     * @param offset The index of the first buffer to write
+     * @param length The number of buffers to write
+     * @return The number of bytes written, possibly zero
+     * @throws IOException If some other I/O error occurs
+     */
+    public long write(ByteBuffer[] srcs, int offset, int length)
+            throws IOException {
+        return sc.write(srcs, offset, length);
+    }
+
     /**
      * Reads a sequence of bytes from this channel into the given buffer.
      *
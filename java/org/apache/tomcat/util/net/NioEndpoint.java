@@ -20,10 +20,13 @@ package org.apache.tomcat.util.net;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketOption;
 import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.FileChannel;
@@ -32,7 +35,9 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
@@ -40,6 +45,7 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
@@ -51,7 +57,8 @@ import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.IntrospectionUtils;
-import org.apache.tomcat.util.collections.SynchronizedQueue;
+import org.apache.tomcat.util.collections.SingleConsumerQueue;
+import org.apache.tomcat.util.collections.StripedStack;
 import org.apache.tomcat.util.collections.SynchronizedStack;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
 import org.apache.tomcat.util.net.SecureNioChannel.ApplicationBufferHandler;
@@ -83,6 +90,25 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
     public static final int OP_REGISTER = 0x100; //register interest op
     public static final int OP_CALLBACK = 0x200; //callback interest op
 
+    /**
+     * The SO_REUSEPORT socket option, if the JVM provides it (Java 9 onwards).
+     * Looked up reflectively so the endpoint still runs on Java 7.
+     */
+    private static final SocketOption<Boolean> SO_REUSEPORT;
+
+    static {
+        SocketOption<Boolean> option = null;
+        try {
+            Field f = StandardSocketOptions.class.getField("SO_REUSEPORT");
+            @SuppressWarnings("unchecked")
+            SocketOption<Boolean> reusePort = (SocketOption<Boolean>) f.get(null);
+            option = reusePort;
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            // Not available on this JVM
+        }
+        SO_REUSEPORT = option;
+    }
+
     // ----------------------------------------------------------------- Fields
 
     private NioSelectorPool selectorPool = new NioSelectorPool();
@@ -92,6 +118,19 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
      */
     private ServerSocketChannel serverSock = null;
 
+    /**
+     * All the server sockets bound by this endpoint. There is more than one
+     * only when the endpoint is sharded with SO_REUSEPORT in which case the
+     * first entry is {@link #serverSock}.
+     */
+    private ServerSocketChannel[] serverSocks = null;
+
+    /**
+     * Used to hand each Acceptor created by {@link #createAcceptor()} its
+     * shard when the endpoint is sharded.
+     */
+    private int nextAcceptorShard = 0;
+
     /**
      * use send file
      */
@@ -127,31 +166,37 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
     /**
      * Cache for SocketProcessor objects
      */
-    private final SynchronizedStack<SocketProcessor> processorCache =
-            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
+    private final StripedStack<SocketProcessor> processorCache =
+            new StripedStack<>(SynchronizedStack.DEFAULT_SIZE,
                     socketProperties.getProcessorCache());
 
     /**
      * Cache for key attachment objects
      */
-    private final SynchronizedStack<KeyAttachment> keyCache =
-            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
+    private final StripedStack<KeyAttachment> keyCache =
+            new StripedStack<>(SynchronizedStack.DEFAULT_SIZE,
                     socketProperties.getKeyCache());
 
     /**
      * Cache for poller events
      */
-    private final SynchronizedStack<PollerEvent> eventCache =
-            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
+    private final StripedStack<PollerEvent> eventCache =
+            new StripedStack<>(SynchronizedStack.DEFAULT_SIZE,
                     socketProperties.getEventCache());
 
     /**
      * Bytebuffer cache, each channel holds a set of buffers (two, except for SSL holds four)
      */
-    private final SynchronizedStack<NioChannel> nioChannels =
-            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
+    private final StripedStack<NioChannel> nioChannels =
+            new StripedStack<>(SynchronizedStack.DEFAULT_SIZE,
                     socketProperties.getBufferPoolSize());
 
+    /**
+     * Pool of application buffers for non-SSL connections, if enabled with
+     * socket.appBufferPool.
+     */
+    private ByteBufferPool appBufferPool = null;
+
 
     // ------------------------------------------------------------- Properties
 
@@ -211,6 +256,24 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
     public void setPollerThreadCount(int pollerThreadCount) { this.pollerThreadCount = pollerThreadCount; }
     public int getPollerThreadCount() { return pollerThreadCount; }
 
+    /**
+     * Number of listening sockets to bind with SO_REUSEPORT. Each shard gets
+     * a dedicated Acceptor and Poller so that a connection is handled by the
+     * same Selector for its whole lifetime. Values less than 2 (the default)
+     * disable sharding.
+     */
+    private int reusePortShards = 0;
+    public void setReusePortShards(int reusePortShards) { this.reusePortShards = reusePortShards; }
+    public int getReusePortShards() { return reusePortShards; }
+
+    /**
+     * Is the endpoint currently bound to more than one SO_REUSEPORT socket?
+     */
+    public boolean isSharded() {
+        ServerSocketChannel[] socks = serverSocks;
+        return socks != null && socks.length > 1;
+    }
+
     private long selectorTimeout = 1000;
     public void setSelectorTimeout(long timeout){ this.selectorTimeout = timeout;}
     public long getSelectorTimeout(){ return this.selectorTimeout; }
@@ -315,11 +378,144 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
         this.keyCache.clear();
         this.nioChannels.clear();
         this.processorCache.clear();
+        if (appBufferPool != null) appBufferPool.clear();
         if ( handler != null ) handler.recycle();
 
     }
 
     // --------------------------------------------------------- Public Methods
+    /**
+     * Per shard accept and poll statistics, intended to be inspected via JMX
+     * on the "ThreadPool" MBean. Empty if the endpoint is not sharded.
+     */
+    public String[] getShardStatistics() {
+        AbstractEndpoint.Acceptor[] acceptors = this.acceptors;
+        Poller[] pollers = this.pollers;
+        ServerSocketChannel[] socks = serverSocks;
+        if (socks == null || socks.length < 2 || acceptors == null ||
+                pollers == null) {
+            return new String[0];
+        }
+        int shards = socks.length;
+        List<String> result = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            long selects = 0;
+            long processed = 0;
+            int keys = 0;
+            boolean running = false;
+            for (int i = shard; i < pollers.length; i += shards) {
+                Poller poller = pollers[i];
+                if (poller == null) {
+                    continue;
+                }
+                running = true;
+                selects += poller.getSelectCount();
+                processed += poller.getProcessedKeyCount();
+                keys += poller.getKeyCount();
+            }
+            if (!running) {
+                continue;
+            }
+            long accepted = 0;
+            for (AbstractEndpoint.Acceptor acceptor : acceptors) {
+                if (((Acceptor) acceptor).getShard() == shard) {
+                    accepted +=
+                            ((Acceptor) acceptor).getAcceptedConnectionCount();
+                }
+            }
+            result.add(sm.getString("endpoint.nio.shardStatistics",
+                    Integer.valueOf(shard), Long.valueOf(accepted),
+                    Long.valueOf(selects), Long.valueOf(processed),
+                    Integer.valueOf(keys)));
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+
+    /**
+     * Total number of connections accepted by all the acceptors of this
+     * endpoint since it was last started. Not to be confused with
+     * {@link #getBacklog()}, the <code>acceptCount</code> attribute of the
+     * connector.
+     */
+    public long getAcceptedConnectionCount() {
+        AbstractEndpoint.Acceptor[] acceptors = this.acceptors;
+        long sum = 0;
+        if (acceptors != null) {
+            for (AbstractEndpoint.Acceptor acceptor : acceptors) {
+                sum += ((Acceptor) acceptor).getAcceptedConnectionCount();
+            }
+        }
+        return sum;
+    }
+
+
+    /**
+     * Total number of events (registrations and interest operation changes)
+     * processed by the pollers of this endpoint.
+     */
+    public long getPollerEventCount() {
+        Poller[] pollers = this.pollers;
+        long sum = 0;
+        if (pollers != null) {
+            for (Poller poller : pollers) {
+                sum += poller.getEventCount();
+            }
+        }
+        return sum;
+    }
+
+
+    /**
+     * Number of times a poller had to be woken up from select() so that a new
+     * event could be processed.
+     */
+    public long getPollerWakeupCount() {
+        Poller[] pollers = this.pollers;
+        long sum = 0;
+        if (pollers != null) {
+            for (Poller poller : pollers) {
+                sum += poller.getWakeupCount();
+            }
+        }
+        return sum;
+    }
+
+
+    /**
+     * Number of poller events that did not need a selector wakeup because the
+     * poller was already awake or had been woken up for an earlier event.
+     */
+    public long getPollerWakeupSuppressedCount() {
+        return Math.max(0, getPollerEventCount() - getPollerWakeupCount());
+    }
+
+
+    /**
+     * Number of interest operation changes that were merged into an event
+     * already queued for the same connection rather than queuing a new one.
+     */
+    public long getPollerCoalescedEventCount() {
+        Poller[] pollers = this.pollers;
+        long sum = 0;
+        if (pollers != null) {
+            for (Poller poller : pollers) {
+                sum += poller.getCoalescedEventCount();
+            }
+        }
+        return sum;
+    }
+
+
+    /**
+     * The pool of application buffers, or <code>null</code> if
+     * socket.appBufferPool is not enabled or the endpoint is not bound.
+     */
+    ByteBufferPool getAppBufferPool() {
+        return appBufferPool;
+    }
+
+
     /**
      * Number of keepalive sockets.
      */
@@ -345,14 +541,49 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
     @Override
     public void bind() throws Exception {
 
-        serverSock = ServerSocketChannel.open();
-        socketProperties.setProperties(serverSock.socket());
+        SocketOption<Boolean> reusePort = getReusePortOption();
+        int shards = reusePortShards;
+        if (shards > 1 && reusePort == null) {
+            log.warn(sm.getString("endpoint.nio.reusePortUnavailable",
+                    Integer.valueOf(shards)));
+            shards = 1;
+        }
+
         InetSocketAddress addr = (getAddress()!=null?new InetSocketAddress(getAddress(),getPort()):new InetSocketAddress(getPort()));
-        serverSock.socket().bind(addr,getBacklog());
-        serverSock.configureBlocking(true); //mimic APR behavior
-        serverSock.socket().setSoTimeout(getSocketProperties().getSoTimeout());
+        serverSock = openServerSocket(addr, shards > 1);
+        if (shards > 1 && !serverSock.supportedOptions().contains(reusePort)) {
+            // The JVM knows the option but the platform does not support it
+            log.warn(sm.getString("endpoint.nio.reusePortUnavailable",
+                    Integer.valueOf(shards)));
+            shards = 1;
+        }
+        serverSocks = new ServerSocketChannel[Math.max(1, shards)];
+        serverSocks[0] = serverSock;
+        if (shards > 1) {
+            // All shards must share the port, even if it was chosen by the OS
+            InetSocketAddress shardAddr = new InetSocketAddress(
+                    addr.getAddress(), serverSock.socket().getLocalPort());
+            for (int i = 1; i < shards; i++) {
+                serverSocks[i] = openServerSocket(shardAddr, true);
+            }
+            // The sharded acceptors select on their sockets so that they can be
+            // stopped without relying on the unlock connection reaching them
+            for (ServerSocketChannel ssc : serverSocks) {
+                ssc.configureBlocking(false);
+            }
+        }
 
         // Initialize thread count defaults for acceptor, poller
+        if (shards > 1) {
+            // Every shard needs at least one acceptor and one poller. Any
+            // more are spread across the shards.
+            acceptorThreadCount = Math.max(acceptorThreadCount, shards);
+            pollerThreadCount = Math.max(pollerThreadCount, shards);
+            log.info(sm.getString("endpoint.nio.shardThreadCount",
+                    Integer.valueOf(shards),
+                    Integer.valueOf(acceptorThreadCount),
+                    Integer.valueOf(pollerThreadCount)));
+        }
         if (acceptorThreadCount == 0) {
             // FIXME: Doesn't seem to work that well with multiple accept threads
             acceptorThreadCount = 1;
@@ -381,10 +612,30 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
             enabledProtocols = sslUtil.getEnableableProtocols(sslContext);
         }
 
+        if (socketProperties.getAppBufferPool()) {
+            appBufferPool = new ByteBufferPool(socketProperties.getDirectBuffer(),
+                    socketProperties.getAppBufferPoolSize());
+        }
+
         if (oomParachute>0) reclaimParachute(true);
         selectorPool.open();
     }
 
+    private ServerSocketChannel openServerSocket(InetSocketAddress addr,
+            boolean reusePort) throws IOException {
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        socketProperties.setProperties(ssc.socket());
+        SocketOption<Boolean> option = getReusePortOption();
+        if (reusePort && option != null &&
+                ssc.supportedOptions().contains(option)) {
+            ssc.setOption(option, Boolean.TRUE);
+        }
+        ssc.socket().bind(addr,getBacklog());
+        ssc.configureBlocking(true); //mimic APR behavior
+        ssc.socket().setSoTimeout(getSocketProperties().getSoTimeout());
+        return ssc;
+    }
+
     public KeyManager[] wrap(KeyManager[] managers) {
         if (managers==null) return null;
         KeyManager[] result = new KeyManager[managers.length];
@@ -426,6 +677,7 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                 pollerThread.start();
             }
 
+            nextAcceptorShard = 0;
             startAcceptorThreads();
         }
     }
@@ -473,12 +725,16 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
         if (running) {
             stop();
         }
-        // Close server socket
-        serverSock.socket().close();
-        serverSock.close();
+        // Close server socket(s)
+        for (ServerSocketChannel ssc : serverSocks) {
+            ssc.socket().close();
+            ssc.close();
+        }
+        serverSocks = null;
         serverSock = null;
         sslContext = null;
         releaseCaches();
+        appBufferPool = null;
         selectorPool.close();
         if (log.isDebugEnabled()) {
             log.debug("Destroy completed for "+new InetSocketAddress(getAddress(),getPort()));
@@ -510,6 +766,15 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
         return oomParachute;
     }
 
+    /**
+     * @return the SO_REUSEPORT socket option or <code>null</code> if the JVM
+     *         does not provide it
+     */
+    protected SocketOption<Boolean> getReusePortOption() {
+        return SO_REUSEPORT;
+    }
+
+
     public byte[] getOomParachuteData() {
         return oomParachuteData;
     }
@@ -517,7 +782,44 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
 
     @Override
     protected AbstractEndpoint.Acceptor createAcceptor() {
-        return new Acceptor();
+        if (isSharded()) {
+            return new Acceptor(nextAcceptorShard++ % serverSocks.length);
+        }
+        return new Acceptor(-1);
+    }
+
+
+    /**
+     * The sharded acceptors are not blocked in accept() so waking up their
+     * selectors is all that is required to have them notice a state change.
+     * A single unlock connection would only reach one of the shards anyway.
+     */
+    @Override
+    protected void unlockAccept() {
+        if (!isSharded()) {
+            super.unlockAccept();
+            return;
+        }
+        AbstractEndpoint.Acceptor[] acceptors = this.acceptors;
+        if (acceptors == null) {
+            return;
+        }
+        for (AbstractEndpoint.Acceptor acceptor : acceptors) {
+            ((Acceptor) acceptor).wakeup();
+        }
+        // Wait for up to 1000ms for the acceptor threads to notice
+        long waitLeft = 1000;
+        for (AbstractEndpoint.Acceptor acceptor : acceptors) {
+            while (waitLeft > 0 &&
+                    acceptor.getState() == Acceptor.AcceptorState.RUNNING) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                waitLeft -= 50;
+            }
+        }
     }
 
 
@@ -525,6 +827,14 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
      * Process the specified connection.
      */
     protected boolean setSocketOptions(SocketChannel socket) {
+        return setSocketOptions(socket, getPoller0());
+    }
+
+
+    /**
+     * Process the specified connection, registering it with the given poller.
+     */
+    protected boolean setSocketOptions(SocketChannel socket, Poller poller) {
         // Process the connection
         try {
             //disable blocking, APR style, we are gonna be polling it
@@ -544,9 +854,16 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                     channel = new SecureNioChannel(socket, engine, bufhandler, selectorPool);
                 } else {
                     // normal tcp setup
-                    NioBufferHandler bufhandler = new NioBufferHandler(socketProperties.getAppReadBufSize(),
-                                                                       socketProperties.getAppWriteBufSize(),
-                                                                       socketProperties.getDirectBuffer());
+                    NioBufferHandler bufhandler;
+                    if (appBufferPool != null) {
+                        bufhandler = new NioBufferHandler(socketProperties.getAppReadBufSize(),
+                                                          socketProperties.getAppWriteBufSize(),
+                                                          appBufferPool);
+                    } else {
+                        bufhandler = new NioBufferHandler(socketProperties.getAppReadBufSize(),
+                                                          socketProperties.getAppWriteBufSize(),
+                                                          socketProperties.getDirectBuffer());
+                    }
 
                     channel = new NioChannel(socket, bufhandler);
                 }
@@ -559,7 +876,7 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                     channel.reset();
                 }
             }
-            getPoller0().register(channel);
+            poller.register(channel);
         } catch (Throwable t) {
             ExceptionUtils.handleThrowable(t);
             try {
@@ -653,8 +970,99 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
      */
     protected class Acceptor extends AbstractEndpoint.Acceptor {
 
+        /**
+         * The shard served by this acceptor or -1 if the endpoint is not
+         * sharded.
+         */
+        private final int shard;
+
+        private volatile Selector acceptSelector = null;
+
+        private volatile long acceptedConnectionCount = 0;
+
+        /**
+         * The next poller to hand a connection to when the endpoint is
+         * sharded. The pollers of a shard are those whose index modulo the
+         * number of shards is the shard.
+         */
+        private int nextPoller;
+
+        public Acceptor(int shard) {
+            this.shard = shard;
+            this.nextPoller = shard;
+        }
+
+        public int getShard() { return shard; }
+
+        public long getAcceptedConnectionCount() {
+            return acceptedConnectionCount;
+        }
+
+        private Poller getShardPoller() {
+            Poller[] pollers = NioEndpoint.this.pollers;
+            if (nextPoller >= pollers.length) {
+                nextPoller = shard;
+            }
+            Poller poller = pollers[nextPoller];
+            nextPoller += serverSocks.length;
+            return poller;
+        }
+
+        protected void wakeup() {
+            Selector s = acceptSelector;
+            if (s != null) {
+                s.wakeup();
+            }
+        }
+
         @Override
         public void run() {
+            if (shard < 0) {
+                doRun();
+                return;
+            }
+            try {
+                synchronized (Selector.class) {
+                    // See Poller constructor
+                    acceptSelector = Selector.open();
+                }
+                serverSocks[shard].register(acceptSelector, SelectionKey.OP_ACCEPT);
+            } catch (IOException ioe) {
+                log.error(sm.getString("endpoint.nio.shardAcceptorFail",
+                        Integer.valueOf(shard)), ioe);
+                state = AcceptorState.ENDED;
+                return;
+            }
+            try {
+                doRun();
+            } finally {
+                try {
+                    acceptSelector.close();
+                } catch (IOException ioe) {
+                    log.error(sm.getString(
+                            "endpoint.nio.selectorCloseFail"), ioe);
+                }
+            }
+        }
+
+        /**
+         * Accept the next incoming connection from the server socket.
+         *
+         * @return the new connection or <code>null</code> if no connection was
+         *         accepted before the shard's selector timed out or was woken
+         *         up
+         */
+        private SocketChannel accept() throws IOException {
+            if (shard < 0) {
+                return serverSock.accept();
+            }
+            if (acceptSelector.select(selectorTimeout) > 0) {
+                acceptSelector.selectedKeys().clear();
+            }
+            return serverSocks[shard].accept();
+        }
+
+        private void doRun() {
 
             int errorDelay = 0;
 
@@ -684,7 +1092,7 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                     try {
                         // Accept the next incoming connection from the server
                         // socket
-                        socket = serverSock.accept();
+                        socket = accept();
                     } catch (IOException ioe) {
                         //we didn't get a socket
                         countDownConnection();
@@ -696,10 +1104,20 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                     // Successful accept, reset the error delay
                     errorDelay = 0;
 
+                    if (socket == null) {
+                        // Sharded acceptor woke up without a connection
+                        countDownConnection();
+                        continue;
+                    }
+                    acceptedConnectionCount++;
+
                     // setSocketOptions() will add channel to the poller
                     // if successful
                     if (running && !paused) {
-                        if (!setSocketOptions(socket)) {
+                        boolean registered = (shard < 0) ?
+                                setSocketOptions(socket) :
+                                setSocketOptions(socket, getShardPoller());
+                        if (!registered) {
                             countDownConnection();
                             closeSocket(socket);
                         }
@@ -769,19 +1187,33 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
         private NioChannel socket;
         private int interestOps;
         private KeyAttachment key;
+        private boolean coalesced;
 
         public PollerEvent(NioChannel ch, KeyAttachment k, int intOps) {
             reset(ch, k, intOps);
         }
 
         public void reset(NioChannel ch, KeyAttachment k, int intOps) {
+            reset(ch, k, intOps, false);
+        }
+
+        /**
+         * @param coalesced <code>true</code> if the interest operations are
+         *                  to be taken from the pending operations of the
+         *                  attachment when the event runs, so that any
+         *                  operations added in the meantime are applied by
+         *                  this event as well
+         */
+        public void reset(NioChannel ch, KeyAttachment k, int intOps,
+                boolean coalesced) {
             socket = ch;
             interestOps = intOps;
             key = k;
+            this.coalesced = coalesced;
         }
 
         public void reset() {
-            reset(null, null, 0);
+            reset(null, null, 0, false);
         }
 
         @Override
@@ -793,12 +1225,19 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                     log.error("", x);
                 }
             } else {
+                // The pending operations are cleared whatever state the key
+                // is in, otherwise no event would be queued for the
+                // attachment again
+                int pendingOps = coalesced ? this.key.takePendingOps() : 0;
                 final SelectionKey key = socket.getIOChannel().keyFor(socket.getPoller().getSelector());
                 try {
                     boolean cancel = false;
                     if (key != null) {
                         final KeyAttachment att = (KeyAttachment) key.attachment();
                         if ( att!=null ) {
+                            if (coalesced && att == this.key) {
+                                interestOps = pendingOps;
+                            }
                             //handle callback flag
                             if ((interestOps & OP_CALLBACK) == OP_CALLBACK ) {
                                 att.setCometNotify(true);
@@ -839,8 +1278,8 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
     public class Poller implements Runnable {
 
         private Selector selector;
-        private final SynchronizedQueue<PollerEvent> events =
-                new SynchronizedQueue<>();
+        private final SingleConsumerQueue<PollerEvent> events =
+                new SingleConsumerQueue<>();
 
         private volatile boolean close = false;
         private long nextExpiration = 0;//optimize expiration handling
@@ -849,6 +1288,13 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
 
         private volatile int keyCount = 0;
 
+        private volatile long selectCount = 0;
+        private volatile long processedKeyCount = 0;
+
+        private volatile long eventCount = 0;
+        private final AtomicLong wakeupCount = new AtomicLong(0);
+        private final AtomicLong coalescedEventCount = new AtomicLong(0);
+
         public Poller() throws IOException {
             synchronized (Selector.class) {
                 // Selector.open() isn't thread safe
@@ -860,6 +1306,35 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
 
         public int getKeyCount() { return keyCount; }
 
+        /**
+         * @return the number of times the selector returned ready keys
+         */
+        public long getSelectCount() { return selectCount; }
+
+        /**
+         * @return the number of ready keys processed by this poller
+         */
+        public long getProcessedKeyCount() { return processedKeyCount; }
+
+        /**
+         * @return the number of events processed by this poller
+         */
+        public long getEventCount() { return eventCount; }
+
+        /**
+         * @return the number of times a thread adding an event had to wake up
+         *         the selector. No wakeup is required if the poller is not
+         *         blocked in a select or another thread has already woken it
+         *         up.
+         */
+        public long getWakeupCount() { return wakeupCount.get(); }
+
+        /**
+         * @return the number of interest operation changes that were merged
+         *         into an event that was already queued for the same key
+         */
+        public long getCoalescedEventCount() { return coalescedEventCount.get(); }
+
         public Selector getSelector() { return selector;}
 
         /**
@@ -875,7 +1350,13 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
 
         private void addEvent(PollerEvent event) {
             events.offer(event);
-            if ( wakeupCounter.incrementAndGet() == 0 ) selector.wakeup();
+            // The counter is -1 only while the poller is (about to be) blocked
+            // in select(). Any other value means that it will check the event
+            // queue before it next blocks so the wakeup can be skipped.
+            if ( wakeupCounter.incrementAndGet() == 0 ) {
+                wakeupCount.incrementAndGet();
+                selector.wakeup();
+            }
         }
 
         /**
@@ -891,16 +1372,29 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
         }
 
         public void add(final NioChannel socket, final int interestOps) {
-            PollerEvent r = eventCache.pop();
-            if ( r==null) r = new PollerEvent(socket,null,interestOps);
-            else r.reset(socket,null,interestOps);
+            KeyAttachment ka = null;
             if ( (interestOps&OP_CALLBACK) == OP_CALLBACK ) {
                 nextExpiration = 0; //force the check for faster callback
+            } else {
+                // Comet events are not coalesced as the order of callback
+                // and non-callback events matters
+                ka = (KeyAttachment) socket.getAttachment(false);
+                if (ka != null && ka.isComet()) {
+                    ka = null;
+                }
+            }
+            if (ka != null && ka.addPendingOps(interestOps) != 0) {
+                // Already queued, the pending event will pick up the new ops
+                coalescedEventCount.incrementAndGet();
+            } else {
+                PollerEvent r = eventCache.pop();
+                if ( r==null) r = new PollerEvent(socket,null,interestOps);
+                r.reset(socket, ka, interestOps, ka != null);
+                addEvent(r);
             }
-            addEvent(r);
             if (close) {
-                NioEndpoint.KeyAttachment ka = (NioEndpoint.KeyAttachment)socket.getAttachment(false);
-                processSocket(ka, SocketStatus.STOP, false);
+                processSocket((KeyAttachment) socket.getAttachment(false),
+                        SocketStatus.STOP, false);
             }
         }
 
@@ -916,6 +1410,8 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
             PollerEvent pe = null;
             while ( (pe = events.poll()) != null ) {
                 result = true;
+                // Single writer so no need for an atomic increment
+                eventCount++;
                 try {
                     pe.run();
                     pe.reset();
@@ -988,6 +1484,11 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                                 "endpoint.debug.socketCloseFail"), e);
                     }
                 }
+                if (ka != null) {
+                    // Whatever the reason for the close, including a timeout,
+                    // the pooled buffers must go back to the pool
+                    ka.getSocket().discardBuffers();
+                }
                 try {
                     if (ka != null && ka.getSendfileData() != null
                             && ka.getSendfileData().fchannel != null
@@ -1079,6 +1580,11 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                     //either we timed out or we woke up, process events first
                     if ( keyCount == 0 ) hasEvents = (hasEvents | events());
 
+                    if (keyCount > 0) {
+                        // Single writer so no need for atomic increments
+                        selectCount++;
+                        processedKeyCount += keyCount;
+                    }
                     Iterator<SelectionKey> iterator =
                         keyCount > 0 ? selector.selectedKeys().iterator() : null;
                     // Walk through the collection of ready keys and dispatch
@@ -1363,6 +1869,7 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
 
             cometNotify = false;
             interestOps = 0;
+            pendingOps.set(0);
             this.poller = poller;
             sendfileData = null;
             if (readLatch != null) {
@@ -1397,6 +1904,32 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
         public boolean getCometNotify() { return cometNotify; }
         public int interestOps() { return interestOps;}
         public int interestOps(int ops) { this.interestOps  = ops; return ops; }
+
+        /**
+         * Record interest operations that are to be added to the key by the
+         * poller.
+         *
+         * @param ops   The operations to add
+         * @return the operations that were already pending. If this is not
+         *         zero an event that will apply the new operations has
+         *         already been queued with the poller.
+         */
+        public int addPendingOps(int ops) {
+            while (true) {
+                int current = pendingOps.get();
+                if ((current | ops) == current && current != 0) {
+                    return current;
+                }
+                if (pendingOps.compareAndSet(current, current | ops)) {
+                    return current;
+                }
+            }
+        }
+
+        /**
+         * @return the pending interest operations, which are cleared
+         */
+        public int takePendingOps() { return pendingOps.getAndSet(0); }
         public CountDownLatch getReadLatch() { return readLatch; }
         public CountDownLatch getWriteLatch() { return writeLatch; }
         protected CountDownLatch resetLatch(CountDownLatch latch) {
@@ -1435,6 +1968,7 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
 
         private Poller poller = null;
         private int interestOps = 0;
+        private final AtomicInteger pendingOps = new AtomicInteger(0);
         private boolean cometNotify = false;
         private CountDownLatch readLatch = null;
         private CountDownLatch writeLatch = null;
@@ -1447,8 +1981,14 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
     public static class NioBufferHandler implements ApplicationBufferHandler {
         private ByteBuffer readbuf = null;
         private ByteBuffer writebuf = null;
+        private final ByteBufferPool pool;
+        private final int readsize;
+        private final int writesize;
 
         public NioBufferHandler(int readsize, int writesize, boolean direct) {
+            this.pool = null;
+            this.readsize = readsize;
+            this.writesize = writesize;
             if ( direct ) {
                 readbuf = ByteBuffer.allocateDirect(readsize);
                 writebuf = ByteBuffer.allocateDirect(writesize);
@@ -1458,12 +1998,72 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
             }
         }
 
+        /**
+         * Create a handler that borrows its buffers from the given pool the
+         * first time they are used and returns them on {@link #release()}.
+         */
+        public NioBufferHandler(int readsize, int writesize, ByteBufferPool pool) {
+            this.pool = pool;
+            this.readsize = readsize;
+            this.writesize = writesize;
+        }
+
         @Override
         public ByteBuffer expand(ByteBuffer buffer, int remaining) {return buffer;}
         @Override
-        public ByteBuffer getReadBuffer() {return readbuf;}
+        public ByteBuffer getReadBuffer() {
+            if (readbuf == null) readbuf = pool.allocate(readsize);
+            return readbuf;
+        }
         @Override
-        public ByteBuffer getWriteBuffer() {return writebuf;}
+        public ByteBuffer getWriteBuffer() {
+            if (writebuf == null) writebuf = pool.allocate(writesize);
+            return writebuf;
+        }
+
+        public boolean isPooled() { return pool != null; }
+
+        /**
+         * Number of bytes currently held by this handler.
+         */
+        public int getBufferSize() {
+            int size = 0;
+            size += readbuf!=null?readbuf.capacity():0;
+            size += writebuf!=null?writebuf.capacity():0;
+            return size;
+        }
+
+        /**
+         * Return the buffers to the pool. The read buffer never carries data
+         * between reads but the write buffer is only returned if it has been
+         * fully written.
+         */
+        public void release() {
+            if (pool == null) return;
+            if (readbuf != null) {
+                pool.release(readbuf);
+                readbuf = null;
+            }
+            if (writebuf != null && writebuf.position() == 0 &&
+                    writebuf.limit() == writebuf.capacity()) {
+                pool.release(writebuf);
+                writebuf = null;
+            }
+        }
+
+        /**
+         * Clear the buffers ready for a new connection, returning them to the
+         * pool if they are pooled.
+         */
+        public void reset() {
+            if (pool == null) {
+                readbuf.clear();
+                writebuf.clear();
+            } else {
+                if (writebuf != null) writebuf.clear();
+                release();
+            }
+        }
 
     }
 
@@ -1514,12 +2114,20 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
             // connection at the same time to enable blocking IO to be used when
             // NIO has been configured
             if (ka.isUpgraded() && SocketStatus.OPEN_WRITE == status) {
-                synchronized (ka.getWriteThreadLock()) {
+                Lock lock = ka.getWriteThreadLock();
+                lock.lock();
+                try {
                     doRun(key, ka);
+                } finally {
+                    lock.unlock();
                 }
             } else {
-                synchronized (socket) {
+                Lock lock = ka.getLock();
+                lock.lock();
+                try {
                     doRun(key, ka);
+                } finally {
+                    lock.unlock();
                 }
             }
         }
@@ -1569,6 +2177,7 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                         try {
                             ka.setComet(false);
                             socket.getPoller().cancelledKey(key, SocketStatus.ERROR);
+                            socket.discardBuffers();
                             if (running && !paused) {
                                 nioChannels.push(socket);
                             }
@@ -1588,6 +2197,7 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                     if (key != null) {
                         socket.getPoller().cancelledKey(key, SocketStatus.DISCONNECT);
                     }
+                    socket.discardBuffers();
                     if (running && !paused) {
                         nioChannels.push(socket);
                     }
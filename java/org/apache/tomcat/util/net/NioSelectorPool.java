@@ -169,19 +169,47 @@ public class NioSelectorPool {
      */
     public int write(ByteBuffer buf, NioChannel socket, Selector selector,
                      long writeTimeout, boolean block) throws IOException {
+        return (int) write(new ByteBuffer[] {buf}, 0, 1, socket, selector,
+                writeTimeout, block);
+    }
+
+    /**
+     * Performs a gathering write of a sequence of buffers and a selector to
+     * block (if blocking is requested). The channel must support gathering
+     * writes if more than one buffer is passed, which {@link SecureNioChannel}
+     * does not.
+     * @param bufs          The buffers containing the data, we will write as long as any of them has remaining data
+     * @param offset        The index of the first buffer to write
+     * @param length        The number of buffers to write
+     * @param socket        The socket to write data to
+     * @param selector      The selector to use for blocking, if null then a busy write will be initiated
+     * @param writeTimeout  The timeout for this write operation in milliseconds, -1 means no timeout
+     * @param block         <code>true</code> to perform a blocking write
+     *                      otherwise a non-blocking write will be performed
+     * @return long - returns the number of bytes written
+     * @throws EOFException if write returns -1
+     * @throws SocketTimeoutException if the write times out
+     * @throws IOException if an IO Exception occurs in the underlying socket logic
+     */
+    public long write(ByteBuffer[] bufs, int offset, int length,
+            NioChannel socket, Selector selector, long writeTimeout,
+            boolean block) throws IOException {
         if ( SHARED && block ) {
-            return blockingSelector.write(buf,socket,writeTimeout);
+            return blockingSelector.write(bufs, offset, length, socket,
+                    writeTimeout);
         }
         SelectionKey key = null;
-        int written = 0;
+        long written = 0;
         boolean timedout = false;
         int keycount = 1; //assume we can write
         long time = System.currentTimeMillis(); //start the timeout timer
         try {
-            while ( (!timedout) && buf.hasRemaining() ) {
-                int cnt = 0;
+            while ( (!timedout) && hasRemaining(bufs, offset, length) ) {
+                long cnt = 0;
                 if ( keycount > 0 ) { //only write if we were registered for a write
-                    cnt = socket.write(buf); //write the data
+                    //write the data
+                    cnt = (length == 1) ? socket.write(bufs[offset]) :
+                            socket.write(bufs, offset, length);
                     if (cnt == -1) throw new EOFException();
 
                     written += cnt;
@@ -196,7 +224,7 @@ public class NioSelectorPool {
                     if (key==null) key = socket.getIOChannel().register(selector, SelectionKey.OP_WRITE);
                     else key.interestOps(SelectionKey.OP_WRITE);
                     if (writeTimeout==0) {
-                        timedout = buf.hasRemaining();
+                        timedout = hasRemaining(bufs, offset, length);
                     } else if (writeTimeout<0) {
                         keycount = selector.select();
                     } else {
@@ -215,6 +243,15 @@ public class NioSelectorPool {
         return written;
     }
 
+    static boolean hasRemaining(ByteBuffer[] bufs, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (bufs[i].hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Performs a blocking read using the bytebuffer for data to be read and a selector to block.
      * If the <code>selector</code> parameter is null, then it will perform a busy read that could
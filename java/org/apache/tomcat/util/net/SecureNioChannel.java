@@ -516,6 +516,18 @@ public class SecureNioChannel extends NioChannel  {
         }
     }
 
+    /**
+     * Gathering writes are not supported as all data has to pass through the
+     * single application write buffer to be encrypted.
+     *
+     * @throws IllegalArgumentException always
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length)
+            throws IOException {
+        throw new IllegalArgumentException(sm.getString("channel.nio.ssl.invalidBuffer"));
+    }
+
     @Override
     public int getOutboundRemaining() {
         return netOutBuffer.remaining();
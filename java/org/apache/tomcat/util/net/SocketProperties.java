@@ -109,6 +109,22 @@ public class SocketProperties {
      */
     protected int bufferPoolSize = 1024*1024*100;
 
+    /**
+     * Enable/disable pooling of the application read and write buffers of
+     * non-SSL connections. When enabled, the buffers are borrowed from a
+     * {@link ByteBufferPool} shared by the endpoint while a read or write is
+     * in progress and returned when the connection goes idle.
+     * Default value is disabled
+     */
+    protected boolean appBufferPool = false;
+
+    /**
+     * Maximum number of bytes held by the shared application buffer pool
+     * -1 means unlimited
+     * Default value is 100MB (1024*1024*100 bytes)
+     */
+    protected int appBufferPoolSize = 1024*1024*100;
+
     /**
      * TCP_NO_DELAY option. JVM default used if not set.
      */
@@ -308,6 +324,14 @@ public class SocketProperties {
         return bufferPoolSize;
     }
 
+    public boolean getAppBufferPool() {
+        return appBufferPool;
+    }
+
+    public int getAppBufferPoolSize() {
+        return appBufferPoolSize;
+    }
+
     public int getEventCache() {
         return eventCache;
     }
@@ -405,6 +429,14 @@ public class SocketProperties {
         this.bufferPoolSize = bufferPoolSize;
     }
 
+    public void setAppBufferPool(boolean appBufferPool) {
+        this.appBufferPool = appBufferPool;
+    }
+
+    public void setAppBufferPoolSize(int appBufferPoolSize) {
+        this.appBufferPoolSize = appBufferPoolSize;
+    }
+
     public void setEventCache(int eventCache) {
         this.eventCache = eventCache;
     }
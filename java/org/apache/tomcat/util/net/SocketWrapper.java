@@ -20,6 +20,7 @@ import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
@@ -55,13 +56,15 @@ public class SocketWrapper<E> {
 
     /*
      * In normal servlet processing only one thread is allowed to access the
-     * socket at a time. That is controlled by a lock on the socket for both
+     * socket at a time. That is controlled by the lock below for both
      * read and writes). When HTTP upgrade is used, one read thread and one
      * write thread are allowed to access the socket concurrently. In this case
-     * the lock on the socket is used for reads and the lock below is used for
-     * writes.
+     * the lock is used for reads and the write thread lock is used for writes.
+     * These are explicit locks rather than monitors as a virtual thread that
+     * blocks while holding a monitor also blocks its carrier thread.
      */
-    private final Object writeThreadLock = new Object();
+    private final Lock lock = new ReentrantLock();
+    private final Lock writeThreadLock = new ReentrantLock();
 
     private Set<DispatchType> dispatches = new CopyOnWriteArraySet<>();
 
@@ -123,7 +126,8 @@ public class SocketWrapper<E> {
     public WriteLock getBlockingStatusWriteLock() {
         return blockingStatusWriteLock;
     }
-    public Object getWriteThreadLock() { return writeThreadLock; }
+    public Lock getLock() { return lock; }
+    public Lock getWriteThreadLock() { return writeThreadLock; }
     public void addDispatch(DispatchType dispatchType) {
         synchronized (dispatches) {
             dispatches.add(dispatchType);
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.scan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Base class for the results of scanning JARs that are retained, in a file,
+ * between starts of a web application so that JARs that have not changed do
+ * not need to be scanned again. JARs are identified by their path, size and
+ * last modified time. Sub-classes define how the result for a single JAR is
+ * written and read.
+ * <p>
+ * The file starts with a version and a settings value. If either differs from
+ * the values this cache was created with, the file is ignored.
+ *
+ * @param <T> The type of the result of scanning a single JAR
+ */
+public abstract class JarScanCache<T> {
+
+    private static final Log log = LogFactory.getLog(JarScanCache.class);
+
+    /**
+     * The string resources for this package.
+     */
+    private static final StringManager sm =
+        StringManager.getManager(Constants.Package);
+
+    private final int version;
+    private final int settings;
+    private final Map<String,JarResult<T>> jars = new ConcurrentHashMap<>();
+
+
+    /**
+     * @param version   The version of the format written by the sub-class
+     * @param settings  Any settings that the results depend on
+     */
+    protected JarScanCache(int version, int settings) {
+        this.version = version;
+        this.settings = settings;
+    }
+
+
+    /**
+     * Read the result for a single JAR.
+     *
+     * @param in    The stream to read from
+     * @return the result
+     * @throws IOException if the result could not be read
+     */
+    protected abstract T readResult(DataInputStream in) throws IOException;
+
+
+    /**
+     * Write the result for a single JAR.
+     *
+     * @param out       The stream to write to
+     * @param result    The result to write
+     * @throws IOException if the result could not be written
+     */
+    protected abstract void writeResult(DataOutputStream out, T result)
+            throws IOException;
+
+
+    /**
+     * Read a previously saved cache, adding its entries to this one. If the
+     * file does not exist or was saved with a different version or settings,
+     * nothing is read. If the file can't be read, a warning is logged and this
+     * cache is left empty.
+     *
+     * @param file  The file the cache was saved to
+     */
+    public void load(File file) {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != version || in.readInt() != settings) {
+                return;
+            }
+            int jarCount = in.readInt();
+            for (int i = 0; i < jarCount; i++) {
+                String path = in.readUTF();
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                T result = readResult(in);
+                jars.put(path, new JarResult<>(length, lastModified, result));
+            }
+        } catch (IOException e) {
+            log.warn(sm.getString("jarScanCache.loadFail",
+                    file.getAbsolutePath()), e);
+            jars.clear();
+        }
+    }
+
+
+    /**
+     * Write the cache, replacing any existing file. The cache is written to a
+     * temporary file first so that a partially written cache is never read.
+     *
+     * @param file  The file to write the cache to
+     * @throws IOException if the cache could not be written
+     */
+    public void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(version);
+            out.writeInt(settings);
+            out.writeInt(jars.size());
+            for (Map.Entry<String,JarResult<T>> entry : jars.entrySet()) {
+                JarResult<T> jarResult = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(jarResult.length);
+                out.writeLong(jarResult.lastModified);
+                writeResult(out, jarResult.result);
+            }
+        }
+        if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+            throw new IOException(sm.getString("jarScanCache.renameFail",
+                    tmp.getAbsolutePath(), file.getAbsolutePath()));
+        }
+    }
+
+
+    /**
+     * @param jar   The JAR file
+     * @return the result for the JAR or <code>null</code> if the JAR is not
+     *         in the cache or has changed since it was cached
+     */
+    public T get(File jar) {
+        JarResult<T> jarResult = jars.get(jar.getAbsolutePath());
+        if (jarResult == null || jarResult.length != jar.length() ||
+                jarResult.lastModified != jar.lastModified()) {
+            return null;
+        }
+        return jarResult.result;
+    }
+
+
+    public void put(File jar, T result) {
+        jars.put(jar.getAbsolutePath(),
+                new JarResult<>(jar.length(), jar.lastModified(), result));
+    }
+
+
+    public int size() {
+        return jars.size();
+    }
+
+
+    /**
+     * @param other The cache to compare with
+     * @return <code>true</code> if both caches hold results for exactly the
+     *         same JARs, regardless of whether those results are current
+     */
+    public boolean hasSameJars(JarScanCache<?> other) {
+        return jars.keySet().equals(other.jars.keySet());
+    }
+
+
+    /**
+     * Only JARs that are files in their own right can be cached, not JARs
+     * nested in a WAR or JARs that are directories.
+     *
+     * @param jarUrl    A URL of the form <code>jar:file:...!/</code>
+     * @return the JAR file on the file system or <code>null</code> if the URL
+     *         does not refer to one
+     */
+    public static File getJarFile(URL jarUrl) {
+        String path = jarUrl.getFile();
+        int separator = path.indexOf("!/");
+        if (!"jar".equals(jarUrl.getProtocol()) ||
+                !path.startsWith("file:") || separator != path.length() - 2) {
+            return null;
+        }
+        try {
+            File file = new File(new URI(path.substring(0, separator)));
+            if (file.isFile()) {
+                return file;
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            // Not a file on the file system
+        }
+        return null;
+    }
+
+
+    private static class JarResult<T> {
+
+        private final long length;
+        private final long lastModified;
+        private final T result;
+
+        JarResult(long length, long lastModified, T result) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.result = result;
+        }
+    }
+}
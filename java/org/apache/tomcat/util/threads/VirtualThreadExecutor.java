@@ -0,0 +1,255 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tomcat.util.ExceptionUtils;
+
+/**
+ * An executor that runs each task on a new virtual thread. Virtual threads
+ * are only available on Java 21 onwards so they are created via reflection
+ * and {@link #isSupported()} must be checked before an instance is created.
+ * <p>
+ * There is no pool and no queue: blocking a virtual thread only blocks the
+ * task, not the (small) set of carrier threads the JVM schedules virtual
+ * threads on. The maximum number of threads is recorded so that the
+ * connectors can continue to derive their defaults from it but it does not
+ * limit the number of concurrent tasks.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService
+        implements ResizableExecutor {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            // Java 19 and 20 have the API as a preview feature that throws
+            // UnsupportedOperationException unless --enable-preview is used,
+            // so check that a virtual thread can actually be created
+            ((ThreadFactory) factory.invoke(ofVirtual.invoke(null))).newThread(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            // NO-OP. Never started.
+                        }
+                    });
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not available before Java 21 or preview not enabled
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+    }
+
+
+    /**
+     * @return <code>true</code> if the JVM is able to create virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+
+    private final ThreadFactory threadFactory;
+    private final Set<Thread> threads =
+            Collections.newSetFromMap(new ConcurrentHashMap<Thread,Boolean>());
+    private final AtomicInteger taskCount = new AtomicInteger(0);
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private final AtomicLong completedTaskCount = new AtomicLong(0);
+    private volatile int maxThreads;
+    private volatile boolean shutdown = false;
+
+
+    /**
+     * Create a new executor.
+     *
+     * @param namePrefix    Prefix for the names of the virtual threads
+     * @param maxThreads    Nominal maximum number of threads, reported by
+     *                      {@link #getMaxThreads()}
+     *
+     * @throws UnsupportedOperationException if the JVM does not support
+     *         virtual threads
+     */
+    public VirtualThreadExecutor(String namePrefix, int maxThreads) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException();
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, namePrefix, Long.valueOf(1));
+            threadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException(e);
+        }
+        this.maxThreads = maxThreads;
+    }
+
+
+    @Override
+    public void execute(Runnable command) {
+        // Count the task before checking for shutdown so that shutdown()
+        // either sees the task or the task sees the shutdown
+        taskCount.incrementAndGet();
+        if (shutdown) {
+            taskDone();
+            throw new RejectedExecutionException();
+        }
+        try {
+            threadFactory.newThread(new Task(command)).start();
+        } catch (RuntimeException | Error e) {
+            taskDone();
+            throw e;
+        }
+    }
+
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (taskCount.get() == 0) {
+            terminated.countDown();
+        }
+    }
+
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+
+    /**
+     * Virtual threads only exist while they run a task so this is the same as
+     * {@link #getActiveCount()}.
+     */
+    @Override
+    public int getPoolSize() {
+        return threads.size();
+    }
+
+
+    @Override
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+
+    @Override
+    public int getActiveCount() {
+        return threads.size();
+    }
+
+
+    public long getCompletedTaskCount() {
+        return completedTaskCount.get();
+    }
+
+
+    @Override
+    public boolean resizePool(int corePoolSize, int maximumPoolSize) {
+        this.maxThreads = maximumPoolSize;
+        return true;
+    }
+
+
+    @Override
+    public boolean resizeQueue(int capacity) {
+        return false;
+    }
+
+
+    private void taskDone() {
+        if (taskCount.decrementAndGet() == 0 && shutdown) {
+            terminated.countDown();
+        }
+    }
+
+
+    private class Task implements Runnable {
+
+        private final Runnable command;
+
+        Task(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            Thread current = Thread.currentThread();
+            threads.add(current);
+            try {
+                command.run();
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                Thread.UncaughtExceptionHandler handler =
+                        current.getUncaughtExceptionHandler();
+                if (handler != null) {
+                    handler.uncaughtException(current, t);
+                }
+            } finally {
+                threads.remove(current);
+                completedTaskCount.incrementAndGet();
+                taskDone();
+            }
+        }
+    }
+}
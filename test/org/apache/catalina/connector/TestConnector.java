@@ -20,11 +20,15 @@ import java.net.SocketTimeoutException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
 import org.apache.catalina.Wrapper;
+import org.apache.catalina.core.AprLifecycleListener;
 import org.apache.catalina.startup.TesterServlet;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
@@ -92,4 +96,49 @@ public class TestConnector extends TomcatBaseTest {
         assertTrue(localPort1 > 0);
         assertTrue(localPort2 > 0);
     }
+
+
+    @Test
+    public void testAprFallback() throws Exception {
+        Assume.assumeFalse(AprLifecycleListener.isAprAvailable());
+
+        Connector connector =
+                new Connector("org.apache.coyote.http11.Http11AprProtocol");
+        assertEquals("org.apache.coyote.http11.Http11NioProtocol",
+                connector.getProtocolHandlerClassName());
+        assertEquals("HTTP/1.1", connector.getProtocol());
+
+        connector = new Connector("org.apache.coyote.ajp.AjpAprProtocol");
+        assertEquals("org.apache.coyote.ajp.AjpNioProtocol",
+                connector.getProtocolHandlerClassName());
+        assertEquals("AJP/1.3", connector.getProtocol());
+    }
+
+
+    @Test
+    public void testAprFallbackSsl() throws Exception {
+        Assume.assumeFalse(AprLifecycleListener.isAprAvailable());
+
+        // The APR SSL configuration can't be used by the NIO connector
+        Connector connector =
+                new Connector("org.apache.coyote.http11.Http11AprProtocol");
+        connector.setProperty("SSLCertificateFile", "localhost.crt");
+        try {
+            connector.init();
+            fail();
+        } catch (LifecycleException e) {
+            String message = e.getCause().getMessage();
+            assertTrue(message, message.contains("SSLCertificateFile"));
+        }
+
+        connector = new Connector("org.apache.coyote.http11.Http11AprProtocol");
+        connector.setProperty("SSLEnabled", "true");
+        try {
+            connector.init();
+            fail();
+        } catch (LifecycleException e) {
+            String message = e.getCause().getMessage();
+            assertTrue(message, message.contains("SSLEnabled"));
+        }
+    }
 }
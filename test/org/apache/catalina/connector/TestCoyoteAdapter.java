@@ -37,6 +37,7 @@ import org.apache.catalina.startup.SimpleHttpClient;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
 import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.MessageBytes;
 
 public class TestCoyoteAdapter extends TomcatBaseTest {
 
@@ -228,6 +229,71 @@ public class TestCoyoteAdapter extends TomcatBaseTest {
         doTestUriDecoding("/foo%ed%a0%80", "UTF-8", "/foo\uFFFD\uFFFD\uFFFD");
     }
 
+    @Test
+    public void testNormalizedAsciiURI() {
+        CoyoteAdapter adapter = new CoyoteAdapter(new Connector());
+        doTestNormalizedAsciiURI(adapter, "/", true);
+        doTestNormalizedAsciiURI(adapter, "/foo/bar.html", true);
+        doTestNormalizedAsciiURI(adapter, "/foo/", true);
+        doTestNormalizedAsciiURI(adapter, "/foo/.bar/..bar", true);
+        doTestNormalizedAsciiURI(adapter, "", false);
+        doTestNormalizedAsciiURI(adapter, "foo", false);
+        doTestNormalizedAsciiURI(adapter, "//foo", false);
+        doTestNormalizedAsciiURI(adapter, "/foo//bar", false);
+        doTestNormalizedAsciiURI(adapter, "/foo/./bar", false);
+        doTestNormalizedAsciiURI(adapter, "/foo/../bar", false);
+        doTestNormalizedAsciiURI(adapter, "/foo/.", false);
+        doTestNormalizedAsciiURI(adapter, "/foo/..", false);
+        doTestNormalizedAsciiURI(adapter, "/foo%20bar", false);
+        doTestNormalizedAsciiURI(adapter, "/foo\\bar", false);
+        doTestNormalizedAsciiURI(adapter, "/foo bar", false);
+        doTestNormalizedAsciiURI(adapter, "/foo\u00e9", false);
+        doTestNormalizedAsciiURI(adapter, "/foo\u007f", false);
+    }
+
+    @Test
+    public void testNormalizedAsciiURICached() {
+        CoyoteAdapter adapter = new CoyoteAdapter(new Connector());
+        String first = doTestNormalizedAsciiURI(adapter, "/foo/bar", true);
+        String second = doTestNormalizedAsciiURI(adapter, "/foo/bar", true);
+        Assert.assertSame(first, second);
+    }
+
+    @Test
+    public void testNormalizedAsciiURICacheDisabled() {
+        Connector connector = new Connector();
+        connector.setDecodedURICacheSize(0);
+        CoyoteAdapter adapter = new CoyoteAdapter(connector);
+        String first = doTestNormalizedAsciiURI(adapter, "/foo/bar", true);
+        String second = doTestNormalizedAsciiURI(adapter, "/foo/bar", true);
+        Assert.assertNotSame(first, second);
+    }
+
+    @Test
+    public void testNormalizedAsciiURINonAsciiEncoding() {
+        Connector connector = new Connector();
+        connector.setURIEncoding("UTF-16");
+        CoyoteAdapter adapter = new CoyoteAdapter(connector);
+        doTestNormalizedAsciiURI(adapter, "/foo/bar", false);
+    }
+
+    private String doTestNormalizedAsciiURI(CoyoteAdapter adapter, String uri,
+            boolean expected) {
+        MessageBytes mb = MessageBytes.newInstance();
+        byte[] bytes = uri.getBytes(StandardCharsets.ISO_8859_1);
+        mb.setBytes(bytes, 0, bytes.length);
+        Assert.assertEquals(uri, expected,
+                adapter.convertNormalizedAsciiURI(mb));
+        if (expected) {
+            Assert.assertEquals(MessageBytes.T_CHARS, mb.getType());
+            Assert.assertEquals(uri, mb.getCharChunk().toString());
+            Assert.assertEquals(uri, mb.toString());
+        } else {
+            Assert.assertEquals(MessageBytes.T_BYTES, mb.getType());
+        }
+        return mb.toString();
+    }
+
     private void doTestUriDecoding(String path, String encoding,
             String expectedPathInfo) throws Exception{
 
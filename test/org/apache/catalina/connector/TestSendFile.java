@@ -85,6 +85,36 @@ public class TestSendFile extends TomcatBaseTest{
         }
     }
 
+    @Test
+    public void testSendFileRange() throws Exception {
+
+        Tomcat tomcat = getTomcatInstance();
+
+        Context root = tomcat.addContext("", TEMP_DIR);
+
+        File file = generateFile(TEMP_DIR, "-range", EXPECTED_CONTENT_LENGTH);
+        try {
+            // Only part of the file, starting and ending part way through
+            // a buffer
+            WritingServlet servlet =
+                    new WritingServlet(file, 1000, EXPECTED_CONTENT_LENGTH - 1000);
+            Tomcat.addServlet(root, "servlet", servlet);
+            root.addServletMapping("/servlet", "servlet");
+
+            tomcat.start();
+
+            ByteChunk bc = new ByteChunk();
+            for (int i = 0; i < 2; i++) {
+                int rc = getUrl("http://localhost:" + getPort() + "/servlet", bc, null);
+                assertEquals(HttpServletResponse.SC_OK, rc);
+                assertEquals(EXPECTED_CONTENT_LENGTH - 2000, bc.getLength());
+                bc.recycle();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
     public File generateFile(String dir, String suffix, int size) throws IOException {
         String name = "testSendFile-"+System.currentTimeMillis()+suffix+".txt";
         File f = new File(dir,name);
@@ -111,9 +141,17 @@ public class TestSendFile extends TomcatBaseTest{
         private static final long serialVersionUID = 1L;
 
         private final File f;
+        private final long start;
+        private final long end;
 
         public WritingServlet(File f) {
+            this(f, 0, f.length());
+        }
+
+        public WritingServlet(File f, long start, long end) {
             this.f = f;
+            this.start = start;
+            this.end = end;
         }
 
         @Override
@@ -122,26 +160,27 @@ public class TestSendFile extends TomcatBaseTest{
 
             resp.setContentType("'application/octet-stream");
             resp.setCharacterEncoding("ISO-8859-1");
-            resp.setContentLengthLong(f.length());
+            resp.setContentLengthLong(end - start);
             if (req.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR) == Boolean.TRUE) {
                 req.setAttribute(Globals.SENDFILE_FILENAME_ATTR, f.getAbsolutePath());
-                req.setAttribute(Globals.SENDFILE_FILE_START_ATTR, new Long(0));
-                req.setAttribute(Globals.SENDFILE_FILE_END_ATTR, new Long(f.length()));
+                req.setAttribute(Globals.SENDFILE_FILE_START_ATTR, Long.valueOf(start));
+                req.setAttribute(Globals.SENDFILE_FILE_END_ATTR, Long.valueOf(end));
             } else {
                 byte[] c = new byte[8192];
                 try (BufferedInputStream in = new BufferedInputStream(
                         new FileInputStream(f))) {
+                    in.skip(start);
                     int len = 0;
                     int written = 0;
-                    long start = System.currentTimeMillis();
+                    long startTime = System.currentTimeMillis();
                     do {
-                        len = in.read(c);
+                        len = in.read(c, 0, (int) Math.min(c.length, end - start - written));
                         if (len>0) {
                             resp.getOutputStream().write(c,0,len);
                             written += len;
                         }
                     } while (len > 0);
-                    System.out.println("Server Wrote "+written + " bytes in "+(System.currentTimeMillis()-start)+" ms.");
+                    System.out.println("Server Wrote "+written + " bytes in "+(System.currentTimeMillis()-startTime)+" ms.");
                 }
             }
         }
@@ -0,0 +1,179 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.io.IOException;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.tomcat.SimpleInstanceManager;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+
+public class TestApplicationFilterCache {
+
+    private StandardContext context;
+
+    @Before
+    public void setUp() {
+        StandardEngine engine = new StandardEngine();
+        engine.setName("engine");
+        StandardHost host = new StandardHost();
+        host.setName("localhost");
+        engine.addChild(host);
+        context = new StandardContext();
+        context.setName("/test");
+        host.addChild(context);
+        context.setInstanceManager(new SimpleInstanceManager());
+        addFilter("all", new String[] {"*"}, null, null);
+        addFilter("root", new String[] {"/*"}, null, null);
+        addFilter("exact", new String[] {"/foo/bar.jsp"}, null, null);
+        addFilter("path", new String[] {"/foo/*"}, null, null);
+        addFilter("ext", new String[] {"*.jsp"}, null, null);
+        addFilter("servlet", null, new String[] {"jsp"}, null);
+        addFilter("forward", new String[] {"/*"}, null, "FORWARD");
+        Assert.assertTrue(context.filterStart());
+    }
+
+    @Test
+    public void testPathMatches() {
+        doTest("jsp", DispatcherType.REQUEST, "/foo/bar.jsp",
+                "all", "root", "exact", "path", "ext", "servlet");
+        doTest("jsp", DispatcherType.REQUEST, "/foo/baz.jsp",
+                "all", "root", "path", "ext", "servlet");
+        doTest("default", DispatcherType.REQUEST, "/foo",
+                "all", "root", "path");
+        doTest("default", DispatcherType.REQUEST, "/foobar",
+                "all", "root");
+        doTest("default", DispatcherType.REQUEST, "/a.jsp/b",
+                "all", "root");
+        doTest("default", DispatcherType.REQUEST, "/a.jsp",
+                "all", "root", "ext");
+        doTest("jsp", DispatcherType.REQUEST, null, "all", "servlet");
+        doTest("default", DispatcherType.FORWARD, "/foo", "forward");
+    }
+
+    @Test
+    public void testCached() {
+        ApplicationFilterCache cache = context.getFilterCache();
+        ApplicationFilterConfig[] first = cache.findFilters(
+                "default", DispatcherType.REQUEST, "/foo/a");
+        ApplicationFilterConfig[] second = cache.findFilters(
+                "default", DispatcherType.REQUEST, "/foo/b");
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertSame(cache, context.getFilterCache());
+    }
+
+    @Test
+    public void testReset() {
+        ApplicationFilterCache cache = context.getFilterCache();
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName("ext");
+        filterMap.addURLPattern("*.html");
+        context.addFilterMap(filterMap);
+        Assert.assertNotSame(cache, context.getFilterCache());
+        doTest("default", DispatcherType.REQUEST, "/a.html",
+                "all", "root", "ext");
+
+        cache = context.getFilterCache();
+        context.removeFilterMap(filterMap);
+        Assert.assertNotSame(cache, context.getFilterCache());
+        doTest("default", DispatcherType.REQUEST, "/a.html", "all", "root");
+
+        cache = context.getFilterCache();
+        context.filterStop();
+        Assert.assertNotSame(cache, context.getFilterCache());
+        doTest("default", DispatcherType.REQUEST, "/a.html");
+    }
+
+    @Test
+    public void testNoDuplicates() {
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName("all");
+        filterMap.addServletName("jsp");
+        context.addFilterMap(filterMap);
+        doTest("jsp", DispatcherType.REQUEST, "/foo/baz.jsp",
+                "all", "root", "path", "ext", "servlet");
+    }
+
+    private void addFilter(String name, String[] urlPatterns,
+            String[] servletNames, String dispatcher) {
+        FilterDef filterDef = new FilterDef();
+        filterDef.setFilterName(name);
+        filterDef.setFilter(new NoOpFilter());
+        filterDef.setFilterClass(NoOpFilter.class.getName());
+        context.addFilterDef(filterDef);
+
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName(name);
+        if (urlPatterns != null) {
+            for (String urlPattern : urlPatterns) {
+                filterMap.addURLPattern(urlPattern);
+            }
+        }
+        if (servletNames != null) {
+            for (String servletName : servletNames) {
+                filterMap.addServletName(servletName);
+            }
+        }
+        if (dispatcher != null) {
+            filterMap.setDispatcher(dispatcher);
+        }
+        context.addFilterMap(filterMap);
+    }
+
+    private void doTest(String servletName, DispatcherType dispatcher,
+            String requestPath, String... expected) {
+        ApplicationFilterConfig[] filters = context.getFilterCache().findFilters(
+                servletName, dispatcher, requestPath);
+        String[] actual = new String[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            actual[i] = filters[i].getFilterName();
+        }
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    private static class NoOpFilter implements Filter {
+
+        @Override
+        public void init(FilterConfig filterConfig) {
+            // NO-OP
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response,
+                FilterChain chain) throws IOException, ServletException {
+            chain.doFilter(request, response);
+        }
+
+        @Override
+        public void destroy() {
+            // NO-OP
+        }
+    }
+}
@@ -878,6 +878,30 @@ public class TestStandardContext extends TomcatBaseTest {
         Assert.assertFalse(log, log.contains("FAIL"));
     }
 
+    @Test
+    public void testStartupTimeline() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        File docBase = new File(System.getProperty("java.io.tmpdir"));
+        StandardContext context = (StandardContext) tomcat.addContext("",
+                docBase.getAbsolutePath());
+        Wrapper servlet = Tomcat.addServlet(context, "myservlet",
+                new TesterServlet());
+        servlet.setLoadOnStartup(1);
+
+        tomcat.start();
+
+        Set<String> phases = context.getStartupPhases().keySet();
+        for (String phase : new String[] { "resources", "loader", "configure",
+                "children", "initializers", "listeners", "manager", "filters",
+                "servlets" }) {
+            assertTrue(phase, phases.contains(phase));
+        }
+        assertTrue(context.getStartupTimeline().contains("total="));
+
+        context.stop();
+        assertTrue(context.getStartupPhases().isEmpty());
+    }
+
     @Test
     public void testFlagFailCtxIfServletStartFails() throws Exception {
         Tomcat tomcat = getTomcatInstance();
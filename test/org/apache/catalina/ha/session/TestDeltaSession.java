@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.ha.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.core.StandardContext;
+
+public class TestDeltaSession {
+
+    private DeltaSession primary;
+    private DeltaSession backup;
+
+    @Before
+    public void setUp() {
+        primary = createSession();
+        backup = createSession();
+    }
+
+    @Test
+    public void testDiffReplicated() throws Exception {
+        TesterCart cart = new TesterCart();
+        cart.add("a");
+        primary.setAttribute("cart", cart);
+        int full = replicate().length;
+        Assert.assertEquals(cart.items, getCart(backup).items);
+
+        // Changes made in place are replicated without setting the value again
+        cart.add("b");
+        Assert.assertEquals(0, primary.getDeltaRequest().getSize());
+        byte[] diff = replicate();
+        Assert.assertEquals(cart.items, getCart(backup).items);
+        Assert.assertFalse(getCart(backup).isDirty());
+
+        // Setting the same instance again does not replicate it in full
+        cart.add("c");
+        primary.setAttribute("cart", cart);
+        Assert.assertEquals(0, primary.getDeltaRequest().getSize());
+        Assert.assertEquals(diff.length, replicate().length);
+        Assert.assertTrue(diff.length < full);
+        Assert.assertEquals(cart.items, getCart(backup).items);
+
+        // Nothing is replicated if nothing has changed
+        Assert.assertNull(replicate());
+    }
+
+    @Test
+    public void testRepeatedDiff() throws Exception {
+        TesterCart cart = new TesterCart();
+        primary.setAttribute("cart", cart);
+        replicate();
+
+        // Changes recorded but not yet replicated cause a full replication
+        cart.add("a");
+        primary.addAttributeDiffs();
+        cart.add("b");
+        primary.addAttributeDiffs();
+        replicate();
+        Assert.assertEquals(cart.items, getCart(backup).items);
+
+        // A new instance is replicated in full
+        TesterCart other = new TesterCart();
+        other.add("x");
+        primary.setAttribute("cart", other);
+        other.add("y");
+        replicate();
+        Assert.assertEquals(other.items, getCart(backup).items);
+    }
+
+    @Test
+    public void testUnchangedValueNotReplicated() throws Exception {
+        List<String> list = new ArrayList<>();
+        primary.setAttribute("string", "a");
+        primary.setAttribute("integer", Integer.valueOf(1000));
+        primary.setAttribute("list", list);
+        replicate();
+
+        primary.setAttribute("string", new String("a"));
+        primary.setAttribute("integer", Integer.valueOf(1000));
+        Assert.assertEquals(0, primary.getDeltaRequest().getSize());
+
+        // Mutable values may have been changed in place
+        list.add("a");
+        primary.setAttribute("list", list);
+        primary.setAttribute("string", "b");
+        Assert.assertEquals(2, primary.getDeltaRequest().getSize());
+        replicate();
+        Assert.assertEquals(list, backup.getAttribute("list"));
+        Assert.assertEquals("b", backup.getAttribute("string"));
+    }
+
+    @Test
+    public void testConcurrentModification() throws Exception {
+        final TesterCart cart = new TesterCart();
+        primary.setAttribute("cart", cart);
+        replicate();
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 20000; i++) {
+                    cart.add(Integer.toString(i));
+                }
+            }
+        };
+        t.start();
+        while (t.isAlive()) {
+            replicate();
+        }
+        replicate();
+        Assert.assertEquals(20000, cart.items.size());
+        Assert.assertEquals(cart.items, getCart(backup).items);
+    }
+
+    private byte[] replicate() throws Exception {
+        primary.addAttributeDiffs();
+        if (primary.getDeltaRequest().getSize() == 0) {
+            return null;
+        }
+        byte[] data = primary.getDeltaRequest().serialize();
+        primary.resetDeltaRequest();
+
+        DeltaRequest request = new DeltaRequest();
+        try (ObjectInputStream ois =
+                new ObjectInputStream(new ByteArrayInputStream(data))) {
+            request.readExternal(ois);
+        }
+        request.execute(backup, false);
+        return data;
+    }
+
+    private static TesterCart getCart(DeltaSession session) {
+        return (TesterCart) session.getAttribute("cart");
+    }
+
+    private static DeltaSession createSession() {
+        DeltaManager manager = new DeltaManager();
+        manager.setContext(new StandardContext());
+        DeltaSession session = new DeltaSession(manager);
+        session.setValid(true);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(1800);
+        session.setId("0123456789ABCDEF", false);
+        return session;
+    }
+
+    private static class TesterCart implements DeltaAttribute {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> items = new ArrayList<>();
+        private transient List<String> added;
+
+        public synchronized void add(String item) {
+            items.add(item);
+            getAdded().add(item);
+        }
+
+        private List<String> getAdded() {
+            if (added == null) {
+                added = new ArrayList<>();
+            }
+            return added;
+        }
+
+        @Override
+        public synchronized boolean isDirty() {
+            return !getAdded().isEmpty();
+        }
+
+        @Override
+        public synchronized byte[] getDiff() throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (DataOutputStream dos = new DataOutputStream(bos)) {
+                dos.writeInt(getAdded().size());
+                for (String item : getAdded()) {
+                    dos.writeUTF(item);
+                }
+            }
+            return bos.toByteArray();
+        }
+
+        @Override
+        public synchronized void applyDiff(byte[] diff, int offset,
+                int length) throws IOException {
+            try (DataInputStream dis = new DataInputStream(
+                    new ByteArrayInputStream(diff, offset, length))) {
+                int n = dis.readInt();
+                for (int i = 0; i < n; i++) {
+                    add(dis.readUTF());
+                }
+            }
+        }
+
+        @Override
+        public synchronized void resetDiff() {
+            getAdded().clear();
+        }
+    }
+}
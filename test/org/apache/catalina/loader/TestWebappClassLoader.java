@@ -17,6 +17,9 @@
 package org.apache.catalina.loader;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
 
@@ -26,6 +29,7 @@ import org.junit.Test;
 import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.catalina.webresources.StandardRoot;
 
 public class TestWebappClassLoader extends TomcatBaseTest {
 
@@ -59,4 +63,40 @@ public class TestWebappClassLoader extends TomcatBaseTest {
             Assert.assertArrayEquals(expected, actual);
         }
     }
+
+    @Test
+    public void testLoadClassCacheOffHeap() throws Exception {
+        String name = "org.apache.catalina.loader.TesterNeverWeavedClass";
+        String path = name.replace('.', '/') + ".class";
+
+        File appDir = new File(getTemporaryDirectory(), "offheap");
+        File classFile = new File(appDir, "WEB-INF/classes/" + path);
+        Assert.assertTrue(classFile.getParentFile().mkdirs());
+        addDeleteOnTearDown(appDir);
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(path);
+                OutputStream os = new FileOutputStream(classFile)) {
+            byte[] buf = new byte[1024];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                os.write(buf, 0, n);
+            }
+        }
+
+        Tomcat tomcat = getTomcatInstance();
+        StandardContext ctx = (StandardContext) tomcat.addContext("",
+                appDir.getAbsolutePath());
+        StandardRoot root = new StandardRoot(ctx);
+        root.setCacheOffHeap(true);
+        ctx.setResources(root);
+
+        tomcat.start();
+
+        // findClass() always loads the class from the web application
+        WebappClassLoader cl =
+                (WebappClassLoader) ctx.getLoader().getClassLoader();
+        Class<?> clazz = cl.findClass(name);
+        Assert.assertSame(cl, clazz.getClassLoader());
+        Assert.assertEquals("This will never be weaved.",
+                clazz.getMethod("doMethod").invoke(clazz.newInstance()));
+    }
 }
@@ -16,9 +16,11 @@
  */
 package org.apache.catalina.mapper;
 
+import java.util.Arrays;
 import java.util.HashMap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Before;
@@ -31,6 +33,7 @@ import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.core.StandardHost;
 import org.apache.catalina.core.StandardWrapper;
 import org.apache.catalina.startup.LoggingBaseTest;
+import org.apache.tomcat.util.buf.CharChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 
 public class TestMapper extends LoggingBaseTest {
@@ -196,6 +199,58 @@ public class TestMapper extends LoggingBaseTest {
         assertTrue(mappingData.redirectPath.isNull());
     }
 
+    @Test
+    public void testContextTrie() throws Exception {
+        String[] paths = new String[] {"", "/a", "/ab", "/a/b", "/a/bc",
+                "/a/b/c", "/b", "/ba/b", "/c/d"};
+        // The contexts of a host are sorted
+        Arrays.sort(paths);
+        Mapper.MappedContext[] contexts =
+                new Mapper.MappedContext[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            contexts[i] = new Mapper.MappedContext();
+            contexts[i].name = paths[i];
+        }
+        Mapper.ContextTrie trie = new Mapper.ContextTrie(contexts);
+
+        String[] uris = new String[] {"", "/", "/a", "/a/", "/ab", "/abc",
+                "/ab/c", "/a/b", "/a/bc", "/a/bcd", "/a/b/c", "/a/b/cd",
+                "/a/b/c/d", "/b", "/ba", "/ba/b", "/ba/bc", "/c", "/c/d",
+                "/c/d/e", "/d", "/A"};
+        for (String uri : uris) {
+            // Longest path that matches in full or up to a '/'
+            String expected = "";
+            for (String path : paths) {
+                if (uri.startsWith(path) && (uri.length() == path.length() ||
+                        uri.charAt(path.length()) == '/') &&
+                        path.length() > expected.length()) {
+                    expected = path;
+                }
+            }
+            assertEquals(uri, expected, trie.find(toChars(uri)).name);
+        }
+
+        // No ROOT context
+        Mapper.MappedContext[] noRoot = new Mapper.MappedContext[
+                contexts.length - 1];
+        System.arraycopy(contexts, 1, noRoot, 0, noRoot.length);
+        trie = new Mapper.ContextTrie(noRoot);
+        assertNull(trie.find(toChars("/d/a")));
+        assertEquals("/a", trie.find(toChars("/a/d")).name);
+
+        // No contexts
+        trie = new Mapper.ContextTrie(new Mapper.MappedContext[0]);
+        assertNull(trie.find(toChars("/a/d")));
+    }
+
+    private static CharChunk toChars(String s) {
+        // Check the offset of the chunk is respected
+        CharChunk cc = new CharChunk();
+        char[] chars = ("xx" + s).toCharArray();
+        cc.setChars(chars, 2, s.length());
+        return cc;
+    }
+
     @Test
     public void testPerformance() throws Exception {
         // Takes ~1s on markt's laptop. If this takes more than 5s something
@@ -16,17 +16,23 @@
  */
 package org.apache.catalina.servlets;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -145,6 +151,225 @@ public class TestDefaultServlet extends TomcatBaseTest {
         assertTrue(responseHeaders.contains("Content-Length: " + indexSize));
     }
 
+    /**
+     * Verify the choice between precompressed resources.
+     */
+    @Test
+    public void testPrecompressedFiles() throws Exception {
+
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File(getTemporaryDirectory(), "precompressed");
+        assertTrue(appDir.mkdirs());
+        addDeleteOnTearDown(appDir);
+        // The content is not checked so does not need to be compressed
+        writeFile(new File(appDir, "index.html"), 100);
+        writeFile(new File(appDir, "index.html.gz"), 20);
+        writeFile(new File(appDir, "index.html.br"), 10);
+
+        Context ctxt = tomcat.addContext("", appDir.getAbsolutePath());
+        Wrapper defaultServlet = Tomcat.addServlet(ctxt, "default",
+                "org.apache.catalina.servlets.DefaultServlet");
+        defaultServlet.addInitParameter("precompressed", "true");
+        ctxt.addServletMapping("/", "default");
+
+        ctxt.addMimeMapping("html", "text/html");
+
+        tomcat.start();
+
+        doTestCompressed("gzip, br", "br", 10);
+        doTestCompressed("gzip", "gzip", 20);
+        doTestCompressed("br;q=0, gzip", "gzip", 20);
+        doTestCompressed("br;q=0.5, gzip", "gzip", 20);
+        doTestCompressed("br;x=1;q=0, gzip", "gzip", 20);
+        doTestCompressed("br;x=1;q=0.5, gzip;q=0.6", "gzip", 20);
+        doTestCompressed("br;q=0.7;x=1, gzip;q=0.6", "br", 10);
+        doTestCompressed("gzip;x=1;q=0", null, 100);
+        doTestCompressed("*", "br", 10);
+        doTestCompressed("identity", null, 100);
+        doTestCompressed(null, null, 100);
+    }
+
+    /**
+     * Verify compression of resources that are not precompressed.
+     */
+    @Test
+    public void testCompressStatic() throws Exception {
+
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File(getTemporaryDirectory(), "compressStatic");
+        assertTrue(appDir.mkdirs());
+        addDeleteOnTearDown(appDir);
+        writeFile(new File(appDir, "index.html"), 10000);
+        writeFile(new File(appDir, "small.html"), 100);
+        writeFile(new File(appDir, "image.png"), 10000);
+
+        Context ctxt = tomcat.addContext("", appDir.getAbsolutePath());
+        Wrapper defaultServlet = Tomcat.addServlet(ctxt, "default",
+                "org.apache.catalina.servlets.DefaultServlet");
+        defaultServlet.addInitParameter("compressStatic", "true");
+        ctxt.addServletMapping("/", "default");
+
+        ctxt.addMimeMapping("html", "text/html");
+        ctxt.addMimeMapping("png", "image/png");
+
+        tomcat.start();
+
+        for (int i = 0; i < 2; i++) {
+            ByteChunk res = new ByteChunk();
+            Map<String,List<String>> headers = new HashMap<>();
+            Map<String,List<String>> reqHeaders = new HashMap<>();
+            reqHeaders.put("Accept-Encoding", Arrays.asList("gzip"));
+            int rc = getUrl("http://localhost:" + getPort() + "/index.html",
+                    res, reqHeaders, headers);
+            assertEquals(HttpServletResponse.SC_OK, rc);
+            assertEquals("gzip", getHeader(headers, "Content-Encoding"));
+            assertEquals("accept-encoding", getHeader(headers, "Vary"));
+            assertTrue(res.getLength() < 10000);
+            byte[] content = new byte[10000];
+            try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(
+                    res.getBuffer(), res.getStart(), res.getLength()))) {
+                int read = 0;
+                int n;
+                while ((n = is.read(content, read, content.length - read)) > 0) {
+                    read += n;
+                }
+                assertEquals(10000, read);
+                assertEquals(-1, is.read());
+            }
+        }
+
+        ByteChunk res = new ByteChunk();
+        Map<String,List<String>> headers = new HashMap<>();
+        int rc = getUrl("http://localhost:" + getPort() + "/index.html",
+                res, headers);
+        assertEquals(HttpServletResponse.SC_OK, rc);
+        assertEquals(null, getHeader(headers, "Content-Encoding"));
+        assertEquals("accept-encoding", getHeader(headers, "Vary"));
+        assertEquals(10000, res.getLength());
+
+        // Too small and not a compressible type
+        for (String path : new String[] {"/small.html", "/image.png"}) {
+            res.recycle();
+            headers.clear();
+            Map<String,List<String>> reqHeaders = new HashMap<>();
+            reqHeaders.put("Accept-Encoding", Arrays.asList("gzip"));
+            rc = getUrl("http://localhost:" + getPort() + path,
+                    res, reqHeaders, headers);
+            assertEquals(HttpServletResponse.SC_OK, rc);
+            assertEquals(null, getHeader(headers, "Content-Encoding"));
+            assertEquals(null, getHeader(headers, "Vary"));
+        }
+    }
+
+    /**
+     * Verify single and multiple range requests, with the content served from
+     * the resources cache and from the file.
+     */
+    @Test
+    public void testRanges() throws Exception {
+
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File(getTemporaryDirectory(), "ranges");
+        assertTrue(appDir.mkdirs());
+        addDeleteOnTearDown(appDir);
+        writeFile(new File(appDir, "index.txt"), 10000);
+
+        Context ctxt = tomcat.addContext("", appDir.getAbsolutePath());
+        Wrapper defaultServlet = Tomcat.addServlet(ctxt, "default",
+                "org.apache.catalina.servlets.DefaultServlet");
+        // Test the copying of the content, not sendfile
+        defaultServlet.addInitParameter("sendfileSize", "-1");
+        ctxt.addServletMapping("/", "default");
+
+        ctxt.addMimeMapping("txt", "text/plain");
+
+        tomcat.start();
+
+        for (boolean cachingAllowed : new boolean[] { true, false }) {
+            ctxt.getResources().setCachingAllowed(cachingAllowed);
+
+            doTestRanges("bytes=10-19", 10, 19);
+            doTestRanges("bytes=9990-", 9990, 9999);
+            doTestRanges("bytes=-5", 9995, 9999);
+            // Out of order ranges require the file to be read again
+            doTestRanges("bytes=100-199,5000-7999,0-9", 100, 199, 5000, 7999, 0, 9);
+        }
+    }
+
+    private void doTestRanges(String range, long... startEnd) throws Exception {
+        ByteChunk res = new ByteChunk();
+        Map<String,List<String>> headers = new HashMap<>();
+        Map<String,List<String>> reqHeaders = new HashMap<>();
+        reqHeaders.put("Range", Arrays.asList(range));
+        int rc = getUrl("http://localhost:" + getPort() + "/index.txt",
+                res, reqHeaders, headers);
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, rc);
+
+        StringBuilder expected = new StringBuilder();
+        if (startEnd.length == 2) {
+            assertEquals("bytes " + startEnd[0] + "-" + startEnd[1] + "/10000",
+                    getHeader(headers, "Content-Range"));
+            appendContent(expected, startEnd[0], startEnd[1]);
+        } else {
+            for (int i = 0; i < startEnd.length; i += 2) {
+                expected.append("\r\n--CATALINA_MIME_BOUNDARY\r\n");
+                expected.append("Content-Type: text/plain\r\n");
+                expected.append("Content-Range: bytes " + startEnd[i] + "-" +
+                        startEnd[i + 1] + "/10000\r\n\r\n");
+                appendContent(expected, startEnd[i], startEnd[i + 1]);
+            }
+            expected.append("\r\n--CATALINA_MIME_BOUNDARY--");
+        }
+        assertEquals(Integer.toString(expected.length()),
+                getHeader(headers, "Content-Length"));
+        assertEquals(expected.toString(), res.toString());
+    }
+
+    private static void appendContent(StringBuilder sb, long start, long end) {
+        for (long i = start; i <= end; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+    }
+
+    private void doTestCompressed(String acceptEncoding, String expectedEncoding,
+            int expectedLength) throws Exception {
+        ByteChunk res = new ByteChunk();
+        Map<String,List<String>> headers = new HashMap<>();
+        Map<String,List<String>> reqHeaders = new HashMap<>();
+        if (acceptEncoding != null) {
+            reqHeaders.put("Accept-Encoding", Arrays.asList(acceptEncoding));
+        }
+        int rc = getUrl("http://localhost:" + getPort() + "/index.html",
+                res, reqHeaders, headers);
+        assertEquals(HttpServletResponse.SC_OK, rc);
+        assertEquals(expectedEncoding, getHeader(headers, "Content-Encoding"));
+        assertEquals("accept-encoding", getHeader(headers, "Vary"));
+        assertEquals(expectedLength, res.getLength());
+    }
+
+    private static String getHeader(Map<String,List<String>> headers,
+            String name) {
+        for (Map.Entry<String,List<String>> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    private static void writeFile(File file, int length) throws IOException {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(content);
+        }
+    }
+
     /**
      * Test https://issues.apache.org/bugzilla/show_bug.cgi?id=50026
      * Verify serving of resources from context root with subpath mapping.
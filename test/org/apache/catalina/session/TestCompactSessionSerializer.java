@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCompactSessionSerializer {
+
+    private static volatile boolean notASerializerInitialized = false;
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        StandardManager manager =
+                TesterSessions.createManager(new CompactSessionSerializer());
+        StandardSession session = createSession(manager);
+
+        StandardSession result = read(manager, write(session));
+        assertAttributes(session, result);
+        Assert.assertEquals(session.getIdInternal(), result.getIdInternal());
+        Assert.assertEquals(session.getCreationTimeInternal(),
+                result.getCreationTimeInternal());
+        Assert.assertEquals(session.getMaxInactiveInterval(),
+                result.getMaxInactiveInterval());
+    }
+
+    @Test
+    public void testSmaller() throws Exception {
+        StandardSession compact =
+                createSession(TesterSessions.createManager(
+                        new CompactSessionSerializer()));
+        StandardSession java = createSession(TesterSessions.createManager(null));
+        // Long Strings are written with Java serialization
+        compact.removeAttribute("longString");
+        java.removeAttribute("longString");
+        Assert.assertTrue(write(compact).length < write(java).length);
+    }
+
+    @Test
+    public void testSmallerObjects() throws Exception {
+        StandardSession compact = TesterSessions.createSession(
+                TesterSessions.createManager(new CompactSessionSerializer()),
+                "0123456789ABCDEF", new Date(0));
+        StandardSession java = TesterSessions.createSession(
+                TesterSessions.createManager(null), "0123456789ABCDEF",
+                new Date(0));
+        for (int i = 0; i < 10; i++) {
+            List<String> list = new ArrayList<>();
+            list.add("item" + i);
+            compact.setAttribute("list" + i, list, false);
+            java.setAttribute("list" + i, list, false);
+        }
+        Assert.assertTrue(write(compact).length <= write(java).length);
+    }
+
+    @Test
+    public void testSharedObject() throws Exception {
+        StandardManager manager =
+                TesterSessions.createManager(new CompactSessionSerializer());
+        List<String> list = new ArrayList<>();
+        list.add("a");
+        StandardSession session =
+                TesterSessions.createSession(manager, "0123456789ABCDEF", list);
+        session.setAttribute("same", list, false);
+        // Serializable, but one of its fields is not
+        session.setAttribute("notSerializable", new TesterNotSerializable(),
+                false);
+
+        StandardSession result = read(manager, write(session));
+        Assert.assertEquals(list, result.getAttribute("same"));
+        Assert.assertSame(result.getAttribute("same"),
+                TesterSessions.getValue(result));
+        Assert.assertNull(result.getAttribute("notSerializable"));
+    }
+
+    @Test
+    public void testChangedConfiguration() throws Exception {
+        StandardManager compact =
+                TesterSessions.createManager(new CompactSessionSerializer());
+        StandardManager java = TesterSessions.createManager(null);
+
+        StandardSession session = createSession(compact);
+        assertAttributes(session, read(java, write(session)));
+
+        session = createSession(java);
+        assertAttributes(session, read(compact, write(session)));
+    }
+
+    @Test
+    public void testLazy() throws Exception {
+        CompactSessionSerializer serializer = new CompactSessionSerializer();
+        serializer.setLazy(true);
+        StandardManager manager = TesterSessions.createManager(serializer);
+        StandardSession session = createSession(manager);
+
+        StandardSession result = read(manager, write(session));
+        Assert.assertTrue(
+                result.attributes.get("list") instanceof SerializedAttribute);
+        Assert.assertTrue(
+                result.attributes.get("listener") instanceof TesterListener);
+        Assert.assertEquals("text",
+                result.attributes.get(TesterSessions.VALUE_ATTRIBUTE));
+
+        // Unused values are written without being deserialized
+        StandardSession copy = read(manager, write(result));
+        Assert.assertTrue(
+                result.attributes.get("list") instanceof SerializedAttribute);
+        assertAttributes(session, copy);
+
+        // Using the value replaces it in the session
+        Assert.assertEquals(session.getAttribute("list"),
+                result.getAttribute("list"));
+        Assert.assertFalse(
+                result.attributes.get("list") instanceof SerializedAttribute);
+
+        // Java serialization writes the deserialized value
+        StandardManager java = TesterSessions.createManager(null);
+        StandardSession lazy = read(manager, write(session));
+        lazy.setManager(java);
+        assertAttributes(session, read(java, write(lazy)));
+    }
+
+    @Test
+    public void testNotASerializer() throws Exception {
+        StandardManager manager =
+                TesterSessions.createManager(new CompactSessionSerializer());
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(TesterNotASerializer.class.getName());
+        }
+        try {
+            read(manager, bos.toByteArray());
+            Assert.fail();
+        } catch (IOException e) {
+            // Expected
+        }
+        // The class was neither initialised nor instantiated
+        Assert.assertFalse(notASerializerInitialized);
+    }
+
+    private static StandardSession createSession(StandardManager manager) {
+        StandardSession session = TesterSessions.createSession(
+                manager, "0123456789ABCDEF", "text");
+        session.setAttribute("integer", Integer.valueOf(42), false);
+        session.setAttribute("long", Long.valueOf(-1), false);
+        session.setAttribute("boolean", Boolean.TRUE, false);
+        session.setAttribute("double", Double.valueOf(0.5), false);
+        session.setAttribute("character", Character.valueOf('x'), false);
+        char[] chars = new char[30000];
+        Arrays.fill(chars, '\u20ac');
+        session.setAttribute("longString", new String(chars), false);
+        List<String> list = new ArrayList<>();
+        list.add("a");
+        list.add("b");
+        session.setAttribute("list", list, false);
+        session.setAttribute("listener", new TesterListener(), false);
+        session.setAttribute("notSerializable", new Object(), false);
+        return session;
+    }
+
+    private static void assertAttributes(StandardSession expected,
+            StandardSession actual) {
+        String[] names = expected.keys();
+        Arrays.sort(names);
+        String[] actualNames = actual.keys();
+        Arrays.sort(actualNames);
+        List<String> serializable = new ArrayList<>(Arrays.asList(names));
+        serializable.remove("notSerializable");
+        Assert.assertEquals(serializable, Arrays.asList(actualNames));
+        for (String name : actualNames) {
+            Assert.assertEquals(name, expected.getAttribute(name),
+                    actual.getAttribute(name));
+        }
+    }
+
+    private static byte[] write(StandardSession session) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            session.writeObjectData(oos);
+        }
+        return bos.toByteArray();
+    }
+
+    private static StandardSession read(StandardManager manager, byte[] data)
+            throws Exception {
+        StandardSession session = new StandardSession(manager);
+        try (ObjectInputStream ois =
+                new ObjectInputStream(new ByteArrayInputStream(data))) {
+            session.readObjectData(ois);
+        }
+        return session;
+    }
+
+    private static class TesterNotSerializable implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @SuppressWarnings("unused")
+        private final Object field = new Object();
+    }
+
+    public static class TesterNotASerializer {
+
+        static {
+            notASerializerInitialized = true;
+        }
+    }
+
+    private static class TesterListener
+            implements HttpSessionBindingListener, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void valueBound(HttpSessionBindingEvent event) {
+            // NO-OP
+        }
+
+        @Override
+        public void valueUnbound(HttpSessionBindingEvent event) {
+            // NO-OP
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TesterListener;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+    }
+}
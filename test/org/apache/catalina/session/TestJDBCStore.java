@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.core.StandardContext;
+
+public class TestJDBCStore {
+
+    private TesterDatabase database;
+    private JDBCStore store;
+    private PersistentManager manager;
+
+    @Before
+    public void setUp() {
+        database = new TesterDatabase();
+        manager = new PersistentManager();
+        StandardContext context = new StandardContext();
+        context.setName("test");
+        manager.setContext(context);
+        store = new JDBCStore();
+        store.setManager(manager);
+        store.setDataSourceName("jdbc/sessions");
+        store.dataSource = database.getDataSource();
+    }
+
+    @Test
+    public void testSynchronous() throws Exception {
+        store.save(TesterSessions.createSession(manager, "s1", "v1"));
+        store.save(TesterSessions.createSession(manager, "s1", "v2"));
+        Assert.assertEquals(1, store.getSize());
+        Assert.assertEquals("v2", TesterSessions.getValue(store.load("s1")));
+        // Each save is made in a transaction of its own
+        Assert.assertEquals(2, database.commits);
+        store.remove("s1");
+        Assert.assertNull(store.load("s1"));
+    }
+
+    @Test
+    public void testSynchronousRollback() throws Exception {
+        store.save(TesterSessions.createSession(manager, "s1", "v1"));
+        database.fail = true;
+        store.save(TesterSessions.createSession(manager, "s1", "v2"));
+        Assert.assertEquals(1, database.commits);
+        Assert.assertEquals(1, database.rollbacks);
+        // The connection goes back to the pool as it was
+        Assert.assertTrue(database.autoCommit);
+    }
+
+    @Test
+    public void testWriteBehind() throws Exception {
+        store.setWriteBehindDelay(60000);
+        store.save(TesterSessions.createSession(manager, "s1", "v1"));
+        store.save(TesterSessions.createSession(manager, "s1", "v2"));
+        store.save(TesterSessions.createSession(manager, "s1", "v3"));
+        store.save(TesterSessions.createSession(manager, "s2", "v1"));
+        store.save(TesterSessions.createSession(manager, "s3", "v1"));
+        store.remove("s3");
+
+        // Nothing is written until the queue is flushed
+        Assert.assertEquals(0, database.statements);
+        Assert.assertEquals("v3", TesterSessions.getValue(store.load("s1")));
+        Assert.assertNull(store.load("s3"));
+
+        store.flush();
+        Assert.assertEquals(1, database.commits);
+        Assert.assertEquals(Collections.singletonList(Integer.valueOf(3)),
+                database.batches.get("DELETE"));
+        Assert.assertEquals(Collections.singletonList(Integer.valueOf(2)),
+                database.batches.get("INSERT"));
+        Assert.assertEquals(2, database.rows.size());
+        Assert.assertEquals("v3", TesterSessions.getValue(store.load("s1")));
+
+        // Removals are queued too
+        store.remove("s1");
+        Assert.assertNull(store.load("s1"));
+        Assert.assertEquals(1, store.getSize());
+    }
+
+    @Test
+    public void testBatchSize() throws Exception {
+        store.setWriteBehindDelay(60000);
+        store.setBatchSize(2);
+        for (int i = 0; i < 5; i++) {
+            store.save(TesterSessions.createSession(manager, "s" + i, "v"));
+        }
+        store.flush();
+        Assert.assertEquals(3, database.commits);
+        Assert.assertEquals(5, store.keys().length);
+    }
+
+    @Test
+    public void testFailedFlushRetried() throws Exception {
+        store.setWriteBehindDelay(60000);
+        store.save(TesterSessions.createSession(manager, "s1", "v1"));
+        database.fail = true;
+        store.flush();
+        Assert.assertEquals(1, database.rollbacks);
+        Assert.assertEquals(0, database.rows.size());
+        Assert.assertEquals("v1", TesterSessions.getValue(store.load("s1")));
+
+        // A newer save replaces the failed write
+        store.save(TesterSessions.createSession(manager, "s1", "v2"));
+        database.fail = false;
+        store.flush();
+        Assert.assertEquals(1, database.rows.size());
+        Assert.assertEquals("v2", TesterSessions.getValue(store.load("s1")));
+    }
+
+    /**
+     * A database with a single session table that understands the statements
+     * issued by {@link JDBCStore}, accessed through dynamic proxies.
+     */
+    private static class TesterDatabase {
+
+        final Map<String,byte[]> rows = new ConcurrentHashMap<>();
+        final Map<String,List<Integer>> batches = new ConcurrentHashMap<>();
+        int statements;
+        int commits;
+        int rollbacks;
+        boolean fail;
+        boolean autoCommit = true;
+
+        DataSource getDataSource() {
+            return proxy(DataSource.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method,
+                        Object[] args) {
+                    if (method.getName().equals("getConnection")) {
+                        return getConnection();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        private Connection getConnection() {
+            return proxy(Connection.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method,
+                        Object[] args) {
+                    switch (method.getName()) {
+                        case "prepareStatement":
+                            return prepareStatement((String) args[0]);
+                        case "isClosed":
+                        case "getAutoCommit":
+                            return Boolean.FALSE;
+                        case "commit":
+                            commits++;
+                            return null;
+                        case "rollback":
+                            rollbacks++;
+                            return null;
+                        case "setAutoCommit":
+                            autoCommit = ((Boolean) args[0]).booleanValue();
+                            return null;
+                        default:
+                            return null;
+                    }
+                }
+            });
+        }
+
+        private PreparedStatement prepareStatement(final String sql) {
+            final List<Object[]> batch = new ArrayList<>();
+            final Object[] params = new Object[7];
+            return proxy(PreparedStatement.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method,
+                        Object[] args) throws Exception {
+                    switch (method.getName()) {
+                        case "setString":
+                        case "setInt":
+                        case "setLong":
+                            params[((Integer) args[0]).intValue()] = args[1];
+                            return null;
+                        case "setBinaryStream":
+                            params[((Integer) args[0]).intValue()] =
+                                    read((InputStream) args[1]);
+                            return null;
+                        case "addBatch":
+                            batch.add(params.clone());
+                            return null;
+                        case "executeBatch":
+                            if (fail) {
+                                throw new SQLException("Failed");
+                            }
+                            String type = sql.substring(0, sql.indexOf(' '));
+                            List<Integer> sizes = batches.get(type);
+                            if (sizes == null) {
+                                sizes = new ArrayList<>();
+                                batches.put(type, sizes);
+                            }
+                            sizes.add(Integer.valueOf(batch.size()));
+                            for (Object[] p : batch) {
+                                execute(sql, p);
+                            }
+                            batch.clear();
+                            return new int[0];
+                        case "execute":
+                            if (fail && sql.startsWith("INSERT")) {
+                                throw new SQLException("Failed");
+                            }
+                            execute(sql, params);
+                            return Boolean.FALSE;
+                        case "executeQuery":
+                            return query(sql, params);
+                        default:
+                            return null;
+                    }
+                }
+            });
+        }
+
+        private void execute(String sql, Object[] params) {
+            statements++;
+            if (sql.startsWith("INSERT")) {
+                rows.put((String) params[1], (byte[]) params[3]);
+            } else if (sql.startsWith("DELETE") && sql.contains("id = ?")) {
+                rows.remove(params[1]);
+            } else if (sql.startsWith("DELETE")) {
+                rows.clear();
+            } else {
+                throw new UnsupportedOperationException(sql);
+            }
+        }
+
+        private ResultSet query(String sql, Object[] params) {
+            statements++;
+            final List<Object[]> results = new ArrayList<>();
+            if (sql.startsWith("SELECT COUNT")) {
+                results.add(new Object[] { Integer.valueOf(rows.size()) });
+            } else if (sql.contains("data")) {
+                byte[] data = rows.get(params[1]);
+                if (data != null) {
+                    results.add(new Object[] { params[1], data });
+                }
+            } else {
+                for (String id : rows.keySet()) {
+                    results.add(new Object[] { id });
+                }
+            }
+            final Iterator<Object[]> iter = results.iterator();
+            return proxy(ResultSet.class, new InvocationHandler() {
+                private Object[] row;
+
+                @Override
+                public Object invoke(Object proxy, Method method,
+                        Object[] args) {
+                    int column = args == null ? 0 :
+                            ((Integer) args[0]).intValue() - 1;
+                    switch (method.getName()) {
+                        case "next":
+                            row = iter.hasNext() ? iter.next() : null;
+                            return Boolean.valueOf(row != null);
+                        case "getString":
+                        case "getInt":
+                            return row[column];
+                        case "getBinaryStream":
+                            return new ByteArrayInputStream(
+                                    (byte[]) row[column]);
+                        default:
+                            return null;
+                    }
+                }
+            });
+        }
+
+        private static byte[] read(InputStream is) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                bos.write(buf, 0, n);
+            }
+            return bos.toByteArray();
+        }
+
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return type.cast(Proxy.newProxyInstance(
+                    TesterDatabase.class.getClassLoader(),
+                    new Class<?>[] { type }, handler));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.startup.ExpandWar;
+
+public class TestSegmentedFileStore {
+
+    private File dir;
+    private PersistentManager manager;
+
+    @Before
+    public void setUp() {
+        dir = new File(System.getProperty("java.io.tmpdir"),
+                "TestSegmentedFileStore-" + System.nanoTime());
+        manager = TesterSessions.createPersistentManager();
+    }
+
+    @After
+    public void tearDown() {
+        ExpandWar.delete(dir);
+    }
+
+    @Test
+    public void testSaveLoadRemove() throws Exception {
+        SegmentedFileStore store = createStore();
+        store.save(TesterSessions.createSession(manager, "s1", "v1"));
+        store.save(TesterSessions.createSession(manager, "s2", "v1"));
+        store.save(TesterSessions.createSession(manager, "s1", "v2"));
+        Assert.assertEquals(2, store.getSize());
+        Assert.assertEquals("v2", TesterSessions.getValue(store.load("s1")));
+        Assert.assertEquals("v1", TesterSessions.getValue(store.load("s2")));
+
+        store.remove("s1");
+        Assert.assertNull(store.load("s1"));
+        Assert.assertArrayEquals(new String[] { "s2" }, store.keys());
+
+        store.clear();
+        Assert.assertEquals(0, store.getSize());
+        Assert.assertEquals(0, store.getSegmentCount());
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        SegmentedFileStore store = createStore();
+        store.save(TesterSessions.createSession(manager, "s1", "v1"));
+        store.save(TesterSessions.createSession(manager, "s2", "v1"));
+        store.save(TesterSessions.createSession(manager, "s3", "v1"));
+        store.save(TesterSessions.createSession(manager, "s1", "v2"));
+        store.remove("s2");
+
+        store = createStore();
+        String[] keys = store.keys();
+        Arrays.sort(keys);
+        Assert.assertArrayEquals(new String[] { "s1", "s3" }, keys);
+        Assert.assertEquals("v2", TesterSessions.getValue(store.load("s1")));
+        Assert.assertNull(store.load("s2"));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        SegmentedFileStore store = createStore();
+        store.setSegmentSize(4096);
+        for (int i = 0; i < 100; i++) {
+            store.save(TesterSessions.createSession(manager, "s" + i, "v1"));
+        }
+        int segments = store.getSegmentCount();
+        Assert.assertTrue(segments > 2);
+
+        // Replace most of the sessions, leaving some in every old segment
+        for (int i = 0; i < 100; i++) {
+            if (i % 10 != 0) {
+                store.save(
+                        TesterSessions.createSession(manager, "s" + i, "v2"));
+            }
+        }
+        Assert.assertTrue(store.getSegmentCount() > segments);
+        store.compact();
+        Assert.assertTrue(store.getSegmentCount() <= segments);
+
+        store = createStore();
+        Assert.assertEquals(100, store.getSize());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i % 10 == 0 ? "v1" : "v2",
+                    TesterSessions.getValue(store.load("s" + i)));
+        }
+    }
+
+    @Test
+    public void testExpiredKeys() throws Exception {
+        SegmentedFileStore store = createStore();
+        StandardSession expired =
+                TesterSessions.createSession(manager, "expired", "v1");
+        expired.setCreationTime(System.currentTimeMillis() - 120000);
+        expired.setMaxInactiveInterval(60);
+        store.save(expired);
+        store.save(TesterSessions.createSession(manager, "valid", "v1"));
+        StandardSession eternal =
+                TesterSessions.createSession(manager, "eternal", "v1");
+        eternal.setCreationTime(0);
+        eternal.setMaxInactiveInterval(-1);
+        store.save(eternal);
+
+        Assert.assertArrayEquals(new String[] { "expired" },
+                store.expiredKeys());
+    }
+
+    @Test
+    public void testCorruptRecord() throws Exception {
+        SegmentedFileStore store = createStore();
+        store.save(TesterSessions.createSession(manager, "s1", "v1"));
+        store.save(TesterSessions.createSession(manager, "s2", "v1"));
+        store.save(TesterSessions.createSession(manager, "s3", "v1"));
+
+        // Damage the data of the second session
+        File segment = new File(dir, "1.segment");
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            byte[] content = new byte[(int) raf.length()];
+            raf.readFully(content);
+            int offset = new String(content, StandardCharsets.ISO_8859_1)
+                    .indexOf("s2") + 10;
+            raf.seek(offset);
+            raf.write(content[offset] ^ 0xFF);
+        }
+
+        // The rest of the segment can't be trusted
+        store = createStore();
+        Assert.assertEquals("v1", TesterSessions.getValue(store.load("s1")));
+        Assert.assertNull(store.load("s2"));
+        Assert.assertNull(store.load("s3"));
+
+        // New sessions replace the damaged ones
+        store.save(TesterSessions.createSession(manager, "s4", "v1"));
+        store = createStore();
+        Assert.assertEquals("v1", TesterSessions.getValue(store.load("s4")));
+    }
+
+    @Test
+    public void testFailedOpen() throws Exception {
+        SegmentedFileStore store = createStore();
+        store.save(TesterSessions.createSession(manager, "s1", "v1"));
+
+        // A segment that can't be read
+        File unreadable = new File(dir, "2.segment");
+        Assert.assertTrue(unreadable.mkdir());
+        store = createStore();
+        for (int i = 0; i < 2; i++) {
+            try {
+                store.load("s1");
+                Assert.fail();
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+
+        // Failed attempts must not have killed the session
+        Assert.assertTrue(unreadable.delete());
+        Assert.assertEquals("v1", TesterSessions.getValue(store.load("s1")));
+        Assert.assertEquals(1, store.getSize());
+        store = createStore();
+        Assert.assertEquals("v1", TesterSessions.getValue(store.load("s1")));
+    }
+
+    @Test
+    public void testSupersededCopyKilled() throws Exception {
+        SegmentedFileStore store = createStore();
+        store.save(TesterSessions.createSession(manager, "s1", "v1"));
+        store.save(TesterSessions.createSession(manager, "s1", "v2"));
+
+        // As if the first copy had not been marked as dead before a crash
+        File segment = new File(dir, "1.segment");
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(8 + 4);
+            Assert.assertEquals(2, raf.read());
+            raf.seek(8 + 4);
+            raf.write(1);
+        }
+
+        store = createStore();
+        Assert.assertEquals("v2", TesterSessions.getValue(store.load("s1")));
+        store.remove("s1");
+
+        // The old copy must not come back after a restart
+        store = createStore();
+        Assert.assertNull(store.load("s1"));
+        Assert.assertEquals(0, store.getSize());
+    }
+
+    @Test
+    public void testDeletedSegmentLeftBehind() throws Exception {
+        SegmentedFileStore store = createStore();
+        store.save(TesterSessions.createSession(manager, "s1", "v1"));
+
+        // A segment that was marked as deleted but could not be removed
+        File orphan = new File(dir, "2.segment");
+        try (RandomAccessFile raf = new RandomAccessFile(orphan, "rw")) {
+            raf.setLength(4096);
+        }
+
+        store = createStore();
+        Assert.assertEquals("v1", TesterSessions.getValue(store.load("s1")));
+        Assert.assertFalse(orphan.exists());
+        Assert.assertEquals(1, store.getSegmentCount());
+    }
+
+    private SegmentedFileStore createStore() {
+        SegmentedFileStore store = new SegmentedFileStore();
+        store.setManager(manager);
+        store.setDirectory(dir.getAbsolutePath());
+        return store;
+    }
+}
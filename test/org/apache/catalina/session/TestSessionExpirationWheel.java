@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Session;
+
+public class TestSessionExpirationWheel {
+
+    private static final long START = 1000000000000L;
+
+    @Test
+    public void testDueSessionsOnly() {
+        SessionExpirationWheel wheel = new SessionExpirationWheel(START);
+        Session s1 = TesterSessions.createSession(null, START, 30);
+        Session s2 = TesterSessions.createSession(null, START, 30 * 60);
+        Session s3 =
+                TesterSessions.createSession(null, START, 3 * 24 * 60 * 60);
+        wheel.schedule(s1);
+        wheel.schedule(s2);
+        wheel.schedule(s3);
+
+        Assert.assertEquals(0, wheel.poll(START + 29999).length);
+        Assert.assertArrayEquals(new Session[] { s1 },
+                wheel.poll(START + 30000));
+        Assert.assertEquals(0, wheel.poll(START + 30 * 60000 - 1).length);
+        Assert.assertArrayEquals(new Session[] { s2 },
+                wheel.poll(START + 30 * 60000));
+        Assert.assertEquals(0,
+                wheel.poll(START + 3 * 24 * 60 * 60000L - 1).length);
+        Assert.assertArrayEquals(new Session[] { s3 },
+                wheel.poll(START + 3 * 24 * 60 * 60000L));
+        Assert.assertEquals(3, wheel.size());
+    }
+
+    @Test
+    public void testReschedule() {
+        SessionExpirationWheel wheel = new SessionExpirationWheel(START);
+        StandardSession session = TesterSessions.createSession(null, START, 60);
+        wheel.schedule(session);
+
+        // Accessed after it was scheduled
+        session.thisAccessedTime = START + 50000;
+        session.lastAccessedTime = START + 50000;
+        Session[] due = wheel.poll(START + 60000);
+        Assert.assertArrayEquals(new Session[] { session }, due);
+        wheel.reschedule(session);
+        Assert.assertEquals(0, wheel.poll(START + 109999).length);
+        Assert.assertArrayEquals(new Session[] { session },
+                wheel.poll(START + 110000));
+
+        // Removed sessions are not rescheduled or polled
+        wheel.reschedule(session);
+        wheel.remove(session);
+        wheel.reschedule(session);
+        Assert.assertEquals(0, wheel.size());
+        Assert.assertEquals(0, wheel.poll(START + 1000000).length);
+    }
+
+    @Test
+    public void testNoTimeout() {
+        SessionExpirationWheel wheel = new SessionExpirationWheel(START);
+        Session session = TesterSessions.createSession(null, START, -1);
+        wheel.schedule(session);
+        Assert.assertEquals(0,
+                wheel.poll(START + 100L * 24 * 60 * 60000).length);
+        // A long jump of the clock returns every session
+        Assert.assertArrayEquals(new Session[] { session },
+                wheel.poll(START + 1000L * 24 * 60 * 60000));
+    }
+
+    @Test
+    public void testProcessExpires() throws Exception {
+        StandardManager manager = TesterSessions.createManager(null);
+        long now = System.currentTimeMillis();
+        StandardSession expired =
+                TesterSessions.createSession(manager, now - 120000, 60);
+        StandardSession valid =
+                TesterSessions.createSession(manager, now - 120000, 600);
+        expired.setId("expired");
+        valid.setId("valid");
+
+        // Sessions that are already due are checked from the next tick
+        Thread.sleep(SessionExpirationWheel.DEFAULT_TICK);
+        manager.processExpires();
+        Assert.assertFalse(expired.isValidInternal());
+        Assert.assertTrue(valid.isValidInternal());
+        Assert.assertEquals(1, manager.getActiveSessions());
+        Assert.assertEquals(1, manager.getExpiredSessions());
+        Assert.assertEquals(1, manager.expirationWheel.size());
+
+        // Shortening the interval reschedules the session
+        valid.setMaxInactiveInterval(60);
+        Thread.sleep(SessionExpirationWheel.DEFAULT_TICK);
+        manager.processExpires();
+        Assert.assertFalse(valid.isValidInternal());
+        Assert.assertEquals(0, manager.getActiveSessions());
+        Assert.assertEquals(0, manager.expirationWheel.size());
+    }
+}
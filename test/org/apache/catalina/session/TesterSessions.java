@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+
+/**
+ * Managers and sessions for the session unit tests that don't need a running
+ * container.
+ */
+public class TesterSessions {
+
+    public static final String VALUE_ATTRIBUTE = "value";
+
+    public static StandardManager createManager(SessionSerializer serializer) {
+        StandardManager manager = new StandardManager();
+        manager.setContext(new StandardContext());
+        manager.setSessionSerializer(serializer);
+        return manager;
+    }
+
+    public static PersistentManager createPersistentManager() {
+        PersistentManager manager = new PersistentManager();
+        manager.setContext(new StandardContext());
+        return manager;
+    }
+
+    /**
+     * Create a valid session that is not added to the manager.
+     */
+    public static StandardSession createSession(Manager manager,
+            long creationTime, int maxInactiveInterval) {
+        StandardSession session = new StandardSession(manager);
+        session.setValid(true);
+        session.setCreationTime(creationTime);
+        session.setMaxInactiveInterval(maxInactiveInterval);
+        return session;
+    }
+
+    /**
+     * Create a valid session with the given id that holds a single attribute,
+     * {@link #VALUE_ATTRIBUTE}. The session is not added to the manager.
+     */
+    public static StandardSession createSession(Manager manager, String id,
+            Object value) {
+        StandardSession session =
+                createSession(manager, System.currentTimeMillis(), 1800);
+        session.setId(id, false);
+        session.setAttribute(VALUE_ATTRIBUTE, value, false);
+        return session;
+    }
+
+    public static Object getValue(Session session) {
+        return ((StandardSession) session).getAttribute(VALUE_ATTRIBUTE);
+    }
+}
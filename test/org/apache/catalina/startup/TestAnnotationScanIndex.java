@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.startup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.startup.AnnotationScanIndex.ClassInfo;
+import org.apache.tomcat.util.bcel.classfile.ClassParser;
+import org.apache.tomcat.util.descriptor.web.WebXml;
+
+public class TestAnnotationScanIndex {
+
+    private File dir;
+    private File workDir;
+
+    @Before
+    public void setUp() {
+        dir = new File(System.getProperty("java.io.tmpdir"),
+                "TestAnnotationScanIndex");
+        ExpandWar.delete(dir);
+        workDir = new File(dir, "work");
+        Assert.assertTrue(workDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        ExpandWar.delete(dir);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File jar = createJar("a.jar", ParamServlet.class);
+        ClassInfo classInfo;
+        try (InputStream is = getClassStream(ParamServlet.class)) {
+            classInfo = new ClassInfo(getEntryName(ParamServlet.class),
+                    new ClassParser(is, null).parse());
+        }
+
+        AnnotationScanIndex index = new AnnotationScanIndex();
+        index.put(jar, new ClassInfo[] { classInfo });
+        File file = new File(workDir, AnnotationScanIndex.FILE_NAME);
+        index.save(file);
+
+        ClassInfo[] classes = load(file).get(jar);
+        Assert.assertNotNull(classes);
+        Assert.assertEquals(1, classes.length);
+        Assert.assertEquals(classInfo.entryName, classes[0].entryName);
+        Assert.assertEquals(ParamServlet.class.getName(), classes[0].className);
+        Assert.assertEquals("javax.servlet.http.HttpServlet",
+                classes[0].superclassName);
+        Assert.assertArrayEquals(classInfo.interfaceNames,
+                classes[0].interfaceNames);
+        Assert.assertArrayEquals(new String[] {
+                "Ljavax/servlet/annotation/WebServlet;" },
+                classes[0].annotationTypes);
+        Assert.assertFalse(classes[0].annotation);
+
+        // A changed JAR is not in the index
+        Assert.assertTrue(jar.setLastModified(jar.lastModified() - 10000));
+        Assert.assertNull(load(file).get(jar));
+    }
+
+    @Test
+    public void testLoadMissing() {
+        AnnotationScanIndex index =
+                load(new File(workDir, AnnotationScanIndex.FILE_NAME));
+        Assert.assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testScanSequential() throws Exception {
+        doTestScan(1);
+    }
+
+    @Test
+    public void testScanParallel() throws Exception {
+        doTestScan(2);
+    }
+
+    private void doTestScan(int threads) throws Exception {
+        File jarA = createJar("a.jar", ParamServlet.class);
+        File jarB = createJar("b.jar", TesterServlet.class);
+
+        StandardContext context = new StandardContext();
+        context.setName("/test");
+        context.setWorkDir(workDir.getAbsolutePath());
+        context.setAnnotationScanIndex(true);
+        context.setAnnotationScanThreads(threads);
+        ContextConfig config = new ContextConfig();
+        config.context = context;
+
+        File indexFile = new File(workDir, AnnotationScanIndex.FILE_NAME);
+        for (int i = 0; i < 2; i++) {
+            WebXml fragmentA = createFragment(jarA);
+            WebXml fragmentB = createFragment(jarB);
+            Set<WebXml> fragments = new LinkedHashSet<>();
+            fragments.add(fragmentA);
+            fragments.add(fragmentB);
+
+            config.processAnnotations(fragments, false);
+
+            Assert.assertNotNull(fragmentA.getServlets().get("param"));
+            Assert.assertEquals("/annotation/overwrite",
+                    fragmentA.getServletMappings().keySet().iterator().next());
+            Assert.assertEquals(0, fragmentB.getServlets().size());
+
+            AnnotationScanIndex index = load(indexFile);
+            Assert.assertEquals(2, index.size());
+            Assert.assertEquals(1, index.get(jarA).length);
+            Assert.assertEquals(1, index.get(jarB).length);
+        }
+    }
+
+    @Test
+    public void testRemovedJarSaved() throws Exception {
+        File jarA = createJar("a.jar", ParamServlet.class);
+        File jarB = createJar("b.jar", TesterServlet.class);
+
+        StandardContext context = new StandardContext();
+        context.setName("/test");
+        context.setWorkDir(workDir.getAbsolutePath());
+        context.setAnnotationScanIndex(true);
+        ContextConfig config = new ContextConfig();
+        config.context = context;
+
+        Set<WebXml> fragments = new LinkedHashSet<>();
+        fragments.add(createFragment(jarA));
+        fragments.add(createFragment(jarB));
+        config.processAnnotations(fragments, false);
+
+        File indexFile = new File(workDir, AnnotationScanIndex.FILE_NAME);
+        Assert.assertEquals(2, load(indexFile).size());
+
+        // Only JARs that are still present remain in the index
+        fragments.clear();
+        fragments.add(createFragment(jarA));
+        config.processAnnotations(fragments, false);
+
+        AnnotationScanIndex index = load(indexFile);
+        Assert.assertEquals(1, index.size());
+        Assert.assertNotNull(index.get(jarA));
+        Assert.assertNull(index.get(jarB));
+    }
+
+    private static AnnotationScanIndex load(File file) {
+        AnnotationScanIndex index = new AnnotationScanIndex();
+        index.load(file);
+        return index;
+    }
+
+    private WebXml createFragment(File jar) throws IOException {
+        WebXml fragment = new WebXml();
+        fragment.setName(jar.getName());
+        fragment.setWebappJar(true);
+        fragment.setURL(new URL("jar:" + jar.toURI().toURL() + "!/"));
+        return fragment;
+    }
+
+    private File createJar(String name, Class<?> clazz) throws IOException {
+        File jar = new File(dir, name);
+        try (JarOutputStream jos =
+                new JarOutputStream(new FileOutputStream(jar));
+                InputStream is = getClassStream(clazz)) {
+            jos.putNextEntry(new JarEntry(getEntryName(clazz)));
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                jos.write(buf, 0, n);
+            }
+            jos.closeEntry();
+        }
+        return jar;
+    }
+
+    private static InputStream getClassStream(Class<?> clazz) {
+        return clazz.getClassLoader().getResourceAsStream(
+                getEntryName(clazz));
+    }
+
+    private static String getEntryName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+}
@@ -16,7 +16,11 @@
  */
 package org.apache.catalina.valves;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
+import java.util.List;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
@@ -24,7 +28,9 @@ import java.util.TimeZone;
 import org.junit.Assert;
 import org.junit.Test;
 
-public class TestAccessLogValve {
+import org.apache.catalina.startup.LoggingBaseTest;
+
+public class TestAccessLogValve extends LoggingBaseTest {
 
     // Note that there is a similar test:
     // org.apache.juli.TestDateFormatCache.testBug54044()
@@ -88,6 +94,31 @@ public class TestAccessLogValve {
         Assert.assertArrayEquals(expected, dfc.cLFCache.cache);
     }
 
+    @Test
+    public void testExtendedHeaderWrittenOnOpen() throws Exception {
+        ExtendedAccessLogValve valve = new ExtendedAccessLogValve();
+        valve.setDirectory(getTemporaryDirectory().getAbsolutePath());
+        valve.setPrefix("extended");
+        valve.setSuffix(".log");
+        valve.setRotatable(false);
+        valve.setPattern("time cs-method");
+
+        // The header goes into a new, empty file
+        valve.open();
+        valve.writer.close();
+        File log = new File(getTemporaryDirectory(), "extended.log");
+        List<String> lines =
+                Files.readAllLines(log.toPath(), StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(3, lines.size());
+        Assert.assertEquals("#Fields: time cs-method", lines.get(0));
+
+        // but not when appending to an existing file
+        valve.open();
+        valve.writer.close();
+        lines = Files.readAllLines(log.toPath(), StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(3, lines.size());
+    }
+
     private String generateExpected(SimpleDateFormat sdf, long secs) {
         return sdf.format(new Date(secs * 1000));
     }
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.WebResource;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.startup.ExpandWar;
+
+public class TestCache {
+
+    private static final int FILE_SIZE = 1000;
+
+    private File dir;
+    private Cache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new File(System.getProperty("java.io.tmpdir"), "TestCache");
+        ExpandWar.delete(dir);
+        Assert.assertTrue(dir.mkdirs());
+        for (int i = 0; i < 500; i++) {
+            try (OutputStream os = new FileOutputStream(new File(dir, "r" + i))) {
+                os.write(new byte[FILE_SIZE]);
+            }
+        }
+
+        StandardRoot root = new StandardRoot(new StandardContext());
+        DirResourceSet resourceSet =
+                new DirResourceSet(root, "/", dir.getAbsolutePath(), "/");
+        resourceSet.init();
+        root.setMainResources(resourceSet);
+
+        cache = new Cache(root);
+        // About 60 entries
+        cache.setMaxSize(100);
+        cache.setObjectMaxSize(5);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ExpandWar.delete(dir);
+    }
+
+    @Test
+    public void testHit() {
+        get("/r0");
+        get("/r0");
+        Assert.assertEquals(2, cache.getLookupCount());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(0.5, cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testFrequentlyUsedRetained() {
+        // Frequently used resources
+        for (int j = 0; j < 3; j++) {
+            for (int i = 0; i < 20; i++) {
+                get("/r" + i);
+            }
+        }
+
+        // A burst of resources that are only used once
+        for (int i = 20; i < 500; i++) {
+            get("/r" + i);
+        }
+        Assert.assertTrue(cache.getSize() <= cache.getMaxSize());
+        Assert.assertTrue(cache.getEvictionCount() +
+                cache.getRejectionCount() > 0);
+
+        long hits = cache.getHitCount();
+        for (int i = 0; i < 20; i++) {
+            get("/r" + i);
+        }
+        Assert.assertEquals(hits + 20, cache.getHitCount());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        // Fill the cache without triggering eviction
+        int count = 0;
+        while ((count + 1) * (FILE_SIZE + 500) <= cache.getMaxSize() * 1024) {
+            get("/r" + count);
+            count++;
+        }
+        Assert.assertEquals(0, cache.getEvictionCount());
+
+        // Use all but the first resource again
+        for (int i = 1; i < count; i++) {
+            get("/r" + i);
+        }
+        // The cache is full. The new resource is not admitted until it has
+        // been requested more often than the first resource.
+        get("/r" + count);
+        Assert.assertEquals(1, cache.getRejectionCount());
+        Assert.assertEquals(0, cache.getEvictionCount());
+        get("/r" + count);
+        Assert.assertEquals(1, cache.getRejectionCount());
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+
+        long hits = cache.getHitCount();
+        get("/r0");
+        Assert.assertEquals(hits, cache.getHitCount());
+        get("/r" + (count - 1));
+        Assert.assertEquals(hits + 1, cache.getHitCount());
+    }
+
+    @Test
+    public void testBackgroundProcess() {
+        for (int i = 0; i < 500; i++) {
+            get("/r" + i);
+        }
+        cache.backgroundProcess();
+        Assert.assertTrue(cache.getSize() <= cache.getMaxSize() * 90 / 100);
+    }
+
+    @Test
+    public void testOffHeap() throws IOException {
+        cache.setOffHeap(true);
+        WebResource resource = cache.getResource("/r0", false);
+        byte[] content = resource.getContent();
+        Assert.assertEquals(FILE_SIZE, content.length);
+        Assert.assertNotSame(content, resource.getContent());
+        Assert.assertEquals(FILE_SIZE, resource.getContentLength());
+
+        for (int i = 0; i < 2; i++) {
+            try (InputStream is = resource.getInputStream()) {
+                Assert.assertEquals(FILE_SIZE, is.available());
+                Assert.assertEquals(10, is.skip(10));
+                byte[] buf = new byte[FILE_SIZE];
+                Assert.assertEquals(FILE_SIZE - 10, is.read(buf));
+                Assert.assertEquals(-1, is.read());
+            }
+        }
+
+        cache.setOffHeap(false);
+        resource = cache.getResource("/r1", false);
+        Assert.assertEquals(FILE_SIZE, resource.getContent().length);
+    }
+
+    @Test
+    public void testGzipped() throws IOException {
+        CachedResource resource = (CachedResource) cache.getResource("/r0", false);
+        WebResource gzipped = resource.getGzippedResource();
+        Assert.assertTrue(gzipped.getContentLength() < FILE_SIZE);
+        Assert.assertNull(gzipped.getCanonicalPath());
+        Assert.assertSame(gzipped.getContent(),
+                resource.getGzippedResource().getContent());
+
+        byte[] content = new byte[FILE_SIZE + 1];
+        int read = 0;
+        try (InputStream is = new GZIPInputStream(gzipped.getInputStream())) {
+            int n;
+            while ((n = is.read(content, read, content.length - read)) > 0) {
+                read += n;
+            }
+        }
+        Assert.assertEquals(FILE_SIZE, read);
+    }
+
+    private void get(String path) {
+        WebResource resource = cache.getResource(path, false);
+        Assert.assertTrue(resource.exists());
+    }
+}
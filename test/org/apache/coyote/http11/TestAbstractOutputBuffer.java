@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.coyote.Response;
+import org.apache.tomcat.util.http.HttpMessages;
+import org.apache.tomcat.util.http.MimeHeaders;
+
+public class TestAbstractOutputBuffer {
+
+    @Test
+    public void testStatusLine() {
+        Response response = new Response();
+        InternalOutputBuffer buffer = new InternalOutputBuffer(response, 8192);
+        HttpMessages messages = HttpMessages.getInstance(response.getLocale());
+
+        int[] codes = { 200, 404, 200, 299, 503 };
+        for (int status : codes) {
+            response.setStatus(status);
+            buffer.pos = 0;
+            buffer.sendStatus();
+            String message = messages.getMessage(status);
+            Assert.assertEquals("HTTP/1.1 " + status + " " +
+                    (message == null ? "" : message) + "\r\n", getHeaders(buffer));
+        }
+    }
+
+
+    @Test
+    public void testHeaders() {
+        Response response = new Response();
+        InternalOutputBuffer buffer = new InternalOutputBuffer(response, 8192);
+        MimeHeaders headers = response.getMimeHeaders();
+
+        String[] types = { "text/html", "text/html", "application/json",
+                "text/html" };
+        for (String type : types) {
+            headers.recycle();
+            headers.setValue("Content-Type").setString(type);
+            headers.setValue("content-length").setLong(type.length());
+            headers.setValue("X-Custom").setString(type);
+            buffer.pos = 0;
+            for (int i = 0; i < headers.size(); i++) {
+                buffer.sendHeader(headers.getId(i), headers.getName(i),
+                        headers.getValue(i));
+            }
+            Assert.assertEquals("Content-Type: " + type + "\r\n" +
+                    "content-length: " + type.length() + "\r\n" +
+                    "X-Custom: " + type + "\r\n", getHeaders(buffer));
+        }
+
+        // Control characters are still replaced
+        headers.recycle();
+        headers.setValue("Content-Type").setString("text/\nplain");
+        buffer.pos = 0;
+        buffer.sendHeader(headers.getId(0), headers.getName(0),
+                headers.getValue(0));
+        Assert.assertEquals("Content-Type: text/ plain\r\n", getHeaders(buffer));
+    }
+
+
+    private static String getHeaders(AbstractOutputBuffer<?> buffer) {
+        return new String(buffer.headerBuffer, 0, buffer.pos,
+                StandardCharsets.ISO_8859_1);
+    }
+}
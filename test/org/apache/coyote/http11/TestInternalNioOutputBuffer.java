@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.net.TesterSupport;
+
+/**
+ * Checks the responses written by the NIO and NIO2 output buffers, which
+ * write data that does not fit in the socket write buffer with a gathering
+ * write, when the writes straddle the size of that buffer.
+ */
+public class TestInternalNioOutputBuffer extends TomcatBaseTest {
+
+    // The default socket.appWriteBufSize is 8192
+    private static final String SIZES =
+            "10,8180,8192,100,20000,3,8193,65536,1";
+
+    @Test
+    public void testContentLength() throws Exception {
+        doTest(false, false, false);
+    }
+
+    @Test
+    public void testContentLengthFlush() throws Exception {
+        doTest(false, true, false);
+    }
+
+    @Test
+    public void testChunked() throws Exception {
+        doTest(true, false, false);
+    }
+
+    @Test
+    public void testChunkedFlush() throws Exception {
+        doTest(true, true, false);
+    }
+
+    // TLS connections do not use gathering writes
+
+    @Test
+    public void testSslContentLength() throws Exception {
+        doTest(false, false, true);
+    }
+
+    @Test
+    public void testSslChunkedFlush() throws Exception {
+        doTest(true, true, true);
+    }
+
+    @Test
+    public void testFlushSmallWrite() throws Exception {
+        Assume.assumeTrue(getProtocol().contains("Nio"));
+        Tomcat tomcat = getTomcatInstance();
+        FlushServlet servlet = new FlushServlet();
+        addServlet(tomcat, servlet);
+        tomcat.start();
+
+        try (Socket socket = new Socket("localhost", getPort())) {
+            socket.setSoTimeout(10000);
+            OutputStream os = socket.getOutputStream();
+            os.write(("GET / HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "Connection: close\r\n" +
+                    "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            os.flush();
+
+            // The flushed data must arrive while the servlet is still running
+            InputStream is = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            while (!response.toString("ISO-8859-1").contains("FLUSHED")) {
+                int n = is.read(buf);
+                Assert.assertTrue(n > 0);
+                response.write(buf, 0, n);
+            }
+            servlet.latch.countDown();
+
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                response.write(buf, 0, n);
+            }
+            String result = response.toString("ISO-8859-1");
+            Assert.assertTrue(result, result.startsWith("HTTP/1.1 200"));
+            Assert.assertTrue(result,
+                    result.indexOf("FLUSHED") < result.indexOf("END"));
+        }
+    }
+
+    private void doTest(boolean chunked, boolean flush, boolean ssl)
+            throws Exception {
+        Assume.assumeTrue(getProtocol().contains("Nio"));
+        Tomcat tomcat = getTomcatInstance();
+        SSLSocketFactory factory =
+                HttpsURLConnection.getDefaultSSLSocketFactory();
+        if (ssl) {
+            TesterSupport.initSsl(tomcat);
+            SSLContext sc = SSLContext.getInstance("TLS");
+            sc.init(null, TesterSupport.getTrustManagers(), null);
+            HttpsURLConnection.setDefaultSSLSocketFactory(
+                    sc.getSocketFactory());
+        }
+        addServlet(tomcat, new WriteServlet());
+        tomcat.start();
+
+        ByteChunk body = new ByteChunk();
+        Map<String,List<String>> headers = new HashMap<>();
+        int rc;
+        try {
+            rc = getUrl((ssl ? "https" : "http") + "://localhost:" +
+                    getPort() + "/?sizes=" + SIZES + "&chunked=" + chunked +
+                    "&flush=" + flush, body, headers);
+        } finally {
+            HttpsURLConnection.setDefaultSSLSocketFactory(factory);
+        }
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        Assert.assertEquals(Boolean.valueOf(chunked),
+                Boolean.valueOf(headers.containsKey("Transfer-Encoding")));
+
+        byte[] expected = WriteServlet.getData(SIZES);
+        Assert.assertEquals(expected.length, body.getLength());
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals("Byte " + i, expected[i],
+                    body.getBuffer()[body.getStart() + i]);
+        }
+    }
+
+    private static void addServlet(Tomcat tomcat, HttpServlet servlet) {
+        Context ctx =
+                tomcat.addContext("", System.getProperty("java.io.tmpdir"));
+        Tomcat.addServlet(ctx, "servlet", servlet);
+        ctx.addServletMapping("/", "servlet");
+    }
+
+
+    private static class WriteServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            String sizes = req.getParameter("sizes");
+            byte[] data = getData(sizes);
+            if (!Boolean.parseBoolean(req.getParameter("chunked"))) {
+                resp.setContentLength(data.length);
+            }
+            boolean flush = Boolean.parseBoolean(req.getParameter("flush"));
+            resp.setContentType("application/octet-stream");
+            ServletOutputStream os = resp.getOutputStream();
+            int offset = 0;
+            for (String size : sizes.split(",")) {
+                int length = Integer.parseInt(size);
+                os.write(data, offset, length);
+                offset += length;
+                if (flush) {
+                    os.flush();
+                }
+            }
+        }
+
+        static byte[] getData(String sizes) {
+            int length = 0;
+            for (String size : sizes.split(",")) {
+                length += Integer.parseInt(size);
+            }
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) (i % 251);
+            }
+            return data;
+        }
+    }
+
+
+    private static class FlushServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            resp.setContentType("text/plain");
+            resp.setCharacterEncoding("ISO-8859-1");
+            ServletOutputStream os = resp.getOutputStream();
+            os.print("FLUSHED");
+            os.flush();
+            try {
+                // Wait for the client to receive the flushed data
+                if (!latch.await(10, TimeUnit.SECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                throw new ServletException(e);
+            }
+            os.print("END");
+        }
+    }
+}
@@ -17,10 +17,16 @@
 package org.apache.jasper.servlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.servlet.ServletContext;
+import javax.servlet.jsp.tagext.TagAttributeInfo;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -28,7 +34,11 @@ import org.apache.catalina.Context;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
 import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.descriptor.tld.TagXml;
+import org.apache.tomcat.util.descriptor.tld.TaglibXml;
+import org.apache.tomcat.util.descriptor.tld.TldResourcePath;
 import org.apache.tomcat.util.scan.StandardJarScanner;
+import org.xml.sax.SAXException;
 
 public class TestTldScanner extends TomcatBaseTest {
 
@@ -47,6 +57,104 @@ public class TestTldScanner extends TomcatBaseTest {
     }
 
 
+    @Test
+    public void testJarCache() throws Exception {
+        File appDir = new File("test/webapp");
+        ServletContext context = new JspCServletContext(
+                new PrintWriter(new StringWriter()), appDir.toURI().toURL(),
+                TestTldScanner.class.getClassLoader(), false, false);
+
+        TldScanner reference = new TldScanner(context, true, false, true);
+        reference.scanJars();
+
+        File cacheDir = new File(getTemporaryDirectory(), "testJarCache");
+        addDeleteOnTearDown(cacheDir);
+        Assert.assertTrue(cacheDir.mkdirs() || cacheDir.isDirectory());
+        File cacheFile = new File(cacheDir, "tldJarCache.dat");
+        Assert.assertTrue(!cacheFile.exists() || cacheFile.delete());
+        for (int i = 0; i < 2; i++) {
+            CountingTldScanner scanner = new CountingTldScanner(context);
+            scanner.setCacheFile(cacheFile);
+            scanner.scanJars();
+            Assert.assertTrue(cacheFile.isFile());
+            // The second scan uses the cache rather than parsing the TLDs
+            if (i == 0) {
+                Assert.assertTrue(scanner.parseCount > 0);
+            } else {
+                Assert.assertEquals(0, scanner.parseCount);
+            }
+
+            Assert.assertEquals(reference.getUriTldResourcePathMap(),
+                    scanner.getUriTldResourcePathMap());
+            Assert.assertEquals(reference.getListeners(), scanner.getListeners());
+            for (Map.Entry<TldResourcePath,TaglibXml> entry :
+                    reference.getTldResourcePathTaglibXmlMap().entrySet()) {
+                assertTaglibEquals(entry.getValue(),
+                        scanner.getTldResourcePathTaglibXmlMap().get(entry.getKey()));
+            }
+        }
+    }
+
+
+    private static void assertTaglibEquals(TaglibXml expected, TaglibXml actual) {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.getTlibVersion(), actual.getTlibVersion());
+        Assert.assertEquals(expected.getJspVersion(), actual.getJspVersion());
+        Assert.assertEquals(expected.getShortName(), actual.getShortName());
+        Assert.assertEquals(expected.getUri(), actual.getUri());
+        Assert.assertEquals(expected.getInfo(), actual.getInfo());
+        Assert.assertEquals(expected.getTags().size(), actual.getTags().size());
+        for (int i = 0; i < expected.getTags().size(); i++) {
+            TagXml expectedTag = expected.getTags().get(i);
+            TagXml actualTag = actual.getTags().get(i);
+            Assert.assertEquals(expectedTag.getName(), actualTag.getName());
+            Assert.assertEquals(expectedTag.getTagClass(), actualTag.getTagClass());
+            Assert.assertEquals(expectedTag.getBodyContent(),
+                    actualTag.getBodyContent());
+            Assert.assertEquals(expectedTag.getAttributes().size(),
+                    actualTag.getAttributes().size());
+            for (int j = 0; j < expectedTag.getAttributes().size(); j++) {
+                TagAttributeInfo expectedAttribute = expectedTag.getAttributes().get(j);
+                TagAttributeInfo actualAttribute = actualTag.getAttributes().get(j);
+                Assert.assertEquals(expectedAttribute.getName(),
+                        actualAttribute.getName());
+                Assert.assertEquals(Boolean.valueOf(expectedAttribute.isRequired()),
+                        Boolean.valueOf(actualAttribute.isRequired()));
+                Assert.assertEquals(expectedAttribute.getTypeName(),
+                        actualAttribute.getTypeName());
+                Assert.assertEquals(Boolean.valueOf(expectedAttribute.canBeRequestTime()),
+                        Boolean.valueOf(actualAttribute.canBeRequestTime()));
+            }
+            Assert.assertEquals(expectedTag.getVariables().size(),
+                    actualTag.getVariables().size());
+        }
+        Assert.assertEquals(expected.getTagFiles().size(), actual.getTagFiles().size());
+        Assert.assertEquals(expected.getListeners(), actual.getListeners());
+        Assert.assertEquals(expected.getFunctions().size(), actual.getFunctions().size());
+        for (int i = 0; i < expected.getFunctions().size(); i++) {
+            Assert.assertEquals(expected.getFunctions().get(i).getFunctionSignature(),
+                    actual.getFunctions().get(i).getFunctionSignature());
+        }
+    }
+
+
+    private static class CountingTldScanner extends TldScanner {
+
+        private int parseCount = 0;
+
+        public CountingTldScanner(ServletContext context) {
+            super(context, true, false, true);
+        }
+
+        @Override
+        protected void parseTld(TldResourcePath path)
+                throws IOException, SAXException {
+            parseCount++;
+            super.parseTld(path);
+        }
+    }
+
+
     @Test
     public void testBug55807() throws Exception {
         Tomcat tomcat = getTomcatInstance();
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSingleConsumerQueue {
+
+    @Test
+    public void testPollEmpty() {
+        SingleConsumerQueue<Object> queue = new SingleConsumerQueue<>();
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testOverflowOfferPollOrder() {
+        SingleConsumerQueue<Object> queue = new SingleConsumerQueue<>(8);
+
+        for (int i = 0; i < 100; i++) {
+            queue.offer(Integer.valueOf(i));
+        }
+        Assert.assertEquals(100, queue.size());
+
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(Integer.valueOf(i), queue.poll());
+        }
+
+        // The overflow is not empty so these must queue behind it
+        for (int i = 100; i < 200; i++) {
+            queue.offer(Integer.valueOf(i));
+        }
+
+        for (int i = 50; i < 200; i++) {
+            Assert.assertEquals(Integer.valueOf(i), queue.poll());
+        }
+
+        Assert.assertNull(queue.poll());
+
+        // And the ring is used again once the overflow has been drained
+        for (int i = 0; i < 4; i++) {
+            queue.offer(Integer.valueOf(i));
+        }
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final SingleConsumerQueue<int[]> queue = new SingleConsumerQueue<>(16);
+        final int producers = 4;
+        final int count = 200000;
+        Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            final int id = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        queue.offer(new int[] { id, j });
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        // Objects offered by any one producer must be polled in order
+        int[] next = new int[producers];
+        int received = 0;
+        while (received < producers * count) {
+            int[] value = queue.poll();
+            if (value == null) {
+                Thread.yield();
+                continue;
+            }
+            Assert.assertEquals(next[value[0]], value[1]);
+            next[value[0]]++;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(queue.poll());
+    }
+}
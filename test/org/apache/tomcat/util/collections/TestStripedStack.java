@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStripedStack {
+
+    @Test
+    public void testPopEmpty() {
+        StripedStack<Object> stack = new StripedStack<>();
+        Assert.assertNull(stack.pop());
+    }
+
+    @Test
+    public void testExpandPushPopOrder() {
+        // A single thread always uses the same stripe when there is no limit
+        StripedStack<Object> stack = new StripedStack<>();
+
+        Object o1 = new Object();
+        Object o2 = new Object();
+        Object o3 = new Object();
+        Object o4 = new Object();
+
+        for (int i = 0; i < 300; i++) {
+            stack.push(o1);
+            stack.push(o2);
+            stack.push(o3);
+            stack.push(o4);
+        }
+
+        for (int i = 0; i < 300; i++) {
+            Assert.assertSame(stack.pop(), o4);
+            Assert.assertSame(stack.pop(), o3);
+            Assert.assertSame(stack.pop(), o2);
+            Assert.assertSame(stack.pop(), o1);
+        }
+
+        Assert.assertNull(stack.pop());
+    }
+
+    @Test
+    public void testLimit() {
+        StripedStack<Object> stack = new StripedStack<>(2, 3);
+
+        Object o1 = new Object();
+        Object o2 = new Object();
+        Object o3 = new Object();
+        Object o4 = new Object();
+
+        Assert.assertTrue(stack.push(o1));
+        Assert.assertTrue(stack.push(o2));
+        Assert.assertTrue(stack.push(o3));
+        Assert.assertFalse(stack.push(o4));
+
+        Set<Object> popped =
+                Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+        for (int i = 0; i < 3; i++) {
+            popped.add(stack.pop());
+        }
+        Assert.assertTrue(popped.contains(o1));
+        Assert.assertTrue(popped.contains(o2));
+        Assert.assertTrue(popped.contains(o3));
+
+        Assert.assertNull(stack.pop());
+    }
+
+    @Test
+    public void testZeroLimit() {
+        StripedStack<Object> stack = new StripedStack<>(128, 0);
+        Assert.assertFalse(stack.push(new Object()));
+        Assert.assertNull(stack.pop());
+    }
+
+    @Test
+    public void testClear() {
+        StripedStack<Object> stack = new StripedStack<>();
+        stack.push(new Object());
+        stack.push(new Object());
+        stack.clear();
+        Assert.assertNull(stack.pop());
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        final int limit = 100;
+        final StripedStack<Object> stack = new StripedStack<>(16, limit);
+        final Set<Object> seen = Collections.synchronizedSet(
+                Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>()));
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        Object obj = stack.pop();
+                        if (obj == null) {
+                            obj = new Object();
+                        }
+                        stack.push(obj);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // No object may be handed out twice and the limit must hold
+        Object obj;
+        while ((obj = stack.pop()) != null) {
+            Assert.assertTrue(seen.add(obj));
+        }
+        Assert.assertTrue(seen.size() <= limit);
+    }
+}
@@ -104,4 +104,87 @@ public class TesterPerformanceSynchronizedQueue {
             super.run();
         }
     }
+
+    /*
+     * The tests below use the pattern of a poller event queue: many threads
+     * add events and a single thread removes them.
+     */
+
+    @Test
+    public void testSynchronizedQueueSingleConsumer()
+            throws InterruptedException {
+        final SynchronizedQueue<Object> queue = new SynchronizedQueue<>();
+        long time = runSingleConsumer(new Producer() {
+            @Override
+            public void offer(Object obj) {
+                queue.offer(obj);
+            }
+        }, new Consumer() {
+            @Override
+            public Object poll() {
+                return queue.poll();
+            }
+        });
+        System.out.println("SynchronizedQueue, single consumer: " + time + "ms");
+    }
+
+    @Test
+    public void testSingleConsumerQueue() throws InterruptedException {
+        final SingleConsumerQueue<Object> queue = new SingleConsumerQueue<>();
+        long time = runSingleConsumer(new Producer() {
+            @Override
+            public void offer(Object obj) {
+                queue.offer(obj);
+            }
+        }, new Consumer() {
+            @Override
+            public Object poll() {
+                return queue.poll();
+            }
+        });
+        System.out.println("SingleConsumerQueue: " + time + "ms");
+    }
+
+    private long runSingleConsumer(final Producer producer, Consumer consumer)
+            throws InterruptedException {
+        final Object obj = new Object();
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < ITERATIONS; j++) {
+                        producer.offer(obj);
+                    }
+                }
+            };
+        }
+
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i].start();
+        }
+
+        int received = 0;
+        while (received < THREAD_COUNT * ITERATIONS) {
+            if (consumer.poll() != null) {
+                received++;
+            }
+        }
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i].join();
+        }
+
+        return System.currentTimeMillis() - start;
+    }
+
+    private static interface Producer {
+        void offer(Object obj);
+    }
+
+    private static interface Consumer {
+        Object poll();
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHeaderNames {
+
+    @Test
+    public void testAllNames() {
+        for (int i = 0; i < HeaderNames.size(); i++) {
+            String name = HeaderNames.getName(i);
+            Assert.assertEquals(i, HeaderNames.getId(name));
+            Assert.assertEquals(i, HeaderNames.getId(name.toUpperCase()));
+            byte[] b = ("X:" + name + ":").getBytes(StandardCharsets.ISO_8859_1);
+            Assert.assertEquals(i, HeaderNames.getId(b, 2, name.length()));
+        }
+    }
+
+    @Test
+    public void testMixedCase() {
+        byte[] b = "Content-Length".getBytes(StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(HeaderNames.getId("content-length"),
+                HeaderNames.getId(b, 0, b.length));
+        Assert.assertEquals(HeaderNames.getId("host"),
+                HeaderNames.getId("hOsT"));
+    }
+
+    @Test
+    public void testUnknown() {
+        Assert.assertEquals(HeaderNames.UNKNOWN, HeaderNames.getId("X-Foo"));
+        Assert.assertEquals(HeaderNames.UNKNOWN, HeaderNames.getId(""));
+        Assert.assertEquals(HeaderNames.UNKNOWN, HeaderNames.getId((String) null));
+        // Same length as a well-known name
+        Assert.assertEquals(HeaderNames.UNKNOWN, HeaderNames.getId("hosu"));
+        // '-' and '\r' differ only in bit 0x20
+        Assert.assertEquals(HeaderNames.UNKNOWN,
+                HeaderNames.getId("content\rlength"));
+        Assert.assertEquals(HeaderNames.UNKNOWN,
+                HeaderNames.getId("content-lengt\u0128"));
+    }
+
+    @Test
+    public void testMimeHeaders() {
+        MimeHeaders headers = new MimeHeaders();
+        byte[] b = "Host: x".getBytes(StandardCharsets.ISO_8859_1);
+        headers.addValue(b, 0, 4).setString("x");
+        headers.addValue("X-Foo").setString("foo");
+        headers.addValue("x-foo").setString("bar");
+
+        Assert.assertEquals("x", headers.getHeader("HOST"));
+        Assert.assertEquals(HeaderNames.getId("host"), headers.getId(0));
+        Assert.assertEquals(HeaderNames.UNKNOWN, headers.getId(1));
+        Assert.assertNull(headers.getHeader("Hos"));
+
+        Enumeration<String> values = headers.values("X-FOO");
+        Assert.assertEquals("foo", values.nextElement());
+        Assert.assertEquals("bar", values.nextElement());
+        Assert.assertFalse(values.hasMoreElements());
+
+        headers.setValue("x-Foo").setString("baz");
+        Assert.assertEquals(2, headers.size());
+        Assert.assertEquals("baz", headers.getHeader("x-foo"));
+
+        headers.removeHeader("host");
+        Assert.assertEquals(1, headers.size());
+        Assert.assertEquals(-1, headers.findHeader("Host", 0));
+
+        headers.recycle();
+        headers.addValue("connection").setString("close");
+        Assert.assertEquals(HeaderNames.getId("Connection"), headers.getId(0));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestByteBufferPool {
+
+    @Test
+    public void testSizeClasses() {
+        ByteBufferPool pool = new ByteBufferPool(false, -1);
+        Assert.assertEquals(1024, pool.allocate(1).capacity());
+        Assert.assertEquals(1024, pool.allocate(1024).capacity());
+        Assert.assertEquals(2048, pool.allocate(1025).capacity());
+        Assert.assertEquals(8192, pool.allocate(8192).capacity());
+        Assert.assertEquals(32768, pool.allocate(25000).capacity());
+        // Too big to be pooled
+        Assert.assertEquals(2 * 1024 * 1024,
+                pool.allocate(2 * 1024 * 1024).capacity());
+    }
+
+    @Test
+    public void testReuse() {
+        ByteBufferPool pool = new ByteBufferPool(false, -1);
+        ByteBuffer b1 = pool.allocate(8192);
+        b1.put((byte) 1);
+        pool.release(b1);
+        ByteBuffer b2 = pool.allocate(8192);
+        Assert.assertSame(b1, b2);
+        Assert.assertEquals(0, b2.position());
+        Assert.assertEquals(b2.capacity(), b2.limit());
+    }
+
+    @Test
+    public void testOtherThread() throws Exception {
+        final ByteBufferPool pool = new ByteBufferPool(true, -1);
+        final ByteBuffer[] allocated = new ByteBuffer[1];
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                allocated[0] = pool.allocate(8192);
+                pool.release(allocated[0]);
+            }
+        };
+        t.start();
+        t.join();
+        Assert.assertTrue(allocated[0].isDirect());
+        // The whole slab, including the released buffer, is in the pool
+        Assert.assertEquals(1024 * 1024, pool.getPooledBytes());
+
+        // Buffers released by a thread that has ended are reused by others
+        for (int i = 0; i < 128; i++) {
+            pool.allocate(8192);
+        }
+        Assert.assertEquals(1024 * 1024, pool.getAllocatedBytes());
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testSlab() {
+        ByteBufferPool pool = new ByteBufferPool(false, -1);
+        pool.allocate(8192);
+        // One slab allocated for the whole size class
+        Assert.assertEquals(1024 * 1024, pool.getAllocatedBytes());
+        Assert.assertEquals(1024 * 1024 - 8192, pool.getPooledBytes());
+        for (int i = 1; i < 128; i++) {
+            pool.allocate(8192);
+        }
+        Assert.assertEquals(1024 * 1024, pool.getAllocatedBytes());
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testLimit() {
+        ByteBufferPool pool = new ByteBufferPool(false, 8192);
+        ByteBuffer b1 = pool.allocate(4096);
+        // Most of the slab had to be discarded
+        Assert.assertEquals(8192, pool.getPooledBytes());
+        pool.release(b1);
+        Assert.assertEquals(8192, pool.getPooledBytes());
+        pool.clear();
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testForeignBuffer() {
+        ByteBufferPool pool = new ByteBufferPool(false, -1);
+        pool.release(ByteBuffer.allocate(5000));
+        pool.release(ByteBuffer.allocateDirect(8192));
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketOption;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.TesterServlet;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.coyote.http11.Http11NioProtocol;
+import org.apache.tomcat.util.net.NioEndpoint.KeyAttachment;
+import org.apache.tomcat.util.net.NioEndpoint.Poller;
+
+public class TestNioEndpoint extends TomcatBaseTest {
+
+    private static final int SHARDS = 3;
+
+    @Test
+    public void testSharded() throws Exception {
+        Assume.assumeTrue(getProtocol().equals(
+                Http11NioProtocol.class.getName()));
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("reusePortShards",
+                Integer.toString(SHARDS)));
+        addServlet(tomcat);
+        tomcat.start();
+
+        NioEndpoint endpoint =
+                ((Http11NioProtocol) connector.getProtocolHandler()).getEndpoint();
+        // Not every platform supports SO_REUSEPORT
+        Assume.assumeTrue(endpoint.isSharded());
+        Assert.assertEquals(SHARDS, endpoint.getAcceptorThreadCount());
+        Assert.assertEquals(SHARDS, endpoint.getPollerThreadCount());
+
+        for (int i = 0; i < 20; i++) {
+            doRequest(connector.getLocalPort());
+        }
+        Assert.assertEquals(SHARDS, endpoint.getShardStatistics().length);
+
+        // The acceptors must notice the stop without an unlock connection
+        long start = System.nanoTime();
+        connector.stop();
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        Assert.assertTrue("Stop took " + elapsed + "ms", elapsed < 1000);
+        Assert.assertEquals(0, endpoint.getShardStatistics().length);
+    }
+
+    @Test
+    public void testShardedExplicitThreadCounts() throws Exception {
+        Assume.assumeTrue(getProtocol().equals(
+                Http11NioProtocol.class.getName()));
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("reusePortShards",
+                Integer.toString(SHARDS)));
+        Assert.assertTrue(connector.setProperty("acceptorThreadCount",
+                Integer.toString(SHARDS + 1)));
+        Assert.assertTrue(connector.setProperty("pollerThreadCount",
+                Integer.toString(SHARDS * 2)));
+        addServlet(tomcat);
+        tomcat.start();
+
+        NioEndpoint endpoint =
+                ((Http11NioProtocol) connector.getProtocolHandler()).getEndpoint();
+        Assume.assumeTrue(endpoint.isSharded());
+        // Counts above the number of shards are kept
+        Assert.assertEquals(SHARDS + 1, endpoint.getAcceptorThreadCount());
+        Assert.assertEquals(SHARDS * 2, endpoint.getPollerThreadCount());
+
+        for (int i = 0; i < 20; i++) {
+            doRequest(connector.getLocalPort());
+        }
+        Assert.assertEquals(SHARDS, endpoint.getShardStatistics().length);
+        Assert.assertEquals(20, endpoint.getAcceptedConnectionCount());
+    }
+
+    @Test
+    public void testShardedThreadCountsRaised() throws Exception {
+        Assume.assumeTrue(getProtocol().equals(
+                Http11NioProtocol.class.getName()));
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("reusePortShards",
+                Integer.toString(SHARDS)));
+        Assert.assertTrue(connector.setProperty("acceptorThreadCount", "1"));
+        Assert.assertTrue(connector.setProperty("pollerThreadCount", "1"));
+        addServlet(tomcat);
+        tomcat.start();
+
+        NioEndpoint endpoint =
+                ((Http11NioProtocol) connector.getProtocolHandler()).getEndpoint();
+        Assume.assumeTrue(endpoint.isSharded());
+        // Every shard needs its own acceptor and poller
+        Assert.assertEquals(SHARDS, endpoint.getAcceptorThreadCount());
+        Assert.assertEquals(SHARDS, endpoint.getPollerThreadCount());
+    }
+
+    @Test
+    public void testReusePortUnavailable() throws Exception {
+        Assume.assumeTrue(getProtocol().equals(
+                Http11NioProtocol.class.getName()));
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = new Connector(TesterNioProtocol.class.getName());
+        connector.setAttribute("address",
+                InetAddress.getByName("localhost").getHostAddress());
+        connector.setPort(0);
+        Assert.assertTrue(connector.setProperty("reusePortShards",
+                Integer.toString(SHARDS)));
+        tomcat.getService().removeConnector(tomcat.getConnector());
+        tomcat.getService().addConnector(connector);
+        tomcat.setConnector(connector);
+        addServlet(tomcat);
+        tomcat.start();
+
+        // Falls back to a single, unsharded server socket
+        NioEndpoint endpoint =
+                ((Http11NioProtocol) connector.getProtocolHandler()).getEndpoint();
+        Assert.assertFalse(endpoint.isSharded());
+        Assert.assertEquals(0, endpoint.getShardStatistics().length);
+        for (int i = 0; i < 5; i++) {
+            doRequest(connector.getLocalPort());
+        }
+    }
+
+    @Test
+    public void testTimeoutReleasesBuffers() throws Exception {
+        Assume.assumeTrue(getProtocol().equals(
+                Http11NioProtocol.class.getName()));
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assert.assertTrue(connector.setProperty("socket.appBufferPool", "true"));
+        Assert.assertTrue(connector.setProperty("connectionTimeout", "500"));
+        addServlet(tomcat);
+        tomcat.start();
+
+        NioEndpoint endpoint =
+                ((Http11NioProtocol) connector.getProtocolHandler()).getEndpoint();
+        ByteBufferPool pool = endpoint.getAppBufferPool();
+        Assert.assertNotNull(pool);
+
+        for (int i = 0; i < 3; i++) {
+            try (Socket socket = new Socket("localhost", getPort())) {
+                socket.setSoTimeout(10000);
+                // An incomplete request that the poller times out
+                OutputStream os = socket.getOutputStream();
+                os.write("GET / HTTP/1.1\r\nHost: loc".getBytes(
+                        StandardCharsets.ISO_8859_1));
+                os.flush();
+                InputStream is = socket.getInputStream();
+                while (is.read() != -1) {
+                    // Wait for the server to close the connection
+                }
+            }
+        }
+
+        // Every buffer borrowed by the timed out connections is back
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getPooledBytes() != pool.getAllocatedBytes() &&
+                System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertTrue(pool.getAllocatedBytes() > 0);
+        Assert.assertEquals(pool.getAllocatedBytes(), pool.getPooledBytes());
+    }
+
+    @Test
+    public void testPendingOpsCoalesced() throws Exception {
+        NioEndpoint endpoint = new NioEndpoint();
+        Poller poller = endpoint.new Poller();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(
+                    InetAddress.getByName("localhost"), 0));
+            try (SocketChannel client =
+                    SocketChannel.open(server.getLocalAddress());
+                    SocketChannel sc = server.accept()) {
+                NioChannel channel = register(poller, sc);
+                SelectionKey key = sc.keyFor(poller.getSelector());
+                long events = poller.getEventCount();
+
+                // Read and write interest registered back to back are merged
+                // into a single event that applies both
+                poller.add(channel, SelectionKey.OP_READ);
+                poller.add(channel, SelectionKey.OP_WRITE);
+                Assert.assertEquals(1, poller.getCoalescedEventCount());
+                Assert.assertTrue(poller.events());
+                Assert.assertEquals(events + 1, poller.getEventCount());
+                Assert.assertEquals(
+                        SelectionKey.OP_READ | SelectionKey.OP_WRITE,
+                        key.interestOps());
+
+                // Nothing is left pending for the next registration
+                key.interestOps(0);
+                poller.add(channel, SelectionKey.OP_WRITE);
+                Assert.assertTrue(poller.events());
+                Assert.assertEquals(events + 2, poller.getEventCount());
+                Assert.assertEquals(SelectionKey.OP_WRITE, key.interestOps());
+
+                // The poller is not blocked in select() so it is never woken
+                Assert.assertEquals(0, poller.getWakeupCount());
+            }
+        } finally {
+            poller.getSelector().close();
+        }
+    }
+
+    @Test
+    public void testPendingOpsClearedForStaleKey() throws Exception {
+        NioEndpoint endpoint = new NioEndpoint();
+        Poller poller = endpoint.new Poller();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(
+                    InetAddress.getByName("localhost"), 0));
+            try (SocketChannel client =
+                    SocketChannel.open(server.getLocalAddress());
+                    SocketChannel sc = server.accept()) {
+                NioChannel channel = register(poller, sc);
+                SelectionKey key = sc.keyFor(poller.getSelector());
+                KeyAttachment ka = (KeyAttachment) key.attachment();
+
+                // The key now belongs to another attachment by the time the
+                // queued event runs
+                poller.add(channel, SelectionKey.OP_READ);
+                key.attach(new KeyAttachment(channel));
+                Assert.assertTrue(poller.events());
+
+                // Nothing is left pending so the next registration queues
+                // a new event
+                Assert.assertEquals(0, ka.addPendingOps(SelectionKey.OP_READ));
+            }
+        } finally {
+            poller.getSelector().close();
+        }
+    }
+
+    @Test
+    public void testCallbackAndCometNotCoalesced() throws Exception {
+        NioEndpoint endpoint = new NioEndpoint();
+        Poller poller = endpoint.new Poller();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(
+                    InetAddress.getByName("localhost"), 0));
+            try (SocketChannel client =
+                    SocketChannel.open(server.getLocalAddress());
+                    SocketChannel sc = server.accept()) {
+                NioChannel channel = register(poller, sc);
+                KeyAttachment ka = (KeyAttachment) channel.getAttachment(false);
+                long events = poller.getEventCount();
+
+                // A callback after an interest change keeps its own event
+                poller.add(channel, SelectionKey.OP_READ);
+                poller.add(channel, NioEndpoint.OP_CALLBACK);
+                Assert.assertEquals(0, poller.getCoalescedEventCount());
+                poller.events();
+                Assert.assertEquals(events + 2, poller.getEventCount());
+                Assert.assertTrue(ka.getCometNotify());
+
+                // Comet connections depend on the order of their events
+                ka.setComet(true);
+                poller.add(channel, SelectionKey.OP_READ);
+                poller.add(channel, SelectionKey.OP_READ);
+                Assert.assertEquals(0, poller.getCoalescedEventCount());
+                poller.events();
+                Assert.assertEquals(events + 4, poller.getEventCount());
+                Assert.assertFalse(ka.getCometNotify());
+            }
+        } finally {
+            poller.getSelector().close();
+        }
+    }
+
+    private static NioChannel register(Poller poller, SocketChannel sc)
+            throws Exception {
+        sc.configureBlocking(false);
+        NioChannel channel = new NioChannel(sc, null);
+        poller.register(channel);
+        Assert.assertTrue(poller.events());
+        SelectionKey key = sc.keyFor(poller.getSelector());
+        // As if the socket were being processed
+        key.interestOps(0);
+        ((KeyAttachment) key.attachment()).interestOps(0);
+        return channel;
+    }
+
+    private static void addServlet(Tomcat tomcat) {
+        Context ctx =
+                tomcat.addContext("", System.getProperty("java.io.tmpdir"));
+        Tomcat.addServlet(ctx, "servlet", new TesterServlet());
+        ctx.addServletMapping("/", "servlet");
+    }
+
+    private static void doRequest(int port) throws Exception {
+        // A new connection each time so that the requests are spread across
+        // the shards
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream os = socket.getOutputStream();
+            os.write(("GET / HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "Connection: close\r\n" +
+                    "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            os.flush();
+            InputStream is = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                response.write(buf, 0, n);
+            }
+            String result = response.toString("ISO-8859-1");
+            Assert.assertTrue(result, result.startsWith("HTTP/1.1 200"));
+            Assert.assertTrue(result, result.endsWith("OK"));
+        }
+    }
+
+
+    /**
+     * An NIO protocol whose endpoint behaves as if the JVM did not provide
+     * the SO_REUSEPORT socket option.
+     */
+    public static class TesterNioProtocol extends Http11NioProtocol {
+
+        public TesterNioProtocol() {
+            NioEndpoint endpoint = new NioEndpoint() {
+                @Override
+                protected SocketOption<Boolean> getReusePortOption() {
+                    return null;
+                }
+            };
+            endpoint.setHandler((NioEndpoint.Handler) getHandler());
+            endpoint.setSoLinger(getEndpoint().getSoLinger());
+            endpoint.setSoTimeout(getEndpoint().getSoTimeout());
+            endpoint.setTcpNoDelay(getEndpoint().getTcpNoDelay());
+            this.endpoint = endpoint;
+        }
+    }
+}
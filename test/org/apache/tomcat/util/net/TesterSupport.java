@@ -97,7 +97,7 @@ public final class TesterSupport {
         return kmf.getKeyManagers();
     }
 
-    protected static TrustManager[] getTrustManagers() throws Exception {
+    public static TrustManager[] getTrustManagers() throws Exception {
         TrustManagerFactory tmf = TrustManagerFactory.getInstance(
                 TrustManagerFactory.getDefaultAlgorithm());
         tmf.init(getKeyStore("test/org/apache/tomcat/util/net/ca.jks"));
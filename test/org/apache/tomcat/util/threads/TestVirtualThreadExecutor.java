@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class TestVirtualThreadExecutor {
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testUnsupported() {
+        Assume.assumeFalse(VirtualThreadExecutor.isSupported());
+        new VirtualThreadExecutor("test-", 200);
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test-", 200);
+        final int count = 1000;
+        final CountDownLatch started = new CountDownLatch(count);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger named = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (Thread.currentThread().getName().startsWith("test-")) {
+                        named.incrementAndGet();
+                    }
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
+            });
+        }
+        // More blocked tasks than maxThreads
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(count, executor.getActiveCount());
+        release.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(count, named.get());
+        Assert.assertEquals(count, executor.getCompletedTaskCount());
+        Assert.assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test-", 200);
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    // Expected
+                }
+            }
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        executor.shutdownNow();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // NO-OP
+                }
+            });
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+    }
+}